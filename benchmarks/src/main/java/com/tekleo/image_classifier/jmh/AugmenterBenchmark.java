@@ -0,0 +1,66 @@
+package com.tekleo.image_classifier.jmh;
+
+import com.tekleo.image_classifier.dataset.pipeline.AugmentationConfig;
+import com.tekleo.image_classifier.dataset.pipeline.ImageAugmenter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@link ImageAugmenter} per image on one batch of random uint8 images, one transform at a time and all of them together
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AugmenterBenchmark {
+    @Param({"flip", "crop", "jitter", "all"})
+    public String transform;
+
+    private ImageAugmenter augmenter;
+    private byte[] pixels;
+    private byte[] scratch;
+    private int exampleLength;
+    private int batch;
+
+    @Setup
+    public void setup() {
+        AugmentationConfig config = new AugmentationConfig();
+        if (transform.equals("flip") || transform.equals("all"))
+            config = config.withFlip(true);
+        if (transform.equals("crop") || transform.equals("all"))
+            config = config.withCrop(4);
+        if (transform.equals("jitter") || transform.equals("all"))
+            config = config.withColorJitter(0.1, 0.1, 0.1);
+
+        augmenter = new ImageAugmenter(config, BenchmarkData.IMAGE_CHANNELS, BenchmarkData.IMAGE_HEIGHT, BenchmarkData.IMAGE_WIDTH);
+        exampleLength = augmenter.getScratchLength();
+        pixels = new byte[BenchmarkData.BATCH_SIZE * exampleLength];
+        new Random(666).nextBytes(pixels);
+        scratch = new byte[exampleLength];
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkData.BATCH_SIZE)
+    public byte[] augment() {
+        SplittableRandom random = augmenter.newRandom(0, batch++);
+        for (int i = 0; i < BenchmarkData.BATCH_SIZE; i++)
+            augmenter.augment(pixels, i * exampleLength, scratch, random);
+        return pixels;
+    }
+}
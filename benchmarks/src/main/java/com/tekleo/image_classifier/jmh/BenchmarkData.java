@@ -0,0 +1,94 @@
+package com.tekleo.image_classifier.jmh;
+
+import com.tekleo.image_classifier.neural_network.CifarModel;
+import com.tekleo.image_classifier.neural_network.config.TrainingConfig;
+import org.deeplearning4j.nn.conf.WorkspaceMode;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Shared inputs for benchmarks: image files, random batches and a freshly initialized network
+ */
+public class BenchmarkData {
+    public static final int IMAGE_HEIGHT = 32;
+    public static final int IMAGE_WIDTH = 32;
+    public static final int IMAGE_CHANNELS = 3;
+    public static final int IMAGE_CLASSES = 10;
+    public static final int BATCH_SIZE = 240;
+    public static final String DEFAULT_IMAGE_DIRECTORY = "../src/main/resources/cifar";
+    private static final int SEED = 666;
+
+    /**
+     * First images of every class directory, taken in turns so that all classes are present
+     * @param imageDirectory directory with one sub directory per class
+     * @param count number of files
+     * @return image files
+     */
+    public static List<File> imageFiles(String imageDirectory, int count) {
+        File[] classDirectories = new File(imageDirectory).listFiles(File::isDirectory);
+        if (classDirectories == null || classDirectories.length == 0)
+            throw new IllegalArgumentException(imageDirectory + " has no class directories, run benchmarks from the benchmarks directory or pass -p imageDirectory=...");
+        Arrays.sort(classDirectories);
+
+        List<File[]> filesPerClass = new ArrayList<>();
+        for (File classDirectory : classDirectories) {
+            File[] files = classDirectory.listFiles(File::isFile);
+            Arrays.sort(files);
+            filesPerClass.add(files);
+        }
+
+        List<File> result = new ArrayList<>();
+        for (int i = 0; result.size() < count; i++)
+            for (File[] files : filesPerClass)
+                if (i < files.length && result.size() < count)
+                    result.add(files[i]);
+        return result;
+    }
+
+    /**
+     * Random pixels in 0..255 range, shaped as a batch of images
+     * @param batchSize number of images
+     * @return features
+     */
+    public static INDArray randomPixels(int batchSize) {
+        Nd4j.getRandom().setSeed(SEED);
+        return Nd4j.rand(new int[] {batchSize, IMAGE_CHANNELS, IMAGE_HEIGHT, IMAGE_WIDTH}).muli(255);
+    }
+
+    /**
+     * Random batch with scaled features and one-hot labels
+     * @param batchSize number of images
+     * @return data set
+     */
+    public static DataSet randomBatch(int batchSize) {
+        INDArray features = randomPixels(batchSize).divi(255);
+        INDArray labels = Nd4j.zeros(batchSize, IMAGE_CLASSES);
+        for (int i = 0; i < batchSize; i++)
+            labels.putScalar(i, i % IMAGE_CLASSES, 1);
+        return new DataSet(features, labels);
+    }
+
+    /**
+     * Network with the configuration of {@link CifarModel}, not trained
+     * @return network
+     */
+    public static MultiLayerNetwork network() {
+        return new CifarModel(null, null).getNetwork();
+    }
+
+    /**
+     * Network with the configuration of {@link CifarModel} and the given training workspace mode, not trained
+     * @param trainingWorkspaceMode workspace mode used by fit
+     * @return network
+     */
+    public static MultiLayerNetwork network(WorkspaceMode trainingWorkspaceMode) {
+        return new CifarModel(null, null, new TrainingConfig().withWorkspaceModes(trainingWorkspaceMode, WorkspaceMode.SINGLE)).getNetwork();
+    }
+}
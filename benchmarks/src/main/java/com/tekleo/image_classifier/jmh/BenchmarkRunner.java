@@ -0,0 +1,36 @@
+package com.tekleo.image_classifier.jmh;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+
+/**
+ * Runs all benchmarks and writes results as JSON into jmh-results/LABEL.json
+ * Use a commit hash as label to compare results of different commits, for example with https://jmh.morethan.io
+ *
+ * Arguments: [label (default: "latest")] [benchmark regexp (default: all)]
+ */
+public class BenchmarkRunner {
+    private static final String RESULTS_DIRECTORY = "jmh-results";
+    private static final String DEFAULT_LABEL = "latest";
+    private static final String DEFAULT_INCLUDE = BenchmarkRunner.class.getPackage().getName() + ".*";
+
+    public static void main(String[] args) throws Exception {
+        String label = args.length > 0 ? args[0] : DEFAULT_LABEL;
+        String include = args.length > 1 ? args[1] : DEFAULT_INCLUDE;
+
+        File resultsDirectory = new File(RESULTS_DIRECTORY);
+        if (!resultsDirectory.isDirectory() && !resultsDirectory.mkdirs())
+            throw new IllegalStateException("Failed to create " + resultsDirectory.getPath());
+
+        Options options = new OptionsBuilder()
+                .include(include)
+                .resultFormat(ResultFormatType.JSON)
+                .result(new File(resultsDirectory, label + ".json").getPath())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,63 @@
+package com.tekleo.image_classifier.jmh;
+
+import org.datavec.api.io.labels.ParentPathLabelGenerator;
+import org.datavec.api.split.CollectionInputSplit;
+import org.datavec.api.split.InputSplit;
+import org.datavec.api.writable.Writable;
+import org.datavec.image.recordreader.ImageRecordReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decode throughput of {@link ImageRecordReader} over one batch worth of PNG files, reported per image
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DecodeBenchmark {
+    @Param(BenchmarkData.DEFAULT_IMAGE_DIRECTORY)
+    public String imageDirectory;
+
+    private InputSplit inputSplit;
+    private ImageRecordReader imageRecordReader;
+
+    @Setup
+    public void setup() throws Exception {
+        List<URI> locations = new ArrayList<>();
+        for (File file : BenchmarkData.imageFiles(imageDirectory, BenchmarkData.BATCH_SIZE))
+            locations.add(file.toURI());
+        inputSplit = new CollectionInputSplit(locations);
+        imageRecordReader = new ImageRecordReader(BenchmarkData.IMAGE_HEIGHT, BenchmarkData.IMAGE_WIDTH, BenchmarkData.IMAGE_CHANNELS, new ParentPathLabelGenerator());
+        imageRecordReader.initialize(inputSplit);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkData.BATCH_SIZE)
+    public void decode(Blackhole blackhole) {
+        imageRecordReader.reset();
+        while (imageRecordReader.hasNext()) {
+            List<Writable> record = imageRecordReader.next();
+            blackhole.consume(record);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.tekleo.image_classifier.jmh;
+
+import com.tekleo.image_classifier.inference.engine.EngineException;
+import com.tekleo.image_classifier.inference.engine.EngineExporter;
+import com.tekleo.image_classifier.inference.engine.EngineSession;
+import com.tekleo.image_classifier.inference.engine.WeightPrecision;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of an engine forward pass with float and with half precision weights, for different batch sizes and session thread counts
+ * Half weights take half the memory, the engine widens them to float when they are read, so this shows what the smaller reads gain against the conversion
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class EnginePrecisionBenchmark {
+    @Param({"FLOAT", "HALF"})
+    public WeightPrecision weightPrecision;
+
+    @Param({"1", "64"})
+    public int batchSize;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    private EngineSession session;
+    private float[] features;
+
+    @Setup
+    public void setup() throws EngineException {
+        session = EngineExporter.export(BenchmarkData.network(), BenchmarkData.IMAGE_CHANNELS, BenchmarkData.IMAGE_HEIGHT, BenchmarkData.IMAGE_WIDTH)
+                .withWeightPrecision(weightPrecision).newSession(batchSize, threads);
+        features = BenchmarkData.randomBatch(batchSize).getFeatures().dup('c').data().asFloat();
+    }
+
+    @TearDown
+    public void tearDown() {
+        session.close();
+    }
+
+    @Benchmark
+    public float[] run() {
+        return session.run(features, batchSize);
+    }
+}
@@ -0,0 +1,48 @@
+package com.tekleo.image_classifier.jmh;
+
+import org.deeplearning4j.nn.conf.WorkspaceMode;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.dataset.DataSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time of one training step (forward, backward and parameter update) on a full batch, with every training workspace mode
+ * Run with "-prof gc" to compare allocation and GC activity of the modes, and with "-bm sample" for percentiles of step times
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FitStepBenchmark {
+    @Param({"NONE", "SINGLE", "SEPARATE"})
+    public WorkspaceMode trainingWorkspaceMode;
+
+    private MultiLayerNetwork network;
+    private DataSet batch;
+
+    @Setup
+    public void setup() {
+        network = BenchmarkData.network(trainingWorkspaceMode);
+        batch = BenchmarkData.randomBatch(BenchmarkData.BATCH_SIZE);
+    }
+
+    @Benchmark
+    public MultiLayerNetwork fit() {
+        network.fit(batch);
+        return network;
+    }
+}
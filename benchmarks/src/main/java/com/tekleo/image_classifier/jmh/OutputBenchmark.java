@@ -0,0 +1,45 @@
+package com.tekleo.image_classifier.jmh;
+
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of a single inference call (network.output) for different batch sizes
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class OutputBenchmark {
+    @Param({"1", "32", "240"})
+    public int batchSize;
+
+    private MultiLayerNetwork network;
+    private INDArray features;
+
+    @Setup
+    public void setup() {
+        network = BenchmarkData.network();
+        features = BenchmarkData.randomBatch(batchSize).getFeatures();
+    }
+
+    @Benchmark
+    public INDArray output() {
+        return network.output(features, false);
+    }
+}
@@ -0,0 +1,43 @@
+package com.tekleo.image_classifier.jmh;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.api.preprocessor.ImagePreProcessingScaler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@link ImagePreProcessingScaler} transform on one full batch
+ * The same array is transformed in place every time, values shrink but the amount of work stays the same
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ScalerBenchmark {
+    private ImagePreProcessingScaler imagePreProcessingScaler;
+    private INDArray features;
+
+    @Setup
+    public void setup() {
+        imagePreProcessingScaler = new ImagePreProcessingScaler(0, 1);
+        features = BenchmarkData.randomPixels(BenchmarkData.BATCH_SIZE);
+    }
+
+    @Benchmark
+    public INDArray transform() {
+        imagePreProcessingScaler.transform(features);
+        return features;
+    }
+}
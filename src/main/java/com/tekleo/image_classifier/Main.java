@@ -1,21 +1,124 @@
 package com.tekleo.image_classifier;
 
 import com.tekleo.image_classifier.dataset.CifarDataset;
+import com.tekleo.image_classifier.dataset.CifarDatasetConfig;
+import com.tekleo.image_classifier.dataset.pipeline.AugmentationConfig;
 import com.tekleo.image_classifier.neural_network.CifarModel;
-import org.nd4j.linalg.dataset.api.iterator.KFoldIterator;
+import com.tekleo.image_classifier.neural_network.config.NetworkConfig;
+import com.tekleo.image_classifier.neural_network.config.TrainingConfig;
+import com.tekleo.image_classifier.neural_network.config.loader.ConfigLoader;
+import com.tekleo.image_classifier.neural_network.crossvalidation.CrossValidation;
+import com.tekleo.image_classifier.neural_network.tuning.MachineProfile;
+import com.tekleo.image_classifier.neural_network.tuning.TrainingTuner;
+
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Main class to run
+ *
+ * Arguments: [network config JSON file or name of a bundled config, like gap-small (default: {@link CifarModel#DEFAULT_NETWORK_CONFIG})]
+ *            [number of cross-validation folds, 0 trains a single model (default: 0)] [concurrent folds (default: all cores)]
+ * Tuning:    [network config] tune [memory cap in MB (default: 75% of physical memory)] [comma separated batch sizes (default: 16..512)]
+ * Options, anywhere among the arguments:
+ *   --augment             flip, crop and color jitter train images (see {@link AugmentationConfig}), off by default
+ *   --early-stopping      hold out 5% of the train split as a validation set and stop once its accuracy stops improving, off by default
+ *                         neither --augment nor --early-stopping can be used with cross-validation
+ *   --no-machine-profile  ignore the {@link MachineProfile} of the network and train with the batch size and threads of its config
+ *
+ * Tuning probes batch sizes and thread counts of the network on this machine and saves them as its {@link MachineProfile},
+ * probes read the same pipeline as training, so tune with the same --augment option that training will use
+ * Later runs pick up a profile tuned on the same machine on their own, cross-validation takes only its batch size, its folds share the cores
+ *
  * @author Leo Ertuna
  * @since 01.04.2018 01:07
  */
 public class Main {
-    public static void main(String[] args) throws Exception  {
-        CifarDataset cifarDataset = new CifarDataset();
-        CifarModel cifarModel = new CifarModel(cifarDataset.getTrainDataSetIterator(), cifarDataset.getTestDataSetIterator());
+    private static final int VALIDATION_PERCENTAGE = 5;
+    private static final int EARLY_STOPPING_PATIENCE = 3;
+    private static final double EARLY_STOPPING_MIN_DELTA = 0.002;
+    private static final int CROP_PADDING = 4;
+    private static final double COLOR_JITTER = 0.1;
+    private static final String TUNE_ARGUMENT = "tune";
+    private static final String AUGMENT_OPTION = "--augment";
+    private static final String EARLY_STOPPING_OPTION = "--early-stopping";
+    private static final String NO_MACHINE_PROFILE_OPTION = "--no-machine-profile";
+
+    public static void main(String[] arguments) throws Exception  {
+        List<String> options = new ArrayList<>();
+        List<String> positional = new ArrayList<>();
+        for (String argument : arguments)
+            (argument.startsWith("--") ? options : positional).add(argument);
+        for (String option : options)
+            if (!option.equals(AUGMENT_OPTION) && !option.equals(EARLY_STOPPING_OPTION) && !option.equals(NO_MACHINE_PROFILE_OPTION))
+                throw new IllegalArgumentException("Unknown option " + option + ", expected " + AUGMENT_OPTION + ", " + EARLY_STOPPING_OPTION + " or " + NO_MACHINE_PROFILE_OPTION);
+        String[] args = positional.toArray(new String[0]);
+        boolean augment = options.contains(AUGMENT_OPTION);
+        boolean earlyStopping = options.contains(EARLY_STOPPING_OPTION);
+
+        NetworkConfig networkConfig = args.length > 0 ? CifarModel.loadNetworkConfig(args[0]) : ConfigLoader.load(CifarModel.DEFAULT_NETWORK_CONFIG, NetworkConfig.class);
+        TrainingConfig trainingConfig = earlyStopping ? new TrainingConfig().withEarlyStopping(EARLY_STOPPING_PATIENCE, EARLY_STOPPING_MIN_DELTA) : new TrainingConfig();
+        if (args.length > 1 && args[1].equals(TUNE_ARGUMENT)) {
+            tune(networkConfig, trainingConfig, datasetConfig(networkConfig, augment, earlyStopping), args);
+            return;
+        }
+
+        MachineProfile machineProfile = options.contains(NO_MACHINE_PROFILE_OPTION) ? null : MachineProfile.load(networkConfig.getName());
+        if (machineProfile != null && !machineProfile.matchesMachine()) {
+            System.out.println("Ignoring machine profile " + machineProfile + ", it was tuned on another machine");
+            machineProfile = null;
+        }
+        if (machineProfile != null) {
+            System.out.println("Using machine profile " + machineProfile + ", " + NO_MACHINE_PROFILE_OPTION + " trains with the network config as it is");
+            networkConfig = machineProfile.applyTo(networkConfig);
+        }
+
+        int folds = args.length > 1 ? Integer.parseInt(args[1]) : 0;
+        if (folds > 1) {
+            // Folds are split from the whole index and train on plain images, there is no validation share per fold
+            if (augment || earlyStopping)
+                throw new IllegalArgumentException("Cross-validation trains without augmentation and early stopping, run it without " + AUGMENT_OPTION + " and " + EARLY_STOPPING_OPTION);
+            int concurrentFolds = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+            CifarDataset cifarDataset = new CifarDataset(new CifarDatasetConfig().withBatchSize(networkConfig.getBatchSize()));
+            int threadsPerFold = Math.max(1, Runtime.getRuntime().availableProcessors() / concurrentFolds);
+            TrainingConfig crossValidationConfig = new TrainingConfig().withCrossValidation(folds, concurrentFolds).withBackendThreads(threadsPerFold, threadsPerFold);
+            System.out.println(new CrossValidation(cifarDataset, crossValidationConfig, networkConfig).run().summary());
+            return;
+        }
+
+        if (machineProfile != null)
+            trainingConfig = machineProfile.applyTo(trainingConfig);
+        CifarDataset cifarDataset = new CifarDataset(datasetConfig(networkConfig, augment, earlyStopping));
+        CifarModel cifarModel = new CifarModel(cifarDataset.getTrainDataSetIterator(), cifarDataset.getTestDataSetIterator(), trainingConfig, networkConfig);
+        cifarModel.setValidationSet(cifarDataset.getValidationDataSetIterator());
         cifarModel.train();
         //cifarModel.load();
         cifarModel.test();
         cifarModel.save();
     }
-}
\ No newline at end of file
+
+    private static void tune(NetworkConfig networkConfig, TrainingConfig trainingConfig, CifarDatasetConfig cifarDatasetConfig, String[] args) throws Exception {
+        long memoryCapBytes = args.length > 2 ? Long.parseLong(args[2]) << 20 : (long) (TrainingTuner.DEFAULT_MEMORY_SHARE * MachineProfile.physicalMemory());
+        int[] batchSizes = TrainingTuner.DEFAULT_BATCH_SIZES;
+        if (args.length > 3) {
+            String[] values = args[3].split(",");
+            batchSizes = new int[values.length];
+            for (int i = 0; i < values.length; i++)
+                batchSizes[i] = Integer.parseInt(values[i].trim());
+        }
+
+        MachineProfile machineProfile = new TrainingTuner(cifarDatasetConfig, trainingConfig, networkConfig, memoryCapBytes, batchSizes).tune();
+        machineProfile.save();
+        System.out.println("Saved " + MachineProfile.file(networkConfig.getName()) + ", later runs use it unless " + NO_MACHINE_PROFILE_OPTION + " is given");
+    }
+
+    // Tensor cache and prefetching only change how fast the baseline data arrives, augmentation and the validation hold-out change what is trained on
+    private static CifarDatasetConfig datasetConfig(NetworkConfig networkConfig, boolean augment, boolean validation) {
+        CifarDatasetConfig cifarDatasetConfig = new CifarDatasetConfig().withTensorCache().withPrefetch(2).withBatchSize(networkConfig.getBatchSize());
+        if (augment)
+            cifarDatasetConfig = cifarDatasetConfig.withAugmentation(new AugmentationConfig().withFlip(true).withCrop(CROP_PADDING).withColorJitter(COLOR_JITTER, COLOR_JITTER, COLOR_JITTER));
+        if (validation)
+            cifarDatasetConfig = cifarDatasetConfig.withValidation(VALIDATION_PERCENTAGE);
+        return cifarDatasetConfig;
+    }
+}
@@ -0,0 +1,132 @@
+package com.tekleo.image_classifier.benchmark;
+
+import com.tekleo.image_classifier.dataset.CifarDataset;
+import com.tekleo.image_classifier.dataset.CifarDatasetConfig;
+import com.tekleo.image_classifier.neural_network.CifarModel;
+import com.tekleo.image_classifier.neural_network.checkpoint.ParameterFile;
+import com.tekleo.image_classifier.neural_network.config.NetworkConfig;
+import com.tekleo.image_classifier.neural_network.config.TrainingConfig;
+import com.tekleo.image_classifier.neural_network.evaluation.Evaluations;
+import com.tekleo.image_classifier.neural_network.metrics.BatchMetrics;
+import com.tekleo.image_classifier.neural_network.metrics.EpochMetrics;
+import com.tekleo.image_classifier.neural_network.metrics.TrainingMetricsListener;
+import org.deeplearning4j.datasets.iterator.EarlyTerminationDataSetIterator;
+import org.deeplearning4j.eval.Evaluation;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.util.ModelSerializer;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compares architectures on the machine it runs on: parameter count, size of saved files, training and inference throughput, test accuracy
+ * Configs run one after another, so throughput of each one is measured on an otherwise idle machine
+ *
+ * Training throughput is the average of all epochs, inference throughput is measured over the whole test set at training batch size,
+ * model size is given both for the raw parameter file and for the regular zip with updater state (what {@link CifarModel#save()} writes)
+ *
+ * Arguments: [epochs (default: 5)] [train batches per epoch, 0 for all (default: 0)] [config files or names (default: baseline gap-small gap-wide)]
+ */
+public class ArchitectureComparison {
+    private static final int DEFAULT_EPOCHS = 5;
+    private static final List<String> DEFAULT_CONFIGS = Arrays.asList("baseline", "gap-small", "gap-wide");
+    private static final int IMAGE_CLASSES = 10;
+
+    public static void main(String[] args) throws IOException {
+        int epochs = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_EPOCHS;
+        int trainBatches = args.length > 1 ? Integer.parseInt(args[1]) : 0;
+        List<String> configs = args.length > 2 ? Arrays.asList(args).subList(2, args.length) : DEFAULT_CONFIGS;
+
+        CifarDataset cifarDataset = new CifarDataset(new CifarDatasetConfig().withTensorCache());
+        TrainingConfig trainingConfig = new TrainingConfig().withNumberOfEpochs(epochs);
+
+        List<Result> results = new ArrayList<>();
+        for (String config : configs)
+            results.add(run(cifarDataset, CifarModel.loadNetworkConfig(config), trainingConfig, trainBatches));
+
+        System.out.println(String.format("%-12s %12s %10s %10s %12s %12s %10s", "Network", "Parameters", "Raw MB", "Zip MB", "Train img/s", "Infer img/s", "Accuracy"));
+        for (Result result : results)
+            System.out.println(String.format("%-12s %12d %10.1f %10.1f %12.1f %12.1f %10.4f", result.name, result.parameters, result.rawBytes / 1e6, result.zipBytes / 1e6,
+                    result.trainSamplesPerSecond, result.inferenceSamplesPerSecond, result.accuracy));
+    }
+
+    private static Result run(CifarDataset cifarDataset, NetworkConfig networkConfig, TrainingConfig trainingConfig, int trainBatches) throws IOException {
+        DataSetIterator trainSet = cifarDataset.createTrainDataSetIterator(networkConfig.getBatchSize());
+        DataSetIterator testSet = cifarDataset.createTestDataSetIterator(networkConfig.getBatchSize());
+        if (trainBatches > 0)
+            trainSet = new EarlyTerminationDataSetIterator(trainSet, trainBatches);
+
+        CifarModel cifarModel = new CifarModel(trainSet, testSet, trainingConfig, networkConfig);
+        List<EpochMetrics> epochs = new ArrayList<>();
+        cifarModel.addMetricsListener(new TrainingMetricsListener() {
+            @Override
+            public void onBatch(BatchMetrics batchMetrics) {
+
+            }
+
+            @Override
+            public void onEpoch(EpochMetrics epochMetrics) {
+                epochs.add(epochMetrics);
+            }
+        });
+        cifarModel.train();
+        MultiLayerNetwork network = cifarModel.getNetwork();
+
+        double trainSamplesPerSecond = epochs.stream().mapToDouble(EpochMetrics::getSamplesPerSecond).average().orElse(0);
+        double inferenceSamplesPerSecond = inferenceSamplesPerSecond(network, testSet);
+        Evaluation evaluation = Evaluations.evaluate(network, testSet, Evaluations.labels(testSet, IMAGE_CLASSES), 1, Integer.MAX_VALUE);
+
+        File rawFile = File.createTempFile(networkConfig.getName(), ".params");
+        File zipFile = File.createTempFile(networkConfig.getName(), ".zip");
+        try {
+            ParameterFile.write(rawFile, network);
+            ModelSerializer.writeModel(network, zipFile, true);
+            return new Result(networkConfig.getName(), network.numParams(), rawFile.length(), zipFile.length(), trainSamplesPerSecond, inferenceSamplesPerSecond, evaluation.accuracy());
+        } finally {
+            rawFile.delete();
+            zipFile.delete();
+        }
+    }
+
+    // Static helpers
+    //------------------------------------------------------------------------------------------------------------------
+    private static double inferenceSamplesPerSecond(MultiLayerNetwork network, DataSetIterator testSet) {
+        testSet.reset();
+        long samples = 0;
+        long start = System.nanoTime();
+        while (testSet.hasNext()) {
+            DataSet dataSet = testSet.next();
+            network.output(dataSet.getFeatures(), false);
+            samples += dataSet.numExamples();
+        }
+        return samples / ((System.nanoTime() - start) / 1e9);
+    }
+    //------------------------------------------------------------------------------------------------------------------
+
+
+
+    private static class Result {
+        private final String name;
+        private final int parameters;
+        private final long rawBytes;
+        private final long zipBytes;
+        private final double trainSamplesPerSecond;
+        private final double inferenceSamplesPerSecond;
+        private final double accuracy;
+
+        private Result(String name, int parameters, long rawBytes, long zipBytes, double trainSamplesPerSecond, double inferenceSamplesPerSecond, double accuracy) {
+            this.name = name;
+            this.parameters = parameters;
+            this.rawBytes = rawBytes;
+            this.zipBytes = zipBytes;
+            this.trainSamplesPerSecond = trainSamplesPerSecond;
+            this.inferenceSamplesPerSecond = inferenceSamplesPerSecond;
+            this.accuracy = accuracy;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.tekleo.image_classifier.benchmark;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.tekleo.image_classifier.dataset.CifarDataset;
+import com.tekleo.image_classifier.dataset.CifarDatasetConfig;
+import com.tekleo.image_classifier.neural_network.CifarModel;
+import com.tekleo.image_classifier.neural_network.config.NetworkConfig;
+import com.tekleo.image_classifier.neural_network.config.TrainingConfig;
+import com.tekleo.image_classifier.neural_network.config.loader.ConfigLoader;
+import com.tekleo.image_classifier.neural_network.evaluation.Evaluations;
+import org.deeplearning4j.eval.Evaluation;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.nativeblas.NativeOpsHolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Trains every network config of a directory for a few epochs and ranks them by test accuracy per second of training
+ *
+ * Images are decoded once into the tensor cache, then every job reads the same memory-mapped pixels through its own iterator,
+ * jobs run in parallel, and native ops threads are split between them, so they don't fight over cores
+ *
+ * Results are printed as a table and written to {@link #RESULTS_FILENAME}
+ *
+ * Arguments: [config directory (default: network configs in resources)] [epochs (default: 2)] [parallel jobs (default: a quarter of the cores)]
+ */
+public class ArchitectureSweep {
+    private static final String DEFAULT_CONFIG_DIRECTORY = "network";
+    private static final String RESULTS_FILENAME = "sweep-results.json";
+    private static final int DEFAULT_EPOCHS = 2;
+    private static final int CORES_PER_JOB = 4;
+    private static final int IMAGE_CLASSES = 10;
+
+    public static void main(String[] args) throws Exception {
+        File configDirectory = args.length > 0 ? new File(args[0]) : resourceDirectory(DEFAULT_CONFIG_DIRECTORY);
+        int epochs = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_EPOCHS;
+        int cores = Runtime.getRuntime().availableProcessors();
+        int jobs = args.length > 2 ? Integer.parseInt(args[2]) : Math.max(1, cores / CORES_PER_JOB);
+
+        List<NetworkConfig> networkConfigs = loadConfigs(configDirectory);
+        CifarDataset cifarDataset = new CifarDataset(new CifarDatasetConfig().withTensorCache());
+        TrainingConfig trainingConfig = new TrainingConfig().withNumberOfEpochs(epochs);
+        NativeOpsHolder.getInstance().getDeviceNativeOps().setOmpNumThreads(Math.max(1, cores / jobs));
+        System.out.println(String.format("Sweeping %d configs from %s, %d epochs, %d parallel jobs", networkConfigs.size(), configDirectory, epochs, jobs));
+
+        ExecutorService executorService = Executors.newFixedThreadPool(jobs);
+        List<Future<Result>> futures = new ArrayList<>();
+        for (NetworkConfig networkConfig : networkConfigs)
+            futures.add(executorService.submit(() -> run(cifarDataset, networkConfig, trainingConfig)));
+        executorService.shutdown();
+
+        List<Result> results = new ArrayList<>();
+        for (Future<Result> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                System.out.println("Sweep job failed: " + e.getCause());
+            }
+        }
+
+        results.sort(Comparator.comparingDouble((Result result) -> result.accuracyPerSecond).reversed());
+        System.out.println(String.format("%-4s %-24s %12s %10s %10s %12s", "Rank", "Network", "Parameters", "Train s", "Accuracy", "Accuracy/s"));
+        for (int i = 0; i < results.size(); i++) {
+            Result result = results.get(i);
+            System.out.println(String.format("%-4d %-24s %12d %10.1f %10.4f %12.6f", i + 1, result.name, result.parameters, result.trainSeconds, result.accuracy, result.accuracyPerSecond));
+        }
+
+        Gson gson = new GsonBuilder().setPrettyPrinting().create();
+        Files.write(new File(RESULTS_FILENAME).toPath(), gson.toJson(results).getBytes(StandardCharsets.UTF_8));
+        System.out.println("Results written to " + RESULTS_FILENAME);
+    }
+
+    private static Result run(CifarDataset cifarDataset, NetworkConfig networkConfig, TrainingConfig trainingConfig) throws IOException {
+        DataSetIterator trainSet = cifarDataset.createTrainDataSetIterator(networkConfig.getBatchSize());
+        DataSetIterator testSet = cifarDataset.createTestDataSetIterator(networkConfig.getBatchSize());
+
+        CifarModel cifarModel = new CifarModel(trainSet, testSet, trainingConfig, networkConfig);
+        long start = System.nanoTime();
+        cifarModel.train();
+        double trainSeconds = (System.nanoTime() - start) / 1e9;
+
+        Evaluation evaluation = Evaluations.evaluate(cifarModel.getNetwork(), testSet, Evaluations.labels(testSet, IMAGE_CLASSES), 1, Integer.MAX_VALUE);
+        System.out.println(String.format("Finished %s: %.1f s, test accuracy %.4f", networkConfig.getName(), trainSeconds, evaluation.accuracy()));
+        return new Result(networkConfig.getName(), cifarModel.getNetwork().numParams(), trainSeconds, evaluation.accuracy());
+    }
+
+    // Static helpers
+    //------------------------------------------------------------------------------------------------------------------
+    private static List<NetworkConfig> loadConfigs(File configDirectory) {
+        File[] files = configDirectory.listFiles((directory, name) -> name.endsWith(".json"));
+        if (files == null || files.length == 0)
+            throw new IllegalArgumentException("No network configs in " + configDirectory);
+
+        Arrays.sort(files);
+        List<NetworkConfig> networkConfigs = new ArrayList<>();
+        for (File file : files)
+            networkConfigs.add(ConfigLoader.load(file, NetworkConfig.class));
+        return networkConfigs;
+    }
+
+    private static File resourceDirectory(String pathInResourcesDirectory) throws URISyntaxException {
+        return new File(ArchitectureSweep.class.getClassLoader().getResource(pathInResourcesDirectory).toURI());
+    }
+    //------------------------------------------------------------------------------------------------------------------
+
+
+
+    private static class Result {
+        private final String name;
+        private final int parameters;
+        private final double trainSeconds;
+        private final double accuracy;
+        private final double accuracyPerSecond;
+
+        private Result(String name, int parameters, double trainSeconds, double accuracy) {
+            this.name = name;
+            this.parameters = parameters;
+            this.trainSeconds = trainSeconds;
+            this.accuracy = accuracy;
+            this.accuracyPerSecond = accuracy / trainSeconds;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.tekleo.image_classifier.benchmark;
+
+import com.tekleo.image_classifier.dataset.CifarDataset;
+import com.tekleo.image_classifier.dataset.CifarDatasetConfig;
+import com.tekleo.image_classifier.dataset.archive.CifarBinaryBatches;
+import com.tekleo.image_classifier.dataset.archive.ShardExampleSource;
+import com.tekleo.image_classifier.dataset.archive.ShardFormat;
+import com.tekleo.image_classifier.dataset.archive.ShardWriter;
+import com.tekleo.image_classifier.dataset.cache.TensorCache;
+import com.tekleo.image_classifier.dataset.cache.TensorCacheFile;
+import com.tekleo.image_classifier.dataset.pipeline.ExampleSource;
+import com.tekleo.image_classifier.dataset.pipeline.PrefetchingDataSetIterator;
+import org.datavec.api.io.labels.ParentPathLabelGenerator;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compares reading the train split from loose PNG files against the same images packed into tar shards, zip shards and CIFAR-10 binary batches
+ *
+ * Packed copies are made from the train/test split of the loose files under cifar-cache/archive (binary batches are written from the tensor cache,
+ * since the official ones are not part of the repository), then for every source it reports:
+ *  - number of files and bytes on disk
+ *  - time to build the data set and read one epoch (or the given number of batches) through prefetching workers
+ *  - whether pixels and labels of the first images are identical to the tensor cache
+ *
+ * Arguments: [prefetch workers (default: available processors)] [batches per source (default: whole epoch)] [images compared (default: 500)]
+ */
+public class ArchiveBenchmark {
+    private static final int IMAGE_HEIGHT = 32;
+    private static final int IMAGE_WIDTH = 32;
+    private static final int IMAGE_CHANNELS = 3;
+    private static final int IMAGES_PER_SHARD = 10000;
+    private static final int DEFAULT_COMPARED_IMAGES = 500;
+    private static final String[] ALLOWED_FORMATS = {"png"};
+    private static final File ARCHIVE_DIRECTORY = new File("cifar-cache/archive");
+
+    public static void main(String[] args) throws Exception {
+        int workers = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int batches = args.length > 1 ? Integer.parseInt(args[1]) : Integer.MAX_VALUE;
+        int comparedImages = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_COMPARED_IMAGES;
+
+        CifarDatasetConfig config = new CifarDatasetConfig().withPrefetch(workers);
+        CifarDataset looseDataset = new CifarDataset(config.withTensorCache());
+        shutdown(looseDataset);
+
+        // Pack the split, only if it isn't packed yet
+        File tarDirectory = new File(ARCHIVE_DIRECTORY, "tar");
+        File zipDirectory = new File(ARCHIVE_DIRECTORY, "zip");
+        File binaryDirectory = new File(ARCHIVE_DIRECTORY, "binary");
+        long start = System.nanoTime();
+        if (ShardWriter.listShards(tarDirectory, ShardWriter.TRAIN_SPLIT).isEmpty())
+            ShardWriter.write(looseDataset.getIndexSplit(), tarDirectory, IMAGES_PER_SHARD, ShardFormat.TAR);
+        if (ShardWriter.listShards(zipDirectory, ShardWriter.TRAIN_SPLIT).isEmpty())
+            ShardWriter.write(looseDataset.getIndexSplit(), zipDirectory, IMAGES_PER_SHARD, ShardFormat.ZIP);
+        TensorCacheFile trainCache = TensorCache.open(new File(config.getTensorCacheDirectory()), "train", looseDataset.getIndex(), looseDataset.getIndexSplit().getTrain(), IMAGE_HEIGHT, IMAGE_WIDTH, IMAGE_CHANNELS, new ParentPathLabelGenerator());
+        TensorCacheFile testCache = TensorCache.open(new File(config.getTensorCacheDirectory()), "test", looseDataset.getIndex(), looseDataset.getIndexSplit().getTest(), IMAGE_HEIGHT, IMAGE_WIDTH, IMAGE_CHANNELS, new ParentPathLabelGenerator());
+        if (!new File(binaryDirectory, "test_batch.bin").isFile()) {
+            binaryDirectory.mkdirs();
+            CifarBinaryBatches.write(trainCache, new File(binaryDirectory, "data_batch_1.bin"));
+            CifarBinaryBatches.write(testCache, new File(binaryDirectory, "test_batch.bin"));
+        }
+        System.out.println(String.format("Packing (skipped for existing copies): %.1f s", (System.nanoTime() - start) / 1e9));
+
+        // Pixels and labels must match the tensor cache, which is decoded from the loose files
+        List<String> labels = trainCache.getLabels();
+        System.out.println("Identical to tensor cache: tar " + same(trainCache, ShardExampleSource.open(tarDirectory, ShardWriter.TRAIN_SPLIT, ALLOWED_FORMATS, IMAGE_HEIGHT, IMAGE_WIDTH, IMAGE_CHANNELS), comparedImages)
+                + ", zip " + same(trainCache, ShardExampleSource.open(zipDirectory, ShardWriter.TRAIN_SPLIT, ALLOWED_FORMATS, IMAGE_HEIGHT, IMAGE_WIDTH, IMAGE_CHANNELS), comparedImages)
+                + ", binary " + same(trainCache, CifarBinaryBatches.open(Arrays.asList(new File(binaryDirectory, "data_batch_1.bin")), labels), comparedImages));
+
+        System.out.println(String.format("%-14s %7d files %8.1f MB", "loose png", looseDataset.getIndex().size(), looseDataset.getIndex().getTotalBytes() / 1e6));
+        report("tar shards", tarDirectory);
+        report("zip shards", zipDirectory);
+        report("binary", binaryDirectory);
+
+        run("loose png", config, batches);
+        run("tar shards", config.withShards(tarDirectory.getPath()), batches);
+        run("zip shards", config.withShards(zipDirectory.getPath()), batches);
+        run("binary", config.withBinaryBatches(binaryDirectory.getPath()), batches);
+        run("tensor cache", config.withTensorCache(), batches);
+    }
+
+    private static void run(String name, CifarDatasetConfig config, int batches) {
+        long start = System.nanoTime();
+        CifarDataset cifarDataset = new CifarDataset(config);
+        long initialized = System.nanoTime();
+        DataSetIterator trainSet = cifarDataset.getTrainDataSetIterator();
+        long images = 0;
+        for (int batch = 0; batch < batches && trainSet.hasNext(); batch++)
+            images += trainSet.next().numExamples();
+        double seconds = (System.nanoTime() - initialized) / 1e9;
+        shutdown(cifarDataset);
+        System.out.println(String.format("%-14s init %8.1f ms, %6d images in %7.2f s, %8.0f images/s", name, (initialized - start) / 1e6, images, seconds, images / seconds));
+    }
+
+    private static void report(String name, File directory) {
+        File[] files = directory.listFiles();
+        long bytes = 0;
+        for (File file : files)
+            bytes += file.length();
+        System.out.println(String.format("%-14s %7d files %8.1f MB", name, files.length, bytes / 1e6));
+    }
+
+    private static boolean same(ExampleSource expected, ExampleSource actual, int count) throws Exception {
+        if (expected.getNumberOfExamples() != actual.getNumberOfExamples() || !expected.getLabels().equals(actual.getLabels()))
+            return false;
+        byte[] expectedPixels = new byte[expected.getExampleLength()];
+        byte[] actualPixels = new byte[actual.getExampleLength()];
+        for (int i = 0; i < Math.min(count, expected.getNumberOfExamples()); i++) {
+            expected.readPixels(i, expectedPixels, 0);
+            actual.readPixels(i, actualPixels, 0);
+            if (expected.getLabel(i) != actual.getLabel(i) || !Arrays.equals(expectedPixels, actualPixels))
+                return false;
+        }
+        return true;
+    }
+
+    private static void shutdown(CifarDataset cifarDataset) {
+        ((PrefetchingDataSetIterator) cifarDataset.getTrainDataSetIterator()).shutdown();
+        ((PrefetchingDataSetIterator) cifarDataset.getTestDataSetIterator()).shutdown();
+    }
+}
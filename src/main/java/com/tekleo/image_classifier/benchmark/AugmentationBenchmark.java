@@ -0,0 +1,87 @@
+package com.tekleo.image_classifier.benchmark;
+
+import com.tekleo.image_classifier.dataset.CifarDataset;
+import com.tekleo.image_classifier.dataset.CifarDatasetConfig;
+import com.tekleo.image_classifier.dataset.pipeline.AugmentationConfig;
+import com.tekleo.image_classifier.dataset.pipeline.PrefetchingDataSetIterator;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+
+/**
+ * Train pipeline throughput (tensor cache, prefetching workers) without augmentation and with every transform of {@link AugmentationConfig},
+ * then a check that augmented batches repeat exactly when the pipeline is built again and change from epoch to epoch
+ *
+ * Nothing is trained, the consumer only takes batches, so the numbers are the upper limit of what the pipeline can feed a network
+ *
+ * Arguments: [prefetch workers (default: available processors)] [epochs per variant (default: 3)]
+ */
+public class AugmentationBenchmark {
+    private static final int DEFAULT_EPOCHS = 3;
+    private static final int CROP_PADDING = 4;
+    private static final double JITTER = 0.1;
+
+    public static void main(String[] args) {
+        int workers = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int epochs = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_EPOCHS;
+
+        CifarDatasetConfig config = new CifarDatasetConfig().withTensorCache().withPrefetch(workers);
+        AugmentationConfig none = new AugmentationConfig();
+        AugmentationConfig all = none.withFlip(true).withCrop(CROP_PADDING).withColorJitter(JITTER, JITTER, JITTER);
+
+        // Warm up file cache and JIT, then measure every variant
+        run(config, epochs);
+        double baseline = run(config, epochs);
+        System.out.println(String.format("%-22s %9.0f images/s", "no augmentation", baseline));
+        report("flip", run(config.withAugmentation(none.withFlip(true)), epochs), baseline);
+        report("crop (padding " + CROP_PADDING + ")", run(config.withAugmentation(none.withCrop(CROP_PADDING)), epochs), baseline);
+        report("color jitter (" + JITTER + ")", run(config.withAugmentation(none.withColorJitter(JITTER, JITTER, JITTER)), epochs), baseline);
+        report("all", run(config.withAugmentation(all), epochs), baseline);
+
+        // Same epoch must give the same batch on a new pipeline, the next epoch must give another one
+        double[] first = firstBatchSums(config.withAugmentation(all));
+        double[] second = firstBatchSums(config.withAugmentation(all));
+        System.out.println(String.format("Repeatable: %s, epoch 0 and 1 differ: %s", first[0] == second[0] && first[1] == second[1], first[0] != first[1]));
+    }
+
+    /**
+     * @return images per second over all epochs
+     */
+    private static double run(CifarDatasetConfig config, int epochs) {
+        CifarDataset cifarDataset = new CifarDataset(config);
+        DataSetIterator trainSet = cifarDataset.getTrainDataSetIterator();
+        long images = 0;
+        long start = System.nanoTime();
+        for (int epoch = 0; epoch < epochs; epoch++) {
+            trainSet.reset();
+            while (trainSet.hasNext())
+                images += trainSet.next().numExamples();
+        }
+        double imagesPerSecond = images / ((System.nanoTime() - start) / 1e9);
+        shutdown(cifarDataset);
+        return imagesPerSecond;
+    }
+
+    /**
+     * @return sums of the features of the first batch of epoch 0 and epoch 1
+     */
+    private static double[] firstBatchSums(CifarDatasetConfig config) {
+        CifarDataset cifarDataset = new CifarDataset(config);
+        DataSetIterator trainSet = cifarDataset.getTrainDataSetIterator();
+        DataSet epoch0 = trainSet.next();
+        double sum0 = epoch0.getFeatures().sumNumber().doubleValue();
+        trainSet.reset();
+        double sum1 = trainSet.next().getFeatures().sumNumber().doubleValue();
+        shutdown(cifarDataset);
+        return new double[] {sum0, sum1};
+    }
+
+    private static void report(String name, double imagesPerSecond, double baseline) {
+        System.out.println(String.format("%-22s %9.0f images/s (%.1f%% of no augmentation, %+.2f us per image)",
+                name, imagesPerSecond, 100 * imagesPerSecond / baseline, 1e6 / imagesPerSecond - 1e6 / baseline));
+    }
+
+    private static void shutdown(CifarDataset cifarDataset) {
+        ((PrefetchingDataSetIterator) cifarDataset.getTrainDataSetIterator()).shutdown();
+        ((PrefetchingDataSetIterator) cifarDataset.getTestDataSetIterator()).shutdown();
+    }
+}
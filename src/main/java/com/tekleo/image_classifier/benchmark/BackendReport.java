@@ -0,0 +1,41 @@
+package com.tekleo.image_classifier.benchmark;
+
+import com.tekleo.image_classifier.neural_network.helpers.BackendSettings;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+/**
+ * Prints the active ND4J backend with its settings, then times a matrix multiplication for every thread count up to the requested one,
+ * to check that a deployment runs the intended native build and to pick OMP/BLAS thread counts for {@link com.tekleo.image_classifier.neural_network.config.TrainingConfig#withBackendThreads(int, int)}
+ *
+ * Arguments: [max threads (default: available processors)] [matrix size (default: 1024)]
+ */
+public class BackendReport {
+    private static final int WARMUP_RUNS = 3;
+    private static final int MEASURED_RUNS = 10;
+
+    public static void main(String[] args) {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int size = args.length > 1 ? Integer.parseInt(args[1]) : 1024;
+
+        System.out.println(BackendSettings.report());
+        if (!BackendSettings.getNativeVariant().equals("none") && !BackendSettings.getNativeVariant().equals(BackendSettings.getSupportedVariant()))
+            System.out.println("This CPU can run " + BackendSettings.getSupportedVariant() + ", a build with a matching Maven profile may be faster");
+
+        INDArray a = Nd4j.rand(size, size);
+        INDArray b = Nd4j.rand(size, size);
+        INDArray c = Nd4j.create(size, size);
+        for (int threads = 1; threads <= maxThreads; threads++) {
+            BackendSettings.setThreads(threads, threads);
+            for (int i = 0; i < WARMUP_RUNS; i++)
+                a.mmuli(b, c);
+
+            long start = System.nanoTime();
+            for (int i = 0; i < MEASURED_RUNS; i++)
+                a.mmuli(b, c);
+            double seconds = (System.nanoTime() - start) / 1e9 / MEASURED_RUNS;
+            System.out.println(String.format("%2d thread(s): %dx%d matrix multiplication %8.2f ms, %6.1f GFLOP/s",
+                    threads, size, size, seconds * 1e3, 2.0 * size * size * size / seconds / 1e9));
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.tekleo.image_classifier.benchmark;
+
+import com.tekleo.image_classifier.dataset.CifarDataset;
+import com.tekleo.image_classifier.dataset.CifarDatasetConfig;
+import com.tekleo.image_classifier.neural_network.CifarModel;
+import com.tekleo.image_classifier.neural_network.config.NetworkConfig;
+import com.tekleo.image_classifier.neural_network.config.TrainingConfig;
+import com.tekleo.image_classifier.neural_network.crossvalidation.CrossValidation;
+import com.tekleo.image_classifier.neural_network.crossvalidation.CrossValidationResult;
+
+/**
+ * Runs the same k-fold cross-validation twice, folds one after another and then concurrently, and compares wall-clock time
+ * Both runs read one shared tensor cache of the whole dataset, every fold trains on its first few batches only
+ *
+ * Arguments: [network config JSON file or name of a bundled config (default: gap-small)] [folds (default: 3)]
+ *            [training batches per fold (default: 4)] [concurrent folds (default: all cores, at least 2)]
+ */
+public class CrossValidationBenchmark {
+    private static final String DEFAULT_NETWORK_CONFIG = "gap-small";
+    private static final int DEFAULT_FOLDS = 3;
+    private static final int DEFAULT_BATCHES = 4;
+
+    public static void main(String[] args) throws Exception {
+        NetworkConfig networkConfig = CifarModel.loadNetworkConfig(args.length > 0 ? args[0] : DEFAULT_NETWORK_CONFIG);
+        int folds = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_FOLDS;
+        int batches = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_BATCHES;
+        int cores = Runtime.getRuntime().availableProcessors();
+        int concurrentFolds = args.length > 3 ? Integer.parseInt(args[3]) : Math.max(2, cores);
+
+        CifarDataset cifarDataset = new CifarDataset(new CifarDatasetConfig().withBatchSize(networkConfig.getBatchSize()));
+        TrainingConfig trainingConfig = new TrainingConfig().withNumberOfEpochs(1);
+
+        CrossValidationResult sequential = new CrossValidation(cifarDataset, trainingConfig.withCrossValidation(folds, 1).withBackendThreads(cores, cores), networkConfig).run(batches);
+        int threadsPerFold = Math.max(1, cores / concurrentFolds);
+        CrossValidationResult concurrent = new CrossValidation(cifarDataset, trainingConfig.withCrossValidation(folds, concurrentFolds).withBackendThreads(threadsPerFold, threadsPerFold), networkConfig).run(batches);
+
+        System.out.println(sequential.summary());
+        System.out.println(concurrent.summary());
+        System.out.println(String.format("Sequential folds %.1f s, %d concurrent folds %.1f s, speedup %.2fx on %d cores",
+                sequential.getWallClockMillis() / 1e3, concurrentFolds, concurrent.getWallClockMillis() / 1e3,
+                (double) sequential.getWallClockMillis() / concurrent.getWallClockMillis(), cores));
+    }
+}
@@ -0,0 +1,69 @@
+package com.tekleo.image_classifier.benchmark;
+
+import com.tekleo.image_classifier.dataset.CifarDataset;
+import com.tekleo.image_classifier.dataset.CifarDatasetConfig;
+import com.tekleo.image_classifier.neural_network.CifarModel;
+import com.tekleo.image_classifier.neural_network.config.NetworkConfig;
+import com.tekleo.image_classifier.neural_network.config.TrainingConfig;
+import com.tekleo.image_classifier.neural_network.distributed.DistributedTraining;
+import com.tekleo.image_classifier.neural_network.distributed.DistributedTrainingException;
+import com.tekleo.image_classifier.neural_network.distributed.DistributedTrainingResult;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Scaling report of multi-process distributed training, the same number of training batches is split between 1, 2, 4 and 8 worker processes
+ *
+ * For every number of workers it reports training throughput of all workers together, speedup and efficiency against one worker,
+ * test accuracy of the master parameters, and traffic of threshold encoded updates against plain float updates
+ * Native threads of the machine are divided between the workers, so on a machine with fewer cores than workers they compete for the same cores
+ * Every worker is a whole JVM with its own workspaces, a smaller batch size lowers the memory of each of them when 8 workers don't fit
+ *
+ * Arguments: [network config JSON file or name of a bundled config (default: gap-small)] [comma separated worker counts (default: 1,2,4,8)]
+ *            [training batches of all workers together (default: 64)] [update threshold (default: 1e-3)] [batch size (default: from the network config)]
+ */
+public class DistributedScalingBenchmark {
+    private static final String DEFAULT_NETWORK_CONFIG = "gap-small";
+    private static final String DEFAULT_WORKER_COUNTS = "1,2,4,8";
+    private static final int DEFAULT_BATCHES = 64;
+    private static final double DEFAULT_THRESHOLD = 1e-3;
+
+    public static void main(String[] args) throws Exception {
+        NetworkConfig networkConfig = CifarModel.loadNetworkConfig(args.length > 0 ? args[0] : DEFAULT_NETWORK_CONFIG);
+        String[] workerCounts = (args.length > 1 ? args[1] : DEFAULT_WORKER_COUNTS).split(",");
+        int batches = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_BATCHES;
+        double threshold = args.length > 3 ? Double.parseDouble(args[3]) : DEFAULT_THRESHOLD;
+        if (args.length > 4)
+            networkConfig = networkConfig.withBatchSize(Integer.parseInt(args[4]));
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        CifarDataset cifarDataset = new CifarDataset(new CifarDatasetConfig().withTensorCache().withBatchSize(networkConfig.getBatchSize()));
+        List<DistributedTrainingResult> results = new ArrayList<>();
+        List<String> failures = new ArrayList<>();
+        for (String workerCount : workerCounts) {
+            int workers = Integer.parseInt(workerCount.trim());
+            int threadsPerWorker = Math.max(1, cores / workers);
+            TrainingConfig trainingConfig = new TrainingConfig().withNumberOfEpochs(1).withDistributedTraining(workers, threshold).withBackendThreads(threadsPerWorker, threadsPerWorker);
+            try {
+                results.add(new DistributedTraining(cifarDataset, trainingConfig, networkConfig).run(batches));
+            } catch (DistributedTrainingException e) {
+                // Usually the machine runs out of memory for that many JVMs, smaller counts are still worth reporting
+                failures.add(String.format("%7d failed: %s", workers, e.getMessage()));
+            }
+        }
+        if (results.isEmpty())
+            throw new IllegalStateException("All runs failed: " + failures);
+
+        double baseline = results.get(0).getImagesPerSecond() / results.get(0).getWorkers();
+        System.out.println(String.format("Distributed training of %s, %d batches of %d split between the workers, %d cores", networkConfig.getName(), batches, networkConfig.getBatchSize(), cores));
+        System.out.println(String.format("%7s %9s %9s %11s %8s %10s %9s %8s %10s %9s %12s", "workers", "train s", "wall s", "images/s", "speedup", "efficiency", "accuracy", "density", "traffic MB", "dense MB", "compression"));
+        for (DistributedTrainingResult result : results) {
+            double speedup = baseline > 0 ? result.getImagesPerSecond() / baseline : 0;
+            System.out.println(String.format("%7d %9.1f %9.1f %11.1f %7.2fx %9.0f%% %9.4f %7.3f%% %10.2f %9.1f %11.0fx",
+                    result.getWorkers(), result.getTrainingMillis() / 1e3, result.getWallClockMillis() / 1e3, result.getImagesPerSecond(), speedup, 100 * speedup / result.getWorkers(),
+                    result.getAccuracy(), 100 * result.getMeanDensity(), result.getUpdateBytes() / 1e6, result.getDenseBytes() / 1e6, result.getCompressionRatio()));
+        }
+        failures.forEach(System.out::println);
+    }
+}
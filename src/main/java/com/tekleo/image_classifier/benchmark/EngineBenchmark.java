@@ -0,0 +1,143 @@
+package com.tekleo.image_classifier.benchmark;
+
+import com.tekleo.image_classifier.dataset.CifarDataset;
+import com.tekleo.image_classifier.dataset.CifarDatasetConfig;
+import com.tekleo.image_classifier.inference.engine.EngineExporter;
+import com.tekleo.image_classifier.inference.engine.EngineModel;
+import com.tekleo.image_classifier.inference.engine.EngineModelFile;
+import com.tekleo.image_classifier.inference.engine.EngineSession;
+import com.tekleo.image_classifier.neural_network.CifarModel;
+import com.tekleo.image_classifier.neural_network.evaluation.Evaluations;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Exports a saved network for the pure-Java engine and compares the engine with DL4J on the test split:
+ * maximum output difference and top-1 agreement, model load time, batch throughput and single image latency for 1..N threads,
+ * and bytes allocated by the calling thread per request, which should be 0 once the session is warmed up
+ *
+ * Arguments: [model file (default: CifarModel.PARAMETERS_FILEPATH, or CifarModel.NETWORK_FILEPATH if it is missing)]
+ *            [engine model file (default: CifarModel.ENGINE_FILEPATH)] [batch size (default: 64)] [max threads (default: available processors)]
+ */
+public class EngineBenchmark {
+    private static final int IMAGE_HEIGHT = 32;
+    private static final int IMAGE_WIDTH = 32;
+    private static final int IMAGE_CHANNELS = 3;
+    private static final int IMAGE_CLASSES = 10;
+    private static final int DEFAULT_BATCH_SIZE = 64;
+    private static final int WARMUP_ROUNDS = 20;
+    private static final int MEASURED_ROUNDS = 50;
+    private static final int LATENCY_SAMPLES = 500;
+
+    public static void main(String[] args) throws Exception {
+        File modelFile = new File(args.length > 0 ? args[0] : new File(CifarModel.PARAMETERS_FILEPATH).isFile() ? CifarModel.PARAMETERS_FILEPATH : CifarModel.NETWORK_FILEPATH);
+        File engineFile = new File(args.length > 1 ? args[1] : CifarModel.ENGINE_FILEPATH);
+        int batchSize = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_BATCH_SIZE;
+        int maxThreads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+
+        CifarDataset cifarDataset = new CifarDataset(new CifarDatasetConfig().withTensorCache());
+        DataSetIterator testSet = cifarDataset.createTestDataSetIterator(batchSize);
+
+        MultiLayerNetwork network = CifarModel.restore(modelFile);
+        EngineModelFile.write(engineFile, EngineExporter.export(network, IMAGE_CHANNELS, IMAGE_HEIGHT, IMAGE_WIDTH, Evaluations.labels(testSet, IMAGE_CLASSES)));
+        long loadStart = System.nanoTime();
+        EngineModel model = EngineModelFile.read(engineFile);
+        double loadMillis = (System.nanoTime() - loadStart) / 1e6;
+
+        System.out.println("Model:              " + modelFile + " (" + modelFile.length() / 1000 + " KB)");
+        System.out.println(String.format("Engine model:       %s (%d KB), loaded in %.1f ms", engineFile, engineFile.length() / 1000, loadMillis));
+
+        // Accuracy against DL4J on the whole test split
+        double maxDifference = 0;
+        long agreements = 0;
+        long examples = 0;
+        float[] batchFeatures = null;
+        try (EngineSession session = model.newSession(batchSize, 1)) {
+            while (testSet.hasNext()) {
+                DataSet dataSet = testSet.next();
+                int n = dataSet.numExamples();
+                float[] features = dataSet.getFeatures().dup('c').data().asFloat();
+                INDArray expected = network.output(dataSet.getFeatures(), false);
+                float[] actual = session.run(features, n);
+                for (int example = 0; example < n; example++) {
+                    int expectedBest = 0;
+                    int actualBest = 0;
+                    for (int c = 0; c < IMAGE_CLASSES; c++) {
+                        maxDifference = Math.max(maxDifference, Math.abs(expected.getFloat(example, c) - actual[example * IMAGE_CLASSES + c]));
+                        if (expected.getFloat(example, c) > expected.getFloat(example, expectedBest))
+                            expectedBest = c;
+                        if (actual[example * IMAGE_CLASSES + c] > actual[example * IMAGE_CLASSES + actualBest])
+                            actualBest = c;
+                    }
+                    if (expectedBest == actualBest)
+                        agreements++;
+                }
+                examples += n;
+                if (batchFeatures == null && n == batchSize)
+                    batchFeatures = features;
+            }
+        }
+        System.out.println(String.format("Against DL4J:       max output difference %.2e, top-1 agreement %.4f over %d images", maxDifference, (double) agreements / examples, examples));
+
+        // DL4J reference speed on the same batch
+        INDArray batchArray = Nd4j.create(batchFeatures, new int[] {batchSize, IMAGE_CHANNELS, IMAGE_HEIGHT, IMAGE_WIDTH}, 'c');
+        for (int i = 0; i < WARMUP_ROUNDS; i++)
+            network.output(batchArray, false);
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ROUNDS; i++)
+            network.output(batchArray, false);
+        System.out.println(String.format("DL4J batch %d:      %.1f images/s", batchSize, (double) MEASURED_ROUNDS * batchSize / ((System.nanoTime() - start) / 1e9)));
+
+        for (int threads : threadCounts(maxThreads)) {
+            try (EngineSession session = model.newSession(batchSize, threads)) {
+                for (int i = 0; i < WARMUP_ROUNDS; i++)
+                    session.run(batchFeatures, batchSize);
+                start = System.nanoTime();
+                for (int i = 0; i < MEASURED_ROUNDS; i++)
+                    session.run(batchFeatures, batchSize);
+                double imagesPerSecond = (double) MEASURED_ROUNDS * batchSize / ((System.nanoTime() - start) / 1e9);
+
+                float[] image = new float[model.getInputLength()];
+                for (int i = 0; i < LATENCY_SAMPLES; i++) {
+                    System.arraycopy(batchFeatures, (i % batchSize) * image.length, image, 0, image.length);
+                    session.classify(image);
+                }
+                long allocatedBefore = allocatedBytes();
+                start = System.nanoTime();
+                for (int i = 0; i < LATENCY_SAMPLES; i++)
+                    session.classify(image);
+                double latencyMillis = (System.nanoTime() - start) / 1e6 / LATENCY_SAMPLES;
+                double allocatedPerRequest = (double) (allocatedBytes() - allocatedBefore) / LATENCY_SAMPLES;
+
+                System.out.println(String.format("Engine %d thread(s): batch %d %.1f images/s, single image %.2f ms, %.1f bytes allocated per request",
+                        threads, batchSize, imagesPerSecond, latencyMillis, allocatedPerRequest));
+            }
+        }
+    }
+
+    // Static helpers
+    //------------------------------------------------------------------------------------------------------------------
+    /**
+     * @return powers of two below the maximum, then the maximum itself
+     */
+    private static List<Integer> threadCounts(int maxThreads) {
+        List<Integer> threadCounts = new ArrayList<>();
+        for (int threads = 1; threads < maxThreads; threads *= 2)
+            threadCounts.add(threads);
+        threadCounts.add(maxThreads);
+        return threadCounts;
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    //------------------------------------------------------------------------------------------------------------------
+}
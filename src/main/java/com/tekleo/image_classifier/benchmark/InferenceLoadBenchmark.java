@@ -0,0 +1,91 @@
+package com.tekleo.image_classifier.benchmark;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load generator for {@link com.tekleo.image_classifier.inference.InferenceServer}
+ * Several client threads post images in a loop for a fixed time, then server statistics (p50/p99 latency, throughput, batch size) are printed
+ *
+ * Arguments: [server url (default: http://localhost:8080)] [image directory (default: src/main/resources/cifar/cat)] [clients (default: 32)] [seconds (default: 30)]
+ */
+public class InferenceLoadBenchmark {
+    private static final String DEFAULT_SERVER_URL = "http://localhost:8080";
+    private static final String DEFAULT_IMAGE_DIRECTORY = "src/main/resources/cifar/cat";
+    private static final int DEFAULT_CLIENTS = 32;
+    private static final int DEFAULT_SECONDS = 30;
+    private static final int MAX_IMAGES = 1000;
+
+    public static void main(String[] args) throws Exception {
+        String serverUrl = args.length > 0 ? args[0] : DEFAULT_SERVER_URL;
+        File imageDirectory = new File(args.length > 1 ? args[1] : DEFAULT_IMAGE_DIRECTORY);
+        int clients = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_CLIENTS;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_SECONDS;
+
+        List<byte[]> images = new ArrayList<>();
+        File[] files = imageDirectory.listFiles(File::isFile);
+        if (files == null || files.length == 0)
+            throw new IllegalArgumentException(imageDirectory.getPath() + " has no images");
+        for (int i = 0; i < files.length && i < MAX_IMAGES; i++)
+            images.add(Files.readAllBytes(files[i].toPath()));
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        AtomicLong succeeded = new AtomicLong();
+        AtomicLong failed = new AtomicLong();
+        ExecutorService executorService = Executors.newFixedThreadPool(clients);
+        for (int c = 0; c < clients; c++) {
+            int client = c;
+            executorService.submit(() -> {
+                for (int i = client; System.nanoTime() < deadline; i += clients) {
+                    try {
+                        post(serverUrl + "/classify", images.get(i % images.size()));
+                        succeeded.incrementAndGet();
+                    } catch (Exception e) {
+                        failed.incrementAndGet();
+                    }
+                }
+            });
+        }
+        executorService.shutdown();
+        executorService.awaitTermination(seconds + 60, TimeUnit.SECONDS);
+
+        System.out.println(String.format("Client side: %d succeeded, %d failed, %.1f req/s", succeeded.get(), failed.get(), succeeded.get() / (double) seconds));
+        System.out.println("Server side: " + get(serverUrl + "/stats"));
+    }
+
+    private static String post(String url, byte[] body) throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setFixedLengthStreamingMode(body.length);
+        try (OutputStream outputStream = connection.getOutputStream()) {
+            outputStream.write(body);
+        }
+        return read(connection);
+    }
+
+    private static String get(String url) throws Exception {
+        return read((HttpURLConnection) new URL(url).openConnection());
+    }
+
+    private static String read(HttpURLConnection connection) throws Exception {
+        if (connection.getResponseCode() != 200)
+            throw new IllegalStateException("HTTP " + connection.getResponseCode());
+        try (InputStream inputStream = connection.getInputStream()) {
+            return IOUtils.toString(inputStream, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.tekleo.image_classifier.benchmark;
+
+import com.tekleo.image_classifier.dataset.CifarDataset;
+import com.tekleo.image_classifier.dataset.CifarDatasetConfig;
+import com.tekleo.image_classifier.neural_network.CifarModel;
+import com.tekleo.image_classifier.neural_network.config.TrainingConfig;
+import org.deeplearning4j.eval.Evaluation;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+
+import java.io.IOException;
+
+/**
+ * Compares wall-clock training time and test accuracy of single-replica training against data-parallel training
+ * Both runs use the same data, the same number of epochs and start from the same seed
+ *
+ * Arguments: [workers (default: all cores)] [epochs (default: 2)] [averaging frequency (default: 3)]
+ */
+public class ParallelTrainingBenchmark {
+    private static final int DEFAULT_EPOCHS = 2;
+    private static final int DEFAULT_AVERAGING_FREQUENCY = 3;
+    private static final int PREFETCH_WORKERS = 2;
+
+    public static void main(String[] args) throws IOException {
+        int workers = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int epochs = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_EPOCHS;
+        int averagingFrequency = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_AVERAGING_FREQUENCY;
+
+        // Parallel training keeps several batches per worker in flight, so the pipeline must not reuse their buffers too early
+        CifarDataset cifarDataset = new CifarDataset(new CifarDatasetConfig().withTensorCache().withPrefetch(PREFETCH_WORKERS).withRetainedBatches(CifarModel.parallelRetainedBatches(workers)));
+        TrainingConfig trainingConfig = new TrainingConfig().withNumberOfEpochs(epochs);
+
+        Result single = run(cifarDataset, trainingConfig);
+        Result parallel = run(cifarDataset, trainingConfig.withParallelTraining(workers, averagingFrequency));
+
+        System.out.println(String.format("Single replica:        %8.1f s, test accuracy %.4f", single.seconds, single.accuracy));
+        System.out.println(String.format("%2d workers (avg/%d):   %8.1f s, test accuracy %.4f", workers, averagingFrequency, parallel.seconds, parallel.accuracy));
+        System.out.println(String.format("Speedup: %.2fx, accuracy difference: %+.4f", single.seconds / parallel.seconds, parallel.accuracy - single.accuracy));
+    }
+
+    private static Result run(CifarDataset cifarDataset, TrainingConfig trainingConfig) throws IOException {
+        DataSetIterator trainSet = cifarDataset.getTrainDataSetIterator();
+        DataSetIterator testSet = cifarDataset.getTestDataSetIterator();
+        trainSet.reset();
+        testSet.reset();
+
+        CifarModel cifarModel = new CifarModel(trainSet, testSet, trainingConfig);
+        long start = System.nanoTime();
+        cifarModel.train();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        testSet.reset();
+        Evaluation evaluation = cifarModel.getNetwork().evaluate(testSet);
+        return new Result(seconds, evaluation.accuracy());
+    }
+
+    private static class Result {
+        private final double seconds;
+        private final double accuracy;
+
+        private Result(double seconds, double accuracy) {
+            this.seconds = seconds;
+            this.accuracy = accuracy;
+        }
+    }
+}
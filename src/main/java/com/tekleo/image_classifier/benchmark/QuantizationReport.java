@@ -0,0 +1,116 @@
+package com.tekleo.image_classifier.benchmark;
+
+import com.tekleo.image_classifier.dataset.CifarDataset;
+import com.tekleo.image_classifier.dataset.CifarDatasetConfig;
+import com.tekleo.image_classifier.inference.quantized.NetworkQuantizer;
+import com.tekleo.image_classifier.inference.quantized.QuantizedModelFile;
+import com.tekleo.image_classifier.inference.quantized.QuantizedNetwork;
+import com.tekleo.image_classifier.neural_network.CifarModel;
+import org.deeplearning4j.eval.Evaluation;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+import org.nd4j.linalg.ops.transforms.Transforms;
+
+import java.io.File;
+
+/**
+ * Quantizes a saved network to int8, writes the quantized model file, and reports what it costs and gives on the test split:
+ * parameter memory and file sizes, test accuracy of both versions, how often they agree, and CPU throughput of both
+ *
+ * The quantized file is read back before evaluation, so the report covers the serialized model
+ *
+ * Arguments: [model file (default: CifarModel.PARAMETERS_FILEPATH, or CifarModel.NETWORK_FILEPATH if it is missing)]
+ *            [quantized model file (default: CifarModel.QUANTIZED_FILEPATH)] [batch size (default: 64)]
+ */
+public class QuantizationReport {
+    private static final int IMAGE_HEIGHT = 32;
+    private static final int IMAGE_WIDTH = 32;
+    private static final int IMAGE_CHANNELS = 3;
+    private static final int DEFAULT_BATCH_SIZE = 64;
+    private static final int LATENCY_SAMPLES = 200;
+
+    public static void main(String[] args) throws Exception {
+        File modelFile = new File(args.length > 0 ? args[0] : new File(CifarModel.PARAMETERS_FILEPATH).isFile() ? CifarModel.PARAMETERS_FILEPATH : CifarModel.NETWORK_FILEPATH);
+        File quantizedFile = new File(args.length > 1 ? args[1] : CifarModel.QUANTIZED_FILEPATH);
+        int batchSize = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_BATCH_SIZE;
+
+        MultiLayerNetwork network = CifarModel.restore(modelFile);
+        QuantizedModelFile.write(quantizedFile, NetworkQuantizer.quantize(network, IMAGE_CHANNELS, IMAGE_HEIGHT, IMAGE_WIDTH));
+        QuantizedNetwork quantizedNetwork = QuantizedModelFile.read(quantizedFile);
+
+        CifarDataset cifarDataset = new CifarDataset(new CifarDatasetConfig().withTensorCache());
+        DataSetIterator testSet = cifarDataset.createTestDataSetIterator(batchSize);
+
+        Evaluation floatEvaluation = new Evaluation(testSet.getLabels());
+        Evaluation quantizedEvaluation = new Evaluation(testSet.getLabels());
+        long agreements = 0;
+        long examples = 0;
+        double maxProbabilityDifference = 0;
+        long floatNanos = 0;
+        long quantizedNanos = 0;
+
+        while (testSet.hasNext()) {
+            DataSet dataSet = testSet.next();
+            INDArray features = dataSet.getFeatures();
+
+            long start = System.nanoTime();
+            INDArray floatOutput = network.output(features, false);
+            floatNanos += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            INDArray quantizedOutput = quantizedNetwork.output(features);
+            quantizedNanos += System.nanoTime() - start;
+
+            floatEvaluation.eval(dataSet.getLabels(), floatOutput);
+            quantizedEvaluation.eval(dataSet.getLabels(), quantizedOutput);
+            INDArray floatPredictions = Nd4j.argMax(floatOutput, 1);
+            INDArray quantizedPredictions = Nd4j.argMax(quantizedOutput, 1);
+            for (int i = 0; i < dataSet.numExamples(); i++)
+                if (floatPredictions.getInt(i) == quantizedPredictions.getInt(i))
+                    agreements++;
+            maxProbabilityDifference = Math.max(maxProbabilityDifference, Transforms.abs(floatOutput.sub(quantizedOutput)).maxNumber().doubleValue());
+            examples += dataSet.numExamples();
+        }
+
+        testSet.reset();
+        INDArray singleImages = testSet.next().getFeatures();
+        double[] latencies = singleImageLatencies(network, quantizedNetwork, singleImages);
+
+        long floatBytes = 4L * network.numParams();
+        System.out.println("Model:              " + modelFile + " (" + modelFile.length() / 1000 + " KB)");
+        System.out.println("Quantized model:    " + quantizedFile + " (" + quantizedFile.length() / 1000 + " KB)");
+        System.out.println(String.format("Parameter memory:   float %.1f MB, int8 %.1f MB (%.2fx smaller)", floatBytes / 1e6, quantizedNetwork.getParameterBytes() / 1e6, (double) floatBytes / quantizedNetwork.getParameterBytes()));
+        System.out.println(String.format("Test accuracy:      float %.4f, int8 %.4f (%+.4f), top-1 agreement %.4f, max probability difference %.4f",
+                floatEvaluation.accuracy(), quantizedEvaluation.accuracy(), quantizedEvaluation.accuracy() - floatEvaluation.accuracy(), (double) agreements / examples, maxProbabilityDifference));
+        System.out.println(String.format("Batch %d:           float %.1f images/s, int8 %.1f images/s", batchSize, examples / (floatNanos / 1e9), examples / (quantizedNanos / 1e9)));
+        System.out.println(String.format("Single image:       float %.2f ms, int8 %.2f ms", latencies[0], latencies[1]));
+    }
+
+    // Static helpers
+    //------------------------------------------------------------------------------------------------------------------
+    /**
+     * @return average milliseconds per single image request of the float network and of the quantized network
+     */
+    private static double[] singleImageLatencies(MultiLayerNetwork network, QuantizedNetwork quantizedNetwork, INDArray images) {
+        long floatNanos = 0;
+        long quantizedNanos = 0;
+        int samples = Math.min(LATENCY_SAMPLES, images.size(0));
+        for (int i = 0; i < samples; i++) {
+            INDArray image = images.get(NDArrayIndex.interval(i, i + 1), NDArrayIndex.all(), NDArrayIndex.all(), NDArrayIndex.all()).dup();
+
+            long start = System.nanoTime();
+            network.output(image, false);
+            floatNanos += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            quantizedNetwork.output(image);
+            quantizedNanos += System.nanoTime() - start;
+        }
+        return new double[] {floatNanos / 1e6 / samples, quantizedNanos / 1e6 / samples};
+    }
+    //------------------------------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,174 @@
+package com.tekleo.image_classifier.benchmark;
+
+import com.tekleo.image_classifier.inference.embedding.EmbeddingStore;
+import com.tekleo.image_classifier.inference.embedding.EmbeddingStoreWriter;
+import com.tekleo.image_classifier.inference.embedding.HnswIndex;
+import com.tekleo.image_classifier.inference.embedding.Neighbor;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Recall and latency of {@link HnswIndex} against exact brute-force search over the same {@link EmbeddingStore}
+ *
+ * Queries are stored vectors with a little noise added, like near-duplicates of indexed images, so the exact answer isn't just the vector itself
+ * For every ef it reports recall@k (share of the exact k nearest the index found), mean, p50 and p99 query latency, and speedup over brute force
+ * Build time, graph size and a save / read round trip of the graph are reported too
+ *
+ * Without a store file a synthetic store is generated: unit vectors scattered around random cluster centers, written to a temporary file,
+ * so the index can be tried on millions of vectors without extracting that many images
+ *
+ * Arguments: [store file written by {@link com.tekleo.image_classifier.inference.embedding.EmbeddingExtractor}, or number of synthetic vectors (default: 100000)]
+ *            [queries (default: 500)] [k (default: 10)] [M (default: 16)] [ef construction (default: 200)] [comma separated ef values (default: 16,32,64,128,256)]
+ */
+public class SimilarityBenchmark {
+    private static final String DEFAULT_STORE = "100000";
+    private static final int DEFAULT_QUERIES = 500;
+    private static final int DEFAULT_K = 10;
+    private static final String DEFAULT_EF_VALUES = "16,32,64,128,256";
+    private static final int SYNTHETIC_DIMENSION = 128;
+    private static final int SYNTHETIC_CLUSTERS = 1000;
+    private static final double SYNTHETIC_SPREAD = 0.5;
+    // Length of the noise added to a stored vector to make a query
+    private static final double QUERY_NOISE = 0.1;
+    private static final int WARMUP_QUERIES = 100;
+    private static final long SEED = 42;
+
+    public static void main(String[] args) throws Exception {
+        String storeArgument = args.length > 0 ? args[0] : DEFAULT_STORE;
+        int queries = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_QUERIES;
+        int k = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_K;
+        int m = args.length > 3 ? Integer.parseInt(args[3]) : HnswIndex.DEFAULT_M;
+        int efConstruction = args.length > 4 ? Integer.parseInt(args[4]) : HnswIndex.DEFAULT_EF_CONSTRUCTION;
+        String[] efValues = (args.length > 5 ? args[5] : DEFAULT_EF_VALUES).split(",");
+
+        File storeFile = new File(storeArgument);
+        boolean synthetic = !storeFile.isFile();
+        if (synthetic) {
+            storeFile = File.createTempFile("synthetic-embeddings", ".bin");
+            writeSyntheticStore(storeFile, Integer.parseInt(storeArgument));
+        }
+
+        File indexFile = File.createTempFile("hnsw-index", ".bin");
+        try (EmbeddingStore store = EmbeddingStore.open(storeFile)) {
+            System.out.println(String.format("%s store of %d vectors of %d dimensions (%.1f MB), %d queries, k %d",
+                    synthetic ? "Synthetic" : storeFile.getPath(), store.size(), store.getDimension(), 4.0 * store.size() * store.getDimension() / 1e6, queries, k));
+
+            long buildStart = System.nanoTime();
+            HnswIndex index = HnswIndex.build(store, m, efConstruction, SEED);
+            double buildSeconds = (System.nanoTime() - buildStart) / 1e9;
+            System.out.println(String.format("Built index with M %d, ef construction %d in %.1f s (%.0f vectors/s), %d levels, graph %.1f MB",
+                    m, efConstruction, buildSeconds, store.size() / buildSeconds, index.getMaxLevel() + 1, index.getGraphBytes() / 1e6));
+
+            long writeStart = System.nanoTime();
+            index.write(indexFile);
+            double writeSeconds = (System.nanoTime() - writeStart) / 1e9;
+            long readStart = System.nanoTime();
+            HnswIndex readIndex = HnswIndex.read(indexFile, store);
+            double readSeconds = (System.nanoTime() - readStart) / 1e9;
+            float[][] queryVectors = queries(store, queries);
+            boolean sameResults = readIndex.search(queryVectors[0], k).equals(index.search(queryVectors[0], k));
+            System.out.println(String.format("Saved graph %.1f MB in %.2f s, read back in %.2f s, same results: %s", indexFile.length() / 1e6, writeSeconds, readSeconds, sameResults));
+
+            // JIT warm up of both searches
+            for (int i = 0; i < Math.min(WARMUP_QUERIES, queries); i++) {
+                store.search(queryVectors[i], k);
+                index.search(queryVectors[i], k, Integer.parseInt(efValues[efValues.length - 1].trim()));
+            }
+
+            long[] exactNanos = new long[queries];
+            List<Set<Integer>> exact = new ArrayList<>();
+            for (int i = 0; i < queries; i++) {
+                long start = System.nanoTime();
+                List<Neighbor> neighbors = store.search(queryVectors[i], k);
+                exactNanos[i] = System.nanoTime() - start;
+                exact.add(indices(neighbors));
+            }
+
+            System.out.println(String.format("%8s %10s %10s %10s %10s %9s", "ef", "recall@" + k, "mean us", "p50 us", "p99 us", "speedup"));
+            System.out.println(String.format("%8s %10.4f %10.1f %10.1f %10.1f %8.1fx", "exact", 1.0, mean(exactNanos) / 1e3, percentile(exactNanos, 50) / 1e3, percentile(exactNanos, 99) / 1e3, 1.0));
+            for (String efValue : efValues) {
+                int ef = Integer.parseInt(efValue.trim());
+                long[] nanos = new long[queries];
+                double recall = 0;
+                for (int i = 0; i < queries; i++) {
+                    long start = System.nanoTime();
+                    List<Neighbor> neighbors = index.search(queryVectors[i], k, ef);
+                    nanos[i] = System.nanoTime() - start;
+                    Set<Integer> found = indices(neighbors);
+                    found.retainAll(exact.get(i));
+                    recall += (double) found.size() / exact.get(i).size();
+                }
+                System.out.println(String.format("%8d %10.4f %10.1f %10.1f %10.1f %8.1fx", ef, recall / queries, mean(nanos) / 1e3, percentile(nanos, 50) / 1e3, percentile(nanos, 99) / 1e3,
+                        percentile(exactNanos, 50) / percentile(nanos, 50)));
+            }
+        } finally {
+            indexFile.delete();
+            if (synthetic)
+                storeFile.delete();
+        }
+    }
+
+    private static void writeSyntheticStore(File file, int size) throws Exception {
+        Random random = new Random(SEED);
+        float[][] centers = new float[SYNTHETIC_CLUSTERS][];
+        for (int c = 0; c < centers.length; c++)
+            centers[c] = EmbeddingStore.normalize(gaussian(random, SYNTHETIC_DIMENSION, 1));
+
+        double noise = SYNTHETIC_SPREAD / Math.sqrt(SYNTHETIC_DIMENSION);
+        float[] vector = new float[SYNTHETIC_DIMENSION];
+        try (EmbeddingStoreWriter writer = new EmbeddingStoreWriter(file, SYNTHETIC_DIMENSION)) {
+            for (int i = 0; i < size; i++) {
+                float[] center = centers[random.nextInt(centers.length)];
+                for (int d = 0; d < vector.length; d++)
+                    vector[d] = (float) (center[d] + random.nextGaussian() * noise);
+                writer.add(vector, 0, "synthetic/" + i);
+            }
+        }
+    }
+
+    private static float[][] queries(EmbeddingStore store, int queries) {
+        Random random = new Random(SEED + 1);
+        double noise = QUERY_NOISE / Math.sqrt(store.getDimension());
+        float[][] queryVectors = new float[queries][store.getDimension()];
+        for (int i = 0; i < queries; i++) {
+            store.get(random.nextInt(store.size()), queryVectors[i]);
+            for (int d = 0; d < store.getDimension(); d++)
+                queryVectors[i][d] += random.nextGaussian() * noise;
+            queryVectors[i] = EmbeddingStore.normalize(queryVectors[i]);
+        }
+        return queryVectors;
+    }
+
+    private static float[] gaussian(Random random, int dimension, double deviation) {
+        float[] vector = new float[dimension];
+        for (int d = 0; d < dimension; d++)
+            vector[d] = (float) (random.nextGaussian() * deviation);
+        return vector;
+    }
+
+    private static Set<Integer> indices(List<Neighbor> neighbors) {
+        Set<Integer> indices = new HashSet<>();
+        for (Neighbor neighbor : neighbors)
+            indices.add(neighbor.getIndex());
+        return indices;
+    }
+
+    private static double mean(long[] values) {
+        double sum = 0;
+        for (long value : values)
+            sum += value;
+        return values.length > 0 ? sum / values.length : 0;
+    }
+
+    private static double percentile(long[] values, int percentile) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted.length > 0 ? sorted[Math.min(sorted.length - 1, (int) Math.ceil(percentile / 100.0 * sorted.length) - 1)] : 0;
+    }
+}
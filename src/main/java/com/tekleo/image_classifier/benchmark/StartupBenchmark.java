@@ -0,0 +1,43 @@
+package com.tekleo.image_classifier.benchmark;
+
+import com.tekleo.image_classifier.dataset.CifarDataset;
+import com.tekleo.image_classifier.dataset.CifarDatasetConfig;
+import org.nd4j.linalg.dataset.DataSet;
+
+/**
+ * Measures time-to-first-batch of {@link CifarDataset} for different startup paths:
+ *  FIT - record readers with the scaler fitted over both iterators at startup (original behaviour)
+ *  FIXED RANGE - record readers with the scaler on the known 8 bit range, no fitting
+ *  TENSOR CACHE - memory-mapped tensor cache with scaling fused into uint8 conversion (first run builds the cache, it is reported separately)
+ *
+ * Every variant is run a few times, the first run of each is a warm up for file system and JIT
+ */
+public class StartupBenchmark {
+    private static final int RUNS_PER_VARIANT = 3;
+
+    public static void main(String[] args) {
+        CifarDatasetConfig defaultConfig = new CifarDatasetConfig();
+
+        // Make sure the cache exists, so the cache variant measures reuse and not the build
+        long cacheBuildStart = System.nanoTime();
+        new CifarDataset(defaultConfig.withTensorCache());
+        System.out.println(String.format("Tensor cache build/validate: %8.1f ms", (System.nanoTime() - cacheBuildStart) / 1e6));
+
+        run("FIT", defaultConfig.withScalerFit(true));
+        run("FIXED RANGE", defaultConfig);
+        run("TENSOR CACHE", defaultConfig.withTensorCache());
+    }
+
+    private static void run(String name, CifarDatasetConfig config) {
+        for (int i = 0; i < RUNS_PER_VARIANT; i++) {
+            long start = System.nanoTime();
+            CifarDataset cifarDataset = new CifarDataset(config);
+            long initialized = System.nanoTime();
+            DataSet firstBatch = cifarDataset.getTrainDataSetIterator().next();
+            long firstBatchReady = System.nanoTime();
+
+            System.out.println(String.format("%-12s run %d: init %8.1f ms, first batch %8.1f ms, time-to-first-batch %8.1f ms (%d examples)",
+                    name, i, (initialized - start) / 1e6, (firstBatchReady - initialized) / 1e6, (firstBatchReady - start) / 1e6, firstBatch.numExamples()));
+        }
+    }
+}
@@ -1,27 +1,40 @@
 package com.tekleo.image_classifier.dataset;
 
-import org.datavec.api.io.filters.BalancedPathFilter;
+import com.tekleo.image_classifier.dataset.archive.CifarBinaryBatches;
+import com.tekleo.image_classifier.dataset.archive.ShardExampleSource;
+import com.tekleo.image_classifier.dataset.archive.ShardWriter;
+import com.tekleo.image_classifier.dataset.cache.TensorCache;
+import com.tekleo.image_classifier.dataset.cache.TensorCacheDataSetIterator;
+import com.tekleo.image_classifier.dataset.cache.TensorCacheFile;
+import com.tekleo.image_classifier.dataset.index.DatasetIndex;
+import com.tekleo.image_classifier.dataset.index.DirectoryScanner;
+import com.tekleo.image_classifier.dataset.index.IndexEntry;
+import com.tekleo.image_classifier.dataset.index.IndexSplit;
+import com.tekleo.image_classifier.dataset.pipeline.ExampleSource;
+import com.tekleo.image_classifier.dataset.pipeline.ImageAugmenter;
+import com.tekleo.image_classifier.dataset.pipeline.ImageFileExampleSource;
+import com.tekleo.image_classifier.dataset.pipeline.PrefetchingDataSetIterator;
 import org.datavec.api.io.labels.ParentPathLabelGenerator;
-import org.datavec.api.split.FileSplit;
 import org.datavec.api.split.InputSplit;
 import org.datavec.image.recordreader.ImageRecordReader;
-import org.datavec.image.transform.FlipImageTransform;
-import org.datavec.image.transform.ImageTransform;
-import org.datavec.image.transform.MultiImageTransform;
 import org.deeplearning4j.datasets.datavec.RecordReaderDataSetIterator;
 import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
-import org.nd4j.linalg.dataset.api.iterator.KFoldIterator;
 import org.nd4j.linalg.dataset.api.preprocessor.ImagePreProcessingScaler;
 
 import java.io.File;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
-import java.util.Random;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * An easy to use image data pipeline that reads all images from resource folder and prepares them for machine learning
  * Some image/setup properties are pre-defined as static fields TODO move them into some sort of external config file
+ * Runtime options (like the binary tensor cache, prefetching on worker threads or augmentation of train images) are given in {@link CifarDatasetConfig}
+ * Images are listed through a persistent {@link DatasetIndex}, so a restart only looks into directories that changed, and the train/test split is stratified by label
+ * Images can also come packed, from CIFAR-10 binary batches or tar/zip shards, then there is no image directory and no index, and the split is the one of the packed files
  *
  * @author Leo Ertuna
  * @since 01.04.2018 00:57
@@ -35,70 +48,138 @@ public class CifarDataset {
     private static final String RESOURCE_DIR_NAME = "cifar";
     private static final String[] ALLOWED_FORMATS = {"png"};
     private static final int TRAIN_SPLIT_PERCENTAGE = 80;
-    private static final int TEST_SPLIT_PERCENTAGE = 20;
-    private static final int TRAIN_SPLIT_INDEX = 0;
-    private static final int TEST_SPLIT_INDEX = 1;
-    private static final int BATCH_SIZE = 240;
     private static final int LABEL_INDEX = 1;
     private static final double NORM_MIN = 0;
     private static final double NORM_MAX = 1;
+    private static final String TRAIN_CACHE_NAME = "train";
+    private static final String TEST_CACHE_NAME = "test";
+    private static final String VALIDATION_CACHE_NAME = "validation";
+    private static final String ALL_CACHE_NAME = "all";
+
+    // Options
+    private CifarDatasetConfig config;
 
     // Internal components of image data pipeline
-    private Random randomNumbersGenerator;
     private URL resourceDirectoryURL;
     private URI resourceDirectoryURI;
     private File resourceDirectoryFile;
-    private FileSplit filesInResourceDirectoryFileSplit;
     private ParentPathLabelGenerator labelGenerator;
-    private BalancedPathFilter pathFilter;
-    private InputSplit[] filesInResourceDirectoryInputSplit;
+    private DatasetIndex index;
+    private IndexSplit indexSplit;
     private InputSplit trainDataInputSplit;
     private InputSplit testDataInputSplit;
     private ImageRecordReader trainDataImageRecordReader;
     private ImageRecordReader testDataImageRecordReader;
-    private RecordReaderDataSetIterator trainDataSetIterator;
-    private RecordReaderDataSetIterator testDataSetIterator;
+    private TensorCacheFile trainTensorCacheFile;
+    private TensorCacheFile testTensorCacheFile;
+    private TensorCacheFile validationTensorCacheFile;
+    private TensorCacheFile allTensorCacheFile;
+    private Map<String, Integer> allTensorCachePositions;
+    private DataSetIterator trainDataSetIterator;
+    private DataSetIterator testDataSetIterator;
+    private DataSetIterator validationDataSetIterator;
     private ImagePreProcessingScaler imagePreProcessingScaler;
 
     public CifarDataset() {
+        this(new CifarDatasetConfig());
+    }
+
+    public CifarDataset(CifarDatasetConfig config) {
+        this.config = config;
         this.init();
     }
 
     private void init() {
         try {
-            // Init random numbers generator for splitting between train/test
-            randomNumbersGenerator = initRandomNumbersGenerator(SEED);
-
-            // Init URL, URI and File, then check that the directory is good to go
-            resourceDirectoryURL = initResourceDirectoryURL(RESOURCE_DIR_NAME);
-            resourceDirectoryURI = initResourceDirectoryURI(resourceDirectoryURL);
-            resourceDirectoryFile = initResourceDirectoryFile(resourceDirectoryURI);
+            // Packed sources are read by prefetching workers (one worker if prefetching is off), they need no image directory, index or tensor cache
+            if (config.isArchiveEnabled()) {
+                ExampleSource trainExampleSource = initArchiveExampleSource(config, ShardWriter.TRAIN_SPLIT, IMAGE_HEIGHT, IMAGE_WIDTH, IMAGE_CHANNELS);
+                ExampleSource testExampleSource = initArchiveExampleSource(config, ShardWriter.TEST_SPLIT, IMAGE_HEIGHT, IMAGE_WIDTH, IMAGE_CHANNELS);
+                ImageAugmenter trainAugmenter = config.isAugmentationEnabled() ? new ImageAugmenter(config.getAugmentation(), IMAGE_CHANNELS, IMAGE_HEIGHT, IMAGE_WIDTH) : null;
+                trainDataSetIterator = initPrefetchingDataSetIterator(trainExampleSource, config.getBatchSize(), config, NORM_MIN, NORM_MAX, trainAugmenter);
+                testDataSetIterator = initPrefetchingDataSetIterator(testExampleSource, config.getBatchSize(), config, NORM_MIN, NORM_MAX, null);
+                if (config.isValidationEnabled()) {
+                    ExampleSource validationExampleSource = initArchiveExampleSource(config, ShardWriter.VALIDATION_SPLIT, IMAGE_HEIGHT, IMAGE_WIDTH, IMAGE_CHANNELS);
+                    validationDataSetIterator = initPrefetchingDataSetIterator(validationExampleSource, config.getBatchSize(), config, NORM_MIN, NORM_MAX, null);
+                }
+                return;
+            }
+
+            // Init image directory (resource folder unless another one is configured), then check that the directory is good to go
+            if (config.getImageDirectory() == null) {
+                resourceDirectoryURL = initResourceDirectoryURL(RESOURCE_DIR_NAME);
+                resourceDirectoryURI = initResourceDirectoryURI(resourceDirectoryURL);
+                resourceDirectoryFile = initResourceDirectoryFile(resourceDirectoryURI);
+            } else {
+                resourceDirectoryFile = new File(config.getImageDirectory());
+            }
             initCheckResourceDirectory(resourceDirectoryFile);
 
-            // Init file split, label maker, path filter
-            filesInResourceDirectoryFileSplit = initFilesInResourceDirectoryFileSplit(resourceDirectoryFile, ALLOWED_FORMATS, randomNumbersGenerator);
+            // Init label maker, index of all images (incremental rescan of the saved index), split into train/test
             labelGenerator = initLabelGenerator();
-            pathFilter = initPathFilter(randomNumbersGenerator, ALLOWED_FORMATS, labelGenerator);
-
-            // Init input split, split into train/test
-            filesInResourceDirectoryInputSplit = initFilesInResourceDirectoryInputSplit(filesInResourceDirectoryFileSplit, pathFilter, TRAIN_SPLIT_PERCENTAGE, TEST_SPLIT_PERCENTAGE);
-            trainDataInputSplit = filesInResourceDirectoryInputSplit[TRAIN_SPLIT_INDEX];
-            testDataInputSplit = filesInResourceDirectoryInputSplit[TEST_SPLIT_INDEX];
-
-            // Init image record readers
-            trainDataImageRecordReader = initImageRecordReader(trainDataInputSplit, IMAGE_HEIGHT, IMAGE_WIDTH, IMAGE_CHANNELS, labelGenerator);
-            testDataImageRecordReader = initImageRecordReader(testDataInputSplit, IMAGE_HEIGHT, IMAGE_WIDTH, IMAGE_CHANNELS, labelGenerator);
-
-            // Init data set iterators
-            trainDataSetIterator = initRecordReaderDataSetIterator(trainDataImageRecordReader, BATCH_SIZE, LABEL_INDEX, IMAGE_CLASSES);
-            testDataSetIterator = initRecordReaderDataSetIterator(testDataImageRecordReader, BATCH_SIZE, LABEL_INDEX, IMAGE_CLASSES);
-
-            // Init data normalization, fit data into it, save this preprocessor into data set iterators
-            imagePreProcessingScaler = initImagePreProcessingScaler(NORM_MIN, NORM_MAX);
-            imagePreProcessingScaler.fit(trainDataSetIterator);
-            imagePreProcessingScaler.fit(testDataSetIterator);
-            trainDataSetIterator.setPreProcessor(imagePreProcessingScaler);
-            testDataSetIterator.setPreProcessor(imagePreProcessingScaler);
+            index = initIndex(resourceDirectoryFile, ALLOWED_FORMATS, new File(config.getIndexFile()), config.getIndexThreads());
+            indexSplit = index.split(TRAIN_SPLIT_PERCENTAGE, config.getValidationPercentage(), SEED);
+            trainDataInputSplit = indexSplit.getTrainInputSplit();
+            testDataInputSplit = indexSplit.getTestInputSplit();
+
+            if (config.isTensorCacheEnabled()) {
+                // Init tensor caches, images are decoded only if a cache is missing or stale, freshness is checked against the index without touching images
+                File tensorCacheDirectory = new File(config.getTensorCacheDirectory());
+                trainTensorCacheFile = initTensorCacheFile(tensorCacheDirectory, TRAIN_CACHE_NAME, index, indexSplit.getTrain(), IMAGE_HEIGHT, IMAGE_WIDTH, IMAGE_CHANNELS, labelGenerator);
+                testTensorCacheFile = initTensorCacheFile(tensorCacheDirectory, TEST_CACHE_NAME, index, indexSplit.getTest(), IMAGE_HEIGHT, IMAGE_WIDTH, IMAGE_CHANNELS, labelGenerator);
+                if (config.isValidationEnabled())
+                    validationTensorCacheFile = initTensorCacheFile(tensorCacheDirectory, VALIDATION_CACHE_NAME, index, indexSplit.getValidation(), IMAGE_HEIGHT, IMAGE_WIDTH, IMAGE_CHANNELS, labelGenerator);
+            }
+
+            if (config.isValidationEnabled()) {
+                // Validation set is small and read once per epoch, so it is never prefetched
+                if (config.isTensorCacheEnabled()) {
+                    validationDataSetIterator = new TensorCacheDataSetIterator(validationTensorCacheFile, config.getBatchSize(), NORM_MIN, NORM_MAX);
+                } else {
+                    ImageRecordReader validationDataImageRecordReader = initImageRecordReader(indexSplit.getValidationInputSplit(), IMAGE_HEIGHT, IMAGE_WIDTH, IMAGE_CHANNELS, labelGenerator);
+                    validationDataSetIterator = initRecordReaderDataSetIterator(validationDataImageRecordReader, config.getBatchSize(), LABEL_INDEX, IMAGE_CLASSES);
+                    validationDataSetIterator.setPreProcessor(initImagePreProcessingScaler(NORM_MIN, NORM_MAX));
+                }
+            }
+
+            // Augmentation is done by prefetching workers on raw pixels, other iterators have no place for it
+            if (config.isAugmentationEnabled() && !config.isPrefetchEnabled())
+                throw new CifarDatasetInitException("Augmentation needs prefetching, see CifarDatasetConfig.withPrefetch()");
+
+            if (config.isPrefetchEnabled()) {
+                // Init example sources (tensor caches or image files), then prefetching data set iterators over them, scaling and augmentation of train images are done by workers
+                ExampleSource trainExampleSource = config.isTensorCacheEnabled() ? trainTensorCacheFile : initImageFileExampleSource(trainDataInputSplit, IMAGE_HEIGHT, IMAGE_WIDTH, IMAGE_CHANNELS, labelGenerator);
+                ExampleSource testExampleSource = config.isTensorCacheEnabled() ? testTensorCacheFile : initImageFileExampleSource(testDataInputSplit, IMAGE_HEIGHT, IMAGE_WIDTH, IMAGE_CHANNELS, labelGenerator);
+                ImageAugmenter trainAugmenter = config.isAugmentationEnabled() ? new ImageAugmenter(config.getAugmentation(), IMAGE_CHANNELS, IMAGE_HEIGHT, IMAGE_WIDTH) : null;
+                trainDataSetIterator = initPrefetchingDataSetIterator(trainExampleSource, config.getBatchSize(), config, NORM_MIN, NORM_MAX, trainAugmenter);
+                testDataSetIterator = initPrefetchingDataSetIterator(testExampleSource, config.getBatchSize(), config, NORM_MIN, NORM_MAX, null);
+            }
+
+            else if (config.isTensorCacheEnabled()) {
+                // Pixel range is known (8 bit), so scaling is done while converting from uint8, no preprocessor needed
+                trainDataSetIterator = new TensorCacheDataSetIterator(trainTensorCacheFile, config.getBatchSize(), NORM_MIN, NORM_MAX);
+                testDataSetIterator = new TensorCacheDataSetIterator(testTensorCacheFile, config.getBatchSize(), NORM_MIN, NORM_MAX);
+            }
+
+            else {
+                // Init image record readers
+                trainDataImageRecordReader = initImageRecordReader(trainDataInputSplit, IMAGE_HEIGHT, IMAGE_WIDTH, IMAGE_CHANNELS, labelGenerator);
+                testDataImageRecordReader = initImageRecordReader(testDataInputSplit, IMAGE_HEIGHT, IMAGE_WIDTH, IMAGE_CHANNELS, labelGenerator);
+
+                // Init data set iterators
+                trainDataSetIterator = initRecordReaderDataSetIterator(trainDataImageRecordReader, config.getBatchSize(), LABEL_INDEX, IMAGE_CLASSES);
+                testDataSetIterator = initRecordReaderDataSetIterator(testDataImageRecordReader, config.getBatchSize(), LABEL_INDEX, IMAGE_CLASSES);
+
+                // Init data normalization, save this preprocessor into data set iterators
+                // The scaler maps the known 8 bit pixel range, so there is nothing to learn and no need to pass over the data to fit it
+                imagePreProcessingScaler = initImagePreProcessingScaler(NORM_MIN, NORM_MAX);
+                if (config.isScalerFitEnabled()) {
+                    imagePreProcessingScaler.fit(trainDataSetIterator);
+                    imagePreProcessingScaler.fit(testDataSetIterator);
+                }
+                trainDataSetIterator.setPreProcessor(imagePreProcessingScaler);
+                testDataSetIterator.setPreProcessor(imagePreProcessingScaler);
+            }
         }
 
         catch (CifarDatasetInitException e) {
@@ -117,20 +198,103 @@ public class CifarDataset {
     public DataSetIterator getTestDataSetIterator() {
         return testDataSetIterator;
     }
+
+    /**
+     * @return iterator over the validation set, or null if it is disabled (see {@link CifarDatasetConfig#withValidation(int)})
+     */
+    public DataSetIterator getValidationDataSetIterator() {
+        return validationDataSetIterator;
+    }
+
+    public CifarDatasetConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * @return index of the image directory, null if images come from binary batches or shards
+     */
+    public DatasetIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * @return split of the index, null if images come from binary batches or shards
+     */
+    public IndexSplit getIndexSplit() {
+        return indexSplit;
+    }
     //------------------------------------------------------------------------------------------------------------------
 
 
 
-    // Static helpers - Initialization
+    // Extra iterators
     //------------------------------------------------------------------------------------------------------------------
-    private static Random initRandomNumbersGenerator(final int seed) throws CifarDatasetInitException {
-        try {
-            return new Random(seed);
-        } catch (Exception e) {
-            throw new CifarDatasetInitException("Exception: ", e);
+    /**
+     * New iterator over the train split with its own batch size and position, reading the same decoded pixels as every other iterator
+     * Each iterator is used by one thread, but many of them can be read at once, so several networks can train on one copy of the data
+     * @param batchSize batch size
+     * @return new iterator, pixels scaled the same way as in {@link #getTrainDataSetIterator()}
+     * @throws IllegalStateException if tensor cache is disabled
+     */
+    public DataSetIterator createTrainDataSetIterator(int batchSize) {
+        return new TensorCacheDataSetIterator(requireTensorCache(trainTensorCacheFile), batchSize, NORM_MIN, NORM_MAX);
+    }
+
+    /**
+     * Same as {@link #createTrainDataSetIterator(int)} for the test split
+     * @param batchSize batch size
+     * @return new iterator
+     * @throws IllegalStateException if tensor cache is disabled
+     */
+    public DataSetIterator createTestDataSetIterator(int batchSize) {
+        return new TensorCacheDataSetIterator(requireTensorCache(testTensorCacheFile), batchSize, NORM_MIN, NORM_MAX);
+    }
+
+    /**
+     * New iterator over any images of the index, for example a cross-validation fold from {@link DatasetIndex#folds(int, long)}
+     * All such iterators read one tensor cache of the whole index, built on the first call, so every image is decoded once
+     * and stays in memory once no matter how many folds are trained at the same time
+     * @param entries entries of {@link #getIndex()}, in the order they should be returned
+     * @param batchSize batch size
+     * @return new iterator, pixels scaled the same way as in {@link #getTrainDataSetIterator()}
+     */
+    public DataSetIterator createDataSetIterator(List<IndexEntry> entries, int batchSize) {
+        TensorCacheFile tensorCacheFile = getAllTensorCacheFile();
+        int[] examples = new int[entries.size()];
+        for (int i = 0; i < examples.length; i++) {
+            Integer position = allTensorCachePositions.get(entries.get(i).getRelativePath());
+            if (position == null)
+                throw new IllegalArgumentException(entries.get(i).getRelativePath() + " is not in the index");
+            examples[i] = position;
         }
+        return new TensorCacheDataSetIterator(tensorCacheFile, examples, batchSize, NORM_MIN, NORM_MAX);
     }
 
+    private synchronized TensorCacheFile getAllTensorCacheFile() {
+        if (allTensorCacheFile == null) {
+            try {
+                allTensorCacheFile = initTensorCacheFile(new File(config.getTensorCacheDirectory()), ALL_CACHE_NAME, index, index.getEntries(), IMAGE_HEIGHT, IMAGE_WIDTH, IMAGE_CHANNELS, labelGenerator);
+            } catch (CifarDatasetInitException e) {
+                throw new RuntimeException("Failed to initialize due to: ", e);
+            }
+            allTensorCachePositions = new HashMap<>();
+            for (int i = 0; i < index.size(); i++)
+                allTensorCachePositions.put(index.getEntries().get(i).getRelativePath(), i);
+        }
+        return allTensorCacheFile;
+    }
+
+    private TensorCacheFile requireTensorCache(TensorCacheFile tensorCacheFile) {
+        if (tensorCacheFile == null)
+            throw new IllegalStateException("Extra iterators need the tensor cache of loose image files, see CifarDatasetConfig.withTensorCache()");
+        return tensorCacheFile;
+    }
+    //------------------------------------------------------------------------------------------------------------------
+
+
+
+    // Static helpers - Initialization
+    //------------------------------------------------------------------------------------------------------------------
     private static URL initResourceDirectoryURL(final String pathInResourcesDirectory) throws CifarDatasetInitException {
         try {
             return CifarDataset.class.getClassLoader().getResource(pathInResourcesDirectory);
@@ -165,51 +329,78 @@ public class CifarDataset {
             throw new CifarDatasetInitException(resourceDirectoryFile.getPath() + " is not a directory");
     }
 
-    private static FileSplit initFilesInResourceDirectoryFileSplit(final File resourceDirectoryFile, final String[] allowedFormats, final Random randomNumbersGenerator) throws CifarDatasetInitException {
+    private static ParentPathLabelGenerator initLabelGenerator() throws CifarDatasetInitException {
         try {
-            return new FileSplit(resourceDirectoryFile, allowedFormats, randomNumbersGenerator);
+            return new ParentPathLabelGenerator();
         } catch (Exception e) {
             throw new CifarDatasetInitException("Exception: ", e);
         }
     }
 
-    private static ParentPathLabelGenerator initLabelGenerator() throws CifarDatasetInitException {
+    private static DatasetIndex initIndex(final File imageDirectory, final String[] allowedFormats, final File indexFile, final int threads) throws CifarDatasetInitException {
         try {
-            return new ParentPathLabelGenerator();
+            return DirectoryScanner.scan(imageDirectory, allowedFormats, indexFile, threads);
         } catch (Exception e) {
             throw new CifarDatasetInitException("Exception: ", e);
         }
     }
 
-    private static BalancedPathFilter initPathFilter(final Random randomNumbersGenerator, final String[] allowedFormats, final ParentPathLabelGenerator labelGenerator) throws CifarDatasetInitException {
+    private static ImageRecordReader initImageRecordReader(final InputSplit inputSplit, final int height, final int width, final int channels, final ParentPathLabelGenerator labelGenerator) throws CifarDatasetInitException {
         try {
-            return new BalancedPathFilter(randomNumbersGenerator, allowedFormats, labelGenerator);
+            ImageRecordReader imageRecordReader = new ImageRecordReader(height, width, channels, labelGenerator);
+            imageRecordReader.initialize(inputSplit);
+            return imageRecordReader;
         } catch (Exception e) {
             throw new CifarDatasetInitException("Exception: ", e);
         }
     }
 
-    private static InputSplit[] initFilesInResourceDirectoryInputSplit(final FileSplit filesInResourceDirectoryFileSplit, final BalancedPathFilter pathFilter, final int trainPercentage, final int testPercentage) throws CifarDatasetInitException {
+    private static RecordReaderDataSetIterator initRecordReaderDataSetIterator(final ImageRecordReader imageRecordReader, final int batchSize, final int labelIndex, final int numPossibleLabels) throws CifarDatasetInitException {
         try {
-            return filesInResourceDirectoryFileSplit.sample(pathFilter, trainPercentage, testPercentage);
+            return new RecordReaderDataSetIterator(imageRecordReader, batchSize, labelIndex, numPossibleLabels);
         } catch (Exception e) {
             throw new CifarDatasetInitException("Exception: ", e);
         }
     }
 
-    private static ImageRecordReader initImageRecordReader(final InputSplit inputSplit, final int height, final int width, final int channels, final ParentPathLabelGenerator labelGenerator) throws CifarDatasetInitException {
+    private static TensorCacheFile initTensorCacheFile(final File cacheDirectory, final String cacheName, final DatasetIndex index, final List<IndexEntry> entries, final int height, final int width, final int channels, final ParentPathLabelGenerator labelGenerator) throws CifarDatasetInitException {
         try {
-            ImageRecordReader imageRecordReader = new ImageRecordReader(height, width, channels, labelGenerator);
-            imageRecordReader.initialize(inputSplit);
-            return imageRecordReader;
+            return TensorCache.open(cacheDirectory, cacheName, index, entries, height, width, channels, labelGenerator);
         } catch (Exception e) {
             throw new CifarDatasetInitException("Exception: ", e);
         }
     }
 
-    private static RecordReaderDataSetIterator initRecordReaderDataSetIterator(final ImageRecordReader imageRecordReader, final int batchSize, final int labelIndex, final int numPossibleLabels) throws CifarDatasetInitException {
+    private static ImageFileExampleSource initImageFileExampleSource(final InputSplit inputSplit, final int height, final int width, final int channels, final ParentPathLabelGenerator labelGenerator) throws CifarDatasetInitException {
         try {
-            return new RecordReaderDataSetIterator(imageRecordReader, batchSize, labelIndex, numPossibleLabels);
+            return new ImageFileExampleSource(inputSplit, height, width, channels, labelGenerator);
+        } catch (Exception e) {
+            throw new CifarDatasetInitException("Exception: ", e);
+        }
+    }
+
+    private static ExampleSource initArchiveExampleSource(final CifarDatasetConfig config, final String split, final int height, final int width, final int channels) throws CifarDatasetInitException {
+        if (config.getBinaryBatchDirectory() != null && config.getShardDirectory() != null)
+            throw new CifarDatasetInitException("Binary batches and shards can't be read at the same time");
+        if (config.getBinaryBatchDirectory() != null && split.equals(ShardWriter.VALIDATION_SPLIT))
+            throw new CifarDatasetInitException("CIFAR-10 binary batches have no validation split, use shards for validation");
+        if (config.getBinaryBatchDirectory() != null && (height != CifarBinaryBatches.HEIGHT || width != CifarBinaryBatches.WIDTH || channels != CifarBinaryBatches.CHANNELS))
+            throw new CifarDatasetInitException("CIFAR-10 binary batches hold " + CifarBinaryBatches.CHANNELS + "x" + CifarBinaryBatches.HEIGHT + "x" + CifarBinaryBatches.WIDTH + " images only");
+
+        try {
+            if (config.getBinaryBatchDirectory() != null) {
+                File directory = new File(config.getBinaryBatchDirectory());
+                return split.equals(ShardWriter.TRAIN_SPLIT) ? CifarBinaryBatches.openTrain(directory) : CifarBinaryBatches.openTest(directory);
+            }
+            return ShardExampleSource.open(new File(config.getShardDirectory()), split, ALLOWED_FORMATS, height, width, channels);
+        } catch (Exception e) {
+            throw new CifarDatasetInitException("Exception: ", e);
+        }
+    }
+
+    private static PrefetchingDataSetIterator initPrefetchingDataSetIterator(final ExampleSource exampleSource, final int batchSize, final CifarDatasetConfig config, final double min, final double max, final ImageAugmenter augmenter) throws CifarDatasetInitException {
+        try {
+            return new PrefetchingDataSetIterator(exampleSource, batchSize, Math.max(1, config.getPrefetchWorkers()), config.getPrefetchBatches(), config.getRetainedBatches(), min, max, augmenter);
         } catch (Exception e) {
             throw new CifarDatasetInitException("Exception: ", e);
         }
@@ -0,0 +1,335 @@
+package com.tekleo.image_classifier.dataset;
+
+import com.tekleo.image_classifier.dataset.pipeline.AugmentationConfig;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * Runtime options of {@link CifarDataset}
+ * Default constructor gives the plain behaviour, every other option is switched on with a "with" method that returns a modified copy
+ *
+ * Immutable object
+ */
+public class CifarDatasetConfig implements Serializable, Cloneable {
+    private static final String DEFAULT_TENSOR_CACHE_DIRECTORY = "cifar-cache";
+    private static final int DEFAULT_PREFETCH_BATCHES = 4;
+    private static final int DEFAULT_RETAINED_BATCHES = 1;
+    private static final int DEFAULT_BATCH_SIZE = 240;
+    private static final String DEFAULT_INDEX_FILE = "cifar-cache/images.index";
+    private static final int DEFAULT_INDEX_THREADS = 8;
+
+    private boolean tensorCacheEnabled;
+    private String tensorCacheDirectory;
+    private boolean scalerFitEnabled;
+    private int prefetchWorkers;
+    private int prefetchBatches;
+    private int retainedBatches;
+    private int batchSize;
+    private String imageDirectory;
+    private String indexFile;
+    private int indexThreads;
+    private int validationPercentage;
+    private AugmentationConfig augmentation;
+    private String binaryBatchDirectory;
+    private String shardDirectory;
+
+    // Constructors
+    //------------------------------------------------------------------------------------------------------------------
+    /**
+     * Default config, reads images straight from the resource folder
+     */
+    public CifarDatasetConfig() {
+        this.tensorCacheEnabled = false;
+        this.tensorCacheDirectory = DEFAULT_TENSOR_CACHE_DIRECTORY;
+        this.scalerFitEnabled = false;
+        this.prefetchWorkers = 0;
+        this.prefetchBatches = DEFAULT_PREFETCH_BATCHES;
+        this.retainedBatches = DEFAULT_RETAINED_BATCHES;
+        this.batchSize = DEFAULT_BATCH_SIZE;
+        this.imageDirectory = null;
+        this.indexFile = DEFAULT_INDEX_FILE;
+        this.indexThreads = DEFAULT_INDEX_THREADS;
+        this.validationPercentage = 0;
+        this.augmentation = new AugmentationConfig();
+        this.binaryBatchDirectory = null;
+        this.shardDirectory = null;
+    }
+
+    /**
+     * Copy constructor, used by clone and all copy modifiers
+     * @param other config to copy
+     */
+    private CifarDatasetConfig(CifarDatasetConfig other) {
+        this.tensorCacheEnabled = other.tensorCacheEnabled;
+        this.tensorCacheDirectory = other.tensorCacheDirectory;
+        this.scalerFitEnabled = other.scalerFitEnabled;
+        this.prefetchWorkers = other.prefetchWorkers;
+        this.prefetchBatches = other.prefetchBatches;
+        this.retainedBatches = other.retainedBatches;
+        this.batchSize = other.batchSize;
+        this.imageDirectory = other.imageDirectory;
+        this.indexFile = other.indexFile;
+        this.indexThreads = other.indexThreads;
+        this.validationPercentage = other.validationPercentage;
+        this.augmentation = other.augmentation;
+        this.binaryBatchDirectory = other.binaryBatchDirectory;
+        this.shardDirectory = other.shardDirectory;
+    }
+    //------------------------------------------------------------------------------------------------------------------
+
+
+
+    // Getters
+    //------------------------------------------------------------------------------------------------------------------
+    public boolean isTensorCacheEnabled() {
+        return tensorCacheEnabled;
+    }
+
+    public String getTensorCacheDirectory() {
+        return tensorCacheDirectory;
+    }
+
+    public boolean isScalerFitEnabled() {
+        return scalerFitEnabled;
+    }
+
+    public boolean isPrefetchEnabled() {
+        return prefetchWorkers > 0;
+    }
+
+    public int getPrefetchWorkers() {
+        return prefetchWorkers;
+    }
+
+    public int getPrefetchBatches() {
+        return prefetchBatches;
+    }
+
+    public int getRetainedBatches() {
+        return retainedBatches;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @return image directory, null means the "cifar" resource folder
+     */
+    public String getImageDirectory() {
+        return imageDirectory;
+    }
+
+    public String getIndexFile() {
+        return indexFile;
+    }
+
+    public int getIndexThreads() {
+        return indexThreads;
+    }
+
+    public boolean isValidationEnabled() {
+        return validationPercentage > 0;
+    }
+
+    public int getValidationPercentage() {
+        return validationPercentage;
+    }
+
+    public boolean isAugmentationEnabled() {
+        return augmentation.isEnabled();
+    }
+
+    public AugmentationConfig getAugmentation() {
+        return augmentation;
+    }
+
+    /**
+     * @return true if images are read from CIFAR binary batches or shards instead of loose files
+     */
+    public boolean isArchiveEnabled() {
+        return binaryBatchDirectory != null || shardDirectory != null;
+    }
+
+    public String getBinaryBatchDirectory() {
+        return binaryBatchDirectory;
+    }
+
+    public String getShardDirectory() {
+        return shardDirectory;
+    }
+    //------------------------------------------------------------------------------------------------------------------
+
+
+
+    // Copy modifiers
+    //------------------------------------------------------------------------------------------------------------------
+    /**
+     * Decode images once into a binary tensor cache and serve all epochs and later runs from it
+     * @param tensorCacheDirectory directory where tensor cache files and their manifests are kept
+     * @return modified copy
+     */
+    public CifarDatasetConfig withTensorCache(String tensorCacheDirectory) {
+        CifarDatasetConfig copy = clone();
+        copy.tensorCacheEnabled = true;
+        copy.tensorCacheDirectory = tensorCacheDirectory;
+        return copy;
+    }
+
+    public CifarDatasetConfig withTensorCache() {
+        return withTensorCache(tensorCacheDirectory);
+    }
+
+    /**
+     * Fit the image scaler over both iterators at startup, the way it was done originally
+     * Only kept to measure startup against the old behaviour, the scaler works on a fixed range and learns nothing from the data
+     * @param scalerFitEnabled fit the scaler at startup
+     * @return modified copy
+     */
+    public CifarDatasetConfig withScalerFit(boolean scalerFitEnabled) {
+        CifarDatasetConfig copy = clone();
+        copy.scalerFitEnabled = scalerFitEnabled;
+        return copy;
+    }
+
+    /**
+     * Decode and assemble batches on worker threads ahead of training, see {@link com.tekleo.image_classifier.dataset.pipeline.PrefetchingDataSetIterator}
+     * @param prefetchWorkers number of decoding threads, 0 disables prefetching
+     * @param prefetchBatches number of batches prepared ahead of the consumer
+     * @return modified copy
+     */
+    public CifarDatasetConfig withPrefetch(int prefetchWorkers, int prefetchBatches) {
+        CifarDatasetConfig copy = clone();
+        copy.prefetchWorkers = prefetchWorkers;
+        copy.prefetchBatches = prefetchBatches;
+        return copy;
+    }
+
+    public CifarDatasetConfig withPrefetch(int prefetchWorkers) {
+        return withPrefetch(prefetchWorkers, prefetchBatches);
+    }
+
+    /**
+     * Number of already handed out batches whose buffers stay valid, needed when the consumer keeps several batches in flight
+     * @param retainedBatches number of retained batches, at least 1
+     * @return modified copy
+     */
+    public CifarDatasetConfig withRetainedBatches(int retainedBatches) {
+        CifarDatasetConfig copy = clone();
+        copy.retainedBatches = retainedBatches;
+        return copy;
+    }
+
+    /**
+     * Batch size of both iterators, normally taken from {@link com.tekleo.image_classifier.neural_network.config.NetworkConfig#getBatchSize()}
+     * @param batchSize batch size
+     * @return modified copy
+     */
+    public CifarDatasetConfig withBatchSize(int batchSize) {
+        CifarDatasetConfig copy = clone();
+        copy.batchSize = batchSize;
+        return copy;
+    }
+
+    /**
+     * Read images from a directory outside of the resources, one subdirectory per label, see {@link com.tekleo.image_classifier.dataset.index.DirectoryScanner}
+     * @param imageDirectory image directory, null to use the "cifar" resource folder
+     * @param indexFile index file of that directory, rescans only look into directories that changed since it was written
+     * @return modified copy
+     */
+    public CifarDatasetConfig withImageDirectory(String imageDirectory, String indexFile) {
+        CifarDatasetConfig copy = clone();
+        copy.imageDirectory = imageDirectory;
+        copy.indexFile = indexFile;
+        return copy;
+    }
+
+    /**
+     * Number of threads scanning the image directory, scanning waits on the file system, so this can be well above the number of cores
+     * @param indexThreads number of threads, at least 1
+     * @return modified copy
+     */
+    public CifarDatasetConfig withIndexThreads(int indexThreads) {
+        CifarDatasetConfig copy = clone();
+        copy.indexThreads = indexThreads;
+        return copy;
+    }
+
+    /**
+     * Hold a validation set out of the train split, used for early stopping, the test split stays the same
+     * @param validationPercentage share of all images of every label that goes to validation, 0 disables the validation set
+     * @return modified copy
+     */
+    public CifarDatasetConfig withValidation(int validationPercentage) {
+        CifarDatasetConfig copy = clone();
+        copy.validationPercentage = validationPercentage;
+        return copy;
+    }
+
+    /**
+     * Random flips, crops and color jitter of train images, done by prefetching workers on raw pixels, test and validation images are never augmented
+     * Needs prefetching, see {@link #withPrefetch(int, int)}
+     * @param augmentation transforms to apply, the default AugmentationConfig disables augmentation
+     * @return modified copy
+     */
+    public CifarDatasetConfig withAugmentation(AugmentationConfig augmentation) {
+        CifarDatasetConfig copy = clone();
+        copy.augmentation = augmentation;
+        return copy;
+    }
+
+    /**
+     * Read the official CIFAR-10 binary batches (data_batch_*.bin for train, test_batch.bin for test) instead of loose image files,
+     * see {@link com.tekleo.image_classifier.dataset.archive.CifarBinaryBatches}
+     * The train/test split is the official one, images are never decoded, so tensor cache is not needed, validation is not available
+     * @param binaryBatchDirectory directory with the batch files, null to read loose files
+     * @return modified copy
+     */
+    public CifarDatasetConfig withBinaryBatches(String binaryBatchDirectory) {
+        CifarDatasetConfig copy = clone();
+        copy.binaryBatchDirectory = binaryBatchDirectory;
+        return copy;
+    }
+
+    /**
+     * Read images packed into tar or zip shards (train-*.tar, test-*.tar and optionally validation-*.tar) instead of loose image files,
+     * see {@link com.tekleo.image_classifier.dataset.archive.ShardWriter} to make them, the split is the one the shards were written with
+     * @param shardDirectory directory with the shards, null to read loose files
+     * @return modified copy
+     */
+    public CifarDatasetConfig withShards(String shardDirectory) {
+        CifarDatasetConfig copy = clone();
+        copy.shardDirectory = shardDirectory;
+        return copy;
+    }
+    //------------------------------------------------------------------------------------------------------------------
+
+
+
+    // Others
+    //------------------------------------------------------------------------------------------------------------------
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        CifarDatasetConfig that = (CifarDatasetConfig) o;
+        return tensorCacheEnabled == that.tensorCacheEnabled && scalerFitEnabled == that.scalerFitEnabled && prefetchWorkers == that.prefetchWorkers && prefetchBatches == that.prefetchBatches && retainedBatches == that.retainedBatches && batchSize == that.batchSize && indexThreads == that.indexThreads && validationPercentage == that.validationPercentage && Objects.equals(augmentation, that.augmentation) && Objects.equals(binaryBatchDirectory, that.binaryBatchDirectory) && Objects.equals(shardDirectory, that.shardDirectory) && Objects.equals(tensorCacheDirectory, that.tensorCacheDirectory) && Objects.equals(imageDirectory, that.imageDirectory) && Objects.equals(indexFile, that.indexFile);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(tensorCacheEnabled, tensorCacheDirectory, scalerFitEnabled, prefetchWorkers, prefetchBatches, retainedBatches, batchSize, imageDirectory, indexFile, indexThreads, validationPercentage, augmentation, binaryBatchDirectory, shardDirectory);
+    }
+
+    @Override
+    public String toString() {
+        return "CifarDatasetConfig{" + "tensorCacheEnabled=" + tensorCacheEnabled + ", tensorCacheDirectory='" + tensorCacheDirectory + '\'' + ", scalerFitEnabled=" + scalerFitEnabled + ", prefetchWorkers=" + prefetchWorkers + ", prefetchBatches=" + prefetchBatches + ", retainedBatches=" + retainedBatches + ", batchSize=" + batchSize + ", imageDirectory='" + imageDirectory + '\'' + ", indexFile='" + indexFile + '\'' + ", indexThreads=" + indexThreads + ", validationPercentage=" + validationPercentage + ", augmentation=" + augmentation + ", binaryBatchDirectory='" + binaryBatchDirectory + '\'' + ", shardDirectory='" + shardDirectory + '\'' + '}';
+    }
+
+    @Override
+    public CifarDatasetConfig clone() {
+        return new CifarDatasetConfig(this);
+    }
+    //------------------------------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,26 @@
+package com.tekleo.image_classifier.dataset.archive;
+
+/**
+ * Exception to be used when packing or reading CIFAR binary batches and image shards
+ */
+public class ArchiveException extends Exception {
+    public ArchiveException() {
+
+    }
+
+    public ArchiveException(String message) {
+        super(message);
+    }
+
+    public ArchiveException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public ArchiveException(Throwable cause) {
+        super(cause);
+    }
+
+    public ArchiveException(String message, Throwable cause, boolean enableSuppression, boolean writableStackTrace) {
+        super(message, cause, enableSuppression, writableStackTrace);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,270 @@
+package com.tekleo.image_classifier.dataset.archive;
+
+import com.tekleo.image_classifier.dataset.pipeline.ExampleSource;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Example source over the official CIFAR-10 binary batch files (data_batch_1.bin .. data_batch_5.bin, test_batch.bin)
+ *
+ * Every file is a plain sequence of 3073 byte records: 1 byte label, then 1024 red, 1024 green and 1024 blue bytes of a 32x32 image in row-major order
+ * Files are memory-mapped once and records are sliced out of the mapping by offset, there is no decoding and no per-record object
+ * Images are returned in BGR channel order, the order NativeImageLoader (and so ImageRecordReader and the tensor cache) gives,
+ * so a network sees the same pixels no matter which source the images come from
+ *
+ * Label names come from batches.meta.txt next to the batches (one name per line, in label index order), the official CIFAR-10 names are used if it is missing
+ */
+public class CifarBinaryBatches implements ExampleSource, AutoCloseable {
+    public static final int CHANNELS = 3;
+    public static final int HEIGHT = 32;
+    public static final int WIDTH = 32;
+    public static final int IMAGE_LENGTH = CHANNELS * HEIGHT * WIDTH;
+    public static final int RECORD_LENGTH = 1 + IMAGE_LENGTH;
+    public static final List<String> DEFAULT_LABELS = Collections.unmodifiableList(Arrays.asList("airplane", "automobile", "bird", "cat", "deer", "dog", "frog", "horse", "ship", "truck"));
+    private static final String TRAIN_FILE_PREFIX = "data_batch_";
+    private static final String TEST_FILE_NAME = "test_batch.bin";
+    private static final String BATCH_FILE_EXTENSION = ".bin";
+    private static final String META_FILE_NAME = "batches.meta.txt";
+    private static final int PLANE_LENGTH = HEIGHT * WIDTH;
+
+    private final List<File> files;
+    private final List<RandomAccessFile> randomAccessFiles;
+    private final MappedByteBuffer[] mappings;
+    private final int[] firstExamples;
+    private final byte[] labelIndices;
+    private final List<String> labels;
+
+    private CifarBinaryBatches(List<File> files, List<RandomAccessFile> randomAccessFiles, MappedByteBuffer[] mappings, int[] firstExamples, byte[] labelIndices, List<String> labels) {
+        this.files = Collections.unmodifiableList(new ArrayList<>(files));
+        this.randomAccessFiles = randomAccessFiles;
+        this.mappings = mappings;
+        this.firstExamples = firstExamples;
+        this.labelIndices = labelIndices;
+        this.labels = Collections.unmodifiableList(new ArrayList<>(labels));
+    }
+
+    /**
+     * Open the train batches (data_batch_*.bin, in name order) of a directory
+     * @param directory directory with the binary batches
+     * @return mapped batches
+     * @throws ArchiveException if there are no train batches or they can't be read
+     */
+    public static CifarBinaryBatches openTrain(File directory) throws ArchiveException {
+        List<File> files = new ArrayList<>();
+        File[] children = directory.listFiles();
+        if (children != null)
+            for (File child : children)
+                if (child.getName().startsWith(TRAIN_FILE_PREFIX) && child.getName().endsWith(BATCH_FILE_EXTENSION))
+                    files.add(child);
+        if (files.isEmpty())
+            throw new ArchiveException(directory.getPath() + " has no " + TRAIN_FILE_PREFIX + "*" + BATCH_FILE_EXTENSION + " files");
+        files.sort((a, b) -> a.getName().compareTo(b.getName()));
+        return open(files, readLabels(directory));
+    }
+
+    /**
+     * Open the test batch (test_batch.bin) of a directory
+     * @param directory directory with the binary batches
+     * @return mapped batch
+     * @throws ArchiveException if there is no test batch or it can't be read
+     */
+    public static CifarBinaryBatches openTest(File directory) throws ArchiveException {
+        return open(Collections.singletonList(new File(directory, TEST_FILE_NAME)), readLabels(directory));
+    }
+
+    /**
+     * Map binary batch files, labels are read in one sequential pass, pixels are only touched when they are read
+     * @param files batch files, examples are numbered through all files in this order
+     * @param labels label names in label index order
+     * @return mapped batches
+     * @throws ArchiveException if a file is missing, isn't a whole number of records or has a label out of range
+     */
+    public static CifarBinaryBatches open(List<File> files, List<String> labels) throws ArchiveException {
+        List<RandomAccessFile> randomAccessFiles = new ArrayList<>();
+        try {
+            MappedByteBuffer[] mappings = new MappedByteBuffer[files.size()];
+            int[] firstExamples = new int[files.size() + 1];
+            for (int i = 0; i < files.size(); i++) {
+                File file = files.get(i);
+                if (!file.isFile())
+                    throw new ArchiveException(file.getPath() + " doesn't exist");
+                RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+                randomAccessFiles.add(randomAccessFile);
+                long size = randomAccessFile.getChannel().size();
+                if (size % RECORD_LENGTH != 0 || size > Integer.MAX_VALUE)
+                    throw new ArchiveException(file.getPath() + " is not a CIFAR-10 binary batch, " + size + " bytes is not a whole number of " + RECORD_LENGTH + " byte records");
+                mappings[i] = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, size);
+                firstExamples[i + 1] = firstExamples[i] + (int) (size / RECORD_LENGTH);
+            }
+
+            byte[] labelIndices = new byte[firstExamples[files.size()]];
+            for (int i = 0; i < mappings.length; i++) {
+                for (int example = firstExamples[i]; example < firstExamples[i + 1]; example++) {
+                    labelIndices[example] = mappings[i].get((example - firstExamples[i]) * RECORD_LENGTH);
+                    if ((labelIndices[example] & 0xFF) >= labels.size())
+                        throw new ArchiveException(files.get(i).getPath() + " has label " + (labelIndices[example] & 0xFF) + ", but only " + labels.size() + " labels are known");
+                }
+            }
+            return new CifarBinaryBatches(files, randomAccessFiles, mappings, firstExamples, labelIndices, labels);
+        } catch (ArchiveException e) {
+            closeQuietly(randomAccessFiles);
+            throw e;
+        } catch (Exception e) {
+            closeQuietly(randomAccessFiles);
+            throw new ArchiveException("Exception: ", e);
+        }
+    }
+
+    /**
+     * Write images of any example source as a CIFAR-10 binary batch, channels are turned from BGR back into RGB
+     * @param exampleSource 32x32 3 channel images in BGR order with at most 256 labels
+     * @param file batch file to write
+     * @throws ArchiveException if the images don't fit the format or the file can't be written
+     */
+    public static void write(ExampleSource exampleSource, File file) throws ArchiveException {
+        if (exampleSource.getChannels() != CHANNELS || exampleSource.getHeight() != HEIGHT || exampleSource.getWidth() != WIDTH)
+            throw new ArchiveException("CIFAR-10 binary batches hold " + CHANNELS + "x" + HEIGHT + "x" + WIDTH + " images only");
+        if (exampleSource.getLabels().size() > 256)
+            throw new ArchiveException("CIFAR-10 binary batches hold at most 256 labels");
+
+        byte[] pixels = new byte[IMAGE_LENGTH];
+        byte[] record = new byte[RECORD_LENGTH];
+        try (OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(file))) {
+            for (int i = 0; i < exampleSource.getNumberOfExamples(); i++) {
+                exampleSource.readPixels(i, pixels, 0);
+                record[0] = (byte) exampleSource.getLabel(i);
+                for (int channel = 0; channel < CHANNELS; channel++)
+                    System.arraycopy(pixels, (CHANNELS - 1 - channel) * PLANE_LENGTH, record, 1 + channel * PLANE_LENGTH, PLANE_LENGTH);
+                outputStream.write(record);
+            }
+        } catch (IOException e) {
+            throw new ArchiveException("Can't write " + file.getPath(), e);
+        }
+    }
+
+
+
+    // Getters
+    //------------------------------------------------------------------------------------------------------------------
+    public List<File> getFiles() {
+        return files;
+    }
+
+    @Override
+    public int getNumberOfExamples() {
+        return labelIndices.length;
+    }
+
+    @Override
+    public int getChannels() {
+        return CHANNELS;
+    }
+
+    @Override
+    public int getHeight() {
+        return HEIGHT;
+    }
+
+    @Override
+    public int getWidth() {
+        return WIDTH;
+    }
+
+    @Override
+    public int getExampleLength() {
+        return IMAGE_LENGTH;
+    }
+
+    @Override
+    public List<String> getLabels() {
+        return labels;
+    }
+    //------------------------------------------------------------------------------------------------------------------
+
+
+
+    // Reading
+    //------------------------------------------------------------------------------------------------------------------
+    @Override
+    public int getLabel(int index) {
+        return labelIndices[index] & 0xFF;
+    }
+
+    /**
+     * Copy pixels of one record in BGR order, three bulk copies out of the mapping, safe to call from several threads at once
+     * @param index index of the image
+     * @param destination array to copy into
+     * @param destinationOffset position in destination where the image starts
+     */
+    @Override
+    public void readPixels(int index, byte[] destination, int destinationOffset) {
+        int file = fileOf(index);
+        ByteBuffer mapping = mappings[file].duplicate();
+        int recordStart = (index - firstExamples[file]) * RECORD_LENGTH + 1;
+        for (int channel = 0; channel < CHANNELS; channel++) {
+            mapping.position(recordStart + (CHANNELS - 1 - channel) * PLANE_LENGTH);
+            mapping.get(destination, destinationOffset + channel * PLANE_LENGTH, PLANE_LENGTH);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (RandomAccessFile randomAccessFile : randomAccessFiles)
+            randomAccessFile.close();
+    }
+
+    private int fileOf(int index) {
+        int file = Arrays.binarySearch(firstExamples, index);
+        if (file < 0)
+            return -file - 2;
+        // Skip empty files starting at the same example
+        while (firstExamples[file + 1] == index)
+            file++;
+        return file;
+    }
+    //------------------------------------------------------------------------------------------------------------------
+
+
+
+    // Static helpers
+    //------------------------------------------------------------------------------------------------------------------
+    private static List<String> readLabels(File directory) throws ArchiveException {
+        File metaFile = new File(directory, META_FILE_NAME);
+        if (!metaFile.isFile())
+            return DEFAULT_LABELS;
+        try {
+            List<String> labels = new ArrayList<>();
+            for (String line : Files.readAllLines(metaFile.toPath(), StandardCharsets.UTF_8))
+                if (!line.trim().isEmpty())
+                    labels.add(line.trim());
+            return labels;
+        } catch (IOException e) {
+            throw new ArchiveException("Can't read " + metaFile.getPath(), e);
+        }
+    }
+
+    private static void closeQuietly(List<RandomAccessFile> randomAccessFiles) {
+        for (RandomAccessFile randomAccessFile : randomAccessFiles) {
+            try {
+                randomAccessFile.close();
+            } catch (IOException ignored) {
+
+            }
+        }
+    }
+    //------------------------------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,222 @@
+package com.tekleo.image_classifier.dataset.archive;
+
+import com.tekleo.image_classifier.dataset.pipeline.ExampleSource;
+import org.datavec.image.loader.NativeImageLoader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Example source over the images packed in one or more {@link ShardFile}s, images are decoded on the calling thread
+ *
+ * Label of an image is the name of the directory it is in inside the shard, the same rule ParentPathLabelGenerator applies to loose files,
+ * labels are sorted and images are decoded through {@link NativeImageLoader}, so pixels and label indices match the loose file pipeline
+ * Images are numbered shard by shard in the order they are stored, {@link ShardWriter} stores them in the order of the split
+ */
+public class ShardExampleSource implements ExampleSource, AutoCloseable {
+    private final List<ShardFile> shardFiles;
+    private final int[] shardOfExample;
+    private final int[] entryOfExample;
+    private final int[] labelIndices;
+    private final List<String> labels;
+    private final int height;
+    private final int width;
+    private final int channels;
+    private final ThreadLocal<NativeImageLoader> imageLoaders;
+
+    private ShardExampleSource(List<ShardFile> shardFiles, String[] extensions, int height, int width, int channels) {
+        List<Integer> shards = new ArrayList<>();
+        List<Integer> entries = new ArrayList<>();
+        List<String> labelOfExample = new ArrayList<>();
+        TreeSet<String> uniqueLabels = new TreeSet<>();
+        for (int shard = 0; shard < shardFiles.size(); shard++) {
+            List<String> names = shardFiles.get(shard).getNames();
+            for (int entry = 0; entry < names.size(); entry++) {
+                String name = names.get(entry);
+                if (!hasExtension(name, extensions))
+                    continue;
+                String label = label(name);
+                shards.add(shard);
+                entries.add(entry);
+                labelOfExample.add(label);
+                uniqueLabels.add(label);
+            }
+        }
+
+        this.shardFiles = Collections.unmodifiableList(new ArrayList<>(shardFiles));
+        this.shardOfExample = new int[shards.size()];
+        this.entryOfExample = new int[entries.size()];
+        for (int i = 0; i < shards.size(); i++) {
+            shardOfExample[i] = shards.get(i);
+            entryOfExample[i] = entries.get(i);
+        }
+
+        this.labels = Collections.unmodifiableList(new ArrayList<>(uniqueLabels));
+        Map<String, Integer> indexOfLabel = new HashMap<>();
+        for (String label : labels)
+            indexOfLabel.put(label, indexOfLabel.size());
+        this.labelIndices = new int[labelOfExample.size()];
+        for (int i = 0; i < labelIndices.length; i++)
+            labelIndices[i] = indexOfLabel.get(labelOfExample.get(i));
+
+        this.height = height;
+        this.width = width;
+        this.channels = channels;
+        this.imageLoaders = ThreadLocal.withInitial(() -> new NativeImageLoader(height, width, channels));
+    }
+
+    /**
+     * Open all shards of one split in a directory, that is files named SPLIT-*.tar or SPLIT-*.zip, in name order
+     * @param directory directory with shards
+     * @param split split name, like train or test
+     * @param extensions image extensions without the dot, case-insensitive, other entries are skipped
+     * @param height image height
+     * @param width image width
+     * @param channels image channels
+     * @return source over all images of the split
+     * @throws ArchiveException if there are no shards of the split or one of them can't be read
+     */
+    public static ShardExampleSource open(File directory, String split, String[] extensions, int height, int width, int channels) throws ArchiveException {
+        List<File> files = ShardWriter.listShards(directory, split);
+        if (files.isEmpty())
+            throw new ArchiveException(directory.getPath() + " has no " + split + " shards");
+        return open(files, extensions, height, width, channels);
+    }
+
+    /**
+     * @param files shard files, images are numbered through all files in this order
+     * @param extensions image extensions without the dot, case-insensitive, other entries are skipped
+     * @param height image height
+     * @param width image width
+     * @param channels image channels
+     * @return source over all images of the shards
+     * @throws ArchiveException if one of the shards can't be read
+     */
+    public static ShardExampleSource open(List<File> files, String[] extensions, int height, int width, int channels) throws ArchiveException {
+        List<ShardFile> shardFiles = new ArrayList<>();
+        try {
+            for (File file : files)
+                shardFiles.add(ShardFile.open(file));
+        } catch (ArchiveException e) {
+            for (ShardFile shardFile : shardFiles)
+                closeQuietly(shardFile);
+            throw e;
+        }
+        return new ShardExampleSource(shardFiles, extensions, height, width, channels);
+    }
+
+
+
+    // Getters
+    //------------------------------------------------------------------------------------------------------------------
+    public List<ShardFile> getShardFiles() {
+        return shardFiles;
+    }
+
+    @Override
+    public int getNumberOfExamples() {
+        return labelIndices.length;
+    }
+
+    @Override
+    public int getChannels() {
+        return channels;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getExampleLength() {
+        return channels * height * width;
+    }
+
+    @Override
+    public List<String> getLabels() {
+        return labels;
+    }
+
+    /**
+     * @param index index of the image
+     * @return path of the image inside its shard
+     */
+    public String getName(int index) {
+        return shardFiles.get(shardOfExample[index]).getNames().get(entryOfExample[index]);
+    }
+    //------------------------------------------------------------------------------------------------------------------
+
+
+
+    // Reading
+    //------------------------------------------------------------------------------------------------------------------
+    @Override
+    public int getLabel(int index) {
+        return labelIndices[index];
+    }
+
+    @Override
+    public void readPixels(int index, byte[] destination, int destinationOffset) throws IOException {
+        float[] values;
+        try (InputStream inputStream = shardFiles.get(shardOfExample[index]).openStream(entryOfExample[index])) {
+            values = imageLoaders.get().asMatrix(inputStream).dup('c').data().asFloat();
+        }
+        int exampleLength = getExampleLength();
+        for (int i = 0; i < exampleLength; i++)
+            destination[destinationOffset + i] = (byte) Math.max(0, Math.min(255, Math.round(values[i])));
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (ShardFile shardFile : shardFiles)
+            shardFile.close();
+    }
+    //------------------------------------------------------------------------------------------------------------------
+
+
+
+    // Static helpers
+    //------------------------------------------------------------------------------------------------------------------
+    // Label is the name of the parent directory of the entry, same as ParentPathLabelGenerator gives for loose files
+    static String label(String name) {
+        int slash = name.lastIndexOf('/');
+        if (slash < 0)
+            return "";
+        int parentSlash = name.lastIndexOf('/', slash - 1);
+        return name.substring(parentSlash + 1, slash);
+    }
+
+    private static boolean hasExtension(String name, String[] extensions) {
+        int dot = name.lastIndexOf('.');
+        if (dot < 0)
+            return false;
+        String extension = name.substring(dot + 1).toLowerCase(Locale.ROOT);
+        for (String allowed : extensions)
+            if (allowed.toLowerCase(Locale.ROOT).equals(extension))
+                return true;
+        return false;
+    }
+
+    private static void closeQuietly(ShardFile shardFile) {
+        try {
+            shardFile.close();
+        } catch (IOException ignored) {
+
+        }
+    }
+    //------------------------------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,379 @@
+package com.tekleo.image_classifier.dataset.archive;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Read-only view of one image shard, a tar or zip file with many small files in it
+ *
+ * The entry table is read once with positioned NIO reads (tar headers one after another, the zip central directory at the end of the file),
+ * then the whole file is memory-mapped and every entry is a slice of that mapping, so reading an entry opens nothing and copies nothing
+ * Tar entries and stored zip entries are served as they are, deflated zip entries are inflated while they are read
+ *
+ * Supported: ustar/GNU tar with long names, zip without zip64, shards below 2 GB
+ */
+public class ShardFile implements AutoCloseable {
+    private static final int TAR_BLOCK_LENGTH = 512;
+    private static final int TAR_SIZE_OFFSET = 124;
+    private static final int TAR_SIZE_LENGTH = 12;
+    private static final int TAR_CHECKSUM_OFFSET = 148;
+    private static final int TAR_CHECKSUM_LENGTH = 8;
+    private static final int TAR_TYPE_OFFSET = 156;
+    private static final int TAR_MAGIC_OFFSET = 257;
+    private static final int TAR_PREFIX_OFFSET = 345;
+    private static final int TAR_PREFIX_LENGTH = 155;
+    private static final int TAR_NAME_LENGTH = 100;
+    private static final byte TAR_TYPE_FILE = '0';
+    private static final byte TAR_TYPE_LONG_NAME = 'L';
+    private static final int ZIP_LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int ZIP_LOCAL_HEADER_LENGTH = 30;
+    private static final int ZIP_CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int ZIP_CENTRAL_HEADER_LENGTH = 46;
+    private static final int ZIP_END_SIGNATURE = 0x06054b50;
+    private static final int ZIP_END_LENGTH = 22;
+    private static final int ZIP_MAX_COMMENT_LENGTH = 0xFFFF;
+    private static final int ZIP_STORED = 0;
+    private static final int ZIP_DEFLATED = 8;
+
+    private final File file;
+    private final RandomAccessFile randomAccessFile;
+    private final MappedByteBuffer mapping;
+    private final List<String> names;
+    private final int[] offsets;
+    private final int[] lengths;
+    private final boolean[] deflated;
+
+    private ShardFile(File file, RandomAccessFile randomAccessFile, MappedByteBuffer mapping, List<Entry> entries) {
+        this.file = file;
+        this.randomAccessFile = randomAccessFile;
+        this.mapping = mapping;
+        List<String> entryNames = new ArrayList<>(entries.size());
+        this.offsets = new int[entries.size()];
+        this.lengths = new int[entries.size()];
+        this.deflated = new boolean[entries.size()];
+        for (int i = 0; i < entries.size(); i++) {
+            entryNames.add(entries.get(i).name);
+            offsets[i] = entries.get(i).offset;
+            lengths[i] = entries.get(i).length;
+            deflated[i] = entries.get(i).deflated;
+        }
+        this.names = Collections.unmodifiableList(entryNames);
+    }
+
+    /**
+     * Read the entry table of a shard and map it, the format is recognized by its content, not by the file name
+     * @param file tar or zip file
+     * @return mapped shard
+     * @throws ArchiveException if the file is missing, too big, in another format or broken
+     */
+    public static ShardFile open(File file) throws ArchiveException {
+        RandomAccessFile randomAccessFile = null;
+        try {
+            randomAccessFile = new RandomAccessFile(file, "r");
+            FileChannel channel = randomAccessFile.getChannel();
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE)
+                throw new ArchiveException(file.getPath() + " is bigger than 2 GB, split it into more shards");
+
+            List<Entry> entries;
+            if (size >= 4 && read(channel, 0, 4, file).order(ByteOrder.LITTLE_ENDIAN).getInt() == ZIP_LOCAL_HEADER_SIGNATURE)
+                entries = readZipEntries(channel, (int) size, file);
+            else if (size >= TAR_BLOCK_LENGTH && isTarHeader(read(channel, 0, TAR_BLOCK_LENGTH, file)))
+                entries = readTarEntries(channel, (int) size, file);
+            else if (size == 0 || isEmptyTar(channel, (int) size, file))
+                entries = new ArrayList<>();
+            else
+                throw new ArchiveException(file.getPath() + " is neither a tar nor a zip file");
+
+            MappedByteBuffer mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return new ShardFile(file, randomAccessFile, mapping, entries);
+        } catch (ArchiveException e) {
+            closeQuietly(randomAccessFile);
+            throw e;
+        } catch (Exception e) {
+            closeQuietly(randomAccessFile);
+            throw new ArchiveException("Exception: ", e);
+        }
+    }
+
+
+
+    // Getters
+    //------------------------------------------------------------------------------------------------------------------
+    public File getFile() {
+        return file;
+    }
+
+    public int size() {
+        return names.size();
+    }
+
+    /**
+     * @return entry paths in the order they are stored, with '/' separators
+     */
+    public List<String> getNames() {
+        return names;
+    }
+    //------------------------------------------------------------------------------------------------------------------
+
+
+
+    // Reading
+    //------------------------------------------------------------------------------------------------------------------
+    /**
+     * @param index index of the entry
+     * @return view of the stored bytes of the entry in the mapping, deflated zip entries are still compressed here
+     */
+    public ByteBuffer slice(int index) {
+        ByteBuffer slice = mapping.duplicate();
+        slice.limit(offsets[index] + lengths[index]);
+        slice.position(offsets[index]);
+        return slice.slice();
+    }
+
+    /**
+     * Stream over the content of one entry, reading straight from the mapping, safe to call from several threads at once
+     * @param index index of the entry
+     * @return new stream
+     */
+    public InputStream openStream(int index) {
+        InputStream inputStream = new ByteBufferInputStream(slice(index));
+        return deflated[index] ? new InflaterInputStream(inputStream, new Inflater(true)) : inputStream;
+    }
+
+    @Override
+    public void close() throws IOException {
+        randomAccessFile.close();
+    }
+    //------------------------------------------------------------------------------------------------------------------
+
+
+
+    // Tar
+    //------------------------------------------------------------------------------------------------------------------
+    private static List<Entry> readTarEntries(FileChannel channel, int size, File file) throws IOException, ArchiveException {
+        List<Entry> entries = new ArrayList<>();
+        String longName = null;
+        int position = 0;
+        while (position + TAR_BLOCK_LENGTH <= size) {
+            ByteBuffer header = read(channel, position, TAR_BLOCK_LENGTH, file);
+            if (isZeroBlock(header))
+                break;
+            if (!isTarHeader(header))
+                throw new ArchiveException(file.getPath() + " has a broken tar header at byte " + position);
+
+            int length = (int) parseOctal(header, TAR_SIZE_OFFSET, TAR_SIZE_LENGTH);
+            int dataOffset = position + TAR_BLOCK_LENGTH;
+            if (dataOffset + (long) length > size)
+                throw new ArchiveException(file.getPath() + " is truncated");
+
+            byte type = header.get(TAR_TYPE_OFFSET);
+            if (type == TAR_TYPE_LONG_NAME) {
+                longName = trimNul(read(channel, dataOffset, length, file), 0, length);
+            } else {
+                if (type == TAR_TYPE_FILE || type == 0) {
+                    String name = longName != null ? longName : tarName(header);
+                    entries.add(new Entry(name, dataOffset, length, false));
+                }
+                longName = null;
+            }
+            position = dataOffset + (length + TAR_BLOCK_LENGTH - 1) / TAR_BLOCK_LENGTH * TAR_BLOCK_LENGTH;
+        }
+        return entries;
+    }
+
+    private static boolean isTarHeader(ByteBuffer header) {
+        // Header checksum is the sum of all bytes with the checksum field itself counted as spaces
+        long stored = parseOctal(header, TAR_CHECKSUM_OFFSET, TAR_CHECKSUM_LENGTH);
+        long sum = 0;
+        for (int i = 0; i < TAR_BLOCK_LENGTH; i++)
+            sum += i >= TAR_CHECKSUM_OFFSET && i < TAR_CHECKSUM_OFFSET + TAR_CHECKSUM_LENGTH ? ' ' : header.get(i) & 0xFF;
+        return stored == sum;
+    }
+
+    private static boolean isEmptyTar(FileChannel channel, int size, File file) throws IOException {
+        return size % TAR_BLOCK_LENGTH == 0 && size >= TAR_BLOCK_LENGTH && isZeroBlock(read(channel, 0, TAR_BLOCK_LENGTH, file));
+    }
+
+    private static boolean isZeroBlock(ByteBuffer block) {
+        for (int i = 0; i < block.limit(); i++)
+            if (block.get(i) != 0)
+                return false;
+        return true;
+    }
+
+    private static String tarName(ByteBuffer header) {
+        String name = trimNul(header, 0, TAR_NAME_LENGTH);
+        boolean ustar = header.get(TAR_MAGIC_OFFSET) == 'u' && header.get(TAR_MAGIC_OFFSET + 1) == 's' && header.get(TAR_MAGIC_OFFSET + 2) == 't';
+        String prefix = ustar ? trimNul(header, TAR_PREFIX_OFFSET, TAR_PREFIX_LENGTH) : "";
+        return prefix.isEmpty() ? name : prefix + "/" + name;
+    }
+
+    private static long parseOctal(ByteBuffer buffer, int offset, int length) {
+        long value = 0;
+        for (int i = offset; i < offset + length; i++) {
+            byte b = buffer.get(i);
+            if (b >= '0' && b <= '7')
+                value = value * 8 + (b - '0');
+            else if (b == 0 || (b == ' ' && value > 0))
+                break;
+        }
+        return value;
+    }
+
+    private static String trimNul(ByteBuffer buffer, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && buffer.get(end) != 0)
+            end++;
+        byte[] bytes = new byte[end - offset];
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = buffer.get(offset + i);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    //------------------------------------------------------------------------------------------------------------------
+
+
+
+    // Zip
+    //------------------------------------------------------------------------------------------------------------------
+    private static List<Entry> readZipEntries(FileChannel channel, int size, File file) throws IOException, ArchiveException {
+        // End of central directory record is at the very end, followed only by an optional comment
+        int tailLength = Math.min(size, ZIP_END_LENGTH + ZIP_MAX_COMMENT_LENGTH);
+        ByteBuffer tail = read(channel, size - tailLength, tailLength, file).order(ByteOrder.LITTLE_ENDIAN);
+        int end = -1;
+        for (int i = tailLength - ZIP_END_LENGTH; i >= 0 && end < 0; i--)
+            if (tail.getInt(i) == ZIP_END_SIGNATURE)
+                end = i;
+        if (end < 0)
+            throw new ArchiveException(file.getPath() + " has no zip central directory");
+
+        int numberOfEntries = tail.getShort(end + 10) & 0xFFFF;
+        long directoryLength = tail.getInt(end + 12) & 0xFFFFFFFFL;
+        long directoryOffset = tail.getInt(end + 16) & 0xFFFFFFFFL;
+        if (numberOfEntries == 0xFFFF || directoryOffset == 0xFFFFFFFFL)
+            throw new ArchiveException(file.getPath() + " is a zip64 file, which is not supported");
+
+        ByteBuffer directory = read(channel, (int) directoryOffset, (int) directoryLength, file).order(ByteOrder.LITTLE_ENDIAN);
+        List<Entry> entries = new ArrayList<>(numberOfEntries);
+        int position = 0;
+        for (int i = 0; i < numberOfEntries; i++) {
+            if (directory.getInt(position) != ZIP_CENTRAL_HEADER_SIGNATURE)
+                throw new ArchiveException(file.getPath() + " has a broken zip central directory");
+            int method = directory.getShort(position + 10) & 0xFFFF;
+            int compressedLength = directory.getInt(position + 20);
+            int nameLength = directory.getShort(position + 28) & 0xFFFF;
+            int extraLength = directory.getShort(position + 30) & 0xFFFF;
+            int commentLength = directory.getShort(position + 32) & 0xFFFF;
+            int localHeaderOffset = directory.getInt(position + 42);
+            String name = trimNul(directory, position + ZIP_CENTRAL_HEADER_LENGTH, nameLength);
+            position += ZIP_CENTRAL_HEADER_LENGTH + nameLength + extraLength + commentLength;
+
+            if (name.endsWith("/"))
+                continue;
+            if (method != ZIP_STORED && method != ZIP_DEFLATED)
+                throw new ArchiveException(name + " in " + file.getPath() + " uses zip method " + method + ", only stored and deflated entries are supported");
+
+            // Name and extra field of the local header may differ from the central directory, so the data offset is taken from the local header
+            ByteBuffer localHeader = read(channel, localHeaderOffset, ZIP_LOCAL_HEADER_LENGTH, file).order(ByteOrder.LITTLE_ENDIAN);
+            if (localHeader.getInt(0) != ZIP_LOCAL_HEADER_SIGNATURE)
+                throw new ArchiveException(file.getPath() + " has a broken zip local header for " + name);
+            int dataOffset = localHeaderOffset + ZIP_LOCAL_HEADER_LENGTH + (localHeader.getShort(26) & 0xFFFF) + (localHeader.getShort(28) & 0xFFFF);
+            if (dataOffset + (long) compressedLength > size)
+                throw new ArchiveException(file.getPath() + " is truncated");
+            entries.add(new Entry(name, dataOffset, compressedLength, method == ZIP_DEFLATED));
+        }
+        return entries;
+    }
+    //------------------------------------------------------------------------------------------------------------------
+
+
+
+    // Static helpers
+    //------------------------------------------------------------------------------------------------------------------
+    private static ByteBuffer read(FileChannel channel, long position, int length, File file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining())
+            if (channel.read(buffer, position + buffer.position()) < 0)
+                throw new IOException(file.getPath() + " is truncated");
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void closeQuietly(RandomAccessFile randomAccessFile) {
+        if (randomAccessFile == null)
+            return;
+        try {
+            randomAccessFile.close();
+        } catch (IOException ignored) {
+
+        }
+    }
+    //------------------------------------------------------------------------------------------------------------------
+
+
+
+    private static class Entry {
+        private final String name;
+        private final int offset;
+        private final int length;
+        private final boolean deflated;
+
+        private Entry(String name, int offset, int length, boolean deflated) {
+            this.name = name;
+            this.offset = offset;
+            this.length = length;
+            this.deflated = deflated;
+        }
+    }
+
+    /**
+     * Input stream over a byte buffer, reads move only the position of this buffer, which is a private slice
+     */
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] destination, int offset, int length) {
+            if (length == 0)
+                return 0;
+            if (!buffer.hasRemaining())
+                return -1;
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(destination, offset, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+
+        @Override
+        public long skip(long n) {
+            int count = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + count);
+            return count;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.tekleo.image_classifier.dataset.archive;
+
+/**
+ * Container format of shards written by {@link ShardWriter}, {@link ShardFile} reads both
+ */
+public enum ShardFormat {
+    /**
+     * Uncompressed ustar, entries are 512 byte aligned, the simplest to stream and to slice
+     */
+    TAR(".tar"),
+
+    /**
+     * Zip with stored (uncompressed) entries, images are already compressed, so deflating them again only costs time when reading
+     */
+    ZIP(".zip");
+
+    private final String extension;
+
+    ShardFormat(String extension) {
+        this.extension = extension;
+    }
+
+    /**
+     * @return file extension with the dot
+     */
+    public String getExtension() {
+        return extension;
+    }
+}
@@ -0,0 +1,226 @@
+package com.tekleo.image_classifier.dataset.archive;
+
+import com.tekleo.image_classifier.dataset.index.IndexEntry;
+import com.tekleo.image_classifier.dataset.index.IndexSplit;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Packs loose image files into shards that {@link ShardExampleSource} reads, so a data set is a handful of big files instead of one file per image
+ *
+ * Shards of a split are named SPLIT-00000.tar, SPLIT-00001.tar and so on (or .zip), images are stored in the order of the split,
+ * under their path relative to the image directory, so the directory of every image is still its label
+ * Every shard is written to a temporary file first and moved into place, and old shards of the split are deleted only after all new ones are written
+ */
+public class ShardWriter {
+    public static final String TRAIN_SPLIT = "train";
+    public static final String TEST_SPLIT = "test";
+    public static final String VALIDATION_SPLIT = "validation";
+    private static final String SHARD_NAME_FORMAT = "%s-%05d%s";
+    private static final String TEMPORARY_FILE_EXTENSION = ".tmp";
+    private static final int TAR_BLOCK_LENGTH = 512;
+    private static final int TAR_NAME_LENGTH = 100;
+    private static final int TAR_PREFIX_LENGTH = 155;
+    private static final String TAR_LONG_NAME_ENTRY = "././@LongLink";
+
+    /**
+     * Write train, test and (if it isn't empty) validation images of a split into shards
+     * @param split split of an index
+     * @param directory directory for the shards, created if missing
+     * @param imagesPerShard images in every shard but the last one of a split
+     * @param format container format
+     * @return all written shards
+     * @throws ArchiveException if an image can't be read or a shard can't be written
+     */
+    public static List<File> write(IndexSplit split, File directory, int imagesPerShard, ShardFormat format) throws ArchiveException {
+        File root = split.getIndex().getRoot();
+        List<File> shards = new ArrayList<>();
+        shards.addAll(write(root, split.getTrain(), directory, TRAIN_SPLIT, imagesPerShard, format));
+        shards.addAll(write(root, split.getTest(), directory, TEST_SPLIT, imagesPerShard, format));
+        if (!split.getValidation().isEmpty())
+            shards.addAll(write(root, split.getValidation(), directory, VALIDATION_SPLIT, imagesPerShard, format));
+        return shards;
+    }
+
+    /**
+     * Write images into the shards of one split, replacing the old shards of that split
+     * @param root image directory the entries are relative to
+     * @param entries images in the order they should be stored
+     * @param directory directory for the shards, created if missing
+     * @param split split name, prefix of the shard file names
+     * @param imagesPerShard images in every shard but the last one
+     * @param format container format
+     * @return written shards in order
+     * @throws ArchiveException if an image can't be read or a shard can't be written
+     */
+    public static List<File> write(File root, List<IndexEntry> entries, File directory, String split, int imagesPerShard, ShardFormat format) throws ArchiveException {
+        if (imagesPerShard < 1)
+            throw new IllegalArgumentException("Images per shard must be positive, got " + imagesPerShard);
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new ArchiveException("Can't create " + directory.getPath());
+
+        List<File> oldShards = listShards(directory, split);
+        List<File> shards = new ArrayList<>();
+        try {
+            for (int first = 0, shard = 0; first < entries.size(); first += imagesPerShard, shard++) {
+                File shardFile = new File(directory, String.format(Locale.ROOT, SHARD_NAME_FORMAT, split, shard, format.getExtension()));
+                File temporaryFile = new File(directory, shardFile.getName() + TEMPORARY_FILE_EXTENSION);
+                List<IndexEntry> shardEntries = entries.subList(first, Math.min(entries.size(), first + imagesPerShard));
+                if (format == ShardFormat.TAR)
+                    writeTar(root, shardEntries, temporaryFile);
+                else
+                    writeZip(root, shardEntries, temporaryFile);
+                oldShards.remove(shardFile);
+                Files.move(temporaryFile.toPath(), shardFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                shards.add(shardFile);
+            }
+            for (File oldShard : oldShards)
+                Files.deleteIfExists(oldShard.toPath());
+        } catch (IOException e) {
+            throw new ArchiveException("Can't write " + split + " shards into " + directory.getPath(), e);
+        }
+        return shards;
+    }
+
+    /**
+     * @param directory directory with shards
+     * @param split split name
+     * @return tar and zip shards of the split, sorted by name, empty if there are none
+     */
+    public static List<File> listShards(File directory, String split) {
+        List<File> shards = new ArrayList<>();
+        File[] children = directory.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                String name = child.getName();
+                if (child.isFile() && name.startsWith(split + "-") && (name.endsWith(ShardFormat.TAR.getExtension()) || name.endsWith(ShardFormat.ZIP.getExtension())))
+                    shards.add(child);
+            }
+        }
+        shards.sort((a, b) -> a.getName().compareTo(b.getName()));
+        return shards;
+    }
+
+
+
+    // Tar
+    //------------------------------------------------------------------------------------------------------------------
+    private static void writeTar(File root, List<IndexEntry> entries, File file) throws IOException {
+        try (OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(file))) {
+            for (IndexEntry entry : entries) {
+                byte[] content = Files.readAllBytes(entry.getFile(root).toPath());
+                byte[] name = entry.getRelativePath().getBytes(StandardCharsets.UTF_8);
+                if (name.length > TAR_NAME_LENGTH && prefixSplit(name) < 0) {
+                    // GNU long name: an extra entry holding the name comes right before the file
+                    byte[] longName = new byte[name.length + 1];
+                    System.arraycopy(name, 0, longName, 0, name.length);
+                    outputStream.write(tarHeader(TAR_LONG_NAME_ENTRY.getBytes(StandardCharsets.US_ASCII), longName.length, (byte) 'L', entry.getLastModified()));
+                    writePadded(outputStream, longName);
+                    name = trim(name, TAR_NAME_LENGTH);
+                }
+                outputStream.write(tarHeader(name, content.length, (byte) '0', entry.getLastModified()));
+                writePadded(outputStream, content);
+            }
+            // End of archive is two zero blocks
+            outputStream.write(new byte[2 * TAR_BLOCK_LENGTH]);
+        }
+    }
+
+    // Field offsets: name 0, mode 100, uid 108, gid 116, size 124, mtime 136, checksum 148, type 156, magic and version 257, prefix 345
+    private static byte[] tarHeader(byte[] name, long size, byte type, long lastModified) {
+        byte[] header = new byte[TAR_BLOCK_LENGTH];
+        int split = name.length > TAR_NAME_LENGTH ? prefixSplit(name) : -1;
+        if (split >= 0) {
+            System.arraycopy(name, split + 1, header, 0, name.length - split - 1);
+            System.arraycopy(name, 0, header, 345, split);
+        } else {
+            System.arraycopy(name, 0, header, 0, Math.min(name.length, TAR_NAME_LENGTH));
+        }
+        putOctal(header, 100, 8, 0644);
+        putOctal(header, 108, 8, 0);
+        putOctal(header, 116, 8, 0);
+        putOctal(header, 124, 12, size);
+        putOctal(header, 136, 12, lastModified / 1000);
+        header[156] = type;
+        System.arraycopy("ustar\u000000".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 8);
+
+        // Checksum is computed with its own field filled with spaces, then stored as 6 octal digits, NUL and space
+        for (int i = 148; i < 156; i++)
+            header[i] = ' ';
+        long checksum = 0;
+        for (byte b : header)
+            checksum += b & 0xFF;
+        putOctal(header, 148, 7, checksum);
+        header[155] = ' ';
+        return header;
+    }
+
+    // Position of the '/' that splits a long name into a ustar prefix and name, -1 if there is none
+    private static int prefixSplit(byte[] name) {
+        for (int i = Math.min(name.length - 1, TAR_PREFIX_LENGTH); i > 0; i--)
+            if (name[i] == '/' && name.length - i - 1 <= TAR_NAME_LENGTH)
+                return i;
+        return -1;
+    }
+
+    // Octal digits padded with zeros, followed by NUL
+    private static void putOctal(byte[] header, int offset, int length, long value) {
+        String digits = Long.toOctalString(value);
+        for (int i = 0; i < length - 1; i++) {
+            int digit = digits.length() - (length - 1 - i);
+            header[offset + i] = (byte) (digit >= 0 ? digits.charAt(digit) : '0');
+        }
+        header[offset + length - 1] = 0;
+    }
+
+    private static void writePadded(OutputStream outputStream, byte[] content) throws IOException {
+        outputStream.write(content);
+        int padding = (TAR_BLOCK_LENGTH - content.length % TAR_BLOCK_LENGTH) % TAR_BLOCK_LENGTH;
+        outputStream.write(new byte[padding]);
+    }
+
+    private static byte[] trim(byte[] bytes, int length) {
+        byte[] trimmed = new byte[length];
+        System.arraycopy(bytes, 0, trimmed, 0, length);
+        return trimmed;
+    }
+    //------------------------------------------------------------------------------------------------------------------
+
+
+
+    // Zip
+    //------------------------------------------------------------------------------------------------------------------
+    private static void writeZip(File root, List<IndexEntry> entries, File file) throws IOException {
+        try (ZipOutputStream outputStream = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            outputStream.setMethod(ZipOutputStream.STORED);
+            for (IndexEntry entry : entries) {
+                byte[] content = Files.readAllBytes(entry.getFile(root).toPath());
+                CRC32 crc = new CRC32();
+                crc.update(content);
+                ZipEntry zipEntry = new ZipEntry(entry.getRelativePath());
+                zipEntry.setMethod(ZipEntry.STORED);
+                zipEntry.setSize(content.length);
+                zipEntry.setCompressedSize(content.length);
+                zipEntry.setCrc(crc.getValue());
+                zipEntry.setTime(entry.getLastModified());
+                outputStream.putNextEntry(zipEntry);
+                outputStream.write(content);
+                outputStream.closeEntry();
+            }
+        }
+    }
+    //------------------------------------------------------------------------------------------------------------------
+}
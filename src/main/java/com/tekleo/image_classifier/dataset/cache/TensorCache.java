@@ -0,0 +1,236 @@
+package com.tekleo.image_classifier.dataset.cache;
+
+import com.tekleo.image_classifier.dataset.index.DatasetIndex;
+import com.tekleo.image_classifier.dataset.index.IndexEntry;
+import org.datavec.api.io.labels.PathLabelGenerator;
+import org.datavec.api.split.InputSplit;
+import org.datavec.api.writable.NDArrayWritable;
+import org.datavec.api.writable.Writable;
+import org.datavec.image.recordreader.ImageRecordReader;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Builds and validates binary tensor caches of decoded images
+ *
+ * Each cache is a pair of files in the cache directory:
+ *  NAME.bin - decoded uint8 pixels and labels, see {@link TensorCacheFile} for the layout
+ *  NAME.manifest - properties with a fingerprint of the input split (file list in order, sizes and modification times) and image dimensions
+ *
+ * The cache is reused only if the manifest fingerprint matches the current input split, otherwise it is rebuilt
+ * Both files are written to temporary files first and then moved into place, the manifest goes last, so an interrupted build is never picked up
+ */
+public class TensorCache {
+    private static final String TENSOR_FILE_EXTENSION = ".bin";
+    private static final String MANIFEST_FILE_EXTENSION = ".manifest";
+    private static final String TEMPORARY_FILE_EXTENSION = ".tmp";
+    private static final String MANIFEST_KEY_VERSION = "version";
+    private static final String MANIFEST_KEY_FINGERPRINT = "fingerprint";
+    private static final String MANIFEST_KEY_EXAMPLES = "examples";
+    private static final String MANIFEST_KEY_LABELS = "labels";
+    private static final String LABELS_SEPARATOR = ",";
+    private static final int MAX_CLASSES = 256;
+
+    /**
+     * Open the cache for given input split, rebuild it if it is missing or stale
+     * @param cacheDirectory directory to keep cache files in, created if missing
+     * @param cacheName base name of cache files
+     * @param inputSplit images to cache, order of images in the cache matches order of this split
+     * @param height image height
+     * @param width image width
+     * @param channels image channels
+     * @param labelGenerator label generator used to label images
+     * @return mapped cache file
+     * @throws TensorCacheException if the cache can't be built or read
+     */
+    public static TensorCacheFile open(File cacheDirectory, String cacheName, InputSplit inputSplit, int height, int width, int channels, PathLabelGenerator labelGenerator) throws TensorCacheException {
+        return open(cacheDirectory, cacheName, inputSplit, fingerprint(inputSplit, height, width, channels), height, width, channels, labelGenerator);
+    }
+
+    /**
+     * Same as {@link #open(File, String, InputSplit, int, int, int, PathLabelGenerator)} for images of a dataset index,
+     * the fingerprint is made from sizes and modification times kept in the index, so checking a cache doesn't touch the image files
+     * @param cacheDirectory directory to keep cache files in, created if missing
+     * @param cacheName base name of cache files
+     * @param index index the entries belong to
+     * @param entries images to cache, for example one part of a split, order of images in the cache matches this list
+     * @param height image height
+     * @param width image width
+     * @param channels image channels
+     * @param labelGenerator label generator used to label images
+     * @return mapped cache file
+     * @throws TensorCacheException if the cache can't be built or read
+     */
+    public static TensorCacheFile open(File cacheDirectory, String cacheName, DatasetIndex index, List<IndexEntry> entries, int height, int width, int channels, PathLabelGenerator labelGenerator) throws TensorCacheException {
+        return open(cacheDirectory, cacheName, index.toInputSplit(entries), fingerprint(index, entries, height, width, channels), height, width, channels, labelGenerator);
+    }
+
+    private static TensorCacheFile open(File cacheDirectory, String cacheName, InputSplit inputSplit, String fingerprint, int height, int width, int channels, PathLabelGenerator labelGenerator) throws TensorCacheException {
+        File tensorFile = new File(cacheDirectory, cacheName + TENSOR_FILE_EXTENSION);
+        File manifestFile = new File(cacheDirectory, cacheName + MANIFEST_FILE_EXTENSION);
+
+        Properties manifest = readManifest(manifestFile);
+        if (!isFresh(manifest, tensorFile, fingerprint)) {
+            System.out.println("Building tensor cache " + tensorFile.getPath());
+            manifest = build(cacheDirectory, tensorFile, manifestFile, fingerprint, inputSplit, height, width, channels, labelGenerator);
+        }
+
+        return TensorCacheFile.open(tensorFile, readLabels(manifest));
+    }
+
+
+
+    // Static helpers
+    //------------------------------------------------------------------------------------------------------------------
+    /**
+     * Hash of the file list in split order, with each file's size and modification time, plus target dimensions
+     */
+    private static String fingerprint(InputSplit inputSplit, int height, int width, int channels) throws TensorCacheException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update((TensorCacheFile.VERSION + ":" + height + "x" + width + "x" + channels + "\n").getBytes(StandardCharsets.UTF_8));
+            for (URI location : inputSplit.locations()) {
+                File file = new File(location);
+                digest.update((file.getPath() + "|" + file.length() + "|" + file.lastModified() + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+            return hex(digest.digest());
+        } catch (Exception e) {
+            throw new TensorCacheException("Exception: ", e);
+        }
+    }
+
+    /**
+     * Same hash as above, with sizes and modification times taken from the index
+     */
+    private static String fingerprint(DatasetIndex index, List<IndexEntry> entries, int height, int width, int channels) throws TensorCacheException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update((TensorCacheFile.VERSION + ":" + height + "x" + width + "x" + channels + "\n").getBytes(StandardCharsets.UTF_8));
+            for (IndexEntry entry : entries)
+                digest.update((entry.getFile(index.getRoot()).getPath() + "|" + entry.getSize() + "|" + entry.getLastModified() + "\n").getBytes(StandardCharsets.UTF_8));
+            return hex(digest.digest());
+        } catch (Exception e) {
+            throw new TensorCacheException("Exception: ", e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes)
+            hex.append(String.format("%02x", b));
+        return hex.toString();
+    }
+
+    private static Properties readManifest(File manifestFile) throws TensorCacheException {
+        Properties manifest = new Properties();
+        if (!manifestFile.isFile())
+            return manifest;
+
+        try (InputStream inputStream = new FileInputStream(manifestFile)) {
+            manifest.load(inputStream);
+            return manifest;
+        } catch (Exception e) {
+            throw new TensorCacheException("Exception: ", e);
+        }
+    }
+
+    private static boolean isFresh(Properties manifest, File tensorFile, String fingerprint) {
+        return tensorFile.isFile()
+                && String.valueOf(TensorCacheFile.VERSION).equals(manifest.getProperty(MANIFEST_KEY_VERSION))
+                && fingerprint.equals(manifest.getProperty(MANIFEST_KEY_FINGERPRINT))
+                && manifest.getProperty(MANIFEST_KEY_LABELS) != null;
+    }
+
+    private static List<String> readLabels(Properties manifest) {
+        String labels = manifest.getProperty(MANIFEST_KEY_LABELS);
+        return labels.isEmpty() ? new ArrayList<>() : Arrays.asList(labels.split(LABELS_SEPARATOR));
+    }
+
+    /**
+     * Decode all images of the split with the same {@link ImageRecordReader} the regular pipeline uses, and write them as uint8
+     */
+    private static Properties build(File cacheDirectory, File tensorFile, File manifestFile, String fingerprint, InputSplit inputSplit, int height, int width, int channels, PathLabelGenerator labelGenerator) throws TensorCacheException {
+        if (!cacheDirectory.isDirectory() && !cacheDirectory.mkdirs())
+            throw new TensorCacheException("Failed to create " + cacheDirectory.getPath());
+
+        File temporaryTensorFile = new File(cacheDirectory, tensorFile.getName() + TEMPORARY_FILE_EXTENSION);
+        File temporaryManifestFile = new File(cacheDirectory, manifestFile.getName() + TEMPORARY_FILE_EXTENSION);
+        try {
+            ImageRecordReader imageRecordReader = new ImageRecordReader(height, width, channels, labelGenerator);
+            imageRecordReader.initialize(inputSplit);
+            List<String> labels = imageRecordReader.getLabels();
+            if (labels.size() > MAX_CLASSES)
+                throw new TensorCacheException("Tensor cache supports at most " + MAX_CLASSES + " classes, got " + labels.size());
+
+            int numberOfExamples = inputSplit.locations().length;
+            int exampleLength = channels * height * width;
+            byte[] pixels = new byte[exampleLength];
+            byte[] labelIndices = new byte[numberOfExamples];
+
+            try (DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryTensorFile), 1 << 20))) {
+                outputStream.writeInt(TensorCacheFile.MAGIC);
+                outputStream.writeInt(TensorCacheFile.VERSION);
+                outputStream.writeInt(numberOfExamples);
+                outputStream.writeInt(channels);
+                outputStream.writeInt(height);
+                outputStream.writeInt(width);
+                outputStream.writeInt(labels.size());
+                outputStream.writeInt(0);
+
+                int written = 0;
+                while (imageRecordReader.hasNext()) {
+                    if (written == numberOfExamples)
+                        throw new TensorCacheException("Record reader returned more images than the split has");
+
+                    List<Writable> record = imageRecordReader.next();
+                    float[] values = ((NDArrayWritable) record.get(0)).get().dup('c').data().asFloat();
+                    for (int i = 0; i < exampleLength; i++)
+                        pixels[i] = (byte) Math.max(0, Math.min(255, Math.round(values[i])));
+                    outputStream.write(pixels);
+                    labelIndices[written++] = (byte) record.get(1).toInt();
+                }
+
+                if (written != numberOfExamples)
+                    throw new TensorCacheException("Record reader returned " + written + " images, expected " + numberOfExamples);
+                outputStream.write(labelIndices);
+            }
+
+            Properties manifest = new Properties();
+            manifest.setProperty(MANIFEST_KEY_VERSION, String.valueOf(TensorCacheFile.VERSION));
+            manifest.setProperty(MANIFEST_KEY_FINGERPRINT, fingerprint);
+            manifest.setProperty(MANIFEST_KEY_EXAMPLES, String.valueOf(numberOfExamples));
+            manifest.setProperty(MANIFEST_KEY_LABELS, String.join(LABELS_SEPARATOR, labels));
+            try (OutputStream outputStream = new FileOutputStream(temporaryManifestFile)) {
+                manifest.store(outputStream, "Tensor cache manifest, do not edit");
+            }
+
+            manifestFile.delete();
+            Files.move(temporaryTensorFile.toPath(), tensorFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.move(temporaryManifestFile.toPath(), manifestFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return manifest;
+        } catch (TensorCacheException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new TensorCacheException("Exception: ", e);
+        } finally {
+            temporaryTensorFile.delete();
+            temporaryManifestFile.delete();
+        }
+    }
+    //------------------------------------------------------------------------------------------------------------------
+}
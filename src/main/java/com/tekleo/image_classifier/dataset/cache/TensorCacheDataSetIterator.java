@@ -0,0 +1,176 @@
+package com.tekleo.image_classifier.dataset.cache;
+
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.DataSetPreProcessor;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Data set iterator over a memory-mapped {@link TensorCacheFile}
+ * Produces exactly the same batches as a RecordReaderDataSetIterator over the cached split, without decoding any image
+ *
+ * Pixels can be scaled right while they are converted from uint8, through a 256 entry lookup table,
+ * this gives the same result as ImagePreProcessingScaler without a second pass over every batch
+ *
+ * An iterator can also go over a subset of the cache (for example one cross-validation fold), several such iterators
+ * read the same mapped file, so the images are decoded and kept in memory once for all of them
+ */
+public class TensorCacheDataSetIterator implements DataSetIterator {
+    private static final int MAX_PIXEL_VALUE = 255;
+
+    private final TensorCacheFile tensorCacheFile;
+    private final int[] examples;
+    private final int batchSize;
+    private final int[] imageShape;
+    private final byte[] pixels;
+    private final float[] pixelValues;
+    private DataSetPreProcessor preProcessor;
+    private int cursor;
+
+    /**
+     * Iterator with raw pixel values in 0..255 range
+     * @param tensorCacheFile cache to read from
+     * @param batchSize batch size
+     */
+    public TensorCacheDataSetIterator(TensorCacheFile tensorCacheFile, int batchSize) {
+        this(tensorCacheFile, batchSize, 0, MAX_PIXEL_VALUE);
+    }
+
+    /**
+     * Iterator with pixel values linearly scaled from 0..255 into min..max range
+     * @param tensorCacheFile cache to read from
+     * @param batchSize batch size
+     * @param min value of a 0 pixel
+     * @param max value of a 255 pixel
+     */
+    public TensorCacheDataSetIterator(TensorCacheFile tensorCacheFile, int batchSize, double min, double max) {
+        this(tensorCacheFile, null, batchSize, min, max);
+    }
+
+    /**
+     * Iterator over a subset of the cache, with pixel values linearly scaled from 0..255 into min..max range
+     * @param tensorCacheFile cache to read from
+     * @param examples indices of images in the cache, in the order they are returned, null for all images
+     * @param batchSize batch size
+     * @param min value of a 0 pixel
+     * @param max value of a 255 pixel
+     */
+    public TensorCacheDataSetIterator(TensorCacheFile tensorCacheFile, int[] examples, int batchSize, double min, double max) {
+        this.tensorCacheFile = tensorCacheFile;
+        this.examples = examples;
+        this.batchSize = batchSize;
+        this.imageShape = new int[] {tensorCacheFile.getChannels(), tensorCacheFile.getHeight(), tensorCacheFile.getWidth()};
+        this.pixels = new byte[tensorCacheFile.getExampleLength()];
+        this.pixelValues = new float[MAX_PIXEL_VALUE + 1];
+        for (int i = 0; i <= MAX_PIXEL_VALUE; i++)
+            pixelValues[i] = (float) (min + (max - min) * i / MAX_PIXEL_VALUE);
+        this.cursor = 0;
+    }
+
+    @Override
+    public DataSet next(int num) {
+        if (!hasNext())
+            throw new NoSuchElementException();
+
+        int count = Math.min(num, totalExamples() - cursor);
+        int exampleLength = tensorCacheFile.getExampleLength();
+        int numberOfClasses = tensorCacheFile.getNumberOfClasses();
+        float[] features = new float[count * exampleLength];
+        float[] labels = new float[count * numberOfClasses];
+
+        for (int i = 0; i < count; i++) {
+            int example = examples == null ? cursor + i : examples[cursor + i];
+            tensorCacheFile.readPixels(example, pixels, 0);
+            int offset = i * exampleLength;
+            for (int j = 0; j < exampleLength; j++)
+                features[offset + j] = pixelValues[pixels[j] & 0xFF];
+            labels[i * numberOfClasses + tensorCacheFile.getLabel(example)] = 1;
+        }
+        cursor += count;
+
+        DataSet dataSet = new DataSet(
+                Nd4j.create(features, new int[] {count, imageShape[0], imageShape[1], imageShape[2]}),
+                Nd4j.create(labels, new int[] {count, numberOfClasses}));
+        if (preProcessor != null)
+            preProcessor.preProcess(dataSet);
+        return dataSet;
+    }
+
+    @Override
+    public DataSet next() {
+        return next(batchSize);
+    }
+
+    @Override
+    public boolean hasNext() {
+        return cursor < totalExamples();
+    }
+
+    @Override
+    public int totalExamples() {
+        return examples == null ? tensorCacheFile.getNumberOfExamples() : examples.length;
+    }
+
+    @Override
+    public int inputColumns() {
+        return tensorCacheFile.getExampleLength();
+    }
+
+    @Override
+    public int totalOutcomes() {
+        return tensorCacheFile.getNumberOfClasses();
+    }
+
+    @Override
+    public boolean resetSupported() {
+        return true;
+    }
+
+    @Override
+    public boolean asyncSupported() {
+        return true;
+    }
+
+    @Override
+    public void reset() {
+        cursor = 0;
+    }
+
+    @Override
+    public int batch() {
+        return batchSize;
+    }
+
+    @Override
+    public int cursor() {
+        return cursor;
+    }
+
+    @Override
+    public int numExamples() {
+        return totalExamples();
+    }
+
+    @Override
+    public void setPreProcessor(DataSetPreProcessor preProcessor) {
+        this.preProcessor = preProcessor;
+    }
+
+    @Override
+    public DataSetPreProcessor getPreProcessor() {
+        return preProcessor;
+    }
+
+    @Override
+    public List<String> getLabels() {
+        return tensorCacheFile.getLabels();
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -0,0 +1,26 @@
+package com.tekleo.image_classifier.dataset.cache;
+
+/**
+ * Exception to be used when building or reading a binary tensor cache
+ */
+public class TensorCacheException extends Exception {
+    public TensorCacheException() {
+
+    }
+
+    public TensorCacheException(String message) {
+        super(message);
+    }
+
+    public TensorCacheException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public TensorCacheException(Throwable cause) {
+        super(cause);
+    }
+
+    public TensorCacheException(String message, Throwable cause, boolean enableSuppression, boolean writableStackTrace) {
+        super(message, cause, enableSuppression, writableStackTrace);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,211 @@
+package com.tekleo.image_classifier.dataset.cache;
+
+import com.tekleo.image_classifier.dataset.pipeline.ExampleSource;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Read-only view of a binary tensor cache file, the file is memory-mapped so pages are loaded lazily by the OS and shared between runs
+ *
+ * File layout (big-endian):
+ *  HEADER: magic, version, examples, channels, height, width, classes, reserved (8 ints, 32 bytes)
+ *  PIXELS: examples x channels x height x width unsigned bytes, each image stored in the same CHW order as ImageRecordReader produces it
+ *  LABELS: examples unsigned bytes, index of the label in {@link #getLabels()}
+ *
+ * Pixel data can exceed 2 GB for big directories, so it is mapped in several regions, each region holds a whole number of images
+ */
+public class TensorCacheFile implements ExampleSource, AutoCloseable {
+    static final int MAGIC = 0x43464331;
+    static final int VERSION = 1;
+    static final int HEADER_LENGTH = 32;
+
+    private final File file;
+    private final RandomAccessFile randomAccessFile;
+    private final FileChannel fileChannel;
+    private final int numberOfExamples;
+    private final int channels;
+    private final int height;
+    private final int width;
+    private final int exampleLength;
+    private final int examplesPerRegion;
+    private final MappedByteBuffer[] pixelRegions;
+    private final byte[] labelIndices;
+    private final List<String> labels;
+
+    private TensorCacheFile(File file, RandomAccessFile randomAccessFile, FileChannel fileChannel, int numberOfExamples, int channels, int height, int width, MappedByteBuffer[] pixelRegions, int examplesPerRegion, byte[] labelIndices, List<String> labels) {
+        this.file = file;
+        this.randomAccessFile = randomAccessFile;
+        this.fileChannel = fileChannel;
+        this.numberOfExamples = numberOfExamples;
+        this.channels = channels;
+        this.height = height;
+        this.width = width;
+        this.exampleLength = channels * height * width;
+        this.pixelRegions = pixelRegions;
+        this.examplesPerRegion = examplesPerRegion;
+        this.labelIndices = labelIndices;
+        this.labels = Collections.unmodifiableList(new ArrayList<>(labels));
+    }
+
+    /**
+     * Map an existing cache file
+     * @param file tensor file
+     * @param labels label names, in the same order as label indices in the file
+     * @return mapped file
+     * @throws TensorCacheException if the file is missing, truncated or has a wrong header
+     */
+    public static TensorCacheFile open(File file, List<String> labels) throws TensorCacheException {
+        RandomAccessFile randomAccessFile = null;
+        try {
+            randomAccessFile = new RandomAccessFile(file, "r");
+            FileChannel fileChannel = randomAccessFile.getChannel();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+            while (header.hasRemaining())
+                if (fileChannel.read(header, header.position()) < 0)
+                    throw new TensorCacheException(file.getPath() + " is truncated");
+            header.flip();
+
+            if (header.getInt() != MAGIC)
+                throw new TensorCacheException(file.getPath() + " is not a tensor cache file");
+            if (header.getInt() != VERSION)
+                throw new TensorCacheException(file.getPath() + " has unsupported version");
+
+            int numberOfExamples = header.getInt();
+            int channels = header.getInt();
+            int height = header.getInt();
+            int width = header.getInt();
+            int numberOfClasses = header.getInt();
+            if (numberOfClasses != labels.size())
+                throw new TensorCacheException(file.getPath() + " has " + numberOfClasses + " classes, but " + labels.size() + " labels were given");
+
+            long exampleLength = (long) channels * height * width;
+            long pixelsLength = exampleLength * numberOfExamples;
+            if (fileChannel.size() != HEADER_LENGTH + pixelsLength + numberOfExamples)
+                throw new TensorCacheException(file.getPath() + " has wrong size");
+
+            // Map pixels in regions holding a whole number of images
+            int examplesPerRegion = (int) Math.max(1, Integer.MAX_VALUE / exampleLength);
+            int numberOfRegions = (numberOfExamples + examplesPerRegion - 1) / examplesPerRegion;
+            MappedByteBuffer[] pixelRegions = new MappedByteBuffer[numberOfRegions];
+            for (int i = 0; i < numberOfRegions; i++) {
+                long regionStart = HEADER_LENGTH + i * examplesPerRegion * exampleLength;
+                long regionExamples = Math.min(examplesPerRegion, numberOfExamples - (long) i * examplesPerRegion);
+                pixelRegions[i] = fileChannel.map(FileChannel.MapMode.READ_ONLY, regionStart, regionExamples * exampleLength);
+            }
+
+            // Labels are tiny, keep them on heap
+            ByteBuffer labelBuffer = fileChannel.map(FileChannel.MapMode.READ_ONLY, HEADER_LENGTH + pixelsLength, numberOfExamples);
+            byte[] labelIndices = new byte[numberOfExamples];
+            labelBuffer.get(labelIndices);
+
+            return new TensorCacheFile(file, randomAccessFile, fileChannel, numberOfExamples, channels, height, width, pixelRegions, examplesPerRegion, labelIndices, labels);
+        } catch (TensorCacheException e) {
+            closeQuietly(randomAccessFile);
+            throw e;
+        } catch (Exception e) {
+            closeQuietly(randomAccessFile);
+            throw new TensorCacheException("Exception: ", e);
+        }
+    }
+
+
+
+    // Getters
+    //------------------------------------------------------------------------------------------------------------------
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public int getNumberOfExamples() {
+        return numberOfExamples;
+    }
+
+    @Override
+    public int getChannels() {
+        return channels;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getExampleLength() {
+        return exampleLength;
+    }
+
+    public int getNumberOfClasses() {
+        return labels.size();
+    }
+
+    @Override
+    public List<String> getLabels() {
+        return labels;
+    }
+    //------------------------------------------------------------------------------------------------------------------
+
+
+
+    // Reading
+    //------------------------------------------------------------------------------------------------------------------
+    /**
+     * Copy raw pixels of one image, safe to call from several threads at once
+     * @param index index of the image
+     * @param destination array to copy into
+     * @param destinationOffset position in destination where the image starts
+     */
+    @Override
+    public void readPixels(int index, byte[] destination, int destinationOffset) {
+        ByteBuffer region = pixelRegions[index / examplesPerRegion].duplicate();
+        region.position((index % examplesPerRegion) * exampleLength);
+        region.get(destination, destinationOffset, exampleLength);
+    }
+
+    /**
+     * Label index of one image
+     * @param index index of the image
+     * @return index of the label in {@link #getLabels()}
+     */
+    @Override
+    public int getLabel(int index) {
+        return labelIndices[index] & 0xFF;
+    }
+
+    @Override
+    public void close() throws IOException {
+        fileChannel.close();
+        randomAccessFile.close();
+    }
+    //------------------------------------------------------------------------------------------------------------------
+
+
+
+    // Static helpers
+    //------------------------------------------------------------------------------------------------------------------
+    private static void closeQuietly(RandomAccessFile randomAccessFile) {
+        if (randomAccessFile == null)
+            return;
+        try {
+            randomAccessFile.close();
+        } catch (IOException ignored) {
+
+        }
+    }
+    //------------------------------------------------------------------------------------------------------------------
+}
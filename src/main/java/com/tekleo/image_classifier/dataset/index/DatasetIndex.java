@@ -0,0 +1,211 @@
+package com.tekleo.image_classifier.dataset.index;
+
+import org.datavec.api.split.CollectionInputSplit;
+import org.datavec.api.split.InputSplit;
+
+import java.io.File;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Index of all images under a root directory, built and kept up to date by {@link DirectoryScanner}
+ *
+ * Entries are sorted by path, so splits made with the same seed are the same on every machine and every run,
+ * no matter in which order the file system lists directories
+ * Splits are stratified, every label is split on its own, so train, test and every fold keep the label proportions of the whole index
+ *
+ * Immutable object
+ */
+public class DatasetIndex {
+    private final File root;
+    private final List<String> extensions;
+    private final List<IndexedDirectory> directories;
+    private final List<IndexEntry> entries;
+    private final List<String> labels;
+
+    DatasetIndex(File root, List<String> extensions, List<IndexedDirectory> directories) {
+        List<IndexedDirectory> sortedDirectories = new ArrayList<>(directories);
+        sortedDirectories.sort(Comparator.comparing(IndexedDirectory::getRelativePath));
+        List<IndexEntry> allEntries = new ArrayList<>();
+        TreeSet<String> uniqueLabels = new TreeSet<>();
+        for (IndexedDirectory directory : sortedDirectories) {
+            allEntries.addAll(directory.getFiles());
+            if (!directory.getFiles().isEmpty())
+                uniqueLabels.add(directory.getFiles().get(0).getLabel());
+        }
+        allEntries.sort(Comparator.comparing(IndexEntry::getRelativePath));
+
+        this.root = root;
+        this.extensions = Collections.unmodifiableList(new ArrayList<>(extensions));
+        this.directories = Collections.unmodifiableList(sortedDirectories);
+        this.entries = Collections.unmodifiableList(allEntries);
+        this.labels = Collections.unmodifiableList(new ArrayList<>(uniqueLabels));
+    }
+
+
+
+    // Getters
+    //------------------------------------------------------------------------------------------------------------------
+    public File getRoot() {
+        return root;
+    }
+
+    public List<String> getExtensions() {
+        return extensions;
+    }
+
+    public List<IndexEntry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * @return sorted labels, in the same order ImageRecordReader and the tensor cache number them
+     */
+    public List<String> getLabels() {
+        return labels;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long getTotalBytes() {
+        long bytes = 0;
+        for (IndexEntry entry : entries)
+            bytes += entry.getSize();
+        return bytes;
+    }
+
+    /**
+     * @return number of images of every label, sorted by label
+     */
+    public Map<String, Integer> countByLabel() {
+        Map<String, Integer> counts = new TreeMap<>();
+        for (IndexEntry entry : entries)
+            counts.merge(entry.getLabel(), 1, Integer::sum);
+        return counts;
+    }
+
+    List<IndexedDirectory> getDirectories() {
+        return directories;
+    }
+    //------------------------------------------------------------------------------------------------------------------
+
+
+
+    // Splits
+    //------------------------------------------------------------------------------------------------------------------
+    /**
+     * Stratified train/test split, each label contributes the same share of its images to train
+     * @param trainPercentage share of every label that goes to train, the rest goes to test
+     * @param seed seed of the shuffle
+     * @return split, both parts shuffled
+     */
+    public IndexSplit split(int trainPercentage, long seed) {
+        return split(trainPercentage, 0, seed);
+    }
+
+    /**
+     * Stratified train/validation/test split, validation images are held out of the train share of every label,
+     * so the test part holds the same images as {@link #split(int, long)} with the same seed
+     * @param trainPercentage share of every label that goes to train and validation, the rest goes to test
+     * @param validationPercentage share of every label (of all its images, not of the train share) that goes to validation
+     * @param seed seed of the shuffle
+     * @return split, all parts shuffled
+     */
+    public IndexSplit split(int trainPercentage, int validationPercentage, long seed) {
+        if (trainPercentage < 0 || trainPercentage > 100)
+            throw new IllegalArgumentException("Train percentage must be in 0..100, got " + trainPercentage);
+        if (validationPercentage < 0 || validationPercentage > trainPercentage)
+            throw new IllegalArgumentException("Validation percentage must be in 0.." + trainPercentage + ", got " + validationPercentage);
+
+        Random random = new Random(seed);
+        List<IndexEntry> train = new ArrayList<>();
+        List<IndexEntry> validation = new ArrayList<>();
+        List<IndexEntry> test = new ArrayList<>();
+        for (List<IndexEntry> group : groupByLabel(random)) {
+            int trainCount = (int) Math.round(group.size() * trainPercentage / 100.0);
+            int validationCount = (int) Math.round(group.size() * validationPercentage / 100.0);
+            train.addAll(group.subList(0, trainCount - validationCount));
+            validation.addAll(group.subList(trainCount - validationCount, trainCount));
+            test.addAll(group.subList(trainCount, group.size()));
+        }
+
+        Collections.shuffle(train, random);
+        Collections.shuffle(test, random);
+        Collections.shuffle(validation, random);
+        return new IndexSplit(this, train, validation, test);
+    }
+
+    /**
+     * Stratified k-fold splits, images of every label are dealt round-robin into k folds,
+     * split i tests on fold i and trains on all other folds, so every image is tested exactly once
+     * @param k number of folds, at least 2
+     * @param seed seed of the shuffle
+     * @return k splits, all parts shuffled
+     */
+    public List<IndexSplit> folds(int k, long seed) {
+        if (k < 2)
+            throw new IllegalArgumentException("Need at least 2 folds, got " + k);
+
+        Random random = new Random(seed);
+        List<List<IndexEntry>> folds = new ArrayList<>();
+        for (int fold = 0; fold < k; fold++)
+            folds.add(new ArrayList<>());
+        int next = 0;
+        for (List<IndexEntry> group : groupByLabel(random))
+            for (IndexEntry entry : group)
+                folds.get(next++ % k).add(entry);
+
+        List<IndexSplit> splits = new ArrayList<>();
+        for (int fold = 0; fold < k; fold++) {
+            List<IndexEntry> train = new ArrayList<>();
+            for (int other = 0; other < k; other++)
+                if (other != fold)
+                    train.addAll(folds.get(other));
+            List<IndexEntry> test = new ArrayList<>(folds.get(fold));
+            Collections.shuffle(train, random);
+            Collections.shuffle(test, random);
+            splits.add(new IndexSplit(this, train, new ArrayList<>(), test));
+        }
+        return splits;
+    }
+
+    /**
+     * @param entries entries of this index, for example one part of a split
+     * @return input split over the image files, in the same order
+     */
+    public InputSplit toInputSplit(List<IndexEntry> entries) {
+        List<URI> locations = new ArrayList<>(entries.size());
+        for (IndexEntry entry : entries)
+            locations.add(entry.getFile(root).toURI());
+        return new CollectionInputSplit(locations);
+    }
+
+    // Entries grouped by label in label order, every group shuffled
+    private List<List<IndexEntry>> groupByLabel(Random random) {
+        Map<String, List<IndexEntry>> groups = new TreeMap<>();
+        for (IndexEntry entry : entries)
+            groups.computeIfAbsent(entry.getLabel(), label -> new ArrayList<>()).add(entry);
+
+        List<List<IndexEntry>> shuffledGroups = new ArrayList<>(groups.values());
+        for (List<IndexEntry> group : shuffledGroups)
+            Collections.shuffle(group, random);
+        return shuffledGroups;
+    }
+    //------------------------------------------------------------------------------------------------------------------
+
+
+
+    @Override
+    public String toString() {
+        return "DatasetIndex{" + "root=" + root + ", extensions=" + extensions + ", directories=" + directories.size() + ", entries=" + entries.size() + ", labels=" + labels + '}';
+    }
+}
@@ -0,0 +1,26 @@
+package com.tekleo.image_classifier.dataset.index;
+
+/**
+ * Exception to be used when scanning an image directory or reading and writing its index file
+ */
+public class DatasetIndexException extends Exception {
+    public DatasetIndexException() {
+
+    }
+
+    public DatasetIndexException(String message) {
+        super(message);
+    }
+
+    public DatasetIndexException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public DatasetIndexException(Throwable cause) {
+        super(cause);
+    }
+
+    public DatasetIndexException(String message, Throwable cause, boolean enableSuppression, boolean writableStackTrace) {
+        super(message, cause, enableSuppression, writableStackTrace);
+    }
+}
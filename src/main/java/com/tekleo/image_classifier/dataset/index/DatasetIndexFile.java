@@ -0,0 +1,115 @@
+package com.tekleo.image_classifier.dataset.index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary file with a {@link DatasetIndex}, it can be kept anywhere, for example on a local disk when images are on a network share
+ *
+ * File layout (big-endian, strings in modified UTF-8):
+ *  HEADER: magic, version, root path, extensions
+ *  DIRECTORIES: count, then for each directory: relative path, modification time, subdirectory names, files (name, size, modification time)
+ *
+ * The file is written to a temporary file first and then moved into place, so an interrupted write never replaces a good index
+ */
+class DatasetIndexFile {
+    private static final int MAGIC = 0x43494458;
+    private static final int VERSION = 1;
+    private static final String TEMPORARY_FILE_EXTENSION = ".tmp";
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    static void write(File file, DatasetIndex index) throws DatasetIndexException {
+        File temporaryFile = new File(file.getPath() + TEMPORARY_FILE_EXTENSION);
+        try {
+            File directory = file.getAbsoluteFile().getParentFile();
+            if (directory != null)
+                Files.createDirectories(directory.toPath());
+
+            try (DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile), BUFFER_SIZE))) {
+                outputStream.writeInt(MAGIC);
+                outputStream.writeInt(VERSION);
+                outputStream.writeUTF(index.getRoot().getAbsolutePath());
+                writeStrings(outputStream, index.getExtensions());
+
+                outputStream.writeInt(index.getDirectories().size());
+                for (IndexedDirectory directoryEntry : index.getDirectories()) {
+                    outputStream.writeUTF(directoryEntry.getRelativePath());
+                    outputStream.writeLong(directoryEntry.getLastModified());
+                    writeStrings(outputStream, directoryEntry.getSubdirectories());
+                    outputStream.writeInt(directoryEntry.getFiles().size());
+                    for (IndexEntry entry : directoryEntry.getFiles()) {
+                        outputStream.writeUTF(name(entry.getRelativePath()));
+                        outputStream.writeLong(entry.getSize());
+                        outputStream.writeLong(entry.getLastModified());
+                    }
+                }
+            }
+
+            Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new DatasetIndexException("Can't write index " + file.getPath(), e);
+        }
+    }
+
+    static DatasetIndex read(File file) throws DatasetIndexException {
+        try (DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE))) {
+            if (inputStream.readInt() != MAGIC)
+                throw new DatasetIndexException(file.getPath() + " is not an index file");
+            int version = inputStream.readInt();
+            if (version != VERSION)
+                throw new DatasetIndexException("Unsupported index version " + version + " in " + file.getPath());
+
+            File root = new File(inputStream.readUTF());
+            List<String> extensions = readStrings(inputStream);
+
+            int numberOfDirectories = inputStream.readInt();
+            List<IndexedDirectory> directories = new ArrayList<>(numberOfDirectories);
+            for (int i = 0; i < numberOfDirectories; i++) {
+                String relativePath = inputStream.readUTF();
+                long lastModified = inputStream.readLong();
+                List<String> subdirectories = readStrings(inputStream);
+                String label = DirectoryScanner.label(root, relativePath);
+
+                int numberOfFiles = inputStream.readInt();
+                List<IndexEntry> files = new ArrayList<>(numberOfFiles);
+                for (int j = 0; j < numberOfFiles; j++)
+                    files.add(new IndexEntry(DirectoryScanner.child(relativePath, inputStream.readUTF()), label, inputStream.readLong(), inputStream.readLong()));
+                directories.add(new IndexedDirectory(relativePath, lastModified, subdirectories, files));
+            }
+            return new DatasetIndex(root, extensions, directories);
+        } catch (IOException e) {
+            throw new DatasetIndexException("Can't read index " + file.getPath(), e);
+        }
+    }
+
+    // Static helpers
+    //------------------------------------------------------------------------------------------------------------------
+    private static void writeStrings(DataOutputStream outputStream, List<String> strings) throws IOException {
+        outputStream.writeInt(strings.size());
+        for (String string : strings)
+            outputStream.writeUTF(string);
+    }
+
+    private static List<String> readStrings(DataInputStream inputStream) throws IOException {
+        int size = inputStream.readInt();
+        List<String> strings = new ArrayList<>(size);
+        for (int i = 0; i < size; i++)
+            strings.add(inputStream.readUTF());
+        return strings;
+    }
+
+    private static String name(String relativePath) {
+        return relativePath.substring(relativePath.lastIndexOf('/') + 1);
+    }
+    //------------------------------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,224 @@
+package com.tekleo.image_classifier.dataset.index;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Builds a {@link DatasetIndex} of an image directory tree on a fork/join pool, one task per directory, and keeps it in an index file
+ *
+ * Rescans are incremental: a directory whose modification time matches the previous index reuses its listing (subdirectories, files with sizes)
+ * and only its subdirectories are visited, so a rescan of an unchanged tree doesn't list any directory
+ * A file rewritten in place doesn't change the time of its directory, so the files of a reused listing are stat-ed again,
+ * their sizes and modification times always match the disk, and tensor cache fingerprints made from them notice the edit
+ */
+public class DirectoryScanner {
+    private final File root;
+    private final List<String> extensions;
+    private final Map<String, IndexedDirectory> previousDirectories;
+    private final AtomicInteger listedDirectories;
+    private final AtomicInteger reusedDirectories;
+    private final AtomicInteger changedFiles;
+
+    private DirectoryScanner(File root, List<String> extensions, DatasetIndex previousIndex) {
+        this.root = root;
+        this.extensions = extensions;
+        this.previousDirectories = new HashMap<>();
+        if (previousIndex != null)
+            for (IndexedDirectory directory : previousIndex.getDirectories())
+                previousDirectories.put(directory.getRelativePath(), directory);
+        this.listedDirectories = new AtomicInteger();
+        this.reusedDirectories = new AtomicInteger();
+        this.changedFiles = new AtomicInteger();
+    }
+
+    /**
+     * Load the index from the index file and bring it up to date with the directory, or build it from scratch if there is no usable index file
+     * The index file is rewritten only if something changed
+     * @param root directory with images, label of an image is the name of its directory
+     * @param extensions allowed image extensions without the dot, case-insensitive
+     * @param indexFile index file, created if missing
+     * @param threads number of scanning threads, I/O bound, so more threads than cores helps on network storage
+     * @return up to date index
+     * @throws DatasetIndexException if the directory can't be scanned or the index can't be written
+     */
+    public static DatasetIndex scan(File root, String[] extensions, File indexFile, int threads) throws DatasetIndexException {
+        File absoluteRoot = root.getAbsoluteFile();
+        if (!absoluteRoot.isDirectory())
+            throw new DatasetIndexException(absoluteRoot.getPath() + " is not a directory");
+
+        List<String> normalizedExtensions = new ArrayList<>();
+        for (String extension : extensions)
+            normalizedExtensions.add(extension.toLowerCase(Locale.ROOT));
+        Collections.sort(normalizedExtensions);
+
+        DatasetIndex previousIndex = readUsableIndex(indexFile, absoluteRoot, normalizedExtensions);
+        DirectoryScanner scanner = new DirectoryScanner(absoluteRoot, normalizedExtensions, previousIndex);
+
+        long start = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        List<IndexedDirectory> directories;
+        try {
+            directories = pool.invoke(scanner.new ScanTask(""));
+        } catch (UncheckedIOException e) {
+            throw new DatasetIndexException("Can't scan " + absoluteRoot.getPath(), e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        DatasetIndex index = new DatasetIndex(absoluteRoot, normalizedExtensions, directories);
+
+        boolean changed = previousIndex == null || scanner.listedDirectories.get() > 0 || scanner.changedFiles.get() > 0 || previousIndex.getDirectories().size() != directories.size();
+        if (changed)
+            DatasetIndexFile.write(indexFile, index);
+
+        System.out.println(String.format("Indexed %d images in %d directories of %s in %.0f ms (%d listed, %d reused from %s, %d files changed in place)",
+                index.size(), directories.size(), absoluteRoot.getPath(), (System.nanoTime() - start) / 1e6,
+                scanner.listedDirectories.get(), scanner.reusedDirectories.get(), indexFile.getPath(), scanner.changedFiles.get()));
+        return index;
+    }
+
+    /**
+     * @param indexFile index file
+     * @return index exactly as it was saved, without looking at the directory
+     * @throws DatasetIndexException if the file can't be read
+     */
+    public static DatasetIndex load(File indexFile) throws DatasetIndexException {
+        return DatasetIndexFile.read(indexFile);
+    }
+
+
+
+    private class ScanTask extends RecursiveTask<List<IndexedDirectory>> {
+        private final String relativePath;
+
+        private ScanTask(String relativePath) {
+            this.relativePath = relativePath;
+        }
+
+        @Override
+        protected List<IndexedDirectory> compute() {
+            try {
+                IndexedDirectory directory = scanDirectory(relativePath);
+                List<ScanTask> subtasks = new ArrayList<>();
+                for (String subdirectory : directory.getSubdirectories()) {
+                    ScanTask subtask = new ScanTask(child(relativePath, subdirectory));
+                    subtask.fork();
+                    subtasks.add(subtask);
+                }
+
+                List<IndexedDirectory> directories = new ArrayList<>();
+                directories.add(directory);
+                for (ScanTask subtask : subtasks)
+                    directories.addAll(subtask.join());
+                return directories;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private IndexedDirectory scanDirectory(String relativePath) throws IOException {
+        Path path = relativePath.isEmpty() ? root.toPath() : root.toPath().resolve(relativePath);
+        long lastModified = Files.getLastModifiedTime(path).toMillis();
+
+        IndexedDirectory previous = previousDirectories.get(relativePath);
+        if (previous != null && previous.getLastModified() == lastModified) {
+            IndexedDirectory refreshed = refreshFiles(previous);
+            if (refreshed != null) {
+                reusedDirectories.incrementAndGet();
+                return refreshed;
+            }
+        }
+
+        listedDirectories.incrementAndGet();
+        String label = label(root, relativePath);
+        List<String> subdirectories = new ArrayList<>();
+        List<IndexEntry> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(path)) {
+            for (Path child : stream) {
+                BasicFileAttributes attributes = Files.readAttributes(child, BasicFileAttributes.class);
+                String name = child.getFileName().toString();
+                if (attributes.isDirectory())
+                    subdirectories.add(name);
+                else if (attributes.isRegularFile() && hasExtension(name))
+                    files.add(new IndexEntry(child(relativePath, name), label, attributes.size(), attributes.lastModifiedTime().toMillis()));
+            }
+        }
+
+        Collections.sort(subdirectories);
+        files.sort((a, b) -> a.getRelativePath().compareTo(b.getRelativePath()));
+        return new IndexedDirectory(relativePath, lastModified, subdirectories, files);
+    }
+
+    /**
+     * Stat the files of a reused listing again, files rewritten in place get their new size and modification time
+     * @return listing with current file attributes, or null if a file is gone and the directory has to be listed again
+     */
+    private IndexedDirectory refreshFiles(IndexedDirectory directory) throws IOException {
+        List<IndexEntry> files = null;
+        for (int i = 0; i < directory.getFiles().size(); i++) {
+            IndexEntry entry = directory.getFiles().get(i);
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(root.toPath().resolve(entry.getRelativePath()), BasicFileAttributes.class);
+            } catch (NoSuchFileException e) {
+                return null;
+            }
+            long lastModified = attributes.lastModifiedTime().toMillis();
+            if (attributes.size() == entry.getSize() && lastModified == entry.getLastModified())
+                continue;
+            if (files == null)
+                files = new ArrayList<>(directory.getFiles());
+            files.set(i, new IndexEntry(entry.getRelativePath(), entry.getLabel(), attributes.size(), lastModified));
+            changedFiles.incrementAndGet();
+        }
+        return files == null ? directory : new IndexedDirectory(directory.getRelativePath(), directory.getLastModified(), directory.getSubdirectories(), files);
+    }
+
+    private boolean hasExtension(String name) {
+        int dot = name.lastIndexOf('.');
+        return dot >= 0 && extensions.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+
+
+    // Static helpers
+    //------------------------------------------------------------------------------------------------------------------
+    private static DatasetIndex readUsableIndex(File indexFile, File root, List<String> extensions) {
+        if (!indexFile.isFile())
+            return null;
+        try {
+            DatasetIndex index = DatasetIndexFile.read(indexFile);
+            if (index.getRoot().equals(root) && index.getExtensions().equals(extensions))
+                return index;
+            System.out.println("Index " + indexFile.getPath() + " is for another directory or other extensions, rebuilding it");
+        } catch (DatasetIndexException e) {
+            System.out.println("Index " + indexFile.getPath() + " can't be used (" + e.getMessage() + "), rebuilding it");
+        }
+        return null;
+    }
+
+    // Label of images in a directory is the directory name, same as ParentPathLabelGenerator gives
+    static String label(File root, String relativePath) {
+        return relativePath.isEmpty() ? root.getName() : relativePath.substring(relativePath.lastIndexOf('/') + 1);
+    }
+
+    static String child(String relativePath, String name) {
+        return relativePath.isEmpty() ? name : relativePath + "/" + name;
+    }
+    //------------------------------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,57 @@
+package com.tekleo.image_classifier.dataset.index;
+
+import java.io.File;
+
+/**
+ * One image of a {@link DatasetIndex}, label is the name of the directory the image is in
+ *
+ * Immutable object
+ */
+public class IndexEntry {
+    private final String relativePath;
+    private final String label;
+    private final long size;
+    private final long lastModified;
+
+    /**
+     * @param relativePath path from the indexed root, separated with '/'
+     * @param label label of the image
+     * @param size file size in bytes
+     * @param lastModified file modification time in milliseconds
+     */
+    public IndexEntry(String relativePath, String label, long size, long lastModified) {
+        this.relativePath = relativePath;
+        this.label = label;
+        this.size = size;
+        this.lastModified = lastModified;
+    }
+
+    public String getRelativePath() {
+        return relativePath;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * @param root indexed root directory
+     * @return image file
+     */
+    public File getFile(File root) {
+        return new File(root, relativePath);
+    }
+
+    @Override
+    public String toString() {
+        return "IndexEntry{" + "relativePath='" + relativePath + '\'' + ", label='" + label + '\'' + ", size=" + size + ", lastModified=" + lastModified + '}';
+    }
+}
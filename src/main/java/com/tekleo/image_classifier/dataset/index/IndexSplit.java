@@ -0,0 +1,59 @@
+package com.tekleo.image_classifier.dataset.index;
+
+import org.datavec.api.split.InputSplit;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Train, validation and test parts of a {@link DatasetIndex}, made by {@link DatasetIndex#split(int, int, long)} or {@link DatasetIndex#folds(int, long)}
+ * Validation part is empty unless it was asked for, it is held out of the train share and is meant for model selection, like early stopping
+ *
+ * Immutable object
+ */
+public class IndexSplit {
+    private final DatasetIndex index;
+    private final List<IndexEntry> train;
+    private final List<IndexEntry> validation;
+    private final List<IndexEntry> test;
+
+    IndexSplit(DatasetIndex index, List<IndexEntry> train, List<IndexEntry> validation, List<IndexEntry> test) {
+        this.index = index;
+        this.train = Collections.unmodifiableList(train);
+        this.validation = Collections.unmodifiableList(validation);
+        this.test = Collections.unmodifiableList(test);
+    }
+
+    public DatasetIndex getIndex() {
+        return index;
+    }
+
+    public List<IndexEntry> getTrain() {
+        return train;
+    }
+
+    public List<IndexEntry> getValidation() {
+        return validation;
+    }
+
+    public List<IndexEntry> getTest() {
+        return test;
+    }
+
+    public InputSplit getTrainInputSplit() {
+        return index.toInputSplit(train);
+    }
+
+    public InputSplit getValidationInputSplit() {
+        return index.toInputSplit(validation);
+    }
+
+    public InputSplit getTestInputSplit() {
+        return index.toInputSplit(test);
+    }
+
+    @Override
+    public String toString() {
+        return "IndexSplit{" + "train=" + train.size() + ", validation=" + validation.size() + ", test=" + test.size() + '}';
+    }
+}
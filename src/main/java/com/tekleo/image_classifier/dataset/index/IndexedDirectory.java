@@ -0,0 +1,40 @@
+package com.tekleo.image_classifier.dataset.index;
+
+import java.util.List;
+
+/**
+ * One scanned directory: its modification time, names of its subdirectories and images directly inside it
+ * A directory's modification time changes whenever an entry is added, removed or renamed in it, so a directory with the same time
+ * as in the previous index can reuse its listing without reading the directory again, only the attributes of its files are read again
+ *
+ * Immutable object
+ */
+class IndexedDirectory {
+    private final String relativePath;
+    private final long lastModified;
+    private final List<String> subdirectories;
+    private final List<IndexEntry> files;
+
+    IndexedDirectory(String relativePath, long lastModified, List<String> subdirectories, List<IndexEntry> files) {
+        this.relativePath = relativePath;
+        this.lastModified = lastModified;
+        this.subdirectories = subdirectories;
+        this.files = files;
+    }
+
+    String getRelativePath() {
+        return relativePath;
+    }
+
+    long getLastModified() {
+        return lastModified;
+    }
+
+    List<String> getSubdirectories() {
+        return subdirectories;
+    }
+
+    List<IndexEntry> getFiles() {
+        return files;
+    }
+}
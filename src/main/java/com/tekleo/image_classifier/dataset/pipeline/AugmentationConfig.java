@@ -0,0 +1,176 @@
+package com.tekleo.image_classifier.dataset.pipeline;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * Options of {@link ImageAugmenter}
+ * Default constructor gives no augmentation at all, every transform is switched on with a "with" method that returns a modified copy
+ *
+ * Immutable object
+ */
+public class AugmentationConfig implements Serializable, Cloneable {
+    private static final long DEFAULT_SEED = 666;
+
+    private boolean flipEnabled;
+    private int cropPadding;
+    private double brightness;
+    private double contrast;
+    private double saturation;
+    private long seed;
+
+    // Constructors
+    //------------------------------------------------------------------------------------------------------------------
+    /**
+     * Default config, images are left as they are
+     */
+    public AugmentationConfig() {
+        this.flipEnabled = false;
+        this.cropPadding = 0;
+        this.brightness = 0;
+        this.contrast = 0;
+        this.saturation = 0;
+        this.seed = DEFAULT_SEED;
+    }
+
+    /**
+     * Copy constructor, used by clone and all copy modifiers
+     * @param other config to copy
+     */
+    private AugmentationConfig(AugmentationConfig other) {
+        this.flipEnabled = other.flipEnabled;
+        this.cropPadding = other.cropPadding;
+        this.brightness = other.brightness;
+        this.contrast = other.contrast;
+        this.saturation = other.saturation;
+        this.seed = other.seed;
+    }
+    //------------------------------------------------------------------------------------------------------------------
+
+
+
+    // Getters
+    //------------------------------------------------------------------------------------------------------------------
+    public boolean isFlipEnabled() {
+        return flipEnabled;
+    }
+
+    public boolean isCropEnabled() {
+        return cropPadding > 0;
+    }
+
+    public int getCropPadding() {
+        return cropPadding;
+    }
+
+    public boolean isColorJitterEnabled() {
+        return brightness > 0 || contrast > 0 || saturation > 0;
+    }
+
+    public double getBrightness() {
+        return brightness;
+    }
+
+    public double getContrast() {
+        return contrast;
+    }
+
+    public double getSaturation() {
+        return saturation;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * @return true if at least one transform is on
+     */
+    public boolean isEnabled() {
+        return flipEnabled || isCropEnabled() || isColorJitterEnabled();
+    }
+    //------------------------------------------------------------------------------------------------------------------
+
+
+
+    // Copy modifiers
+    //------------------------------------------------------------------------------------------------------------------
+    /**
+     * Mirror half of the images left to right
+     * @param flipEnabled true to enable
+     * @return modified copy
+     */
+    public AugmentationConfig withFlip(boolean flipEnabled) {
+        AugmentationConfig copy = clone();
+        copy.flipEnabled = flipEnabled;
+        return copy;
+    }
+
+    /**
+     * Pad the image with black pixels on every side and cut a random window of the original size out of it,
+     * this is the same as shifting the image by up to the padding in both directions
+     * @param cropPadding padding in pixels, 0 disables the crop
+     * @return modified copy
+     */
+    public AugmentationConfig withCrop(int cropPadding) {
+        AugmentationConfig copy = clone();
+        copy.cropPadding = cropPadding;
+        return copy;
+    }
+
+    /**
+     * Random color changes per image, every factor is drawn uniformly from its range, 0 disables that part
+     * @param brightness largest shift of all pixels, as a fraction of the full 0..255 range
+     * @param contrast largest relative change of the distance of pixels from the mean brightness of the image
+     * @param saturation largest relative change of the distance of pixels from their gray value
+     * @return modified copy
+     */
+    public AugmentationConfig withColorJitter(double brightness, double contrast, double saturation) {
+        AugmentationConfig copy = clone();
+        copy.brightness = brightness;
+        copy.contrast = contrast;
+        copy.saturation = saturation;
+        return copy;
+    }
+
+    /**
+     * @param seed seed of the random transforms, together with the epoch and the batch number it fixes the transforms of every image
+     * @return modified copy
+     */
+    public AugmentationConfig withSeed(long seed) {
+        AugmentationConfig copy = clone();
+        copy.seed = seed;
+        return copy;
+    }
+    //------------------------------------------------------------------------------------------------------------------
+
+
+
+    // Others
+    //------------------------------------------------------------------------------------------------------------------
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        AugmentationConfig that = (AugmentationConfig) o;
+        return flipEnabled == that.flipEnabled && cropPadding == that.cropPadding && Double.compare(that.brightness, brightness) == 0 &&
+                Double.compare(that.contrast, contrast) == 0 && Double.compare(that.saturation, saturation) == 0 && seed == that.seed;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(flipEnabled, cropPadding, brightness, contrast, saturation, seed);
+    }
+
+    @Override
+    public String toString() {
+        return "AugmentationConfig{" + "flipEnabled=" + flipEnabled + ", cropPadding=" + cropPadding + ", brightness=" + brightness +
+                ", contrast=" + contrast + ", saturation=" + saturation + ", seed=" + seed + '}';
+    }
+
+    @Override
+    public AugmentationConfig clone() {
+        return new AugmentationConfig(this);
+    }
+    //------------------------------------------------------------------------------------------------------------------
+}
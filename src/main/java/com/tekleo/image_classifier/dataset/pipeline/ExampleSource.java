@@ -0,0 +1,41 @@
+package com.tekleo.image_classifier.dataset.pipeline;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Random access source of labeled images as raw uint8 pixels, used by {@link PrefetchingDataSetIterator}
+ * Implementations must allow {@link #readPixels(int, byte[], int)} to be called from several threads at once
+ */
+public interface ExampleSource {
+    int getNumberOfExamples();
+
+    int getChannels();
+
+    int getHeight();
+
+    int getWidth();
+
+    /**
+     * @return number of bytes of one image, channels x height x width
+     */
+    int getExampleLength();
+
+    List<String> getLabels();
+
+    /**
+     * Label index of one image
+     * @param index index of the image
+     * @return index of the label in {@link #getLabels()}
+     */
+    int getLabel(int index);
+
+    /**
+     * Copy raw pixels of one image in CHW order
+     * @param index index of the image
+     * @param destination array to copy into
+     * @param destinationOffset position in destination where the image starts
+     * @throws IOException if the image can't be read
+     */
+    void readPixels(int index, byte[] destination, int destinationOffset) throws IOException;
+}
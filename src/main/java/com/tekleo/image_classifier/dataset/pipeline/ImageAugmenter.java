@@ -0,0 +1,148 @@
+package com.tekleo.image_classifier.dataset.pipeline;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Random flips, padded crops and color jitter, applied in place to raw uint8 images in CHW order right after they are read and before they are scaled to floats
+ *
+ * Everything works on the bytes of one image with plain array loops, there are no image objects, no native calls and no allocations per image:
+ * flip and crop are one copy through a scratch buffer, color jitter is one pass to measure the mean of the image and one pass to change it
+ * Channels are in BGR order, the way NativeImageLoader decodes them, this only matters for the gray value used by saturation
+ *
+ * Immutable and thread-safe, every caller passes its own scratch buffer and random generator
+ */
+public class ImageAugmenter {
+    private static final int MAX_PIXEL_VALUE = 255;
+
+    // Luma weights of ITU-R BT.601 in BGR order
+    private static final float BLUE_WEIGHT = 0.114f;
+    private static final float GREEN_WEIGHT = 0.587f;
+    private static final float RED_WEIGHT = 0.299f;
+
+    private final AugmentationConfig config;
+    private final int channels;
+    private final int height;
+    private final int width;
+
+    /**
+     * @param config transforms to apply
+     * @param channels image channels, saturation is only changed for 3 channel images
+     * @param height image height
+     * @param width image width
+     */
+    public ImageAugmenter(AugmentationConfig config, int channels, int height, int width) {
+        this.config = config;
+        this.channels = channels;
+        this.height = height;
+        this.width = width;
+    }
+
+    public AugmentationConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * @return length of the scratch buffer {@link #augment(byte[], int, byte[], SplittableRandom)} needs
+     */
+    public int getScratchLength() {
+        return channels * height * width;
+    }
+
+    /**
+     * Random generator of one batch, the same epoch and batch always give the same transforms, no matter which thread builds the batch
+     * @param epoch number of the pass over the data
+     * @param batch number of the batch in the epoch
+     * @return new generator
+     */
+    public SplittableRandom newRandom(int epoch, int batch) {
+        return new SplittableRandom(config.getSeed() ^ ((long) epoch << 32) ^ batch);
+    }
+
+    /**
+     * Apply random transforms to one image in place
+     * @param pixels array holding the image as uint8 in CHW order
+     * @param offset position of the image in the array
+     * @param scratch buffer of at least {@link #getScratchLength()} bytes, overwritten
+     * @param random generator, transforms of consecutive images are drawn from it one after another
+     */
+    public void augment(byte[] pixels, int offset, byte[] scratch, SplittableRandom random) {
+        boolean flip = config.isFlipEnabled() && random.nextBoolean();
+        int padding = config.getCropPadding();
+        int shiftY = padding > 0 ? random.nextInt(2 * padding + 1) - padding : 0;
+        int shiftX = padding > 0 ? random.nextInt(2 * padding + 1) - padding : 0;
+        if (flip || shiftY != 0 || shiftX != 0)
+            flipAndShift(pixels, offset, scratch, flip, shiftY, shiftX);
+        if (config.isColorJitterEnabled())
+            jitter(pixels, offset, random);
+    }
+
+    // Output pixel (y, x) is the input pixel (y + shiftY, x + shiftX) of the (optionally mirrored) image, black outside of the input, which is a crop of the padded image
+    private void flipAndShift(byte[] pixels, int offset, byte[] scratch, boolean flip, int shiftY, int shiftX) {
+        System.arraycopy(pixels, offset, scratch, 0, getScratchLength());
+        for (int c = 0; c < channels; c++) {
+            for (int y = 0; y < height; y++) {
+                int row = offset + (c * height + y) * width;
+                int sourceY = y + shiftY;
+                if (sourceY < 0 || sourceY >= height) {
+                    Arrays.fill(pixels, row, row + width, (byte) 0);
+                    continue;
+                }
+                int sourceRow = (c * height + sourceY) * width;
+                for (int x = 0; x < width; x++) {
+                    int sourceX = flip ? width - 1 - x - shiftX : x + shiftX;
+                    pixels[row + x] = sourceX >= 0 && sourceX < width ? scratch[sourceRow + sourceX] : 0;
+                }
+            }
+        }
+    }
+
+    // New value is ((gray + saturation * (value - gray)) - mean) * contrast + mean + brightness, saturation keeps the gray value, so the mean stays the same
+    private void jitter(byte[] pixels, int offset, SplittableRandom random) {
+        float brightness = (float) (uniform(random, config.getBrightness()) * MAX_PIXEL_VALUE);
+        float contrast = (float) (1 + uniform(random, config.getContrast()));
+        float saturation = (float) (1 + uniform(random, config.getSaturation()));
+
+        int length = getScratchLength();
+        long sum = 0;
+        for (int i = 0; i < length; i++)
+            sum += pixels[offset + i] & 0xFF;
+        float mean = (float) sum / length;
+        float shift = mean * (1 - contrast) + brightness;
+
+        if (channels == 3) {
+            // Same formula expanded into value * scale + gray * grayScale + shift, the gray term is shared by all channels of a pixel
+            float scale = saturation * contrast;
+            float blueScale = (1 - saturation) * contrast * BLUE_WEIGHT;
+            float greenScale = (1 - saturation) * contrast * GREEN_WEIGHT;
+            float redScale = (1 - saturation) * contrast * RED_WEIGHT;
+            int planeLength = height * width;
+            int blue = offset, green = offset + planeLength, red = offset + 2 * planeLength;
+            for (int p = 0; p < planeLength; p++) {
+                int b = pixels[blue + p] & 0xFF, g = pixels[green + p] & 0xFF, r = pixels[red + p] & 0xFF;
+                float common = blueScale * b + greenScale * g + redScale * r + shift;
+                pixels[blue + p] = clamp(b * scale + common);
+                pixels[green + p] = clamp(g * scale + common);
+                pixels[red + p] = clamp(r * scale + common);
+            }
+        } else {
+            for (int i = 0; i < length; i++)
+                pixels[offset + i] = clamp((pixels[offset + i] & 0xFF) * contrast + shift);
+        }
+    }
+
+    // Static helpers
+    //------------------------------------------------------------------------------------------------------------------
+    /**
+     * @return uniform value in [-range, range), 0 without drawing anything if the range is 0
+     */
+    private static double uniform(SplittableRandom random, double range) {
+        return range > 0 ? (2 * random.nextDouble() - 1) * range : 0;
+    }
+
+    // Rounds half up, the cast is only reached for values in range, so it never truncates towards zero from below
+    private static byte clamp(float value) {
+        return (byte) (value <= 0 ? 0 : value >= MAX_PIXEL_VALUE ? MAX_PIXEL_VALUE : (int) (value + 0.5f));
+    }
+    //------------------------------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,112 @@
+package com.tekleo.image_classifier.dataset.pipeline;
+
+import org.datavec.api.io.labels.PathLabelGenerator;
+import org.datavec.api.split.InputSplit;
+import org.datavec.image.loader.NativeImageLoader;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Example source over image files of an input split, images are decoded on the calling thread
+ * Decoding goes through the same {@link NativeImageLoader} that ImageRecordReader uses, and labels are sorted the same way,
+ * so pixels and label indices are identical to what a RecordReaderDataSetIterator over the same split gives
+ */
+public class ImageFileExampleSource implements ExampleSource {
+    private final File[] files;
+    private final int[] labelIndices;
+    private final List<String> labels;
+    private final int height;
+    private final int width;
+    private final int channels;
+    private final ThreadLocal<NativeImageLoader> imageLoaders;
+
+    public ImageFileExampleSource(InputSplit inputSplit, int height, int width, int channels, PathLabelGenerator labelGenerator) {
+        URI[] locations = inputSplit.locations();
+        this.files = new File[locations.length];
+        String[] labelOfFile = new String[locations.length];
+        TreeSet<String> uniqueLabels = new TreeSet<>();
+        for (int i = 0; i < locations.length; i++) {
+            files[i] = new File(locations[i]);
+            labelOfFile[i] = labelGenerator.getLabelForPath(locations[i]).toString();
+            uniqueLabels.add(labelOfFile[i]);
+        }
+
+        this.labels = Collections.unmodifiableList(new ArrayList<>(uniqueLabels));
+        Map<String, Integer> indexOfLabel = new HashMap<>();
+        for (String label : labels)
+            indexOfLabel.put(label, indexOfLabel.size());
+        this.labelIndices = new int[locations.length];
+        for (int i = 0; i < locations.length; i++)
+            labelIndices[i] = indexOfLabel.get(labelOfFile[i]);
+
+        this.height = height;
+        this.width = width;
+        this.channels = channels;
+        this.imageLoaders = ThreadLocal.withInitial(() -> new NativeImageLoader(height, width, channels));
+    }
+
+
+
+    // Getters
+    //------------------------------------------------------------------------------------------------------------------
+    @Override
+    public int getNumberOfExamples() {
+        return files.length;
+    }
+
+    @Override
+    public int getChannels() {
+        return channels;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getExampleLength() {
+        return channels * height * width;
+    }
+
+    @Override
+    public List<String> getLabels() {
+        return labels;
+    }
+
+    public File getFile(int index) {
+        return files[index];
+    }
+    //------------------------------------------------------------------------------------------------------------------
+
+
+
+    // Reading
+    //------------------------------------------------------------------------------------------------------------------
+    @Override
+    public int getLabel(int index) {
+        return labelIndices[index];
+    }
+
+    @Override
+    public void readPixels(int index, byte[] destination, int destinationOffset) throws IOException {
+        float[] values = imageLoaders.get().asMatrix(files[index]).dup('c').data().asFloat();
+        int exampleLength = getExampleLength();
+        for (int i = 0; i < exampleLength; i++)
+            destination[destinationOffset + i] = (byte) Math.max(0, Math.min(255, Math.round(values[i])));
+    }
+    //------------------------------------------------------------------------------------------------------------------
+}
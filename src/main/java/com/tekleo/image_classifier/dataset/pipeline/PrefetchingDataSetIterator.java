@@ -0,0 +1,412 @@
+package com.tekleo.image_classifier.dataset.pipeline;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.DataSetPreProcessor;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Data set iterator that decodes and assembles batches on a pool of worker threads ahead of the consumer
+ *
+ * Batches are built into a ring of pre-allocated buffers (features and labels INDArrays plus on-heap staging arrays),
+ * the ring has "prefetch + retained" slots and batch N always goes into slot N % ring size:
+ *  - workers claim batch numbers in increasing order, decode all images of the batch, optionally augment their uint8 pixels in place,
+ *    convert them to scaled floats and copy them into the slot in one bulk copy
+ *  - the consumer takes batches strictly in order, so batch order (and therefore training) is deterministic no matter how many workers run
+ *  - a batch handed out by {@link #next()} stays valid until "retained" more batches are taken, then its slot is given back to the workers
+ *
+ * The returned data sets share the slot buffers, so callers that keep batches around (like parallel training with several replicas)
+ * need to retain at least as many batches as they keep in flight
+ *
+ * Augmentation (see {@link ImageAugmenter}) draws the transforms of a batch from a generator seeded with the epoch and batch number,
+ * so augmented batches are the same on every run and with any number of workers, and differ from epoch to epoch
+ *
+ * The last batch of an epoch may be smaller than the batch size, its arrays are allocated separately
+ */
+public class PrefetchingDataSetIterator implements DataSetIterator {
+    private static final int MAX_PIXEL_VALUE = 255;
+    private static final String THREAD_NAME_PREFIX = "cifar-prefetch-";
+
+    private final ExampleSource exampleSource;
+    private final int batchSize;
+    private final int numberOfWorkers;
+    private final int retainedBatches;
+    private final int numberOfBatches;
+    private final int numberOfClasses;
+    private final ImageAugmenter augmenter;
+    private final float[] pixelValues;
+    private final Slot[] slots;
+    private final ExecutorService executorService;
+    private DataSetPreProcessor preProcessor;
+    private Epoch epoch;
+    private int epochNumber;
+    private int nextBatch;
+
+    /**
+     * @param exampleSource source of images
+     * @param batchSize batch size
+     * @param numberOfWorkers number of threads that decode images
+     * @param prefetchBatches number of batches that may be prepared ahead of the consumer
+     * @param retainedBatches number of batches already handed out that stay valid, at least 1
+     * @param min value of a 0 pixel
+     * @param max value of a 255 pixel
+     */
+    public PrefetchingDataSetIterator(ExampleSource exampleSource, int batchSize, int numberOfWorkers, int prefetchBatches, int retainedBatches, double min, double max) {
+        this(exampleSource, batchSize, numberOfWorkers, prefetchBatches, retainedBatches, min, max, null);
+    }
+
+    /**
+     * @param exampleSource source of images
+     * @param batchSize batch size
+     * @param numberOfWorkers number of threads that decode images
+     * @param prefetchBatches number of batches that may be prepared ahead of the consumer
+     * @param retainedBatches number of batches already handed out that stay valid, at least 1
+     * @param min value of a 0 pixel
+     * @param max value of a 255 pixel
+     * @param augmenter random transforms applied to every image, null for none
+     */
+    public PrefetchingDataSetIterator(ExampleSource exampleSource, int batchSize, int numberOfWorkers, int prefetchBatches, int retainedBatches, double min, double max, ImageAugmenter augmenter) {
+        if (numberOfWorkers < 1 || prefetchBatches < 1 || retainedBatches < 1)
+            throw new IllegalArgumentException("Workers, prefetched and retained batches must all be positive");
+
+        this.exampleSource = exampleSource;
+        this.batchSize = batchSize;
+        this.numberOfWorkers = numberOfWorkers;
+        this.retainedBatches = retainedBatches;
+        this.numberOfBatches = (exampleSource.getNumberOfExamples() + batchSize - 1) / batchSize;
+        this.numberOfClasses = exampleSource.getLabels().size();
+        this.augmenter = augmenter;
+
+        this.pixelValues = new float[MAX_PIXEL_VALUE + 1];
+        for (int i = 0; i <= MAX_PIXEL_VALUE; i++)
+            pixelValues[i] = (float) (min + (max - min) * i / MAX_PIXEL_VALUE);
+
+        this.slots = new Slot[prefetchBatches + retainedBatches];
+        for (int i = 0; i < slots.length; i++)
+            slots[i] = new Slot(i);
+
+        AtomicInteger threadCounter = new AtomicInteger();
+        this.executorService = Executors.newFixedThreadPool(numberOfWorkers, runnable -> {
+            Thread thread = new Thread(runnable, THREAD_NAME_PREFIX + threadCounter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.epochNumber = 0;
+        startEpoch();
+    }
+
+
+
+    // Iterator
+    //------------------------------------------------------------------------------------------------------------------
+    @Override
+    public DataSet next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+
+        int batch = nextBatch++;
+
+        // Give the oldest retained batch back to workers
+        int releasedBatch = batch - retainedBatches;
+        if (releasedBatch >= 0)
+            slots[releasedBatch % slots.length].release(releasedBatch + slots.length);
+
+        Slot slot = slots[batch % slots.length];
+        slot.awaitReady(batch, epoch);
+
+        DataSet dataSet = slot.count == batchSize ? new DataSet(slot.features, slot.labels) : new DataSet(slot.tailFeatures, slot.tailLabels);
+        if (preProcessor != null)
+            preProcessor.preProcess(dataSet);
+        return dataSet;
+    }
+
+    @Override
+    public DataSet next(int num) {
+        if (num != batchSize)
+            throw new UnsupportedOperationException("Batch size is fixed to " + batchSize + " by pre-allocated buffers");
+        return next();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return nextBatch < numberOfBatches;
+    }
+
+    @Override
+    public void reset() {
+        stopEpoch();
+        for (Slot slot : slots)
+            slot.clear();
+        nextBatch = 0;
+        epochNumber++;
+        startEpoch();
+    }
+
+    /**
+     * Stop workers, the iterator can't be used afterwards
+     */
+    public void shutdown() {
+        stopEpoch();
+        executorService.shutdownNow();
+    }
+
+    /**
+     * @return number of batches already handed out that stay valid
+     */
+    public int getRetainedBatches() {
+        return retainedBatches;
+    }
+
+    /**
+     * @return random transforms applied to every image, or null if there are none
+     */
+    public ImageAugmenter getAugmenter() {
+        return augmenter;
+    }
+    //------------------------------------------------------------------------------------------------------------------
+
+
+
+    // Workers
+    //------------------------------------------------------------------------------------------------------------------
+    private void startEpoch() {
+        Epoch startedEpoch = new Epoch(epochNumber);
+        for (int i = 0; i < numberOfWorkers; i++)
+            startedEpoch.futures.add(executorService.submit(() -> work(startedEpoch)));
+        epoch = startedEpoch;
+    }
+
+    private void stopEpoch() {
+        if (epoch == null)
+            return;
+
+        epoch.cancelled = true;
+        for (Slot slot : slots)
+            slot.wakeUp();
+        for (Future<?> future : epoch.futures) {
+            try {
+                future.get();
+            } catch (Exception ignored) {
+                // Failures are reported to the consumer through the epoch, nothing to do when it is being stopped
+            }
+        }
+        epoch = null;
+    }
+
+    private void work(Epoch epoch) {
+        byte[] pixels = new byte[exampleSource.getExampleLength()];
+        byte[] scratch = augmenter != null ? new byte[augmenter.getScratchLength()] : null;
+        try {
+            while (!epoch.cancelled) {
+                int batch = epoch.claimedBatches.getAndIncrement();
+                if (batch >= numberOfBatches)
+                    return;
+
+                Slot slot = slots[batch % slots.length];
+                if (!slot.awaitFree(batch, epoch))
+                    return;
+
+                fill(slot, epoch.number, batch, pixels, scratch);
+                slot.publish(batch);
+            }
+        } catch (Throwable t) {
+            epoch.failure = t;
+            for (Slot slot : slots)
+                slot.wakeUp();
+        }
+    }
+
+    private void fill(Slot slot, int epochNumber, int batch, byte[] pixels, byte[] scratch) throws Exception {
+        int exampleLength = exampleSource.getExampleLength();
+        int firstExample = batch * batchSize;
+        int count = Math.min(batchSize, exampleSource.getNumberOfExamples() - firstExample);
+
+        SplittableRandom random = augmenter != null ? augmenter.newRandom(epochNumber, batch) : null;
+
+        Arrays.fill(slot.labelStaging, 0);
+        for (int i = 0; i < count; i++) {
+            exampleSource.readPixels(firstExample + i, pixels, 0);
+            if (augmenter != null)
+                augmenter.augment(pixels, 0, scratch, random);
+            int offset = i * exampleLength;
+            for (int j = 0; j < exampleLength; j++)
+                slot.featureStaging[offset + j] = pixelValues[pixels[j] & 0xFF];
+            slot.labelStaging[i * numberOfClasses + exampleSource.getLabel(firstExample + i)] = 1;
+        }
+
+        if (count == batchSize) {
+            slot.features.data().setData(slot.featureStaging);
+            slot.labels.data().setData(slot.labelStaging);
+        } else {
+            slot.tailFeatures = Nd4j.create(Arrays.copyOf(slot.featureStaging, count * exampleLength), new int[] {count, exampleSource.getChannels(), exampleSource.getHeight(), exampleSource.getWidth()});
+            slot.tailLabels = Nd4j.create(Arrays.copyOf(slot.labelStaging, count * numberOfClasses), new int[] {count, numberOfClasses});
+        }
+        slot.count = count;
+    }
+    //------------------------------------------------------------------------------------------------------------------
+
+
+
+    // Data set iterator details
+    //------------------------------------------------------------------------------------------------------------------
+    @Override
+    public int totalExamples() {
+        return exampleSource.getNumberOfExamples();
+    }
+
+    @Override
+    public int inputColumns() {
+        return exampleSource.getExampleLength();
+    }
+
+    @Override
+    public int totalOutcomes() {
+        return numberOfClasses;
+    }
+
+    @Override
+    public boolean resetSupported() {
+        return true;
+    }
+
+    /**
+     * Batches are already prefetched here, and wrapping into another async iterator would break buffer reuse
+     */
+    @Override
+    public boolean asyncSupported() {
+        return false;
+    }
+
+    @Override
+    public int batch() {
+        return batchSize;
+    }
+
+    @Override
+    public int cursor() {
+        return Math.min(nextBatch * batchSize, totalExamples());
+    }
+
+    @Override
+    public int numExamples() {
+        return totalExamples();
+    }
+
+    @Override
+    public void setPreProcessor(DataSetPreProcessor preProcessor) {
+        this.preProcessor = preProcessor;
+    }
+
+    @Override
+    public DataSetPreProcessor getPreProcessor() {
+        return preProcessor;
+    }
+
+    @Override
+    public List<String> getLabels() {
+        return exampleSource.getLabels();
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+    //------------------------------------------------------------------------------------------------------------------
+
+
+
+    // Internal state
+    //------------------------------------------------------------------------------------------------------------------
+    /**
+     * State of one pass over the data, workers of a cancelled epoch stop as soon as they notice it
+     */
+    private static class Epoch {
+        private final int number;
+        private final AtomicInteger claimedBatches = new AtomicInteger();
+        private final List<Future<?>> futures = new ArrayList<>();
+        private volatile boolean cancelled;
+        private volatile Throwable failure;
+
+        private Epoch(int number) {
+            this.number = number;
+        }
+    }
+
+    /**
+     * One reusable batch buffer of the ring
+     * allowedBatch - batch number that workers may write into this slot next
+     * readyBatch - batch number that is fully written and can be handed out
+     */
+    private class Slot {
+        private final int index;
+        private final INDArray features;
+        private final INDArray labels;
+        private final float[] featureStaging;
+        private final float[] labelStaging;
+        private INDArray tailFeatures;
+        private INDArray tailLabels;
+        private int count;
+        private int allowedBatch;
+        private int readyBatch;
+
+        private Slot(int index) {
+            this.index = index;
+            this.features = Nd4j.create(new int[] {batchSize, exampleSource.getChannels(), exampleSource.getHeight(), exampleSource.getWidth()}, 'c');
+            this.labels = Nd4j.create(new int[] {batchSize, numberOfClasses}, 'c');
+            this.featureStaging = new float[batchSize * exampleSource.getExampleLength()];
+            this.labelStaging = new float[batchSize * numberOfClasses];
+            clear();
+        }
+
+        private synchronized void clear() {
+            allowedBatch = index;
+            readyBatch = -1;
+        }
+
+        private synchronized boolean awaitFree(int batch, Epoch epoch) throws InterruptedException {
+            while (allowedBatch != batch && !epoch.cancelled)
+                wait();
+            return !epoch.cancelled;
+        }
+
+        private synchronized void publish(int batch) {
+            readyBatch = batch;
+            notifyAll();
+        }
+
+        private synchronized void release(int nextAllowedBatch) {
+            allowedBatch = nextAllowedBatch;
+            notifyAll();
+        }
+
+        private synchronized void awaitReady(int batch, Epoch epoch) {
+            try {
+                while (readyBatch != batch) {
+                    if (epoch.failure != null)
+                        throw new RuntimeException("Prefetching worker failed: ", epoch.failure);
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for batch " + batch, e);
+            }
+        }
+
+        private synchronized void wakeUp() {
+            notifyAll();
+        }
+    }
+    //------------------------------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,75 @@
+package com.tekleo.image_classifier.inference;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+
+/**
+ * Conversion of Java2D images into network input
+ *
+ * Training images are decoded by OpenCV (through NativeImageLoader), which gives channels in BGR order,
+ * so color images are converted to the same BGR CHW layout here, and pixels are scaled into 0..1 range
+ */
+public class ImageFeatures {
+    private static final double MAX_PIXEL_VALUE = 255;
+
+    /**
+     * @param image any image, it is resized if its size doesn't match
+     * @param height network input height
+     * @param width network input width
+     * @param channels network input channels, 3 for BGR or 1 for grayscale
+     * @return features shaped as a batch of 1
+     */
+    public static INDArray fromBufferedImage(BufferedImage image, int height, int width, int channels) {
+        float[] features = new float[channels * height * width];
+        toFloats(image, height, width, channels, features, 0);
+        return Nd4j.create(features, new int[] {1, channels, height, width});
+    }
+
+    /**
+     * Same conversion without ND4J, for the pure-Java inference engine
+     * @param image any image, it is resized if its size doesn't match
+     * @param height network input height
+     * @param width network input width
+     * @param channels network input channels, 3 for BGR or 1 for grayscale
+     * @param features target array, channels * height * width values are written
+     * @param offset position of the first value in the target array
+     */
+    public static void toFloats(BufferedImage image, int height, int width, int channels, float[] features, int offset) {
+        BufferedImage resized = resize(image, height, width);
+        int planeLength = height * width;
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int rgb = resized.getRGB(x, y);
+                int red = (rgb >> 16) & 0xFF;
+                int green = (rgb >> 8) & 0xFF;
+                int blue = rgb & 0xFF;
+                int position = offset + y * width + x;
+
+                if (channels == 1) {
+                    features[position] = (float) ((0.299 * red + 0.587 * green + 0.114 * blue) / MAX_PIXEL_VALUE);
+                } else {
+                    features[position] = (float) (blue / MAX_PIXEL_VALUE);
+                    features[planeLength + position] = (float) (green / MAX_PIXEL_VALUE);
+                    features[2 * planeLength + position] = (float) (red / MAX_PIXEL_VALUE);
+                }
+            }
+        }
+    }
+
+    private static BufferedImage resize(BufferedImage image, int height, int width) {
+        if (image.getHeight() == height && image.getWidth() == width)
+            return image;
+
+        BufferedImage resized = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = resized.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        graphics.drawImage(image, 0, 0, width, height, null);
+        graphics.dispose();
+        return resized;
+    }
+}
@@ -0,0 +1,164 @@
+package com.tekleo.image_classifier.inference;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.tekleo.image_classifier.neural_network.CifarModel;
+import org.apache.commons.io.IOUtils;
+import org.datavec.image.loader.NativeImageLoader;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local HTTP server that classifies single images with a network saved by {@link CifarModel#save()} or by checkpoints,
+ * a RAW parameter file is the fastest to start from, as its parameters are memory-mapped
+ *
+ * Endpoints:
+ *  POST /classify - body is an encoded image (PNG, JPEG...), response is JSON with the top label and all class probabilities
+ *  GET /stats - JSON with request count, throughput and p50/p99 latency
+ *
+ * Images are decoded on HTTP handler threads, concurrent requests are then grouped into batches by {@link MicroBatcher}
+ *
+ * Arguments: [model file (default: CifarModel.NETWORK_FILEPATH)] [port (default: 8080)] [max batch size (default: 32)] [latency budget in microseconds (default: 2000)]
+ */
+public class InferenceServer implements AutoCloseable {
+    private static final int IMAGE_HEIGHT = 32;
+    private static final int IMAGE_WIDTH = 32;
+    private static final int IMAGE_CHANNELS = 3;
+    private static final double MAX_PIXEL_VALUE = 255;
+    private static final List<String> LABELS = Arrays.asList("airplane", "automobile", "bird", "cat", "deer", "dog", "frog", "horse", "ship", "truck");
+
+    private static final int DEFAULT_PORT = 8080;
+    private static final int DEFAULT_MAX_BATCH_SIZE = 32;
+    private static final long DEFAULT_LATENCY_BUDGET_MICROS = 2000;
+    private static final long REQUEST_TIMEOUT_SECONDS = 30;
+
+    private static final Gson GSON = new GsonBuilder().create();
+
+    private final HttpServer httpServer;
+    private final ExecutorService handlerExecutor;
+    private final MicroBatcher microBatcher;
+    private final LatencyRecorder latencyRecorder;
+    private final ThreadLocal<NativeImageLoader> imageLoaders;
+
+    public InferenceServer(MultiLayerNetwork network, int port, int maxBatchSize, long latencyBudgetMicros) throws IOException {
+        this.latencyRecorder = new LatencyRecorder();
+        this.microBatcher = new MicroBatcher(network, maxBatchSize, latencyBudgetMicros, latencyRecorder);
+        this.imageLoaders = ThreadLocal.withInitial(() -> new NativeImageLoader(IMAGE_HEIGHT, IMAGE_WIDTH, IMAGE_CHANNELS));
+
+        // Handlers block while their request waits in a batch, so there must be at least a full batch of them
+        this.handlerExecutor = Executors.newFixedThreadPool(Math.max(maxBatchSize, Runtime.getRuntime().availableProcessors()) * 2);
+        this.httpServer = HttpServer.create(new InetSocketAddress(port), 0);
+        this.httpServer.createContext("/classify", this::handleClassify);
+        this.httpServer.createContext("/stats", this::handleStats);
+        this.httpServer.setExecutor(handlerExecutor);
+    }
+
+    public static void main(String[] args) throws Exception {
+        String modelPath = args.length > 0 ? args[0] : CifarModel.NETWORK_FILEPATH;
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PORT;
+        int maxBatchSize = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_MAX_BATCH_SIZE;
+        long latencyBudgetMicros = args.length > 3 ? Long.parseLong(args[3]) : DEFAULT_LATENCY_BUDGET_MICROS;
+
+        MultiLayerNetwork network = CifarModel.restore(new File(modelPath));
+        InferenceServer inferenceServer = new InferenceServer(network, port, maxBatchSize, latencyBudgetMicros);
+        inferenceServer.start();
+        System.out.println("Serving " + modelPath + " on port " + port + ", max batch " + maxBatchSize + ", latency budget " + latencyBudgetMicros + " us");
+    }
+
+    public void start() {
+        httpServer.start();
+    }
+
+    public LatencyRecorder.Snapshot getStats() {
+        return latencyRecorder.snapshot();
+    }
+
+    @Override
+    public void close() {
+        httpServer.stop(0);
+        microBatcher.close();
+        handlerExecutor.shutdownNow();
+    }
+
+
+
+    // Handlers
+    //------------------------------------------------------------------------------------------------------------------
+    private void handleClassify(HttpExchange exchange) throws IOException {
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                respond(exchange, 405, error("Use POST with an image as request body"));
+                return;
+            }
+
+            INDArray features;
+            try (InputStream inputStream = exchange.getRequestBody()) {
+                features = imageLoaders.get().asMatrix(new ByteArrayInputStream(IOUtils.toByteArray(inputStream))).divi(MAX_PIXEL_VALUE);
+            } catch (Exception e) {
+                respond(exchange, 400, error("Failed to decode image: " + e.getMessage()));
+                return;
+            }
+
+            INDArray probabilities = microBatcher.submit(features).get(REQUEST_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            respond(exchange, 200, GSON.toJson(prediction(probabilities)));
+        } catch (Exception e) {
+            respond(exchange, 500, error(e.toString()));
+        }
+    }
+
+    private void handleStats(HttpExchange exchange) throws IOException {
+        respond(exchange, 200, GSON.toJson(latencyRecorder.snapshot()));
+    }
+    //------------------------------------------------------------------------------------------------------------------
+
+
+
+    // Static helpers
+    //------------------------------------------------------------------------------------------------------------------
+    private static Map<String, Object> prediction(INDArray probabilities) {
+        Map<String, Double> probabilityOfLabel = new LinkedHashMap<>();
+        int best = 0;
+        for (int i = 0; i < probabilities.length(); i++) {
+            probabilityOfLabel.put(i < LABELS.size() ? LABELS.get(i) : String.valueOf(i), probabilities.getDouble(i));
+            if (probabilities.getDouble(i) > probabilities.getDouble(best))
+                best = i;
+        }
+
+        Map<String, Object> prediction = new LinkedHashMap<>();
+        prediction.put("label", best < LABELS.size() ? LABELS.get(best) : String.valueOf(best));
+        prediction.put("probabilities", probabilityOfLabel);
+        return prediction;
+    }
+
+    private static String error(String message) {
+        return GSON.toJson(Collections.singletonMap("error", message));
+    }
+
+    private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(body);
+        }
+    }
+    //------------------------------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,108 @@
+package com.tekleo.image_classifier.inference;
+
+import java.util.Arrays;
+
+/**
+ * Thread-safe recorder of request latencies
+ * Keeps the most recent latencies in a fixed ring for percentiles, and totals since start for throughput
+ */
+public class LatencyRecorder {
+    private static final int DEFAULT_WINDOW = 10_000;
+
+    private final long[] recentLatenciesNanos;
+    private final long startNanos;
+    private long totalRequests;
+    private long totalBatches;
+
+    public LatencyRecorder() {
+        this(DEFAULT_WINDOW);
+    }
+
+    public LatencyRecorder(int window) {
+        this.recentLatenciesNanos = new long[window];
+        this.startNanos = System.nanoTime();
+    }
+
+    public synchronized void recordRequest(long latencyNanos) {
+        recentLatenciesNanos[(int) (totalRequests % recentLatenciesNanos.length)] = latencyNanos;
+        totalRequests++;
+    }
+
+    public synchronized void recordBatch() {
+        totalBatches++;
+    }
+
+    /**
+     * @return snapshot of current statistics
+     */
+    public synchronized Snapshot snapshot() {
+        int size = (int) Math.min(totalRequests, recentLatenciesNanos.length);
+        long[] sorted = Arrays.copyOf(recentLatenciesNanos, size);
+        Arrays.sort(sorted);
+        double elapsedSeconds = (System.nanoTime() - startNanos) / 1e9;
+        return new Snapshot(
+                totalRequests,
+                totalBatches,
+                totalRequests / elapsedSeconds,
+                totalBatches == 0 ? 0 : (double) totalRequests / totalBatches,
+                percentileMillis(sorted, 0.50),
+                percentileMillis(sorted, 0.99));
+    }
+
+    private static double percentileMillis(long[] sorted, double percentile) {
+        if (sorted.length == 0)
+            return 0;
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(percentile * sorted.length) - 1);
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    /**
+     * Immutable statistics, serialized as JSON by the stats endpoint
+     */
+    public static class Snapshot {
+        private final long requests;
+        private final long batches;
+        private final double requestsPerSecond;
+        private final double averageBatchSize;
+        private final double p50Millis;
+        private final double p99Millis;
+
+        private Snapshot(long requests, long batches, double requestsPerSecond, double averageBatchSize, double p50Millis, double p99Millis) {
+            this.requests = requests;
+            this.batches = batches;
+            this.requestsPerSecond = requestsPerSecond;
+            this.averageBatchSize = averageBatchSize;
+            this.p50Millis = p50Millis;
+            this.p99Millis = p99Millis;
+        }
+
+        public long getRequests() {
+            return requests;
+        }
+
+        public long getBatches() {
+            return batches;
+        }
+
+        public double getRequestsPerSecond() {
+            return requestsPerSecond;
+        }
+
+        public double getAverageBatchSize() {
+            return averageBatchSize;
+        }
+
+        public double getP50Millis() {
+            return p50Millis;
+        }
+
+        public double getP99Millis() {
+            return p99Millis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("requests=%d, batches=%d, throughput=%.1f req/s, average batch=%.1f, p50=%.2f ms, p99=%.2f ms", requests, batches, requestsPerSecond, averageBatchSize, p50Millis, p99Millis);
+        }
+    }
+}
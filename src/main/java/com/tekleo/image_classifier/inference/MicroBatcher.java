@@ -0,0 +1,159 @@
+package com.tekleo.image_classifier.inference;
+
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects single-image requests from many threads into batches for one network
+ *
+ * A dispatcher thread takes the first waiting request, then keeps collecting more until either the batch is full
+ * or the latency budget (counted from arrival of the first request) runs out, and runs one forward pass for the whole batch
+ * Only the dispatcher thread touches the network, so a single non thread-safe network is enough
+ */
+public class MicroBatcher implements AutoCloseable {
+    private static final long IDLE_POLL_MILLIS = 100;
+    private static final String THREAD_NAME = "micro-batcher";
+
+    private final MultiLayerNetwork network;
+    private final int maxBatchSize;
+    private final long latencyBudgetNanos;
+    private final LatencyRecorder latencyRecorder;
+    private final BlockingQueue<Request> queue;
+    private final Thread dispatcherThread;
+    private volatile boolean running;
+
+    /**
+     * @param network network to run, used only from the dispatcher thread
+     * @param maxBatchSize largest batch to run at once
+     * @param latencyBudgetMicros longest time a request waits for others to join its batch
+     * @param latencyRecorder recorder for request latencies
+     */
+    public MicroBatcher(MultiLayerNetwork network, int maxBatchSize, long latencyBudgetMicros, LatencyRecorder latencyRecorder) {
+        this.network = network;
+        this.maxBatchSize = maxBatchSize;
+        this.latencyBudgetNanos = TimeUnit.MICROSECONDS.toNanos(latencyBudgetMicros);
+        this.latencyRecorder = latencyRecorder;
+        this.queue = new LinkedBlockingQueue<>();
+        this.running = true;
+        this.dispatcherThread = new Thread(this::dispatch, THREAD_NAME);
+        this.dispatcherThread.setDaemon(true);
+        this.dispatcherThread.start();
+    }
+
+    /**
+     * Queue one example for inference
+     * @param features features of a single example, shaped as a batch of 1
+     * @return future with network output for this example, shaped as a batch of 1
+     */
+    public CompletableFuture<INDArray> submit(INDArray features) {
+        if (!running)
+            throw new IllegalStateException("Micro batcher is closed");
+
+        Request request = new Request(features);
+        queue.add(request);
+        // Closed between the check and the add, the dispatcher may have drained the queue already, so the request would never complete
+        if (!running && queue.remove(request))
+            request.future.completeExceptionally(new IllegalStateException("Micro batcher is closed"));
+        return request.future;
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        dispatcherThread.interrupt();
+    }
+
+
+
+    // Dispatcher
+    //------------------------------------------------------------------------------------------------------------------
+    private void dispatch() {
+        List<Request> batch = new ArrayList<>(maxBatchSize);
+        while (running) {
+            try {
+                Request first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null)
+                    continue;
+
+                batch.add(first);
+                collect(batch, first.enqueuedNanos + latencyBudgetNanos);
+                run(batch);
+            } catch (InterruptedException e) {
+                // Closed while collecting, requests already taken off the queue are only in this batch
+                fail(batch);
+                Thread.currentThread().interrupt();
+                break;
+            } finally {
+                batch.clear();
+            }
+        }
+
+        // Fail whatever is left, nobody will serve it anymore
+        List<Request> left = new ArrayList<>();
+        queue.drainTo(left);
+        fail(left);
+    }
+
+    private static void fail(List<Request> requests) {
+        for (Request request : requests)
+            request.future.completeExceptionally(new IllegalStateException("Micro batcher is closed"));
+    }
+
+    private void collect(List<Request> batch, long deadlineNanos) throws InterruptedException {
+        while (batch.size() < maxBatchSize) {
+            long remainingNanos = deadlineNanos - System.nanoTime();
+            if (remainingNanos <= 0) {
+                queue.drainTo(batch, maxBatchSize - batch.size());
+                return;
+            }
+
+            Request next = queue.poll(remainingNanos, TimeUnit.NANOSECONDS);
+            if (next == null)
+                return;
+            batch.add(next);
+        }
+    }
+
+    private void run(List<Request> batch) {
+        try {
+            INDArray[] features = new INDArray[batch.size()];
+            for (int i = 0; i < features.length; i++)
+                features[i] = batch.get(i).features;
+
+            INDArray output = network.output(features.length == 1 ? features[0] : Nd4j.concat(0, features), false);
+            latencyRecorder.recordBatch();
+
+            for (int i = 0; i < features.length; i++) {
+                Request request = batch.get(i);
+                request.future.complete(output.getRow(i).dup());
+                latencyRecorder.recordRequest(System.nanoTime() - request.enqueuedNanos);
+            }
+        } catch (Throwable t) {
+            for (Request request : batch)
+                request.future.completeExceptionally(t);
+        }
+    }
+    //------------------------------------------------------------------------------------------------------------------
+
+
+
+    private static class Request {
+        private final INDArray features;
+        private final CompletableFuture<INDArray> future;
+        private final long enqueuedNanos;
+
+        private Request(INDArray features) {
+            this.features = features;
+            this.future = new CompletableFuture<>();
+            this.enqueuedNanos = System.nanoTime();
+        }
+    }
+}
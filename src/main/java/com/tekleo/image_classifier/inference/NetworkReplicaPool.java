@@ -0,0 +1,74 @@
+package com.tekleo.image_classifier.inference;
+
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Pool of network replicas for concurrent inference
+ *
+ * MultiLayerNetwork keeps per-call state (inputs, activations) in its layers, so one instance can't serve several threads at once
+ * Every replica here has its own layers built from the same configuration, but is initialized over the very same flattened
+ * parameter array as the source network, so weights are shared read-only and never copied, however many replicas there are
+ *
+ * Parameters are shared with the source network, so training it while the pool serves requests is not safe
+ */
+public class NetworkReplicaPool {
+    private final MultiLayerNetwork network;
+    private final BlockingQueue<MultiLayerNetwork> replicas;
+    private final int size;
+
+    /**
+     * @param network source network, its parameters are shared by all replicas
+     * @param size number of replicas, that is the number of threads that can run inference at the same time
+     */
+    public NetworkReplicaPool(MultiLayerNetwork network, int size) {
+        this.network = network;
+        this.size = size;
+        this.replicas = new ArrayBlockingQueue<>(size);
+        for (int i = 0; i < size; i++)
+            replicas.add(replicate(network));
+    }
+
+    /**
+     * Run inference on any free replica, blocks while all replicas are busy
+     * @param features input batch
+     * @return network output for the batch
+     */
+    public INDArray output(INDArray features) {
+        MultiLayerNetwork replica;
+        try {
+            replica = replicas.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a free network replica", e);
+        }
+
+        try {
+            return replica.output(features, false);
+        } finally {
+            replicas.add(replica);
+        }
+    }
+
+    public MultiLayerNetwork getNetwork() {
+        return network;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+
+
+    // Static helpers
+    //------------------------------------------------------------------------------------------------------------------
+    private static MultiLayerNetwork replicate(MultiLayerNetwork network) {
+        MultiLayerNetwork replica = new MultiLayerNetwork(network.getLayerWiseConfigurations().clone());
+        replica.init(network.params(), false);
+        return replica;
+    }
+    //------------------------------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,26 @@
+package com.tekleo.image_classifier.inference.embedding;
+
+/**
+ * Exception to be used when extracting embeddings, or writing and reading an embedding store or index
+ */
+public class EmbeddingException extends Exception {
+    public EmbeddingException() {
+
+    }
+
+    public EmbeddingException(String message) {
+        super(message);
+    }
+
+    public EmbeddingException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public EmbeddingException(Throwable cause) {
+        super(cause);
+    }
+
+    public EmbeddingException(String message, Throwable cause, boolean enableSuppression, boolean writableStackTrace) {
+        super(message, cause, enableSuppression, writableStackTrace);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,174 @@
+package com.tekleo.image_classifier.inference.embedding;
+
+import com.tekleo.image_classifier.dataset.index.DatasetIndex;
+import com.tekleo.image_classifier.dataset.index.DatasetIndexException;
+import com.tekleo.image_classifier.dataset.index.DirectoryScanner;
+import com.tekleo.image_classifier.dataset.index.IndexEntry;
+import com.tekleo.image_classifier.dataset.pipeline.ExampleSource;
+import com.tekleo.image_classifier.dataset.pipeline.ImageFileExampleSource;
+import com.tekleo.image_classifier.dataset.pipeline.PrefetchingDataSetIterator;
+import com.tekleo.image_classifier.neural_network.CifarModel;
+import org.datavec.api.io.labels.ParentPathLabelGenerator;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streams images through a trained network up to one of its hidden layers and writes the activations of that layer into an {@link EmbeddingStore}
+ *
+ * The default layer is the last one before the output layer, the 1200 unit dense layer of the baseline network, or the global pooling of the gap networks,
+ * convolution activations of an earlier layer are flattened
+ * Images are decoded and scaled on a pool of prefetching threads exactly like the training data (see {@link PrefetchingDataSetIterator}),
+ * and only one batch of activations is in memory at a time, so the size of the directory is only bounded by the disk
+ *
+ * Image directories are listed by {@link DirectoryScanner}, its index file is kept next to the store, so extracting again after adding images
+ * doesn't list the whole tree again
+ *
+ * Arguments: model-file image-directory store-file [layer index (default: last hidden layer)] [batch size (default: 128)]
+ */
+public class EmbeddingExtractor {
+    public static final int DEFAULT_BATCH_SIZE = 128;
+    private static final int IMAGE_HEIGHT = 32;
+    private static final int IMAGE_WIDTH = 32;
+    private static final int IMAGE_CHANNELS = 3;
+    // Same pixel range as the training data of CifarDataset
+    private static final double PIXEL_MIN = 0;
+    private static final double PIXEL_MAX = 1;
+    private static final String[] IMAGE_EXTENSIONS = {"png", "jpg", "jpeg", "bmp"};
+    private static final String INDEX_FILE_EXTENSION = ".index";
+    private static final int PREFETCH_BATCHES_PER_WORKER = 2;
+    private static final int REPORT_FREQUENCY = 50;
+
+    private final MultiLayerNetwork network;
+    private final int layer;
+
+    public EmbeddingExtractor(MultiLayerNetwork network) {
+        this(network, network.getnLayers() - 2);
+    }
+
+    /**
+     * @param network trained network
+     * @param layer index of the layer whose activations are the embedding, any layer before the output layer
+     */
+    public EmbeddingExtractor(MultiLayerNetwork network, int layer) {
+        if (layer < 0 || layer >= network.getnLayers() - 1)
+            throw new IllegalArgumentException("Layer must be 0.." + (network.getnLayers() - 2) + ", got " + layer);
+        this.network = network;
+        this.layer = layer;
+    }
+
+    public static void main(String[] args) throws Exception {
+        MultiLayerNetwork network = CifarModel.restore(new File(args[0]));
+        File imageDirectory = new File(args[1]);
+        File storeFile = new File(args[2]);
+        EmbeddingExtractor extractor = args.length > 3 ? new EmbeddingExtractor(network, Integer.parseInt(args[3])) : new EmbeddingExtractor(network);
+        int batchSize = args.length > 4 ? Integer.parseInt(args[4]) : DEFAULT_BATCH_SIZE;
+
+        long start = System.nanoTime();
+        int vectors = extractor.extractDirectory(imageDirectory, storeFile, batchSize);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format("Wrote %d embeddings of layer %d to %s in %.1f s, %.0f images/s", vectors, extractor.getLayer(), storeFile, seconds, vectors / seconds));
+    }
+
+
+
+    // Extraction
+    //------------------------------------------------------------------------------------------------------------------
+    /**
+     * Embed every image of a directory tree, in the order of the directory index
+     * @param imageDirectory directory with images, subdirectories are scanned too
+     * @param storeFile store file, overwritten
+     * @param batchSize images per forward pass
+     * @return number of written vectors
+     * @throws EmbeddingException if the directory can't be scanned or the store can't be written
+     */
+    public int extractDirectory(File imageDirectory, File storeFile, int batchSize) throws EmbeddingException {
+        int cores = Runtime.getRuntime().availableProcessors();
+        DatasetIndex index;
+        try {
+            index = DirectoryScanner.scan(imageDirectory, IMAGE_EXTENSIONS, new File(storeFile.getPath() + INDEX_FILE_EXTENSION), cores);
+        } catch (DatasetIndexException e) {
+            throw new EmbeddingException("Can't scan " + imageDirectory.getPath(), e);
+        }
+        if (index.size() == 0)
+            throw new EmbeddingException("No images in " + imageDirectory.getPath());
+
+        List<String> paths = new ArrayList<>(index.size());
+        for (IndexEntry entry : index.getEntries())
+            paths.add(entry.getRelativePath());
+        ExampleSource exampleSource = new ImageFileExampleSource(index.toInputSplit(index.getEntries()), IMAGE_HEIGHT, IMAGE_WIDTH, IMAGE_CHANNELS, new ParentPathLabelGenerator());
+        return extract(exampleSource, paths, storeFile, batchSize, cores);
+    }
+
+    /**
+     * Embed every image of a source, in source order
+     * @param exampleSource images, a directory or a tensor cache
+     * @param paths path of every image of the source, saved with its vector
+     * @param storeFile store file, overwritten
+     * @param batchSize images per forward pass
+     * @param workers threads that decode images
+     * @return number of written vectors
+     * @throws EmbeddingException if the store can't be written
+     */
+    public int extract(ExampleSource exampleSource, List<String> paths, File storeFile, int batchSize, int workers) throws EmbeddingException {
+        if (paths.size() != exampleSource.getNumberOfExamples())
+            throw new IllegalArgumentException("Got " + paths.size() + " paths for " + exampleSource.getNumberOfExamples() + " images");
+
+        PrefetchingDataSetIterator iterator = new PrefetchingDataSetIterator(exampleSource, batchSize, workers, workers * PREFETCH_BATCHES_PER_WORKER, 1, PIXEL_MIN, PIXEL_MAX);
+        EmbeddingStoreWriter writer = null;
+        try {
+            int position = 0;
+            int batches = 0;
+            while (iterator.hasNext()) {
+                INDArray embeddings = embed(iterator.next().getFeatures());
+                int rows = embeddings.size(0);
+                int dimension = embeddings.size(1);
+                if (writer == null)
+                    writer = new EmbeddingStoreWriter(storeFile, dimension);
+                float[] values = embeddings.data().asFloat();
+                for (int row = 0; row < rows; row++)
+                    writer.add(values, row * dimension, paths.get(position++));
+                if (++batches % REPORT_FREQUENCY == 0)
+                    System.out.println("Embedded " + position + " of " + paths.size() + " images");
+            }
+        } finally {
+            iterator.shutdown();
+            if (writer != null)
+                writer.close();
+        }
+        return writer != null ? writer.size() : 0;
+    }
+
+    /**
+     * @param features batch of images shaped as [batch, channels, height, width] with pixels scaled into 0..1 range
+     * @return activations of the embedding layer, one row per image, not normalized
+     */
+    public INDArray embed(INDArray features) {
+        // Layer by layer like MultiLayerNetwork.activateSelectedLayers, which can't stop at layer 0
+        // feedForwardToLayer on a freshly restored network crashes in native pooling with batches of 128, the input has to be set so preprocessors get the batch size
+        network.setInput(features);
+        INDArray activations = features;
+        for (int i = 0; i <= layer; i++)
+            activations = network.activationFromPrevLayer(i, activations, false);
+        // Copy in row order, so a batch of feature maps can be flattened into rows and its buffer read directly
+        INDArray rows = activations.dup('c');
+        return rows.reshape('c', rows.size(0), rows.length() / rows.size(0));
+    }
+    //------------------------------------------------------------------------------------------------------------------
+
+
+
+    // Getters
+    //------------------------------------------------------------------------------------------------------------------
+    public MultiLayerNetwork getNetwork() {
+        return network;
+    }
+
+    public int getLayer() {
+        return layer;
+    }
+    //------------------------------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,226 @@
+package com.tekleo.image_classifier.inference.embedding;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Read-only view of an embedding store file written by {@link EmbeddingStoreWriter}, vectors are memory-mapped so they stay off the heap,
+ * pages are loaded lazily by the OS and shared by every process that opens the same store
+ *
+ * File layout (big-endian):
+ *  HEADER: magic, version, vectors, dimension, reserved (8 ints, 32 bytes)
+ *  VECTORS: vectors x dimension floats, every vector of unit length (or all zeros)
+ *  PATHS: vectors modified UTF-8 strings, path of the image of every vector relative to its image directory
+ *
+ * Vectors can exceed 2 GB for millions of images, so they are mapped in several regions, each region holds a whole number of vectors
+ * Distance between vectors is cosine distance, 1 - dot product, 0 for the same direction and 2 for the opposite
+ *
+ * Reading methods are safe to call from several threads at once
+ */
+public class EmbeddingStore implements AutoCloseable {
+    static final int MAGIC = 0x454D4231;
+    static final int VERSION = 1;
+    static final int HEADER_LENGTH = 32;
+
+    private final File file;
+    private final RandomAccessFile randomAccessFile;
+    private final FileChannel fileChannel;
+    private final int size;
+    private final int dimension;
+    private final int vectorsPerRegion;
+    private final FloatBuffer[] regions;
+    private final String[] paths;
+
+    private EmbeddingStore(File file, RandomAccessFile randomAccessFile, FileChannel fileChannel, int size, int dimension, int vectorsPerRegion, FloatBuffer[] regions, String[] paths) {
+        this.file = file;
+        this.randomAccessFile = randomAccessFile;
+        this.fileChannel = fileChannel;
+        this.size = size;
+        this.dimension = dimension;
+        this.vectorsPerRegion = vectorsPerRegion;
+        this.regions = regions;
+        this.paths = paths;
+    }
+
+    /**
+     * Map an existing store file
+     * @param file store file
+     * @return mapped store
+     * @throws EmbeddingException if the file is missing, truncated or has a wrong header
+     */
+    public static EmbeddingStore open(File file) throws EmbeddingException {
+        RandomAccessFile randomAccessFile = null;
+        try {
+            randomAccessFile = new RandomAccessFile(file, "r");
+            FileChannel fileChannel = randomAccessFile.getChannel();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+            while (header.hasRemaining())
+                if (fileChannel.read(header, header.position()) < 0)
+                    throw new EmbeddingException(file.getPath() + " is truncated");
+            header.flip();
+
+            if (header.getInt() != MAGIC)
+                throw new EmbeddingException(file.getPath() + " is not an embedding store");
+            if (header.getInt() != VERSION)
+                throw new EmbeddingException(file.getPath() + " has unsupported version");
+
+            int size = header.getInt();
+            int dimension = header.getInt();
+            long vectorLength = 4L * dimension;
+            long vectorsLength = vectorLength * size;
+            if (dimension <= 0 || fileChannel.size() < HEADER_LENGTH + vectorsLength + 2L * size)
+                throw new EmbeddingException(file.getPath() + " has wrong size");
+
+            // Map vectors in regions holding a whole number of them
+            int vectorsPerRegion = (int) Math.max(1, Integer.MAX_VALUE / vectorLength);
+            int numberOfRegions = (size + vectorsPerRegion - 1) / vectorsPerRegion;
+            FloatBuffer[] regions = new FloatBuffer[numberOfRegions];
+            for (int i = 0; i < numberOfRegions; i++) {
+                long regionStart = HEADER_LENGTH + i * vectorsPerRegion * vectorLength;
+                long regionVectors = Math.min(vectorsPerRegion, size - (long) i * vectorsPerRegion);
+                regions[i] = fileChannel.map(FileChannel.MapMode.READ_ONLY, regionStart, regionVectors * vectorLength).asFloatBuffer();
+            }
+
+            // Paths are only needed to show results, keep them on heap
+            String[] paths = new String[size];
+            fileChannel.position(HEADER_LENGTH + vectorsLength);
+            DataInputStream pathStream = new DataInputStream(new BufferedInputStream(Channels.newInputStream(fileChannel), 1 << 16));
+            for (int i = 0; i < size; i++)
+                paths[i] = pathStream.readUTF();
+
+            return new EmbeddingStore(file, randomAccessFile, fileChannel, size, dimension, vectorsPerRegion, regions, paths);
+        } catch (EmbeddingException e) {
+            closeQuietly(randomAccessFile);
+            throw e;
+        } catch (Exception e) {
+            closeQuietly(randomAccessFile);
+            throw new EmbeddingException("Can't open " + file.getPath(), e);
+        }
+    }
+
+
+
+    // Getters
+    //------------------------------------------------------------------------------------------------------------------
+    public File getFile() {
+        return file;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    public String getPath(int index) {
+        return paths[index];
+    }
+    //------------------------------------------------------------------------------------------------------------------
+
+
+
+    // Reading
+    //------------------------------------------------------------------------------------------------------------------
+    /**
+     * Copy one vector
+     * @param index index of the vector
+     * @param destination array of at least {@link #getDimension()} values
+     */
+    public void get(int index, float[] destination) {
+        FloatBuffer region = regions[index / vectorsPerRegion].duplicate();
+        region.position((index % vectorsPerRegion) * dimension);
+        region.get(destination, 0, dimension);
+    }
+
+    /**
+     * @param index index of the vector
+     * @param query vector of unit length
+     * @return cosine distance between the stored vector and the query
+     */
+    public float distance(int index, float[] query) {
+        FloatBuffer region = regions[index / vectorsPerRegion];
+        int start = (index % vectorsPerRegion) * dimension;
+        float dot = 0;
+        for (int i = 0; i < dimension; i++)
+            dot += region.get(start + i) * query[i];
+        return 1 - dot;
+    }
+
+    /**
+     * Exact nearest vectors, every vector of the store is compared with the query
+     * @param query vector of unit length
+     * @param k number of neighbours
+     * @return up to k nearest vectors, nearest first
+     */
+    public List<Neighbor> search(float[] query, int k) {
+        PriorityQueue<Neighbor> farthestFirst = new PriorityQueue<>(k + 1, Collections.reverseOrder());
+        for (int index = 0; index < size; index++) {
+            float distance = distance(index, query);
+            if (farthestFirst.size() < k || distance < farthestFirst.peek().getDistance()) {
+                farthestFirst.add(new Neighbor(index, distance));
+                if (farthestFirst.size() > k)
+                    farthestFirst.poll();
+            }
+        }
+        List<Neighbor> neighbors = new ArrayList<>(farthestFirst);
+        Collections.sort(neighbors);
+        return neighbors;
+    }
+
+    @Override
+    public void close() throws IOException {
+        fileChannel.close();
+        randomAccessFile.close();
+    }
+    //------------------------------------------------------------------------------------------------------------------
+
+
+
+    // Static helpers
+    //------------------------------------------------------------------------------------------------------------------
+    /**
+     * Scale a query the same way stored vectors were scaled
+     * @param vector any vector
+     * @return copy of unit length, all zeros stay zeros
+     */
+    public static float[] normalize(float[] vector) {
+        float[] normalized = new float[vector.length];
+        float scale = unitScale(vector, 0, vector.length);
+        for (int i = 0; i < vector.length; i++)
+            normalized[i] = vector[i] * scale;
+        return normalized;
+    }
+
+    static float unitScale(float[] vector, int offset, int length) {
+        double squares = 0;
+        for (int i = offset; i < offset + length; i++)
+            squares += vector[i] * vector[i];
+        // All-zero vectors (a ReLU layer that didn't fire) stay zero, they are equally far from everything
+        return squares > 0 ? (float) (1 / Math.sqrt(squares)) : 0;
+    }
+
+    private static void closeQuietly(RandomAccessFile randomAccessFile) {
+        if (randomAccessFile == null)
+            return;
+        try {
+            randomAccessFile.close();
+        } catch (IOException ignored) {
+
+        }
+    }
+    //------------------------------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,95 @@
+package com.tekleo.image_classifier.inference.embedding;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes an {@link EmbeddingStore} file one vector at a time, so a directory of any size is streamed through without keeping its vectors in memory
+ *
+ * Every vector is scaled to unit length before it is written, so the dot product of two stored vectors is their cosine similarity
+ * Vector count isn't known up front, the header is written with 0 vectors and fixed when the writer is closed, a store that was never closed can't be opened
+ * Paths are kept in memory until close, they are written after the vectors
+ *
+ * Not thread-safe
+ */
+public class EmbeddingStoreWriter implements AutoCloseable {
+    private static final int VECTORS_POSITION = 8;
+
+    private final File file;
+    private final int dimension;
+    private final DataOutputStream outputStream;
+    private final List<String> paths;
+
+    /**
+     * @param file store file, overwritten
+     * @param dimension length of every vector
+     * @throws EmbeddingException if the file can't be created
+     */
+    public EmbeddingStoreWriter(File file, int dimension) throws EmbeddingException {
+        this.file = file;
+        this.dimension = dimension;
+        this.paths = new ArrayList<>();
+        try {
+            this.outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+            outputStream.writeInt(EmbeddingStore.MAGIC);
+            outputStream.writeInt(EmbeddingStore.VERSION);
+            outputStream.writeInt(0);
+            outputStream.writeInt(dimension);
+            for (int i = 4; i < EmbeddingStore.HEADER_LENGTH / 4; i++)
+                outputStream.writeInt(0);
+        } catch (IOException e) {
+            throw new EmbeddingException("Can't create " + file.getPath(), e);
+        }
+    }
+
+    /**
+     * Append one vector
+     * @param vector values, at least {@link #getDimension()} of them starting at the offset, not modified
+     * @param offset position of the first value
+     * @param path path of the image the vector was made from, relative to the image directory
+     * @throws EmbeddingException if writing fails
+     */
+    public void add(float[] vector, int offset, String path) throws EmbeddingException {
+        float scale = EmbeddingStore.unitScale(vector, offset, dimension);
+        try {
+            for (int i = offset; i < offset + dimension; i++)
+                outputStream.writeFloat(vector[i] * scale);
+        } catch (IOException e) {
+            throw new EmbeddingException("Can't write " + file.getPath(), e);
+        }
+        paths.add(path);
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    public int size() {
+        return paths.size();
+    }
+
+    /**
+     * Write the paths and the final vector count
+     * @throws EmbeddingException if writing fails
+     */
+    @Override
+    public void close() throws EmbeddingException {
+        try {
+            for (String path : paths)
+                outputStream.writeUTF(path);
+            outputStream.close();
+            try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+                randomAccessFile.seek(VECTORS_POSITION);
+                randomAccessFile.writeInt(paths.size());
+            }
+        } catch (IOException e) {
+            throw new EmbeddingException("Can't finish " + file.getPath(), e);
+        }
+    }
+}
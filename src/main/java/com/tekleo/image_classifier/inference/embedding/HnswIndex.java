@@ -0,0 +1,551 @@
+package com.tekleo.image_classifier.inference.embedding;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Approximate nearest neighbour index over an {@link EmbeddingStore}, a hierarchical navigable small world graph
+ * as in Malkov and Yashunin, "Efficient and robust approximate nearest neighbor search using Hierarchical Navigable Small World graphs"
+ *
+ * Every vector is a node on level 0 and on a random number of levels above it, each level holding exponentially fewer nodes,
+ * a search walks greedily down from the top level and then explores level 0 keeping the ef nearest nodes it found,
+ * a bigger ef visits more nodes, which costs time and raises recall
+ * Neighbours of a node are picked with the heuristic of the paper, a candidate is kept only if it is nearer to the node than to every neighbour kept before it,
+ * so links spread in all directions instead of into one dense cluster
+ *
+ * The index holds only the graph, vectors are read from the memory-mapped store, so the heap takes about 4 * 2M bytes per vector
+ * Graph can be saved and read back for the same store
+ *
+ * Built on one thread, searches are safe to run from several threads at once
+ */
+public class HnswIndex {
+    public static final int DEFAULT_M = 16;
+    public static final int DEFAULT_EF_CONSTRUCTION = 200;
+    public static final int DEFAULT_EF_SEARCH = 64;
+    public static final int MAX_M = 127;
+    private static final int MAGIC = 0x484E5357;
+    private static final int VERSION = 1;
+
+    private final EmbeddingStore store;
+    private final int m;
+    private final int maxNeighbors0;
+    private final int efConstruction;
+    private final int[] levels;
+    private final int[] neighborCounts0;
+    private final int[] neighbors0;
+    // Neighbours of levels above 0, [node][level - 1], first value is the count
+    private final int[][][] upperNeighbors;
+    private final ThreadLocal<SearchState> searchStates;
+    private int entryPoint;
+    private int maxLevel;
+
+    private HnswIndex(EmbeddingStore store, int m, int efConstruction, int[] levels) {
+        this.store = store;
+        this.m = m;
+        this.maxNeighbors0 = 2 * m;
+        this.efConstruction = efConstruction;
+        this.levels = levels;
+        this.neighborCounts0 = new int[levels.length];
+        this.neighbors0 = new int[levels.length * maxNeighbors0];
+        this.upperNeighbors = new int[levels.length][][];
+        for (int node = 0; node < levels.length; node++)
+            if (levels[node] > 0)
+                upperNeighbors[node] = new int[levels[node]][m + 1];
+        this.searchStates = ThreadLocal.withInitial(() -> new SearchState(levels.length, store.getDimension()));
+        this.entryPoint = -1;
+        this.maxLevel = -1;
+    }
+
+    public static HnswIndex build(EmbeddingStore store) {
+        return build(store, DEFAULT_M, DEFAULT_EF_CONSTRUCTION, 0);
+    }
+
+    /**
+     * Insert every vector of the store, in store order
+     * @param store vectors
+     * @param m links per node on levels above 0, level 0 has 2 * m, 12..48 is the usual range, at most {@link #MAX_M}
+     * @param efConstruction candidates kept while linking a new node, more makes a better graph and a slower build
+     * @param seed seed of the random levels
+     * @return index over the whole store
+     */
+    public static HnswIndex build(EmbeddingStore store, int m, int efConstruction, long seed) {
+        // Neighbour counts are saved as single bytes
+        if (m < 2 || m > MAX_M)
+            throw new IllegalArgumentException("M must be 2.." + MAX_M + ", got " + m);
+        int[] levels = new int[store.size()];
+        Random random = new Random(seed);
+        double levelMultiplier = 1 / Math.log(m);
+        for (int node = 0; node < levels.length; node++)
+            levels[node] = (int) (-Math.log(1 - random.nextDouble()) * levelMultiplier);
+
+        HnswIndex index = new HnswIndex(store, m, efConstruction, levels);
+        float[] vector = new float[store.getDimension()];
+        for (int node = 0; node < levels.length; node++) {
+            store.get(node, vector);
+            index.insert(node, vector);
+        }
+        return index;
+    }
+
+
+
+    // Building
+    //------------------------------------------------------------------------------------------------------------------
+    private void insert(int node, float[] vector) {
+        int level = levels[node];
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            return;
+        }
+
+        SearchState state = searchStates.get();
+        int current = entryPoint;
+        float currentDistance = store.distance(current, vector);
+        for (int l = maxLevel; l > level; l--) {
+            current = greedy(vector, current, currentDistance, l);
+            currentDistance = store.distance(current, vector);
+        }
+
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            NodeHeap found = searchLayer(state, vector, current, currentDistance, efConstruction, l);
+            int foundCount = found.size();
+            int[] nodes = new int[foundCount];
+            float[] distances = new float[foundCount];
+            found.drainAscending(nodes, distances);
+
+            int[] selected = selectNeighbors(state, nodes, distances, foundCount, maxNeighbors(l));
+            setNeighbors(node, l, selected, selected.length);
+            for (int neighbor : selected)
+                link(state, neighbor, node, l);
+            current = nodes[0];
+            currentDistance = distances[0];
+        }
+
+        if (level > maxLevel) {
+            maxLevel = level;
+            entryPoint = node;
+        }
+    }
+
+    // Add a back link, a full list is pruned again with the same heuristic
+    private void link(SearchState state, int node, int newNeighbor, int level) {
+        int count = neighborCount(node, level);
+        int maxNeighbors = maxNeighbors(level);
+        if (count < maxNeighbors) {
+            setNeighbor(node, level, count, newNeighbor);
+            setNeighborCount(node, level, count + 1);
+            return;
+        }
+
+        float[] vector = state.vector;
+        store.get(node, vector);
+        Neighbor[] candidates = new Neighbor[count + 1];
+        for (int i = 0; i < count; i++) {
+            int neighbor = neighbor(node, level, i);
+            candidates[i] = new Neighbor(neighbor, store.distance(neighbor, vector));
+        }
+        candidates[count] = new Neighbor(newNeighbor, store.distance(newNeighbor, vector));
+        Arrays.sort(candidates);
+
+        int[] nodes = new int[candidates.length];
+        float[] distances = new float[candidates.length];
+        for (int i = 0; i < candidates.length; i++) {
+            nodes[i] = candidates[i].getIndex();
+            distances[i] = candidates[i].getDistance();
+        }
+        int[] selected = selectNeighbors(state, nodes, distances, nodes.length, maxNeighbors);
+        setNeighbors(node, level, selected, selected.length);
+    }
+
+    /**
+     * Heuristic of the paper, candidates are taken nearest first, and one is kept only if it is nearer to the base node than to every kept one
+     * @param nodes candidates sorted by distance to the base node
+     * @param distances distances to the base node
+     * @param count number of candidates
+     * @param maxNeighbors upper bound of kept candidates
+     * @return kept candidates
+     */
+    private int[] selectNeighbors(SearchState state, int[] nodes, float[] distances, int count, int maxNeighbors) {
+        int[] selected = new int[Math.min(count, maxNeighbors)];
+        int selectedCount = 0;
+        float[] candidate = state.vector;
+        for (int i = 0; i < count && selectedCount < maxNeighbors; i++) {
+            store.get(nodes[i], candidate);
+            boolean diverse = true;
+            for (int j = 0; j < selectedCount && diverse; j++)
+                diverse = store.distance(selected[j], candidate) > distances[i];
+            if (diverse)
+                selected[selectedCount++] = nodes[i];
+        }
+        return Arrays.copyOf(selected, selectedCount);
+    }
+    //------------------------------------------------------------------------------------------------------------------
+
+
+
+    // Searching
+    //------------------------------------------------------------------------------------------------------------------
+    /**
+     * @param query vector of unit length, see {@link EmbeddingStore#normalize(float[])}
+     * @param k number of neighbours
+     * @param ef candidates kept on level 0, at least k
+     * @return up to k approximate nearest vectors, nearest first
+     */
+    public List<Neighbor> search(float[] query, int k, int ef) {
+        if (entryPoint < 0)
+            return Collections.emptyList();
+
+        int current = entryPoint;
+        float currentDistance = store.distance(current, query);
+        for (int l = maxLevel; l > 0; l--) {
+            current = greedy(query, current, currentDistance, l);
+            currentDistance = store.distance(current, query);
+        }
+
+        NodeHeap found = searchLayer(searchStates.get(), query, current, currentDistance, Math.max(ef, k), 0);
+        int[] nodes = new int[found.size()];
+        float[] distances = new float[found.size()];
+        found.drainAscending(nodes, distances);
+        List<Neighbor> neighbors = new ArrayList<>(Math.min(k, nodes.length));
+        for (int i = 0; i < nodes.length && i < k; i++)
+            neighbors.add(new Neighbor(nodes[i], distances[i]));
+        return neighbors;
+    }
+
+    public List<Neighbor> search(float[] query, int k) {
+        return search(query, k, DEFAULT_EF_SEARCH);
+    }
+
+    // Move to the nearest neighbour until no neighbour is nearer
+    private int greedy(float[] query, int entry, float entryDistance, int level) {
+        int current = entry;
+        float currentDistance = entryDistance;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            int node = current;
+            int count = neighborCount(node, level);
+            for (int i = 0; i < count; i++) {
+                int neighbor = neighbor(node, level, i);
+                float distance = store.distance(neighbor, query);
+                if (distance < currentDistance) {
+                    current = neighbor;
+                    currentDistance = distance;
+                    changed = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    // Best-first search of one level, returns the ef nearest nodes found, farthest on top
+    private NodeHeap searchLayer(SearchState state, float[] query, int entry, float entryDistance, int ef, int level) {
+        state.startVisit();
+        state.visit(entry);
+        NodeHeap candidates = state.candidates;
+        NodeHeap found = state.found;
+        candidates.clear();
+        found.clear();
+        candidates.add(entry, entryDistance);
+        found.add(entry, entryDistance);
+
+        while (candidates.size() > 0) {
+            float candidateDistance = candidates.topDistance();
+            if (found.size() >= ef && candidateDistance > found.topDistance())
+                break;
+            int candidate = candidates.pop();
+
+            int count = neighborCount(candidate, level);
+            for (int i = 0; i < count; i++) {
+                int neighbor = neighbor(candidate, level, i);
+                if (!state.visit(neighbor))
+                    continue;
+                float distance = store.distance(neighbor, query);
+                if (found.size() < ef || distance < found.topDistance()) {
+                    candidates.add(neighbor, distance);
+                    found.add(neighbor, distance);
+                    if (found.size() > ef)
+                        found.pop();
+                }
+            }
+        }
+        return found;
+    }
+    //------------------------------------------------------------------------------------------------------------------
+
+
+
+    // Graph access
+    //------------------------------------------------------------------------------------------------------------------
+    private int maxNeighbors(int level) {
+        return level == 0 ? maxNeighbors0 : m;
+    }
+
+    private int neighborCount(int node, int level) {
+        return level == 0 ? neighborCounts0[node] : upperNeighbors[node][level - 1][0];
+    }
+
+    private int neighbor(int node, int level, int i) {
+        return level == 0 ? neighbors0[node * maxNeighbors0 + i] : upperNeighbors[node][level - 1][i + 1];
+    }
+
+    private void setNeighborCount(int node, int level, int count) {
+        if (level == 0)
+            neighborCounts0[node] = count;
+        else
+            upperNeighbors[node][level - 1][0] = count;
+    }
+
+    private void setNeighbor(int node, int level, int i, int neighbor) {
+        if (level == 0)
+            neighbors0[node * maxNeighbors0 + i] = neighbor;
+        else
+            upperNeighbors[node][level - 1][i + 1] = neighbor;
+    }
+
+    private void setNeighbors(int node, int level, int[] neighbors, int count) {
+        for (int i = 0; i < count; i++)
+            setNeighbor(node, level, i, neighbors[i]);
+        setNeighborCount(node, level, count);
+    }
+    //------------------------------------------------------------------------------------------------------------------
+
+
+
+    // Getters
+    //------------------------------------------------------------------------------------------------------------------
+    public EmbeddingStore getStore() {
+        return store;
+    }
+
+    public int size() {
+        return levels.length;
+    }
+
+    public int getM() {
+        return m;
+    }
+
+    public int getEfConstruction() {
+        return efConstruction;
+    }
+
+    public int getMaxLevel() {
+        return maxLevel;
+    }
+
+    /**
+     * @return heap taken by the graph, vectors are not counted, they stay in the store
+     */
+    public long getGraphBytes() {
+        long bytes = 4L * (levels.length + neighborCounts0.length + neighbors0.length);
+        for (int[][] nodeLevels : upperNeighbors)
+            if (nodeLevels != null)
+                bytes += 4L * nodeLevels.length * (m + 1);
+        return bytes;
+    }
+    //------------------------------------------------------------------------------------------------------------------
+
+
+
+    // Files
+    //------------------------------------------------------------------------------------------------------------------
+    /**
+     * Save the graph, vectors stay in the store file
+     * @param file index file, overwritten
+     * @throws EmbeddingException if writing fails
+     */
+    public void write(File file) throws EmbeddingException {
+        try (DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+            outputStream.writeInt(MAGIC);
+            outputStream.writeInt(VERSION);
+            outputStream.writeInt(levels.length);
+            outputStream.writeInt(m);
+            outputStream.writeInt(efConstruction);
+            outputStream.writeInt(entryPoint);
+            outputStream.writeInt(maxLevel);
+            // Levels come first, they are needed to allocate the graph when it is read back
+            for (int level : levels)
+                outputStream.writeByte(level);
+            for (int node = 0; node < levels.length; node++) {
+                for (int level = 0; level <= levels[node]; level++) {
+                    int count = neighborCount(node, level);
+                    outputStream.writeByte(count);
+                    for (int i = 0; i < count; i++)
+                        outputStream.writeInt(neighbor(node, level, i));
+                }
+            }
+        } catch (IOException e) {
+            throw new EmbeddingException("Can't write " + file.getPath(), e);
+        }
+    }
+
+    /**
+     * Read a graph saved by {@link #write(File)}
+     * @param file index file
+     * @param store the store the index was built for
+     * @return index
+     * @throws EmbeddingException if the file can't be read or was built for a store of another size
+     */
+    public static HnswIndex read(File file, EmbeddingStore store) throws EmbeddingException {
+        try (DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            if (inputStream.readInt() != MAGIC)
+                throw new EmbeddingException(file.getPath() + " is not an HNSW index");
+            if (inputStream.readInt() != VERSION)
+                throw new EmbeddingException(file.getPath() + " has unsupported version");
+            int size = inputStream.readInt();
+            if (size != store.size())
+                throw new EmbeddingException(file.getPath() + " indexes " + size + " vectors, but the store has " + store.size());
+            int m = inputStream.readInt();
+            int efConstruction = inputStream.readInt();
+            int entryPoint = inputStream.readInt();
+            int maxLevel = inputStream.readInt();
+
+            int[] levels = new int[size];
+            for (int node = 0; node < size; node++)
+                levels[node] = inputStream.readUnsignedByte();
+            HnswIndex index = new HnswIndex(store, m, efConstruction, levels);
+            for (int node = 0; node < size; node++) {
+                for (int level = 0; level <= levels[node]; level++) {
+                    int count = inputStream.readUnsignedByte();
+                    for (int i = 0; i < count; i++)
+                        index.setNeighbor(node, level, i, inputStream.readInt());
+                    index.setNeighborCount(node, level, count);
+                }
+            }
+            index.entryPoint = entryPoint;
+            index.maxLevel = maxLevel;
+            return index;
+        } catch (IOException e) {
+            throw new EmbeddingException("Can't read " + file.getPath(), e);
+        }
+    }
+    //------------------------------------------------------------------------------------------------------------------
+
+
+
+    /**
+     * Visited marks and heaps of one searching thread, marks are generation numbers, so starting a search doesn't clear the array
+     */
+    private static class SearchState {
+        private final int[] visited;
+        private final NodeHeap candidates;
+        private final NodeHeap found;
+        private final float[] vector;
+        private int generation;
+
+        private SearchState(int size, int dimension) {
+            this.visited = new int[size];
+            this.candidates = new NodeHeap(false);
+            this.found = new NodeHeap(true);
+            this.vector = new float[dimension];
+        }
+
+        private void startVisit() {
+            if (++generation == 0) {
+                Arrays.fill(visited, 0);
+                generation = 1;
+            }
+        }
+
+        // True if the node wasn't visited yet in this search
+        private boolean visit(int node) {
+            if (visited[node] == generation)
+                return false;
+            visited[node] = generation;
+            return true;
+        }
+    }
+
+    /**
+     * Binary heap of nodes keyed by distance, nearest on top, or farthest on top for a max heap, without boxing
+     */
+    private static class NodeHeap {
+        private final boolean max;
+        private int[] nodes;
+        private float[] distances;
+        private int size;
+
+        private NodeHeap(boolean max) {
+            this.max = max;
+            this.nodes = new int[64];
+            this.distances = new float[64];
+        }
+
+        private void clear() {
+            size = 0;
+        }
+
+        private int size() {
+            return size;
+        }
+
+        private float topDistance() {
+            return distances[0];
+        }
+
+        private void add(int node, float distance) {
+            if (size == nodes.length) {
+                nodes = Arrays.copyOf(nodes, size * 2);
+                distances = Arrays.copyOf(distances, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                if (!above(distance, distances[parent]))
+                    break;
+                nodes[i] = nodes[parent];
+                distances[i] = distances[parent];
+                i = parent;
+            }
+            nodes[i] = node;
+            distances[i] = distance;
+        }
+
+        private int pop() {
+            int top = nodes[0];
+            int lastNode = nodes[--size];
+            float lastDistance = distances[size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size)
+                    break;
+                if (child + 1 < size && above(distances[child + 1], distances[child]))
+                    child++;
+                if (!above(distances[child], lastDistance))
+                    break;
+                nodes[i] = nodes[child];
+                distances[i] = distances[child];
+                i = child;
+            }
+            nodes[i] = lastNode;
+            distances[i] = lastDistance;
+            return top;
+        }
+
+        // Empty a max heap into arrays sorted nearest first
+        private void drainAscending(int[] targetNodes, float[] targetDistances) {
+            for (int i = size - 1; i >= 0; i--) {
+                targetDistances[i] = topDistance();
+                targetNodes[i] = pop();
+            }
+        }
+
+        private boolean above(float distance, float other) {
+            return max ? distance > other : distance < other;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.tekleo.image_classifier.inference.embedding;
+
+/**
+ * One search result, index of a vector in the {@link EmbeddingStore} and its cosine distance to the query
+ * Neighbours are ordered by distance, nearest first, ties by index
+ *
+ * Immutable object
+ */
+public class Neighbor implements Comparable<Neighbor> {
+    private final int index;
+    private final float distance;
+
+    public Neighbor(int index, float distance) {
+        this.index = index;
+        this.distance = distance;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public float getDistance() {
+        return distance;
+    }
+
+    @Override
+    public int compareTo(Neighbor other) {
+        int byDistance = Float.compare(distance, other.distance);
+        return byDistance != 0 ? byDistance : Integer.compare(index, other.index);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Neighbor neighbor = (Neighbor) o;
+        return index == neighbor.index && Float.compare(neighbor.distance, distance) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * index + Float.hashCode(distance);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d (%.4f)", index, distance);
+    }
+}
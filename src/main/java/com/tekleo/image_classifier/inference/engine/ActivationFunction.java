@@ -0,0 +1,56 @@
+package com.tekleo.image_classifier.inference.engine;
+
+/**
+ * Activations supported by the engine and by quantized networks, applied in place on plain float arrays
+ */
+public enum ActivationFunction {
+    IDENTITY,
+    RELU,
+    SIGMOID,
+    TANH,
+
+    /**
+     * Normalized over every segment (one example), only meaningful for dense layers
+     */
+    SOFTMAX;
+
+    /**
+     * Apply to consecutive segments of the array
+     * @param values values, changed in place
+     * @param offset start of the first segment
+     * @param segments number of segments
+     * @param segmentLength length of one segment
+     */
+    public void apply(float[] values, int offset, int segments, int segmentLength) {
+        int end = offset + segments * segmentLength;
+        switch (this) {
+            case IDENTITY:
+                return;
+            case RELU:
+                for (int i = offset; i < end; i++)
+                    values[i] = Math.max(values[i], 0);
+                return;
+            case SIGMOID:
+                for (int i = offset; i < end; i++)
+                    values[i] = (float) (1 / (1 + Math.exp(-values[i])));
+                return;
+            case TANH:
+                for (int i = offset; i < end; i++)
+                    values[i] = (float) Math.tanh(values[i]);
+                return;
+            case SOFTMAX:
+                for (int start = offset; start < end; start += segmentLength) {
+                    float max = Float.NEGATIVE_INFINITY;
+                    for (int i = start; i < start + segmentLength; i++)
+                        max = Math.max(max, values[i]);
+                    float sum = 0;
+                    for (int i = start; i < start + segmentLength; i++) {
+                        values[i] = (float) Math.exp(values[i] - max);
+                        sum += values[i];
+                    }
+                    for (int i = start; i < start + segmentLength; i++)
+                        values[i] /= sum;
+                }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.tekleo.image_classifier.inference.engine;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Scale and shift per channel followed by an activation, this is inference-time batch normalization
+ * Only used when normalization can't be folded into the weights of the previous layer
+ */
+public class ChannelAffineLayer extends EngineLayer {
+    private final int channels;
+    private final int spatialLength;
+    private final float[] scales;
+    private final float[] shifts;
+    private final ActivationFunction activation;
+
+    /**
+     * @param spatialLength height * width of every channel, 1 after dense layers
+     */
+    public ChannelAffineLayer(int channels, int spatialLength, float[] scales, float[] shifts, ActivationFunction activation) {
+        if (scales.length != channels || shifts.length != channels)
+            throw new IllegalArgumentException("Expected " + channels + " scales and shifts");
+        if (activation == ActivationFunction.SOFTMAX)
+            throw new IllegalArgumentException("Softmax is not supported after batch normalization");
+
+        this.channels = channels;
+        this.spatialLength = spatialLength;
+        this.scales = scales;
+        this.shifts = shifts;
+        this.activation = activation;
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    public int getSpatialLength() {
+        return spatialLength;
+    }
+
+    /**
+     * @return copy of the scales
+     */
+    public float[] getScales() {
+        return scales.clone();
+    }
+
+    /**
+     * @return copy of the shifts
+     */
+    public float[] getShifts() {
+        return shifts.clone();
+    }
+
+    public ActivationFunction getActivation() {
+        return activation;
+    }
+
+    @Override
+    public int getInputLength() {
+        return channels * spatialLength;
+    }
+
+    @Override
+    public int getOutputLength() {
+        return channels * spatialLength;
+    }
+
+    @Override
+    public long getParameterBytes() {
+        return 4L * (scales.length + shifts.length);
+    }
+
+    @Override
+    void forwardTile(float[] input, float[] output, float[] scratch, int batchSize, int tile, int tiles) {
+        int planes = batchSize * channels;
+        int start = tileStart(planes, tile, tiles);
+        int end = tileStart(planes, tile + 1, tiles);
+        for (int plane = start; plane < end; plane++) {
+            float scale = scales[plane % channels];
+            float shift = shifts[plane % channels];
+            for (int i = plane * spatialLength; i < (plane + 1) * spatialLength; i++)
+                output[i] = input[i] * scale + shift;
+        }
+        activation.apply(output, start * spatialLength, end - start, spatialLength);
+    }
+
+    @Override
+    void write(DataOutputStream outputStream) throws IOException {
+        outputStream.writeByte(CHANNEL_AFFINE);
+        outputStream.writeInt(channels);
+        outputStream.writeInt(spatialLength);
+        writeFloats(outputStream, scales);
+        writeFloats(outputStream, shifts);
+        outputStream.writeByte(activation.ordinal());
+    }
+
+    static ChannelAffineLayer read(DataInputStream inputStream) throws IOException {
+        int channels = inputStream.readInt();
+        int spatialLength = inputStream.readInt();
+        try {
+            return new ChannelAffineLayer(channels, spatialLength, readFloats(inputStream), readFloats(inputStream), readActivation(inputStream));
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package com.tekleo.image_classifier.inference.engine;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * 2D convolution as im2col followed by a blocked matrix multiplication
+ *
+ * The prepare step unrolls every example into a patch matrix [patch length, output positions] in the scratch buffer,
+ * then tiles split the work items (example, block of 4 output channels) between threads,
+ * a work item streams every patch row once and accumulates it into 4 output rows, which stay in L1 cache, so the inner loop is 4 independent multiply-adds the JIT can vectorize
+ *
+ * Weights can be kept in half precision (see {@link WeightPrecision#HALF}), a weight is widened once per patch row, outside of the inner loop, so it costs next to nothing
+ */
+public class ConvolutionLayer extends EngineLayer {
+    private static final int BLOCK = 4;
+
+    private final int inChannels;
+    private final int inHeight;
+    private final int inWidth;
+    private final int kernelHeight;
+    private final int kernelWidth;
+    private final int strideHeight;
+    private final int strideWidth;
+    private final int paddingTop;
+    private final int paddingLeft;
+    private final int outChannels;
+    private final int outHeight;
+    private final int outWidth;
+    private final float[] weights;
+    private final short[] halfWeights;
+    private final float[] biases;
+    private final ActivationFunction activation;
+
+    /**
+     * @param weights weights shaped as [out channels, in channels, kernel height, kernel width], same as DL4J
+     */
+    public ConvolutionLayer(int inChannels, int inHeight, int inWidth, int kernelHeight, int kernelWidth, int strideHeight, int strideWidth,
+                            int paddingTop, int paddingLeft, int outChannels, int outHeight, int outWidth, float[] weights, float[] biases, ActivationFunction activation) {
+        this(inChannels, inHeight, inWidth, kernelHeight, kernelWidth, strideHeight, strideWidth, paddingTop, paddingLeft, outChannels, outHeight, outWidth,
+                weights, null, biases, activation);
+    }
+
+    // Exactly one of the weight arrays is given, the other one is null
+    private ConvolutionLayer(int inChannels, int inHeight, int inWidth, int kernelHeight, int kernelWidth, int strideHeight, int strideWidth,
+                             int paddingTop, int paddingLeft, int outChannels, int outHeight, int outWidth, float[] weights, short[] halfWeights, float[] biases, ActivationFunction activation) {
+        if ((weights != null ? weights.length : halfWeights.length) != outChannels * inChannels * kernelHeight * kernelWidth || biases.length != outChannels)
+            throw new IllegalArgumentException("Convolution weights don't match the layer shape");
+        if (activation == ActivationFunction.SOFTMAX)
+            throw new IllegalArgumentException("Softmax is not supported for convolutions");
+
+        this.inChannels = inChannels;
+        this.inHeight = inHeight;
+        this.inWidth = inWidth;
+        this.kernelHeight = kernelHeight;
+        this.kernelWidth = kernelWidth;
+        this.strideHeight = strideHeight;
+        this.strideWidth = strideWidth;
+        this.paddingTop = paddingTop;
+        this.paddingLeft = paddingLeft;
+        this.outChannels = outChannels;
+        this.outHeight = outHeight;
+        this.outWidth = outWidth;
+        this.weights = weights;
+        this.halfWeights = halfWeights;
+        this.biases = biases;
+        this.activation = activation;
+    }
+
+    public int getInChannels() {
+        return inChannels;
+    }
+
+    public int getInHeight() {
+        return inHeight;
+    }
+
+    public int getInWidth() {
+        return inWidth;
+    }
+
+    public int getKernelHeight() {
+        return kernelHeight;
+    }
+
+    public int getKernelWidth() {
+        return kernelWidth;
+    }
+
+    public int getStrideHeight() {
+        return strideHeight;
+    }
+
+    public int getStrideWidth() {
+        return strideWidth;
+    }
+
+    public int getPaddingTop() {
+        return paddingTop;
+    }
+
+    public int getPaddingLeft() {
+        return paddingLeft;
+    }
+
+    public int getOutChannels() {
+        return outChannels;
+    }
+
+    public int getOutHeight() {
+        return outHeight;
+    }
+
+    public int getOutWidth() {
+        return outWidth;
+    }
+
+    /**
+     * @return copy of the weights, shaped as [out channels, in channels * kernel height * kernel width], half precision weights are widened to float
+     */
+    public float[] getWeights() {
+        return weights != null ? weights.clone() : HalfFloats.toFloats(halfWeights);
+    }
+
+    public WeightPrecision getWeightPrecision() {
+        return weights != null ? WeightPrecision.FLOAT : WeightPrecision.HALF;
+    }
+
+    /**
+     * @return copy of the biases
+     */
+    public float[] getBiases() {
+        return biases.clone();
+    }
+
+    public ActivationFunction getActivation() {
+        return activation;
+    }
+
+    @Override
+    public int getInputLength() {
+        return inChannels * inHeight * inWidth;
+    }
+
+    @Override
+    public int getOutputLength() {
+        return outChannels * outHeight * outWidth;
+    }
+
+    @Override
+    public long getParameterBytes() {
+        return (long) getWeightPrecision().getBytes() * outChannels * getPatchLength() + 4L * biases.length;
+    }
+
+    @Override
+    ConvolutionLayer withWeightPrecision(WeightPrecision weightPrecision) {
+        if (weightPrecision == getWeightPrecision())
+            return this;
+        return new ConvolutionLayer(inChannels, inHeight, inWidth, kernelHeight, kernelWidth, strideHeight, strideWidth, paddingTop, paddingLeft, outChannels, outHeight, outWidth,
+                weightPrecision == WeightPrecision.FLOAT ? getWeights() : null, weightPrecision == WeightPrecision.HALF ? HalfFloats.fromFloats(weights) : null, biases, activation);
+    }
+
+    private int getPatchLength() {
+        return inChannels * kernelHeight * kernelWidth;
+    }
+
+    @Override
+    int getScratchLength(int batchSize) {
+        return batchSize * getPatchLength() * outHeight * outWidth;
+    }
+
+    @Override
+    void prepare(float[] input, float[] scratch, int batchSize) {
+        int columnsLength = getPatchLength() * outHeight * outWidth;
+        for (int example = 0; example < batchSize; example++)
+            im2col(input, example * getInputLength(), scratch, example * columnsLength);
+    }
+
+    @Override
+    void forwardTile(float[] input, float[] output, float[] scratch, int batchSize, int tile, int tiles) {
+        int blocks = (outChannels + BLOCK - 1) / BLOCK;
+        int items = batchSize * blocks;
+        int end = tileStart(items, tile + 1, tiles);
+        for (int item = tileStart(items, tile, tiles); item < end; item++)
+            multiplyBlock(scratch, output, item / blocks, (item % blocks) * BLOCK);
+    }
+
+    // Output rows [channel, channel + 4) of one example, rows past the last channel are handled one by one
+    private void multiplyBlock(float[] columns, float[] output, int example, int channel) {
+        int patchLength = getPatchLength();
+        int positions = outHeight * outWidth;
+        int columnsOffset = example * patchLength * positions;
+        int out0 = example * getOutputLength() + channel * positions;
+
+        int rows = Math.min(BLOCK, outChannels - channel);
+        for (int row = 0; row < rows; row++)
+            Arrays.fill(output, out0 + row * positions, out0 + (row + 1) * positions, biases[channel + row]);
+
+        if (rows == BLOCK) {
+            int out1 = out0 + positions, out2 = out1 + positions, out3 = out2 + positions;
+            int w0 = channel * patchLength, w1 = w0 + patchLength, w2 = w1 + patchLength, w3 = w2 + patchLength;
+            for (int k = 0; k < patchLength; k++) {
+                float weight0 = weight(w0 + k), weight1 = weight(w1 + k), weight2 = weight(w2 + k), weight3 = weight(w3 + k);
+                int rowOffset = columnsOffset + k * positions;
+                for (int p = 0; p < positions; p++) {
+                    float value = columns[rowOffset + p];
+                    output[out0 + p] += weight0 * value;
+                    output[out1 + p] += weight1 * value;
+                    output[out2 + p] += weight2 * value;
+                    output[out3 + p] += weight3 * value;
+                }
+            }
+        } else {
+            for (int row = 0; row < rows; row++) {
+                int outOffset = out0 + row * positions;
+                int weightsOffset = (channel + row) * patchLength;
+                for (int k = 0; k < patchLength; k++) {
+                    float weight = weight(weightsOffset + k);
+                    int rowOffset = columnsOffset + k * positions;
+                    for (int p = 0; p < positions; p++)
+                        output[outOffset + p] += weight * columns[rowOffset + p];
+                }
+            }
+        }
+
+        activation.apply(output, out0, rows, positions);
+    }
+
+    private float weight(int index) {
+        return weights != null ? weights[index] : HalfFloats.toFloat(halfWeights[index]);
+    }
+
+    // Row (c, ky, kx) of the patch matrix holds input pixels seen by that kernel tap at every output position, zero outside of the input
+    private void im2col(float[] input, int inputOffset, float[] columns, int columnsOffset) {
+        int positions = outHeight * outWidth;
+        int row = 0;
+        for (int c = 0; c < inChannels; c++) {
+            for (int ky = 0; ky < kernelHeight; ky++) {
+                for (int kx = 0; kx < kernelWidth; kx++, row++) {
+                    int rowOffset = columnsOffset + row * positions;
+                    for (int oy = 0; oy < outHeight; oy++) {
+                        int iy = oy * strideHeight - paddingTop + ky;
+                        int offset = rowOffset + oy * outWidth;
+                        if (iy < 0 || iy >= inHeight) {
+                            Arrays.fill(columns, offset, offset + outWidth, 0);
+                            continue;
+                        }
+                        int inputRowOffset = inputOffset + (c * inHeight + iy) * inWidth;
+                        for (int ox = 0; ox < outWidth; ox++) {
+                            int ix = ox * strideWidth - paddingLeft + kx;
+                            columns[offset + ox] = ix >= 0 && ix < inWidth ? input[inputRowOffset + ix] : 0;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    void write(DataOutputStream outputStream) throws IOException {
+        outputStream.writeByte(CONVOLUTION);
+        for (int value : new int[] {inChannels, inHeight, inWidth, kernelHeight, kernelWidth, strideHeight, strideWidth, paddingTop, paddingLeft, outChannels, outHeight, outWidth})
+            outputStream.writeInt(value);
+        writeWeights(outputStream, weights, halfWeights);
+        writeFloats(outputStream, biases);
+        outputStream.writeByte(activation.ordinal());
+    }
+
+    static ConvolutionLayer read(DataInputStream inputStream, int version) throws IOException {
+        int[] shape = new int[12];
+        for (int i = 0; i < shape.length; i++)
+            shape[i] = inputStream.readInt();
+        WeightPrecision weightPrecision = readWeightPrecision(inputStream, version);
+        float[] weights = weightPrecision == WeightPrecision.FLOAT ? readFloats(inputStream) : null;
+        short[] halfWeights = weightPrecision == WeightPrecision.HALF ? readHalves(inputStream) : null;
+        float[] biases = readFloats(inputStream);
+        ActivationFunction activation = readActivation(inputStream);
+        try {
+            return new ConvolutionLayer(shape[0], shape[1], shape[2], shape[3], shape[4], shape[5], shape[6], shape[7], shape[8], shape[9], shape[10], shape[11], weights, halfWeights, biases, activation);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package com.tekleo.image_classifier.inference.engine;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Fully connected layer, tiles split output units between threads
+ *
+ * Dense layers are dominated by weight traffic, so every weight row loaded from memory is reused as much as possible:
+ * batches are processed in blocks of 4 examples per row, a single example is processed 4 rows at a time so its input is read once per 4 units
+ * Softmax needs whole rows, so it is applied in the finish step after all tiles are done
+ *
+ * Weights can be kept in half precision (see {@link WeightPrecision#HALF}), which halves the weight traffic that bounds this layer,
+ * the half loops widen every weight through a table lookup and accumulate in float, biases stay in float
+ */
+public class DenseLayer extends EngineLayer {
+    private static final int BLOCK = 4;
+
+    private final int nIn;
+    private final int nOut;
+    private final float[] weights;
+    private final short[] halfWeights;
+    private final float[] biases;
+    private final ActivationFunction activation;
+
+    /**
+     * @param weights weights shaped as [out units, in units], this is DL4J weights transposed
+     */
+    public DenseLayer(int nIn, int nOut, float[] weights, float[] biases, ActivationFunction activation) {
+        this(nIn, nOut, weights, null, biases, activation);
+    }
+
+    // Exactly one of the weight arrays is given, the other one is null
+    private DenseLayer(int nIn, int nOut, float[] weights, short[] halfWeights, float[] biases, ActivationFunction activation) {
+        if ((weights != null ? weights.length : halfWeights.length) != nIn * nOut || biases.length != nOut)
+            throw new IllegalArgumentException("Dense weights don't match the layer shape");
+
+        this.nIn = nIn;
+        this.nOut = nOut;
+        this.weights = weights;
+        this.halfWeights = halfWeights;
+        this.biases = biases;
+        this.activation = activation;
+    }
+
+    /**
+     * @return copy of the weights, shaped as [out units, in units], half precision weights are widened to float
+     */
+    public float[] getWeights() {
+        return weights != null ? weights.clone() : HalfFloats.toFloats(halfWeights);
+    }
+
+    public WeightPrecision getWeightPrecision() {
+        return weights != null ? WeightPrecision.FLOAT : WeightPrecision.HALF;
+    }
+
+    /**
+     * @return copy of the biases
+     */
+    public float[] getBiases() {
+        return biases.clone();
+    }
+
+    public ActivationFunction getActivation() {
+        return activation;
+    }
+
+    @Override
+    public int getInputLength() {
+        return nIn;
+    }
+
+    @Override
+    public int getOutputLength() {
+        return nOut;
+    }
+
+    @Override
+    public long getParameterBytes() {
+        return (long) getWeightPrecision().getBytes() * nIn * nOut + 4L * biases.length;
+    }
+
+    @Override
+    DenseLayer withWeightPrecision(WeightPrecision weightPrecision) {
+        if (weightPrecision == getWeightPrecision())
+            return this;
+        return weightPrecision == WeightPrecision.HALF ? new DenseLayer(nIn, nOut, null, HalfFloats.fromFloats(weights), biases, activation)
+                : new DenseLayer(nIn, nOut, getWeights(), null, biases, activation);
+    }
+
+    @Override
+    void forwardTile(float[] input, float[] output, float[] scratch, int batchSize, int tile, int tiles) {
+        int start = tileStart(nOut, tile, tiles);
+        int end = tileStart(nOut, tile + 1, tiles);
+
+        int example = 0;
+        if (halfWeights != null) {
+            for (; example + BLOCK <= batchSize; example += BLOCK)
+                multiplyExamplesHalf(input, output, example, start, end);
+            for (; example < batchSize; example++)
+                multiplyUnitsHalf(input, output, example, start, end);
+        } else {
+            for (; example + BLOCK <= batchSize; example += BLOCK)
+                multiplyExamples(input, output, example, start, end);
+            for (; example < batchSize; example++)
+                multiplyUnits(input, output, example, start, end);
+        }
+
+        if (activation != ActivationFunction.SOFTMAX)
+            for (example = 0; example < batchSize; example++)
+                activation.apply(output, example * nOut + start, 1, end - start);
+    }
+
+    // 4 examples times one unit at a time
+    private void multiplyExamples(float[] input, float[] output, int example, int start, int end) {
+        int in0 = example * nIn, in1 = in0 + nIn, in2 = in1 + nIn, in3 = in2 + nIn;
+        for (int unit = start; unit < end; unit++) {
+            float sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+            int weightsOffset = unit * nIn;
+            for (int i = 0; i < nIn; i++) {
+                float weight = weights[weightsOffset + i];
+                sum0 += weight * input[in0 + i];
+                sum1 += weight * input[in1 + i];
+                sum2 += weight * input[in2 + i];
+                sum3 += weight * input[in3 + i];
+            }
+            output[example * nOut + unit] = sum0 + biases[unit];
+            output[(example + 1) * nOut + unit] = sum1 + biases[unit];
+            output[(example + 2) * nOut + unit] = sum2 + biases[unit];
+            output[(example + 3) * nOut + unit] = sum3 + biases[unit];
+        }
+    }
+
+    // One example times 4 units at a time
+    private void multiplyUnits(float[] input, float[] output, int example, int start, int end) {
+        int inputOffset = example * nIn;
+        int outputOffset = example * nOut;
+        int unit = start;
+        for (; unit + BLOCK <= end; unit += BLOCK) {
+            float sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+            int w0 = unit * nIn, w1 = w0 + nIn, w2 = w1 + nIn, w3 = w2 + nIn;
+            for (int i = 0; i < nIn; i++) {
+                float value = input[inputOffset + i];
+                sum0 += weights[w0 + i] * value;
+                sum1 += weights[w1 + i] * value;
+                sum2 += weights[w2 + i] * value;
+                sum3 += weights[w3 + i] * value;
+            }
+            output[outputOffset + unit] = sum0 + biases[unit];
+            output[outputOffset + unit + 1] = sum1 + biases[unit + 1];
+            output[outputOffset + unit + 2] = sum2 + biases[unit + 2];
+            output[outputOffset + unit + 3] = sum3 + biases[unit + 3];
+        }
+        for (; unit < end; unit++) {
+            float sum = 0;
+            int weightsOffset = unit * nIn;
+            for (int i = 0; i < nIn; i++)
+                sum += weights[weightsOffset + i] * input[inputOffset + i];
+            output[outputOffset + unit] = sum + biases[unit];
+        }
+    }
+
+    // Same as multiplyExamples on half precision weights
+    private void multiplyExamplesHalf(float[] input, float[] output, int example, int start, int end) {
+        int in0 = example * nIn, in1 = in0 + nIn, in2 = in1 + nIn, in3 = in2 + nIn;
+        for (int unit = start; unit < end; unit++) {
+            float sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+            int weightsOffset = unit * nIn;
+            for (int i = 0; i < nIn; i++) {
+                float weight = HalfFloats.toFloat(halfWeights[weightsOffset + i]);
+                sum0 += weight * input[in0 + i];
+                sum1 += weight * input[in1 + i];
+                sum2 += weight * input[in2 + i];
+                sum3 += weight * input[in3 + i];
+            }
+            output[example * nOut + unit] = sum0 + biases[unit];
+            output[(example + 1) * nOut + unit] = sum1 + biases[unit];
+            output[(example + 2) * nOut + unit] = sum2 + biases[unit];
+            output[(example + 3) * nOut + unit] = sum3 + biases[unit];
+        }
+    }
+
+    // Same as multiplyUnits on half precision weights
+    private void multiplyUnitsHalf(float[] input, float[] output, int example, int start, int end) {
+        int inputOffset = example * nIn;
+        int outputOffset = example * nOut;
+        int unit = start;
+        for (; unit + BLOCK <= end; unit += BLOCK) {
+            float sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+            int w0 = unit * nIn, w1 = w0 + nIn, w2 = w1 + nIn, w3 = w2 + nIn;
+            for (int i = 0; i < nIn; i++) {
+                float value = input[inputOffset + i];
+                sum0 += HalfFloats.toFloat(halfWeights[w0 + i]) * value;
+                sum1 += HalfFloats.toFloat(halfWeights[w1 + i]) * value;
+                sum2 += HalfFloats.toFloat(halfWeights[w2 + i]) * value;
+                sum3 += HalfFloats.toFloat(halfWeights[w3 + i]) * value;
+            }
+            output[outputOffset + unit] = sum0 + biases[unit];
+            output[outputOffset + unit + 1] = sum1 + biases[unit + 1];
+            output[outputOffset + unit + 2] = sum2 + biases[unit + 2];
+            output[outputOffset + unit + 3] = sum3 + biases[unit + 3];
+        }
+        for (; unit < end; unit++) {
+            float sum = 0;
+            int weightsOffset = unit * nIn;
+            for (int i = 0; i < nIn; i++)
+                sum += HalfFloats.toFloat(halfWeights[weightsOffset + i]) * input[inputOffset + i];
+            output[outputOffset + unit] = sum + biases[unit];
+        }
+    }
+
+    @Override
+    void finish(float[] output, int batchSize) {
+        if (activation == ActivationFunction.SOFTMAX)
+            activation.apply(output, 0, batchSize, nOut);
+    }
+
+    @Override
+    void write(DataOutputStream outputStream) throws IOException {
+        outputStream.writeByte(DENSE);
+        outputStream.writeInt(nIn);
+        outputStream.writeInt(nOut);
+        writeWeights(outputStream, weights, halfWeights);
+        writeFloats(outputStream, biases);
+        outputStream.writeByte(activation.ordinal());
+    }
+
+    static DenseLayer read(DataInputStream inputStream, int version) throws IOException {
+        int nIn = inputStream.readInt();
+        int nOut = inputStream.readInt();
+        WeightPrecision weightPrecision = readWeightPrecision(inputStream, version);
+        float[] weights = weightPrecision == WeightPrecision.FLOAT ? readFloats(inputStream) : null;
+        short[] halfWeights = weightPrecision == WeightPrecision.HALF ? readHalves(inputStream) : null;
+        try {
+            return new DenseLayer(nIn, nOut, weights, halfWeights, readFloats(inputStream), readActivation(inputStream));
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+}
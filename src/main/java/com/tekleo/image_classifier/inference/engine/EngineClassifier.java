@@ -0,0 +1,62 @@
+package com.tekleo.image_classifier.inference.engine;
+
+import com.tekleo.image_classifier.inference.ImageFeatures;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Command line classifier on the pure-Java engine, runs with only this project's classes on the classpath, no ND4J, DL4J or native libraries
+ *
+ * Arguments: [engine model file] [image files or directories...]
+ * Prints the predicted label and its probability for every image, then model load time and average time per image
+ */
+public class EngineClassifier {
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: EngineClassifier <engine model file> <image files or directories...>");
+            return;
+        }
+
+        long loadStart = System.nanoTime();
+        EngineModel model = EngineModelFile.read(new File(args[0]));
+        long loadNanos = System.nanoTime() - loadStart;
+
+        float[] features = new float[model.getInputLength()];
+        long classifyNanos = 0;
+        int images = 0;
+
+        try (EngineSession session = model.newSession(1, 1)) {
+            for (int i = 1; i < args.length; i++) {
+                File argument = new File(args[i]);
+                File[] files = argument.isDirectory() ? argument.listFiles(File::isFile) : new File[] {argument};
+                if (files == null)
+                    continue;
+
+                for (File file : files) {
+                    BufferedImage image = ImageIO.read(file);
+                    if (image == null) {
+                        System.out.println(file + ": not an image");
+                        continue;
+                    }
+
+                    long start = System.nanoTime();
+                    ImageFeatures.toFloats(image, model.getInputHeight(), model.getInputWidth(), model.getInputChannels(), features, 0);
+                    float[] output = session.run(features, 1);
+                    int best = 0;
+                    for (int c = 1; c < model.getNumberOfClasses(); c++)
+                        if (output[c] > output[best])
+                            best = c;
+                    classifyNanos += System.nanoTime() - start;
+                    images++;
+
+                    System.out.println(String.format("%s: %s (%.3f)", file, model.getLabels().get(best), output[best]));
+                }
+            }
+        }
+
+        System.out.println(String.format("Model loaded in %.1f ms, %d images classified in %.2f ms each", loadNanos / 1e6, images, images > 0 ? classifyNanos / 1e6 / images : 0));
+    }
+}
@@ -0,0 +1,26 @@
+package com.tekleo.image_classifier.inference.engine;
+
+/**
+ * Exception to be used when a network can't be exported into an {@link EngineModel}
+ */
+public class EngineException extends Exception {
+    public EngineException() {
+
+    }
+
+    public EngineException(String message) {
+        super(message);
+    }
+
+    public EngineException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public EngineException(Throwable cause) {
+        super(cause);
+    }
+
+    public EngineException(String message, Throwable cause, boolean enableSuppression, boolean writableStackTrace) {
+        super(message, cause, enableSuppression, writableStackTrace);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,272 @@
+package com.tekleo.image_classifier.inference.engine;
+
+import org.deeplearning4j.nn.api.Layer;
+import org.deeplearning4j.nn.conf.ConvolutionMode;
+import org.deeplearning4j.nn.conf.InputPreProcessor;
+import org.deeplearning4j.nn.conf.layers.ActivationLayer;
+import org.deeplearning4j.nn.conf.layers.BaseLayer;
+import org.deeplearning4j.nn.conf.layers.BaseOutputLayer;
+import org.deeplearning4j.nn.conf.layers.BatchNormalization;
+import org.deeplearning4j.nn.conf.layers.PoolingType;
+import org.deeplearning4j.nn.conf.preprocessor.CnnToFeedForwardPreProcessor;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.params.BatchNormalizationParamInitializer;
+import org.deeplearning4j.nn.params.DefaultParamInitializer;
+import org.nd4j.linalg.activations.IActivation;
+import org.nd4j.linalg.activations.impl.ActivationIdentity;
+import org.nd4j.linalg.activations.impl.ActivationReLU;
+import org.nd4j.linalg.activations.impl.ActivationSigmoid;
+import org.nd4j.linalg.activations.impl.ActivationSoftmax;
+import org.nd4j.linalg.activations.impl.ActivationTanH;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Export of a trained DL4J network into an {@link EngineModel}, this is the only class of the engine that needs DL4J
+ *
+ * Supported layers: convolution, max/avg subsampling without padding, batch normalization, activation, global max/avg pooling, dense and output layers
+ * Batch normalization right after a convolution with identity activation is folded into the convolution weights and biases,
+ * so it costs nothing at inference
+ * An activation layer is merged into the previous layer when that one has identity activation
+ * DL4J batch normalization doesn't apply its configured activation, so neither does the engine
+ */
+public class EngineExporter {
+    /**
+     * Same as {@link #export(MultiLayerNetwork, int, int, int, List)} with class indices as labels
+     */
+    public static EngineModel export(MultiLayerNetwork network, int channels, int height, int width) throws EngineException {
+        List<String> labels = new ArrayList<>();
+        for (int i = 0; i < network.getLayer(network.getnLayers() - 1).getParam(DefaultParamInitializer.BIAS_KEY).length(); i++)
+            labels.add(String.valueOf(i));
+        return export(network, channels, height, width, labels);
+    }
+
+    /**
+     * @param network trained network, for example the one restored by {@link com.tekleo.image_classifier.neural_network.CifarModel#load()}
+     * @param channels input image channels
+     * @param height input image height
+     * @param width input image width
+     * @param labels class names in the same order as network outputs
+     * @return copy of the network, the original is not changed
+     * @throws EngineException if the network has a layer or setting that is not supported
+     */
+    public static EngineModel export(MultiLayerNetwork network, int channels, int height, int width, List<String> labels) throws EngineException {
+        Layer[] networkLayers = network.getLayers();
+        List<EngineLayer> layers = new ArrayList<>();
+
+        // Current activation shape, spatial until the first layer that flattens it
+        int currentChannels = channels;
+        int currentHeight = height;
+        int currentWidth = width;
+        boolean spatial = true;
+
+        for (int i = 0; i < networkLayers.length; i++) {
+            Layer layer = networkLayers[i];
+            org.deeplearning4j.nn.conf.layers.Layer layerConfig = layer.conf().getLayer();
+
+            InputPreProcessor preProcessor = network.getLayerWiseConfigurations().getInputPreProcess(i);
+            if (preProcessor instanceof CnnToFeedForwardPreProcessor)
+                spatial = false;
+            else if (preProcessor != null)
+                throw new EngineException("Unsupported input preprocessor " + preProcessor + " of layer " + i);
+
+            if (layerConfig instanceof org.deeplearning4j.nn.conf.layers.ConvolutionLayer) {
+                org.deeplearning4j.nn.conf.layers.ConvolutionLayer convolutionConfig = (org.deeplearning4j.nn.conf.layers.ConvolutionLayer) layerConfig;
+                requireSpatial(spatial, i);
+                int[] kernel = convolutionConfig.getKernelSize();
+                int[] stride = convolutionConfig.getStride();
+                int[] padding = convolutionConfig.getPadding();
+                int[] outputSize = outputSize(convolutionConfig.getConvolutionMode(), currentHeight, currentWidth, kernel, stride, padding);
+                int[] effectivePadding = padding(convolutionConfig.getConvolutionMode(), currentHeight, currentWidth, outputSize, kernel, stride, padding);
+
+                int outChannels = convolutionConfig.getNOut();
+                int patchLength = currentChannels * kernel[0] * kernel[1];
+                float[] weights = floats(layer.getParam(DefaultParamInitializer.WEIGHT_KEY));
+                float[] biases = floats(layer.getParam(DefaultParamInitializer.BIAS_KEY));
+                ActivationFunction activation = activation(convolutionConfig.getActivationFn());
+
+                // Fold the following batch normalization
+                if (activation == ActivationFunction.IDENTITY && i + 1 < networkLayers.length && networkLayers[i + 1].conf().getLayer() instanceof BatchNormalization
+                        && network.getLayerWiseConfigurations().getInputPreProcess(i + 1) == null) {
+                    float[][] affine = batchNormalizationAffine(networkLayers[i + 1], outChannels);
+                    for (int channel = 0; channel < outChannels; channel++) {
+                        for (int k = 0; k < patchLength; k++)
+                            weights[channel * patchLength + k] *= affine[0][channel];
+                        biases[channel] = biases[channel] * affine[0][channel] + affine[1][channel];
+                    }
+                    i++;
+                }
+                if (activation == ActivationFunction.IDENTITY && isActivationLayer(network, i + 1)) {
+                    activation = activation(((ActivationLayer) networkLayers[i + 1].conf().getLayer()).getActivationFn());
+                    i++;
+                }
+
+                layers.add(new ConvolutionLayer(currentChannels, currentHeight, currentWidth, kernel[0], kernel[1], stride[0], stride[1],
+                        effectivePadding[0], effectivePadding[1], outChannels, outputSize[0], outputSize[1], weights, biases, activation));
+                currentChannels = outChannels;
+                currentHeight = outputSize[0];
+                currentWidth = outputSize[1];
+            }
+
+            else if (layerConfig instanceof org.deeplearning4j.nn.conf.layers.SubsamplingLayer) {
+                org.deeplearning4j.nn.conf.layers.SubsamplingLayer subsamplingConfig = (org.deeplearning4j.nn.conf.layers.SubsamplingLayer) layerConfig;
+                requireSpatial(spatial, i);
+                int[] kernel = subsamplingConfig.getKernelSize();
+                int[] stride = subsamplingConfig.getStride();
+                int[] padding = subsamplingConfig.getPadding();
+                int[] outputSize = outputSize(subsamplingConfig.getConvolutionMode(), currentHeight, currentWidth, kernel, stride, padding);
+                int[] effectivePadding = padding(subsamplingConfig.getConvolutionMode(), currentHeight, currentWidth, outputSize, kernel, stride, padding);
+                if (effectivePadding[0] != 0 || effectivePadding[1] != 0 || (outputSize[0] - 1) * stride[0] + kernel[0] > currentHeight || (outputSize[1] - 1) * stride[1] + kernel[1] > currentWidth)
+                    throw new EngineException("Padded subsampling is not supported, layer " + i);
+
+                layers.add(new PoolingLayer(currentChannels, currentHeight, currentWidth, kernel[0], kernel[1], stride[0], stride[1], outputSize[0], outputSize[1],
+                        isMax(subsamplingConfig.getPoolingType(), i)));
+                currentHeight = outputSize[0];
+                currentWidth = outputSize[1];
+            }
+
+            else if (layerConfig instanceof BatchNormalization) {
+                int normalizedChannels = spatial ? currentChannels : currentChannels * currentHeight * currentWidth;
+                float[][] affine = batchNormalizationAffine(layer, normalizedChannels);
+                ActivationFunction activation = ActivationFunction.IDENTITY;
+                if (isActivationLayer(network, i + 1)) {
+                    activation = activation(((ActivationLayer) networkLayers[i + 1].conf().getLayer()).getActivationFn());
+                    i++;
+                }
+                layers.add(new ChannelAffineLayer(normalizedChannels, spatial ? currentHeight * currentWidth : 1, affine[0], affine[1], activation));
+            }
+
+            else if (layerConfig instanceof ActivationLayer) {
+                int length = currentChannels * currentHeight * currentWidth;
+                float[] scales = new float[length];
+                Arrays.fill(scales, 1);
+                layers.add(new ChannelAffineLayer(length, 1, scales, new float[length], activation(((ActivationLayer) layerConfig).getActivationFn())));
+            }
+
+            else if (layerConfig instanceof org.deeplearning4j.nn.conf.layers.GlobalPoolingLayer) {
+                requireSpatial(spatial, i);
+                boolean max = isMax(((org.deeplearning4j.nn.conf.layers.GlobalPoolingLayer) layerConfig).getPoolingType(), i);
+                layers.add(new GlobalPoolingLayer(currentChannels, currentHeight * currentWidth, max));
+                currentHeight = 1;
+                currentWidth = 1;
+                spatial = false;
+            }
+
+            else if (layerConfig instanceof org.deeplearning4j.nn.conf.layers.DenseLayer || layerConfig instanceof BaseOutputLayer) {
+                int nIn = currentChannels * currentHeight * currentWidth;
+                INDArray weightsParam = layer.getParam(DefaultParamInitializer.WEIGHT_KEY);
+                if (weightsParam.size(0) != nIn)
+                    throw new EngineException("Layer " + i + " expects " + weightsParam.size(0) + " inputs, previous layers give " + nIn);
+
+                // DL4J keeps dense weights as [in, out], the engine keeps a row per output unit
+                int nOut = weightsParam.size(1);
+                float[] weights = floats(weightsParam.transpose());
+                float[] biases = floats(layer.getParam(DefaultParamInitializer.BIAS_KEY));
+                ActivationFunction activation = activation(((BaseLayer) layerConfig).getActivationFn());
+                if (activation == ActivationFunction.IDENTITY && isActivationLayer(network, i + 1)) {
+                    activation = activation(((ActivationLayer) networkLayers[i + 1].conf().getLayer()).getActivationFn());
+                    i++;
+                }
+                layers.add(new DenseLayer(nIn, nOut, weights, biases, activation));
+                currentChannels = nOut;
+                currentHeight = 1;
+                currentWidth = 1;
+                spatial = false;
+            }
+
+            else {
+                throw new EngineException("Unsupported layer " + layerConfig.getClass().getSimpleName() + " at " + i);
+            }
+        }
+
+        try {
+            return new EngineModel(channels, height, width, layers, labels);
+        } catch (IllegalArgumentException e) {
+            throw new EngineException(e.getMessage(), e);
+        }
+    }
+
+    // Static helpers
+    //------------------------------------------------------------------------------------------------------------------
+    /**
+     * @param activation DL4J activation
+     * @return matching activation
+     * @throws EngineException if there is no matching activation
+     */
+    public static ActivationFunction activation(IActivation activation) throws EngineException {
+        if (activation instanceof ActivationIdentity)
+            return ActivationFunction.IDENTITY;
+        if (activation instanceof ActivationReLU)
+            return ActivationFunction.RELU;
+        if (activation instanceof ActivationSigmoid)
+            return ActivationFunction.SIGMOID;
+        if (activation instanceof ActivationTanH)
+            return ActivationFunction.TANH;
+        if (activation instanceof ActivationSoftmax)
+            return ActivationFunction.SOFTMAX;
+        throw new EngineException("Unsupported activation " + activation);
+    }
+
+    private static float[] floats(INDArray array) {
+        return array.dup('c').data().asFloat();
+    }
+
+    /**
+     * Inference-time batch normalization as y = x * scale + shift
+     * @return scales and shifts per channel
+     */
+    private static float[][] batchNormalizationAffine(Layer layer, int channels) throws EngineException {
+        BatchNormalization config = (BatchNormalization) layer.conf().getLayer();
+        float[] mean = floats(layer.getParam(BatchNormalizationParamInitializer.GLOBAL_MEAN));
+        float[] variance = floats(layer.getParam(BatchNormalizationParamInitializer.GLOBAL_VAR));
+        if (mean.length != channels)
+            throw new EngineException("Batch normalization has " + mean.length + " channels, expected " + channels);
+
+        float[] gamma = config.isLockGammaBeta() ? null : floats(layer.getParam(BatchNormalizationParamInitializer.GAMMA));
+        float[] beta = config.isLockGammaBeta() ? null : floats(layer.getParam(BatchNormalizationParamInitializer.BETA));
+        float[] scales = new float[channels];
+        float[] shifts = new float[channels];
+        for (int channel = 0; channel < channels; channel++) {
+            float g = gamma != null ? gamma[channel] : (float) config.getGamma();
+            float b = beta != null ? beta[channel] : (float) config.getBeta();
+            scales[channel] = (float) (g / Math.sqrt(variance[channel] + config.getEps()));
+            shifts[channel] = b - mean[channel] * scales[channel];
+        }
+        return new float[][] {scales, shifts};
+    }
+
+    private static int[] outputSize(ConvolutionMode convolutionMode, int height, int width, int[] kernel, int[] stride, int[] padding) {
+        if (convolutionMode == ConvolutionMode.Same)
+            return new int[] {(height + stride[0] - 1) / stride[0], (width + stride[1] - 1) / stride[1]};
+        return new int[] {(height + 2 * padding[0] - kernel[0]) / stride[0] + 1, (width + 2 * padding[1] - kernel[1]) / stride[1] + 1};
+    }
+
+    // Same mode pads top and left by half of the total padding rounded down, the rest goes to bottom and right
+    private static int[] padding(ConvolutionMode convolutionMode, int height, int width, int[] outputSize, int[] kernel, int[] stride, int[] padding) {
+        if (convolutionMode == ConvolutionMode.Same)
+            return new int[] {Math.max(0, ((outputSize[0] - 1) * stride[0] + kernel[0] - height) / 2), Math.max(0, ((outputSize[1] - 1) * stride[1] + kernel[1] - width) / 2)};
+        return padding;
+    }
+
+    private static boolean isMax(PoolingType poolingType, int layerIndex) throws EngineException {
+        if (poolingType == PoolingType.MAX)
+            return true;
+        if (poolingType == PoolingType.AVG)
+            return false;
+        throw new EngineException("Unsupported pooling type " + poolingType + " of layer " + layerIndex);
+    }
+
+    private static boolean isActivationLayer(MultiLayerNetwork network, int layerIndex) {
+        return layerIndex < network.getnLayers() && network.getLayer(layerIndex).conf().getLayer() instanceof ActivationLayer
+                && network.getLayerWiseConfigurations().getInputPreProcess(layerIndex) == null;
+    }
+
+    private static void requireSpatial(boolean spatial, int layerIndex) throws EngineException {
+        if (!spatial)
+            throw new EngineException("Layer " + layerIndex + " needs image-shaped input");
+    }
+    //------------------------------------------------------------------------------------------------------------------
+}
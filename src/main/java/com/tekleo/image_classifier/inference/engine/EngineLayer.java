@@ -0,0 +1,159 @@
+package com.tekleo.image_classifier.inference.engine;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Layer of an {@link EngineModel}, works on a batch of examples stored one after another in a float array
+ * Spatial examples are laid out as [channels, height, width], same as DL4J, so a flattened example is also what DL4J passes to dense layers
+ *
+ * A forward pass is split into a serial prepare step, parallel tiles and a serial finish step,
+ * all buffers are given by the caller ({@link EngineSession}), layers themselves are immutable and can be shared by any number of sessions
+ */
+public abstract class EngineLayer {
+    static final byte CONVOLUTION = 1;
+    static final byte POOLING = 2;
+    static final byte CHANNEL_AFFINE = 3;
+    static final byte GLOBAL_POOLING = 4;
+    static final byte DENSE = 5;
+
+    /**
+     * @return number of input values of one example
+     */
+    public abstract int getInputLength();
+
+    /**
+     * @return number of output values of one example
+     */
+    public abstract int getOutputLength();
+
+    /**
+     * @return bytes taken by weights and other parameters
+     */
+    public abstract long getParameterBytes();
+
+    /**
+     * @param batchSize number of examples
+     * @return length of the scratch buffer needed by a forward pass
+     */
+    int getScratchLength(int batchSize) {
+        return 0;
+    }
+
+    void prepare(float[] input, float[] scratch, int batchSize) {
+
+    }
+
+    /**
+     * Compute tile of the output, tiles split the work into independent parts
+     */
+    abstract void forwardTile(float[] input, float[] output, float[] scratch, int batchSize, int tile, int tiles);
+
+    void finish(float[] output, int batchSize) {
+
+    }
+
+    /**
+     * @param weightPrecision storage of weights
+     * @return copy with weights stored in the given precision, or this layer if it already uses it or has no weights worth converting
+     */
+    EngineLayer withWeightPrecision(WeightPrecision weightPrecision) {
+        return this;
+    }
+
+    abstract void write(DataOutputStream outputStream) throws IOException;
+
+    /**
+     * @param version version of the model file, layers of version 1 files have no weight precision byte
+     */
+    static EngineLayer read(DataInputStream inputStream, int version) throws IOException {
+        byte type = inputStream.readByte();
+        switch (type) {
+            case CONVOLUTION:
+                return ConvolutionLayer.read(inputStream, version);
+            case POOLING:
+                return PoolingLayer.read(inputStream);
+            case CHANNEL_AFFINE:
+                return ChannelAffineLayer.read(inputStream);
+            case GLOBAL_POOLING:
+                return GlobalPoolingLayer.read(inputStream);
+            case DENSE:
+                return DenseLayer.read(inputStream, version);
+            default:
+                throw new IOException("Unknown layer type " + type);
+        }
+    }
+
+
+
+    // Static helpers
+    //------------------------------------------------------------------------------------------------------------------
+    /**
+     * @return first item of the tile, items of tile i are [start(i), start(i + 1))
+     */
+    static int tileStart(int items, int tile, int tiles) {
+        return (int) ((long) items * tile / tiles);
+    }
+
+    static void writeFloats(DataOutputStream outputStream, float[] values) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * 4);
+        buffer.asFloatBuffer().put(values);
+        outputStream.writeInt(values.length);
+        outputStream.write(buffer.array());
+    }
+
+    static float[] readFloats(DataInputStream inputStream) throws IOException {
+        int length = inputStream.readInt();
+        byte[] bytes = new byte[length * 4];
+        inputStream.readFully(bytes);
+        float[] values = new float[length];
+        ByteBuffer.wrap(bytes).asFloatBuffer().get(values);
+        return values;
+    }
+
+    // Precision byte followed by the weights in that precision, exactly one of the arrays is not null
+    static void writeWeights(DataOutputStream outputStream, float[] weights, short[] halfWeights) throws IOException {
+        if (weights != null) {
+            outputStream.writeByte(WeightPrecision.FLOAT.ordinal());
+            writeFloats(outputStream, weights);
+        } else {
+            outputStream.writeByte(WeightPrecision.HALF.ordinal());
+            writeHalves(outputStream, halfWeights);
+        }
+    }
+
+    static WeightPrecision readWeightPrecision(DataInputStream inputStream, int version) throws IOException {
+        if (version < 2)
+            return WeightPrecision.FLOAT;
+        int ordinal = inputStream.readByte();
+        if (ordinal < 0 || ordinal >= WeightPrecision.values().length)
+            throw new IOException("Unknown weight precision " + ordinal);
+        return WeightPrecision.values()[ordinal];
+    }
+
+    static void writeHalves(DataOutputStream outputStream, short[] values) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * 2);
+        buffer.asShortBuffer().put(values);
+        outputStream.writeInt(values.length);
+        outputStream.write(buffer.array());
+    }
+
+    static short[] readHalves(DataInputStream inputStream) throws IOException {
+        int length = inputStream.readInt();
+        byte[] bytes = new byte[length * 2];
+        inputStream.readFully(bytes);
+        short[] values = new short[length];
+        ByteBuffer.wrap(bytes).asShortBuffer().get(values);
+        return values;
+    }
+
+    static ActivationFunction readActivation(DataInputStream inputStream) throws IOException {
+        int ordinal = inputStream.readByte();
+        if (ordinal < 0 || ordinal >= ActivationFunction.values().length)
+            throw new IOException("Unknown activation " + ordinal);
+        return ActivationFunction.values()[ordinal];
+    }
+    //------------------------------------------------------------------------------------------------------------------
+}
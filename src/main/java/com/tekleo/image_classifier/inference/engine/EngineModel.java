@@ -0,0 +1,103 @@
+package com.tekleo.image_classifier.inference.engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Float copy of a trained network for the pure-Java inference engine, made by {@link EngineExporter} and saved or loaded with {@link EngineModelFile}
+ *
+ * The model itself is immutable and only holds weights, forward passes run in {@link EngineSession}s,
+ * which own all buffers, so any number of sessions can share one model
+ * Nothing in this package except the exporter needs ND4J or DL4J on the classpath
+ */
+public class EngineModel {
+    private final int inputChannels;
+    private final int inputHeight;
+    private final int inputWidth;
+    private final List<EngineLayer> layers;
+    private final List<String> labels;
+
+    /**
+     * @param layers layers in order, the output of every layer must match the input of the next one
+     * @param labels class names in the same order as outputs of the last layer
+     */
+    public EngineModel(int inputChannels, int inputHeight, int inputWidth, List<EngineLayer> layers, List<String> labels) {
+        if (layers.isEmpty())
+            throw new IllegalArgumentException("Model has no layers");
+        int length = inputChannels * inputHeight * inputWidth;
+        for (int i = 0; i < layers.size(); i++) {
+            if (layers.get(i).getInputLength() != length)
+                throw new IllegalArgumentException("Layer " + i + " expects " + layers.get(i).getInputLength() + " inputs, previous layers give " + length);
+            length = layers.get(i).getOutputLength();
+        }
+        if (labels.size() != length)
+            throw new IllegalArgumentException("Expected " + length + " labels, got " + labels.size());
+
+        this.inputChannels = inputChannels;
+        this.inputHeight = inputHeight;
+        this.inputWidth = inputWidth;
+        this.layers = Collections.unmodifiableList(new ArrayList<>(layers));
+        this.labels = Collections.unmodifiableList(new ArrayList<>(labels));
+    }
+
+    /**
+     * @param maxBatchSize largest batch the session will be asked to run
+     * @param threads threads used by every forward pass, 1 runs on the calling thread only
+     * @return new session with all buffers allocated up front, it must be closed to stop its threads
+     */
+    public EngineSession newSession(int maxBatchSize, int threads) {
+        return new EngineSession(this, maxBatchSize, threads);
+    }
+
+    /**
+     * Copy that stores convolution and dense weights in the given precision, {@link WeightPrecision#HALF} halves the memory of the weights,
+     * other parameters (biases, batch normalization) stay in float, sessions of the copy accumulate in float all the same
+     * @param weightPrecision storage of weights
+     * @return converted copy, this model is not changed
+     */
+    public EngineModel withWeightPrecision(WeightPrecision weightPrecision) {
+        List<EngineLayer> convertedLayers = new ArrayList<>(layers.size());
+        for (EngineLayer layer : layers)
+            convertedLayers.add(layer.withWeightPrecision(weightPrecision));
+        return new EngineModel(inputChannels, inputHeight, inputWidth, convertedLayers, labels);
+    }
+
+    /**
+     * @return bytes taken by all weights and biases
+     */
+    public long getParameterBytes() {
+        long bytes = 0;
+        for (EngineLayer layer : layers)
+            bytes += layer.getParameterBytes();
+        return bytes;
+    }
+
+    public int getNumberOfClasses() {
+        return labels.size();
+    }
+
+    public int getInputChannels() {
+        return inputChannels;
+    }
+
+    public int getInputHeight() {
+        return inputHeight;
+    }
+
+    public int getInputWidth() {
+        return inputWidth;
+    }
+
+    public int getInputLength() {
+        return inputChannels * inputHeight * inputWidth;
+    }
+
+    public List<EngineLayer> getLayers() {
+        return layers;
+    }
+
+    public List<String> getLabels() {
+        return labels;
+    }
+}
@@ -0,0 +1,90 @@
+package com.tekleo.image_classifier.inference.engine;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * File of an {@link EngineModel}, readable without ND4J or DL4J, so a classifier can start without loading any native libraries
+ *
+ * File layout (big-endian):
+ *  HEADER: magic, version, input channels, input height, input width (ints)
+ *  LABELS: number of labels (int), every label as modified UTF-8
+ *  LAYERS: number of layers (int), for every layer its type byte, shape ints, weights, float biases, activation byte
+ *          convolution and dense weights start with a precision byte (see {@link WeightPrecision}) and are stored as floats or as halves,
+ *          version 1 files have no precision byte and only float weights, they are still readable
+ */
+public class EngineModelFile {
+    static final int MAGIC = 0x43464531;
+    static final int VERSION = 2;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Write a model, the file is written under a temporary name and moved into place, so readers never see half of it
+     * @param file target file
+     * @param model model
+     * @throws IOException if writing fails
+     */
+    public static void write(File file, EngineModel model) throws IOException {
+        File temporaryFile = new File(file.getPath() + ".tmp");
+        try (DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile), BUFFER_SIZE))) {
+            outputStream.writeInt(MAGIC);
+            outputStream.writeInt(VERSION);
+            outputStream.writeInt(model.getInputChannels());
+            outputStream.writeInt(model.getInputHeight());
+            outputStream.writeInt(model.getInputWidth());
+            outputStream.writeInt(model.getLabels().size());
+            for (String label : model.getLabels())
+                outputStream.writeUTF(label);
+            outputStream.writeInt(model.getLayers().size());
+            for (EngineLayer layer : model.getLayers())
+                layer.write(outputStream);
+        }
+
+        Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @param file engine model file
+     * @return model
+     * @throws IOException if the file is missing, truncated, inconsistent or is not an engine model file
+     */
+    public static EngineModel read(File file) throws IOException {
+        try (DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE))) {
+            if (inputStream.readInt() != MAGIC)
+                throw new IOException(file.getPath() + " is not an engine model file");
+            int version = inputStream.readInt();
+            if (version < 1 || version > VERSION)
+                throw new IOException(file.getPath() + " has unsupported version " + version);
+
+            int inputChannels = inputStream.readInt();
+            int inputHeight = inputStream.readInt();
+            int inputWidth = inputStream.readInt();
+
+            int numberOfLabels = inputStream.readInt();
+            List<String> labels = new ArrayList<>(numberOfLabels);
+            for (int i = 0; i < numberOfLabels; i++)
+                labels.add(inputStream.readUTF());
+
+            int numberOfLayers = inputStream.readInt();
+            List<EngineLayer> layers = new ArrayList<>(numberOfLayers);
+            for (int i = 0; i < numberOfLayers; i++)
+                layers.add(EngineLayer.read(inputStream, version));
+
+            try {
+                return new EngineModel(inputChannels, inputHeight, inputWidth, layers, labels);
+            } catch (IllegalArgumentException e) {
+                throw new IOException(file.getPath() + " is inconsistent: " + e.getMessage(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.tekleo.image_classifier.inference.engine;
+
+import java.util.List;
+
+/**
+ * Runs forward passes of an {@link EngineModel} on buffers allocated once, when the session is created
+ *
+ * Activations ping-pong between two arrays sized for the largest layer output at the maximum batch size,
+ * convolutions unroll their input into one shared scratch array, and per-layer tasks for the {@link TileExecutor} are created up front,
+ * so a forward pass allocates nothing, and a request loop over {@link #classify(float[])} or {@link #output(float[], int, float[])} produces no garbage
+ *
+ * Not thread-safe, use one session per thread, sessions of the same model share its weights
+ */
+public class EngineSession implements AutoCloseable {
+    private final EngineModel model;
+    private final int maxBatchSize;
+    private final float[] evenBuffer;
+    private final float[] oddBuffer;
+    private final float[] scratch;
+    private final LayerTask[] tasks;
+    private final TileExecutor executor;
+
+    EngineSession(EngineModel model, int maxBatchSize, int threads) {
+        if (maxBatchSize < 1 || threads < 1)
+            throw new IllegalArgumentException("Batch size and threads must be positive");
+
+        List<EngineLayer> layers = model.getLayers();
+        int maxOutputLength = 0;
+        int maxScratchLength = 0;
+        for (EngineLayer layer : layers) {
+            maxOutputLength = Math.max(maxOutputLength, layer.getOutputLength());
+            maxScratchLength = Math.max(maxScratchLength, layer.getScratchLength(maxBatchSize));
+        }
+
+        this.model = model;
+        this.maxBatchSize = maxBatchSize;
+        this.evenBuffer = new float[maxBatchSize * maxOutputLength];
+        this.oddBuffer = new float[maxBatchSize * maxOutputLength];
+        this.scratch = new float[maxScratchLength];
+        this.tasks = new LayerTask[layers.size()];
+        for (int i = 0; i < tasks.length; i++)
+            tasks[i] = new LayerTask(layers.get(i), scratch);
+        this.executor = new TileExecutor(threads);
+    }
+
+    /**
+     * Forward pass without copying the result
+     * @param features batch of images laid out as [batch, channels, height, width], pixels scaled the same way as in training
+     * @param batchSize number of images, at most the maximum batch size of the session
+     * @return internal buffer with network outputs laid out as [batch, classes] in its first batch * classes values,
+     *         it is overwritten by the next call, so copy anything that should outlive it
+     */
+    public float[] run(float[] features, int batchSize) {
+        if (batchSize < 1 || batchSize > maxBatchSize)
+            throw new IllegalArgumentException("Batch size must be in 1.." + maxBatchSize + ", got " + batchSize);
+        if (features.length < batchSize * model.getInputLength())
+            throw new IllegalArgumentException("Expected " + batchSize * model.getInputLength() + " feature values, got " + features.length);
+
+        float[] input = features;
+        for (int i = 0; i < tasks.length; i++) {
+            float[] output = i % 2 == 0 ? evenBuffer : oddBuffer;
+            LayerTask task = tasks[i];
+            task.input = input;
+            task.output = output;
+            task.batchSize = batchSize;
+
+            task.layer.prepare(input, scratch, batchSize);
+            executor.execute(task);
+            task.layer.finish(output, batchSize);
+
+            task.input = null;
+            input = output;
+        }
+        return input;
+    }
+
+    /**
+     * Forward pass into a caller's array
+     * @param features batch of images laid out as [batch, channels, height, width]
+     * @param batchSize number of images
+     * @param target array for network outputs laid out as [batch, classes]
+     */
+    public void output(float[] features, int batchSize, float[] target) {
+        System.arraycopy(run(features, batchSize), 0, target, 0, batchSize * model.getNumberOfClasses());
+    }
+
+    /**
+     * @param features one image laid out as [channels, height, width]
+     * @return index of the most probable class
+     */
+    public int classify(float[] features) {
+        float[] output = run(features, 1);
+        int best = 0;
+        for (int i = 1; i < model.getNumberOfClasses(); i++)
+            if (output[i] > output[best])
+                best = i;
+        return best;
+    }
+
+    public EngineModel getModel() {
+        return model;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public int getThreads() {
+        return executor.getThreads();
+    }
+
+    @Override
+    public void close() {
+        executor.close();
+    }
+
+
+
+    private static class LayerTask implements TileExecutor.TileTask {
+        private final EngineLayer layer;
+        private final float[] scratch;
+        private float[] input;
+        private float[] output;
+        private int batchSize;
+
+        private LayerTask(EngineLayer layer, float[] scratch) {
+            this.layer = layer;
+            this.scratch = scratch;
+        }
+
+        @Override
+        public void runTile(int tile, int tiles) {
+            layer.forwardTile(input, output, scratch, batchSize, tile, tiles);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.tekleo.image_classifier.inference.engine;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Max or average over the whole spatial extent of every channel, gives one value per channel
+ */
+public class GlobalPoolingLayer extends EngineLayer {
+    private final int channels;
+    private final int spatialLength;
+    private final boolean max;
+
+    public GlobalPoolingLayer(int channels, int spatialLength, boolean max) {
+        this.channels = channels;
+        this.spatialLength = spatialLength;
+        this.max = max;
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    public int getSpatialLength() {
+        return spatialLength;
+    }
+
+    public boolean isMax() {
+        return max;
+    }
+
+    @Override
+    public int getInputLength() {
+        return channels * spatialLength;
+    }
+
+    @Override
+    public int getOutputLength() {
+        return channels;
+    }
+
+    @Override
+    public long getParameterBytes() {
+        return 0;
+    }
+
+    @Override
+    void forwardTile(float[] input, float[] output, float[] scratch, int batchSize, int tile, int tiles) {
+        int planes = batchSize * channels;
+        int end = tileStart(planes, tile + 1, tiles);
+        for (int plane = tileStart(planes, tile, tiles); plane < end; plane++) {
+            float result = max ? Float.NEGATIVE_INFINITY : 0;
+            for (int i = plane * spatialLength; i < (plane + 1) * spatialLength; i++)
+                result = max ? Math.max(result, input[i]) : result + input[i];
+            output[plane] = max ? result : result / spatialLength;
+        }
+    }
+
+    @Override
+    void write(DataOutputStream outputStream) throws IOException {
+        outputStream.writeByte(GLOBAL_POOLING);
+        outputStream.writeInt(channels);
+        outputStream.writeInt(spatialLength);
+        outputStream.writeBoolean(max);
+    }
+
+    static GlobalPoolingLayer read(DataInputStream inputStream) throws IOException {
+        return new GlobalPoolingLayer(inputStream.readInt(), inputStream.readInt(), inputStream.readBoolean());
+    }
+}
@@ -0,0 +1,83 @@
+package com.tekleo.image_classifier.inference.engine;
+
+/**
+ * Conversions between floats and IEEE 754 half precision values kept in shorts, Java 8 has no half type of its own
+ *
+ * Narrowing rounds to nearest even, like hardware conversions do, values past the half range become infinities, tiny values become subnormals or zero
+ * Widening is a lookup in a table of all 65536 half values, it is exact and cheaper than decoding the bits on every read of a weight
+ */
+final class HalfFloats {
+    private static final float[] TO_FLOAT = new float[1 << 16];
+
+    static {
+        for (int half = 0; half < TO_FLOAT.length; half++)
+            TO_FLOAT[half] = decode(half);
+    }
+
+    private HalfFloats() {
+
+    }
+
+    static float toFloat(short half) {
+        return TO_FLOAT[half & 0xFFFF];
+    }
+
+    static short fromFloat(float value) {
+        int bits = Float.floatToRawIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        int exponent = (bits >>> 23) & 0xFF;
+        int mantissa = bits & 0x7FFFFF;
+
+        // Infinity stays infinity, NaN stays a quiet NaN
+        if (exponent == 0xFF)
+            return (short) (sign | 0x7C00 | (mantissa != 0 ? 0x200 : 0));
+
+        int halfExponent = exponent - 127 + 15;
+        if (halfExponent >= 0x1F)
+            return (short) (sign | 0x7C00);
+
+        // Subnormal half, the implicit leading bit becomes part of the mantissa
+        if (halfExponent <= 0) {
+            if (halfExponent < -10)
+                return (short) sign;
+            int shift = 14 - halfExponent;
+            int full = mantissa | 0x800000;
+            return (short) (sign | round(full >> shift, full & ((1 << shift) - 1), 1 << (shift - 1)));
+        }
+
+        // A carry out of the mantissa moves into the exponent, which is still the correct result, up to infinity
+        return (short) (sign | round((halfExponent << 10) | (mantissa >> 13), mantissa & 0x1FFF, 0x1000));
+    }
+
+    static short[] fromFloats(float[] values) {
+        short[] halves = new short[values.length];
+        for (int i = 0; i < values.length; i++)
+            halves[i] = fromFloat(values[i]);
+        return halves;
+    }
+
+    static float[] toFloats(short[] halves) {
+        float[] values = new float[halves.length];
+        for (int i = 0; i < halves.length; i++)
+            values[i] = toFloat(halves[i]);
+        return values;
+    }
+
+    // Round half to even on the dropped bits
+    private static int round(int truncated, int remainder, int halfway) {
+        return remainder > halfway || (remainder == halfway && (truncated & 1) != 0) ? truncated + 1 : truncated;
+    }
+
+    private static float decode(int half) {
+        int sign = (half & 0x8000) << 16;
+        int exponent = (half >>> 10) & 0x1F;
+        int mantissa = half & 0x3FF;
+        if (exponent == 0) {
+            float value = Math.scalb((float) mantissa, -24);
+            return sign != 0 ? -value : value;
+        }
+        if (exponent == 0x1F)
+            return Float.intBitsToFloat(sign | 0x7F800000 | (mantissa << 13));
+        return Float.intBitsToFloat(sign | ((exponent + 127 - 15) << 23) | (mantissa << 13));
+    }
+}
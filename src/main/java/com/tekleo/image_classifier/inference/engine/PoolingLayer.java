@@ -0,0 +1,133 @@
+package com.tekleo.image_classifier.inference.engine;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Max or average subsampling without padding, has no parameters
+ */
+public class PoolingLayer extends EngineLayer {
+    private final int channels;
+    private final int inHeight;
+    private final int inWidth;
+    private final int kernelHeight;
+    private final int kernelWidth;
+    private final int strideHeight;
+    private final int strideWidth;
+    private final int outHeight;
+    private final int outWidth;
+    private final boolean max;
+
+    public PoolingLayer(int channels, int inHeight, int inWidth, int kernelHeight, int kernelWidth, int strideHeight, int strideWidth, int outHeight, int outWidth, boolean max) {
+        if ((outHeight - 1) * strideHeight + kernelHeight > inHeight || (outWidth - 1) * strideWidth + kernelWidth > inWidth)
+            throw new IllegalArgumentException("Pooling windows don't fit into the input");
+
+        this.channels = channels;
+        this.inHeight = inHeight;
+        this.inWidth = inWidth;
+        this.kernelHeight = kernelHeight;
+        this.kernelWidth = kernelWidth;
+        this.strideHeight = strideHeight;
+        this.strideWidth = strideWidth;
+        this.outHeight = outHeight;
+        this.outWidth = outWidth;
+        this.max = max;
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    public int getInHeight() {
+        return inHeight;
+    }
+
+    public int getInWidth() {
+        return inWidth;
+    }
+
+    public int getKernelHeight() {
+        return kernelHeight;
+    }
+
+    public int getKernelWidth() {
+        return kernelWidth;
+    }
+
+    public int getStrideHeight() {
+        return strideHeight;
+    }
+
+    public int getStrideWidth() {
+        return strideWidth;
+    }
+
+    public int getOutHeight() {
+        return outHeight;
+    }
+
+    public int getOutWidth() {
+        return outWidth;
+    }
+
+    public boolean isMax() {
+        return max;
+    }
+
+    @Override
+    public int getInputLength() {
+        return channels * inHeight * inWidth;
+    }
+
+    @Override
+    public int getOutputLength() {
+        return channels * outHeight * outWidth;
+    }
+
+    @Override
+    public long getParameterBytes() {
+        return 0;
+    }
+
+    @Override
+    void forwardTile(float[] input, float[] output, float[] scratch, int batchSize, int tile, int tiles) {
+        float kernelArea = kernelHeight * kernelWidth;
+        int planes = batchSize * channels;
+        int end = tileStart(planes, tile + 1, tiles);
+        for (int plane = tileStart(planes, tile, tiles); plane < end; plane++) {
+            int planeOffset = plane * inHeight * inWidth;
+            int out = plane * outHeight * outWidth;
+            for (int oy = 0; oy < outHeight; oy++) {
+                for (int ox = 0; ox < outWidth; ox++) {
+                    float result = max ? Float.NEGATIVE_INFINITY : 0;
+                    for (int ky = 0; ky < kernelHeight; ky++) {
+                        int rowOffset = planeOffset + (oy * strideHeight + ky) * inWidth + ox * strideWidth;
+                        for (int kx = 0; kx < kernelWidth; kx++)
+                            result = max ? Math.max(result, input[rowOffset + kx]) : result + input[rowOffset + kx];
+                    }
+                    output[out++] = max ? result : result / kernelArea;
+                }
+            }
+        }
+    }
+
+    @Override
+    void write(DataOutputStream outputStream) throws IOException {
+        outputStream.writeByte(POOLING);
+        for (int value : new int[] {channels, inHeight, inWidth, kernelHeight, kernelWidth, strideHeight, strideWidth, outHeight, outWidth})
+            outputStream.writeInt(value);
+        outputStream.writeBoolean(max);
+    }
+
+    static PoolingLayer read(DataInputStream inputStream) throws IOException {
+        int[] shape = new int[9];
+        for (int i = 0; i < shape.length; i++)
+            shape[i] = inputStream.readInt();
+        try {
+            return new PoolingLayer(shape[0], shape[1], shape[2], shape[3], shape[4], shape[5], shape[6], shape[7], shape[8], inputStream.readBoolean());
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.tekleo.image_classifier.inference.engine;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs one task split into tiles on a fixed set of threads, the calling thread works on tile 0 and waits for the rest
+ *
+ * Nothing is allocated per call: workers are started once, they wait for a new generation of work by spinning briefly and then parking,
+ * so a forward pass with a dozen parallel layers produces no garbage and no executor queue traffic
+ *
+ * Not thread-safe, one executor belongs to one {@link EngineSession}
+ */
+class TileExecutor implements AutoCloseable {
+    private static final int SPIN_ITERATIONS = 20_000;
+
+    /**
+     * Work split into tiles, tile i of n must be independent from all other tiles
+     */
+    interface TileTask {
+        void runTile(int tile, int tiles);
+    }
+
+    private final Thread[] workers;
+    private final AtomicInteger remaining;
+    private volatile TileTask task;
+    private volatile int generation;
+    private volatile boolean closed;
+    private volatile Thread caller;
+
+    /**
+     * @param threads total number of threads including the caller, 1 runs everything on the caller
+     */
+    TileExecutor(int threads) {
+        this.workers = new Thread[threads - 1];
+        this.remaining = new AtomicInteger();
+        for (int i = 0; i < workers.length; i++) {
+            int tile = i + 1;
+            workers[i] = new Thread(() -> work(tile), "engine-tile-" + tile);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    int getThreads() {
+        return workers.length + 1;
+    }
+
+    /**
+     * Run all tiles of the task and return when every one of them is done
+     * @param task task to run
+     */
+    void execute(TileTask task) {
+        int tiles = getThreads();
+        if (tiles == 1) {
+            task.runTile(0, 1);
+            return;
+        }
+
+        this.caller = Thread.currentThread();
+        this.task = task;
+        remaining.set(workers.length);
+        generation++;
+        for (Thread worker : workers)
+            LockSupport.unpark(worker);
+
+        task.runTile(0, tiles);
+
+        for (int spins = 0; remaining.get() > 0; spins++)
+            if (spins > SPIN_ITERATIONS)
+                LockSupport.park(this);
+        this.task = null;
+    }
+
+    private void work(int tile) {
+        int seenGeneration = 0;
+        while (true) {
+            for (int spins = 0; generation == seenGeneration && !closed; spins++)
+                if (spins > SPIN_ITERATIONS)
+                    LockSupport.park(this);
+            if (closed)
+                return;
+
+            seenGeneration = generation;
+            task.runTile(tile, getThreads());
+            if (remaining.decrementAndGet() == 0)
+                LockSupport.unpark(caller);
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        for (Thread worker : workers)
+            LockSupport.unpark(worker);
+    }
+}
@@ -0,0 +1,30 @@
+package com.tekleo.image_classifier.inference.engine;
+
+/**
+ * Storage format of convolution and dense weights of an {@link EngineModel}, the math is done in float with either of them
+ */
+public enum WeightPrecision {
+    /**
+     * 32-bit floats, exactly the trained weights
+     */
+    FLOAT(4),
+
+    /**
+     * IEEE 754 half precision (1 sign, 5 exponent, 10 mantissa bits), half the memory and memory traffic of FLOAT,
+     * every weight is rounded to about 3 significant digits, weights are widened to float when they are read, so sums are still accumulated in float
+     */
+    HALF(2);
+
+    private final int bytes;
+
+    WeightPrecision(int bytes) {
+        this.bytes = bytes;
+    }
+
+    /**
+     * @return bytes taken by one weight
+     */
+    public int getBytes() {
+        return bytes;
+    }
+}
@@ -0,0 +1,75 @@
+package com.tekleo.image_classifier.inference.quantized;
+
+import com.tekleo.image_classifier.inference.engine.ActivationFunction;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Scale and shift per channel followed by an activation, this is inference-time batch normalization
+ * Only used when normalization can't be folded into the weights of the previous layer
+ */
+class ChannelAffineLayer extends QuantizedLayer {
+    private final int channels;
+    private final int spatialLength;
+    private final float[] scales;
+    private final float[] shifts;
+    private final ActivationFunction activation;
+
+    /**
+     * @param spatialLength height * width of every channel, 1 after dense layers
+     */
+    ChannelAffineLayer(int channels, int spatialLength, float[] scales, float[] shifts, ActivationFunction activation) {
+        this.channels = channels;
+        this.spatialLength = spatialLength;
+        this.scales = scales;
+        this.shifts = shifts;
+        this.activation = activation;
+    }
+
+    @Override
+    int getInputLength() {
+        return channels * spatialLength;
+    }
+
+    @Override
+    int getOutputLength() {
+        return channels * spatialLength;
+    }
+
+    @Override
+    void forward(float[] input, float[] output, int batchSize) {
+        int i = 0;
+        for (int example = 0; example < batchSize; example++) {
+            for (int channel = 0; channel < channels; channel++) {
+                float scale = scales[channel];
+                float shift = shifts[channel];
+                for (int p = 0; p < spatialLength; p++, i++)
+                    output[i] = input[i] * scale + shift;
+            }
+        }
+        activation.apply(output, 0, batchSize, getOutputLength());
+    }
+
+    @Override
+    long getParameterBytes() {
+        return 4L * (scales.length + shifts.length);
+    }
+
+    @Override
+    void write(DataOutputStream outputStream) throws IOException {
+        outputStream.writeByte(CHANNEL_AFFINE);
+        outputStream.writeInt(channels);
+        outputStream.writeInt(spatialLength);
+        writeFloats(outputStream, scales);
+        writeFloats(outputStream, shifts);
+        outputStream.writeByte(activation.ordinal());
+    }
+
+    static ChannelAffineLayer read(DataInputStream inputStream) throws IOException {
+        int channels = inputStream.readInt();
+        int spatialLength = inputStream.readInt();
+        return new ChannelAffineLayer(channels, spatialLength, readFloats(inputStream), readFloats(inputStream), readActivation(inputStream));
+    }
+}
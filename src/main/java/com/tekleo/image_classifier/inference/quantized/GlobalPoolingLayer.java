@@ -0,0 +1,57 @@
+package com.tekleo.image_classifier.inference.quantized;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Max or average over the whole spatial extent of every channel, gives one value per channel
+ */
+class GlobalPoolingLayer extends QuantizedLayer {
+    private final int channels;
+    private final int spatialLength;
+    private final boolean max;
+
+    GlobalPoolingLayer(int channels, int spatialLength, boolean max) {
+        this.channels = channels;
+        this.spatialLength = spatialLength;
+        this.max = max;
+    }
+
+    @Override
+    int getInputLength() {
+        return channels * spatialLength;
+    }
+
+    @Override
+    int getOutputLength() {
+        return channels;
+    }
+
+    @Override
+    void forward(float[] input, float[] output, int batchSize) {
+        for (int plane = 0; plane < batchSize * channels; plane++) {
+            float result = max ? Float.NEGATIVE_INFINITY : 0;
+            for (int i = plane * spatialLength; i < (plane + 1) * spatialLength; i++)
+                result = max ? Math.max(result, input[i]) : result + input[i];
+            output[plane] = max ? result : result / spatialLength;
+        }
+    }
+
+    @Override
+    long getParameterBytes() {
+        return 0;
+    }
+
+    @Override
+    void write(DataOutputStream outputStream) throws IOException {
+        outputStream.writeByte(GLOBAL_POOLING);
+        outputStream.writeInt(channels);
+        outputStream.writeInt(spatialLength);
+        outputStream.writeBoolean(max);
+    }
+
+    static GlobalPoolingLayer read(DataInputStream inputStream) throws IOException {
+        return new GlobalPoolingLayer(inputStream.readInt(), inputStream.readInt(), inputStream.readBoolean());
+    }
+}
@@ -0,0 +1,84 @@
+package com.tekleo.image_classifier.inference.quantized;
+
+import com.tekleo.image_classifier.inference.engine.ActivationFunction;
+import com.tekleo.image_classifier.inference.engine.EngineException;
+import com.tekleo.image_classifier.inference.engine.EngineExporter;
+import com.tekleo.image_classifier.inference.engine.EngineLayer;
+import com.tekleo.image_classifier.inference.engine.EngineModel;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Post-training quantization of a trained DL4J network into a {@link QuantizedNetwork}
+ *
+ * The network is first exported with {@link EngineExporter}, so the supported layers, batch normalization folding
+ * and activation merging are the same as in the float engine, then convolution and dense weights of the exported model are quantized
+ */
+public class NetworkQuantizer {
+    /**
+     * @param network trained network, for example the one restored by {@link com.tekleo.image_classifier.neural_network.CifarModel#load()}
+     * @param channels input image channels
+     * @param height input image height
+     * @param width input image width
+     * @return quantized copy of the network, the original is not changed
+     * @throws QuantizationException if the network has a layer or setting that is not supported
+     */
+    public static QuantizedNetwork quantize(MultiLayerNetwork network, int channels, int height, int width) throws QuantizationException {
+        try {
+            return quantize(EngineExporter.export(network, channels, height, width));
+        } catch (EngineException e) {
+            throw new QuantizationException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @param model exported float model
+     * @return quantized copy of the model
+     * @throws QuantizationException if the model has a layer that is not supported
+     */
+    public static QuantizedNetwork quantize(EngineModel model) throws QuantizationException {
+        List<QuantizedLayer> layers = new ArrayList<>();
+        for (EngineLayer layer : model.getLayers())
+            layers.add(quantize(layer));
+        return new QuantizedNetwork(model.getInputChannels(), model.getInputHeight(), model.getInputWidth(), layers);
+    }
+
+    // Static helpers
+    //------------------------------------------------------------------------------------------------------------------
+    private static QuantizedLayer quantize(EngineLayer layer) throws QuantizationException {
+        if (layer instanceof com.tekleo.image_classifier.inference.engine.ConvolutionLayer) {
+            com.tekleo.image_classifier.inference.engine.ConvolutionLayer convolution = (com.tekleo.image_classifier.inference.engine.ConvolutionLayer) layer;
+            int patchLength = convolution.getInChannels() * convolution.getKernelHeight() * convolution.getKernelWidth();
+            return new QuantizedConvolutionLayer(convolution.getInChannels(), convolution.getInHeight(), convolution.getInWidth(),
+                    convolution.getKernelHeight(), convolution.getKernelWidth(), convolution.getStrideHeight(), convolution.getStrideWidth(),
+                    convolution.getPaddingTop(), convolution.getPaddingLeft(), convolution.getOutHeight(), convolution.getOutWidth(),
+                    QuantizedWeights.quantize(convolution.getWeights(), convolution.getOutChannels(), patchLength), convolution.getBiases(), convolution.getActivation());
+        }
+
+        if (layer instanceof com.tekleo.image_classifier.inference.engine.DenseLayer) {
+            com.tekleo.image_classifier.inference.engine.DenseLayer dense = (com.tekleo.image_classifier.inference.engine.DenseLayer) layer;
+            return new QuantizedDenseLayer(QuantizedWeights.quantize(dense.getWeights(), dense.getOutputLength(), dense.getInputLength()), dense.getBiases(), dense.getActivation());
+        }
+
+        if (layer instanceof com.tekleo.image_classifier.inference.engine.PoolingLayer) {
+            com.tekleo.image_classifier.inference.engine.PoolingLayer pooling = (com.tekleo.image_classifier.inference.engine.PoolingLayer) layer;
+            return new PoolingLayer(pooling.getChannels(), pooling.getInHeight(), pooling.getInWidth(), pooling.getKernelHeight(), pooling.getKernelWidth(),
+                    pooling.getStrideHeight(), pooling.getStrideWidth(), pooling.getOutHeight(), pooling.getOutWidth(), pooling.isMax());
+        }
+
+        if (layer instanceof com.tekleo.image_classifier.inference.engine.ChannelAffineLayer) {
+            com.tekleo.image_classifier.inference.engine.ChannelAffineLayer affine = (com.tekleo.image_classifier.inference.engine.ChannelAffineLayer) layer;
+            return new ChannelAffineLayer(affine.getChannels(), affine.getSpatialLength(), affine.getScales(), affine.getShifts(), affine.getActivation());
+        }
+
+        if (layer instanceof com.tekleo.image_classifier.inference.engine.GlobalPoolingLayer) {
+            com.tekleo.image_classifier.inference.engine.GlobalPoolingLayer pooling = (com.tekleo.image_classifier.inference.engine.GlobalPoolingLayer) layer;
+            return new GlobalPoolingLayer(pooling.getChannels(), pooling.getSpatialLength(), pooling.isMax());
+        }
+
+        throw new QuantizationException("Unsupported layer " + layer.getClass().getSimpleName());
+    }
+    //------------------------------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,92 @@
+package com.tekleo.image_classifier.inference.quantized;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Max or average subsampling without padding, has no parameters
+ */
+class PoolingLayer extends QuantizedLayer {
+    private final int channels;
+    private final int inHeight;
+    private final int inWidth;
+    private final int kernelHeight;
+    private final int kernelWidth;
+    private final int strideHeight;
+    private final int strideWidth;
+    private final int outHeight;
+    private final int outWidth;
+    private final boolean max;
+
+    PoolingLayer(int channels, int inHeight, int inWidth, int kernelHeight, int kernelWidth, int strideHeight, int strideWidth, int outHeight, int outWidth, boolean max) {
+        this.channels = channels;
+        this.inHeight = inHeight;
+        this.inWidth = inWidth;
+        this.kernelHeight = kernelHeight;
+        this.kernelWidth = kernelWidth;
+        this.strideHeight = strideHeight;
+        this.strideWidth = strideWidth;
+        this.outHeight = outHeight;
+        this.outWidth = outWidth;
+        this.max = max;
+    }
+
+    int getOutHeight() {
+        return outHeight;
+    }
+
+    int getOutWidth() {
+        return outWidth;
+    }
+
+    @Override
+    int getInputLength() {
+        return channels * inHeight * inWidth;
+    }
+
+    @Override
+    int getOutputLength() {
+        return channels * outHeight * outWidth;
+    }
+
+    @Override
+    void forward(float[] input, float[] output, int batchSize) {
+        float kernelArea = kernelHeight * kernelWidth;
+        int out = 0;
+        for (int plane = 0; plane < batchSize * channels; plane++) {
+            int planeOffset = plane * inHeight * inWidth;
+            for (int oy = 0; oy < outHeight; oy++) {
+                for (int ox = 0; ox < outWidth; ox++) {
+                    float result = max ? Float.NEGATIVE_INFINITY : 0;
+                    for (int ky = 0; ky < kernelHeight; ky++) {
+                        int rowOffset = planeOffset + (oy * strideHeight + ky) * inWidth + ox * strideWidth;
+                        for (int kx = 0; kx < kernelWidth; kx++)
+                            result = max ? Math.max(result, input[rowOffset + kx]) : result + input[rowOffset + kx];
+                    }
+                    output[out++] = max ? result : result / kernelArea;
+                }
+            }
+        }
+    }
+
+    @Override
+    long getParameterBytes() {
+        return 0;
+    }
+
+    @Override
+    void write(DataOutputStream outputStream) throws IOException {
+        outputStream.writeByte(POOLING);
+        for (int value : new int[] {channels, inHeight, inWidth, kernelHeight, kernelWidth, strideHeight, strideWidth, outHeight, outWidth})
+            outputStream.writeInt(value);
+        outputStream.writeBoolean(max);
+    }
+
+    static PoolingLayer read(DataInputStream inputStream) throws IOException {
+        int[] shape = new int[9];
+        for (int i = 0; i < shape.length; i++)
+            shape[i] = inputStream.readInt();
+        return new PoolingLayer(shape[0], shape[1], shape[2], shape[3], shape[4], shape[5], shape[6], shape[7], shape[8], inputStream.readBoolean());
+    }
+}
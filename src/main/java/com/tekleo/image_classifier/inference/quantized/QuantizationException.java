@@ -0,0 +1,26 @@
+package com.tekleo.image_classifier.inference.quantized;
+
+/**
+ * Exception to be used when a network can't be quantized, or a quantized model file can't be read
+ */
+public class QuantizationException extends Exception {
+    public QuantizationException() {
+
+    }
+
+    public QuantizationException(String message) {
+        super(message);
+    }
+
+    public QuantizationException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public QuantizationException(Throwable cause) {
+        super(cause);
+    }
+
+    public QuantizationException(String message, Throwable cause, boolean enableSuppression, boolean writableStackTrace) {
+        super(message, cause, enableSuppression, writableStackTrace);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,200 @@
+package com.tekleo.image_classifier.inference.quantized;
+
+import com.tekleo.image_classifier.inference.engine.ActivationFunction;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * 2D convolution with int8 weights, a scale per output channel
+ *
+ * Every example is unrolled into patches (im2col), then blocks of 4 output channels accumulate int8 weights times patch rows
+ * over all output positions at once, every patch row is read once per block, and the inner loop is a plain float multiply-add over contiguous rows that the JIT can vectorize,
+ * the channel scale is applied once at the end, so weights are never expanded back into floats
+ */
+class QuantizedConvolutionLayer extends QuantizedLayer {
+    private static final int BLOCK = 4;
+
+    private final int inChannels;
+    private final int inHeight;
+    private final int inWidth;
+    private final int kernelHeight;
+    private final int kernelWidth;
+    private final int strideHeight;
+    private final int strideWidth;
+    private final int paddingTop;
+    private final int paddingLeft;
+    private final int outHeight;
+    private final int outWidth;
+    private final QuantizedWeights weights;
+    private final float[] biases;
+    private final ActivationFunction activation;
+
+    /**
+     * @param weights weights shaped as [out channels, in channels * kernel height * kernel width]
+     */
+    QuantizedConvolutionLayer(int inChannels, int inHeight, int inWidth, int kernelHeight, int kernelWidth, int strideHeight, int strideWidth,
+                              int paddingTop, int paddingLeft, int outHeight, int outWidth, QuantizedWeights weights, float[] biases, ActivationFunction activation) {
+        this.inChannels = inChannels;
+        this.inHeight = inHeight;
+        this.inWidth = inWidth;
+        this.kernelHeight = kernelHeight;
+        this.kernelWidth = kernelWidth;
+        this.strideHeight = strideHeight;
+        this.strideWidth = strideWidth;
+        this.paddingTop = paddingTop;
+        this.paddingLeft = paddingLeft;
+        this.outHeight = outHeight;
+        this.outWidth = outWidth;
+        this.weights = weights;
+        this.biases = biases;
+        this.activation = activation;
+    }
+
+    int getOutChannels() {
+        return weights.getRows();
+    }
+
+    int getOutHeight() {
+        return outHeight;
+    }
+
+    int getOutWidth() {
+        return outWidth;
+    }
+
+    @Override
+    int getInputLength() {
+        return inChannels * inHeight * inWidth;
+    }
+
+    @Override
+    int getOutputLength() {
+        return getOutChannels() * outHeight * outWidth;
+    }
+
+    @Override
+    void forward(float[] input, float[] output, int batchSize) {
+        int patchLength = inChannels * kernelHeight * kernelWidth;
+        int positions = outHeight * outWidth;
+        float[] columns = new float[patchLength * positions];
+        float[][] accumulators = new float[BLOCK][positions];
+
+        for (int example = 0; example < batchSize; example++) {
+            im2col(input, example * getInputLength(), columns);
+            int outputOffset = example * getOutputLength();
+
+            for (int channel = 0; channel < getOutChannels(); channel += BLOCK) {
+                int rows = Math.min(BLOCK, getOutChannels() - channel);
+                for (int row = 0; row < rows; row++)
+                    Arrays.fill(accumulators[row], 0);
+                if (rows == BLOCK)
+                    accumulateBlock(columns, channel, accumulators);
+                else
+                    for (int row = 0; row < rows; row++)
+                        accumulateRow(columns, channel + row, accumulators[row]);
+
+                float[] scales = weights.getScales();
+                for (int row = 0; row < rows; row++) {
+                    float scale = scales[channel + row];
+                    float bias = biases[channel + row];
+                    int channelOffset = outputOffset + (channel + row) * positions;
+                    for (int p = 0; p < positions; p++)
+                        output[channelOffset + p] = accumulators[row][p] * scale + bias;
+                }
+            }
+
+            activation.apply(output, outputOffset, 1, getOutputLength());
+        }
+    }
+
+    // Four output channels at once, every patch row is read once for all of them
+    private void accumulateBlock(float[] columns, int channel, float[][] accumulators) {
+        int patchLength = inChannels * kernelHeight * kernelWidth;
+        int positions = outHeight * outWidth;
+        byte[] values = weights.getValues();
+        float[] accumulator0 = accumulators[0], accumulator1 = accumulators[1], accumulator2 = accumulators[2], accumulator3 = accumulators[3];
+        int w0 = channel * patchLength, w1 = w0 + patchLength, w2 = w1 + patchLength, w3 = w2 + patchLength;
+
+        for (int k = 0; k < patchLength; k++) {
+            float weight0 = values[w0 + k], weight1 = values[w1 + k], weight2 = values[w2 + k], weight3 = values[w3 + k];
+            int columnsOffset = k * positions;
+            for (int p = 0; p < positions; p++) {
+                float value = columns[columnsOffset + p];
+                accumulator0[p] += weight0 * value;
+                accumulator1[p] += weight1 * value;
+                accumulator2[p] += weight2 * value;
+                accumulator3[p] += weight3 * value;
+            }
+        }
+    }
+
+    private void accumulateRow(float[] columns, int channel, float[] accumulator) {
+        int patchLength = inChannels * kernelHeight * kernelWidth;
+        int positions = outHeight * outWidth;
+        byte[] values = weights.getValues();
+        int weightsOffset = channel * patchLength;
+
+        for (int k = 0; k < patchLength; k++) {
+            float weight = values[weightsOffset + k];
+            if (weight == 0)
+                continue;
+            int columnsOffset = k * positions;
+            for (int p = 0; p < positions; p++)
+                accumulator[p] += weight * columns[columnsOffset + p];
+        }
+    }
+
+    // Row (c, ky, kx) of the patch matrix holds input pixels seen by that kernel tap at every output position, zero outside of the input
+    private void im2col(float[] input, int inputOffset, float[] columns) {
+        int positions = outHeight * outWidth;
+        int row = 0;
+        for (int c = 0; c < inChannels; c++) {
+            for (int ky = 0; ky < kernelHeight; ky++) {
+                for (int kx = 0; kx < kernelWidth; kx++, row++) {
+                    int rowOffset = row * positions;
+                    for (int oy = 0; oy < outHeight; oy++) {
+                        int iy = oy * strideHeight - paddingTop + ky;
+                        int columnsOffset = rowOffset + oy * outWidth;
+                        if (iy < 0 || iy >= inHeight) {
+                            Arrays.fill(columns, columnsOffset, columnsOffset + outWidth, 0);
+                            continue;
+                        }
+                        int inputRowOffset = inputOffset + (c * inHeight + iy) * inWidth;
+                        for (int ox = 0; ox < outWidth; ox++) {
+                            int ix = ox * strideWidth - paddingLeft + kx;
+                            columns[columnsOffset + ox] = ix >= 0 && ix < inWidth ? input[inputRowOffset + ix] : 0;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    long getParameterBytes() {
+        return weights.getBytes() + 4L * biases.length;
+    }
+
+    @Override
+    void write(DataOutputStream outputStream) throws IOException {
+        outputStream.writeByte(CONVOLUTION);
+        for (int value : new int[] {inChannels, inHeight, inWidth, kernelHeight, kernelWidth, strideHeight, strideWidth, paddingTop, paddingLeft, outHeight, outWidth})
+            outputStream.writeInt(value);
+        weights.write(outputStream);
+        writeFloats(outputStream, biases);
+        outputStream.writeByte(activation.ordinal());
+    }
+
+    static QuantizedConvolutionLayer read(DataInputStream inputStream) throws IOException {
+        int[] shape = new int[11];
+        for (int i = 0; i < shape.length; i++)
+            shape[i] = inputStream.readInt();
+        QuantizedWeights weights = QuantizedWeights.read(inputStream);
+        float[] biases = readFloats(inputStream);
+        ActivationFunction activation = readActivation(inputStream);
+        return new QuantizedConvolutionLayer(shape[0], shape[1], shape[2], shape[3], shape[4], shape[5], shape[6], shape[7], shape[8], shape[9], shape[10], weights, biases, activation);
+    }
+}
@@ -0,0 +1,119 @@
+package com.tekleo.image_classifier.inference.quantized;
+
+import com.tekleo.image_classifier.inference.engine.ActivationFunction;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Fully connected layer with int8 weights, a scale per output unit
+ *
+ * Weights are kept input-major ([in units, out units]), so the forward pass is a series of multiply-adds of an input value
+ * times a contiguous weight row into a contiguous output row, which the JIT can vectorize, and zero inputs (most of them after ReLU) are skipped
+ * Rows are expanded to floats a tile at a time into a small buffer that stays in cache and is reused by every example of the batch,
+ * rows with zero input in every example are not expanded at all, unit scales are applied once at the end
+ */
+class QuantizedDenseLayer extends QuantizedLayer {
+    private static final int TILE_ROWS = 64;
+
+    private final int nIn;
+    private final int nOut;
+    private final byte[] values;
+    private final float[] scales;
+    private final float[] biases;
+    private final ActivationFunction activation;
+
+    /**
+     * @param weights weights shaped as [out units, in units], one scale per out unit
+     */
+    QuantizedDenseLayer(QuantizedWeights weights, float[] biases, ActivationFunction activation) {
+        this.nIn = weights.getColumns();
+        this.nOut = weights.getRows();
+        this.values = transpose(weights.getValues(), nOut, nIn);
+        this.scales = weights.getScales();
+        this.biases = biases;
+        this.activation = activation;
+    }
+
+    @Override
+    int getInputLength() {
+        return nIn;
+    }
+
+    @Override
+    int getOutputLength() {
+        return nOut;
+    }
+
+    @Override
+    void forward(float[] input, float[] output, int batchSize) {
+        float[] tile = new float[Math.min(TILE_ROWS, nIn) * nOut];
+        Arrays.fill(output, 0, batchSize * nOut, 0);
+
+        for (int firstRow = 0; firstRow < nIn; firstRow += TILE_ROWS) {
+            int rows = Math.min(TILE_ROWS, nIn - firstRow);
+            for (int row = 0; row < rows; row++)
+                if (isUsed(input, firstRow + row, batchSize))
+                    for (int unit = 0, valuesOffset = (firstRow + row) * nOut; unit < nOut; unit++)
+                        tile[row * nOut + unit] = values[valuesOffset + unit];
+
+            for (int example = 0; example < batchSize; example++) {
+                int inputOffset = example * nIn + firstRow;
+                int outputOffset = example * nOut;
+                for (int row = 0; row < rows; row++) {
+                    float value = input[inputOffset + row];
+                    if (value == 0)
+                        continue;
+                    int tileOffset = row * nOut;
+                    for (int unit = 0; unit < nOut; unit++)
+                        output[outputOffset + unit] += value * tile[tileOffset + unit];
+                }
+            }
+        }
+
+        for (int example = 0; example < batchSize; example++)
+            for (int unit = 0; unit < nOut; unit++)
+                output[example * nOut + unit] = output[example * nOut + unit] * scales[unit] + biases[unit];
+        activation.apply(output, 0, batchSize, nOut);
+    }
+
+    // Rows that no example of the batch uses are never expanded
+    private boolean isUsed(float[] input, int row, int batchSize) {
+        for (int example = 0; example < batchSize; example++)
+            if (input[example * nIn + row] != 0)
+                return true;
+        return false;
+    }
+
+    @Override
+    long getParameterBytes() {
+        return values.length + 4L * (scales.length + biases.length);
+    }
+
+    @Override
+    void write(DataOutputStream outputStream) throws IOException {
+        outputStream.writeByte(DENSE);
+        new QuantizedWeights(nOut, nIn, transpose(values, nIn, nOut), scales).write(outputStream);
+        writeFloats(outputStream, biases);
+        outputStream.writeByte(activation.ordinal());
+    }
+
+    static QuantizedDenseLayer read(DataInputStream inputStream) throws IOException {
+        QuantizedWeights weights = QuantizedWeights.read(inputStream);
+        float[] biases = readFloats(inputStream);
+        return new QuantizedDenseLayer(weights, biases, readActivation(inputStream));
+    }
+
+    // Static helpers
+    //------------------------------------------------------------------------------------------------------------------
+    private static byte[] transpose(byte[] values, int rows, int columns) {
+        byte[] transposed = new byte[values.length];
+        for (int row = 0; row < rows; row++)
+            for (int column = 0; column < columns; column++)
+                transposed[column * rows + row] = values[row * columns + column];
+        return transposed;
+    }
+    //------------------------------------------------------------------------------------------------------------------
+}
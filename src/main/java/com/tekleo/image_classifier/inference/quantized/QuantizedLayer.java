@@ -0,0 +1,92 @@
+package com.tekleo.image_classifier.inference.quantized;
+
+import com.tekleo.image_classifier.inference.engine.ActivationFunction;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Layer of {@link QuantizedNetwork}, works on a batch of examples stored one after another in a float array
+ * Spatial examples are laid out as [channels, height, width], same as DL4J, so a flattened example is also what DL4J passes to dense layers
+ *
+ * Layers are immutable and hold no buffers, so one network can be used from many threads at once
+ */
+abstract class QuantizedLayer {
+    static final byte CONVOLUTION = 1;
+    static final byte POOLING = 2;
+    static final byte CHANNEL_AFFINE = 3;
+    static final byte GLOBAL_POOLING = 4;
+    static final byte DENSE = 5;
+
+    /**
+     * @return number of input values of one example
+     */
+    abstract int getInputLength();
+
+    /**
+     * @return number of output values of one example
+     */
+    abstract int getOutputLength();
+
+    /**
+     * @param input batch of inputs
+     * @param output batch of outputs, overwritten
+     * @param batchSize number of examples
+     */
+    abstract void forward(float[] input, float[] output, int batchSize);
+
+    /**
+     * @return bytes taken by weights and other parameters
+     */
+    abstract long getParameterBytes();
+
+    abstract void write(DataOutputStream outputStream) throws IOException;
+
+    static QuantizedLayer read(DataInputStream inputStream) throws IOException {
+        byte type = inputStream.readByte();
+        switch (type) {
+            case CONVOLUTION:
+                return QuantizedConvolutionLayer.read(inputStream);
+            case POOLING:
+                return PoolingLayer.read(inputStream);
+            case CHANNEL_AFFINE:
+                return ChannelAffineLayer.read(inputStream);
+            case GLOBAL_POOLING:
+                return GlobalPoolingLayer.read(inputStream);
+            case DENSE:
+                return QuantizedDenseLayer.read(inputStream);
+            default:
+                throw new IOException("Unknown layer type " + type);
+        }
+    }
+
+
+
+    // Static helpers
+    //------------------------------------------------------------------------------------------------------------------
+    static void writeFloats(DataOutputStream outputStream, float[] values) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * 4);
+        buffer.asFloatBuffer().put(values);
+        outputStream.writeInt(values.length);
+        outputStream.write(buffer.array());
+    }
+
+    static float[] readFloats(DataInputStream inputStream) throws IOException {
+        int length = inputStream.readInt();
+        byte[] bytes = new byte[length * 4];
+        inputStream.readFully(bytes);
+        float[] values = new float[length];
+        ByteBuffer.wrap(bytes).asFloatBuffer().get(values);
+        return values;
+    }
+
+    static ActivationFunction readActivation(DataInputStream inputStream) throws IOException {
+        int ordinal = inputStream.readByte();
+        if (ordinal < 0 || ordinal >= ActivationFunction.values().length)
+            throw new IOException("Unknown activation " + ordinal);
+        return ActivationFunction.values()[ordinal];
+    }
+    //------------------------------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,86 @@
+package com.tekleo.image_classifier.inference.quantized;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact file of a {@link QuantizedNetwork}, about a quarter of a float parameter file
+ *
+ * File layout (big-endian):
+ *  HEADER: magic, version, input channels, input height, input width, number of layers (ints)
+ *  LAYERS: for every layer its type byte, shape ints, int8 weights with float scales, float biases, activation byte
+ */
+public class QuantizedModelFile {
+    static final int MAGIC = 0x43465138;
+    static final int VERSION = 1;
+
+    /**
+     * Write a quantized network, the file is written under a temporary name and moved into place, so readers never see half of it
+     * @param file target file
+     * @param network quantized network
+     * @throws IOException if writing fails
+     */
+    public static void write(File file, QuantizedNetwork network) throws IOException {
+        File temporaryFile = new File(file.getPath() + ".tmp");
+        try (DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile)))) {
+            outputStream.writeInt(MAGIC);
+            outputStream.writeInt(VERSION);
+            outputStream.writeInt(network.getInputChannels());
+            outputStream.writeInt(network.getInputHeight());
+            outputStream.writeInt(network.getInputWidth());
+            outputStream.writeInt(network.getLayers().size());
+            for (QuantizedLayer layer : network.getLayers())
+                layer.write(outputStream);
+        }
+
+        Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @param file quantized model file
+     * @return quantized network
+     * @throws IOException if the file is missing, truncated or is not a quantized model file
+     */
+    public static QuantizedNetwork read(File file) throws IOException {
+        try (DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (inputStream.readInt() != MAGIC)
+                throw new IOException(file.getPath() + " is not a quantized model file");
+            if (inputStream.readInt() != VERSION)
+                throw new IOException(file.getPath() + " has unsupported version");
+
+            int inputChannels = inputStream.readInt();
+            int inputHeight = inputStream.readInt();
+            int inputWidth = inputStream.readInt();
+            int numberOfLayers = inputStream.readInt();
+            List<QuantizedLayer> layers = new ArrayList<>(numberOfLayers);
+            for (int i = 0; i < numberOfLayers; i++)
+                layers.add(QuantizedLayer.read(inputStream));
+            return new QuantizedNetwork(inputChannels, inputHeight, inputWidth, layers);
+        }
+    }
+
+    /**
+     * @param file any file
+     * @return true if the file starts with the quantized model file magic
+     */
+    public static boolean isQuantizedModelFile(File file) {
+        if (!file.isFile() || file.length() < 4)
+            return false;
+
+        try (DataInputStream inputStream = new DataInputStream(new FileInputStream(file))) {
+            return inputStream.readInt() == MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
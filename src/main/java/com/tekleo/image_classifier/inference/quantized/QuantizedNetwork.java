@@ -0,0 +1,95 @@
+package com.tekleo.image_classifier.inference.quantized;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * CPU inference on a network with int8 weights, made from a trained DL4J network by {@link NetworkQuantizer}
+ * and saved or loaded with {@link QuantizedModelFile}
+ *
+ * Convolution and dense weights are int8 with a float scale per output channel (about 4x less memory than floats),
+ * batch normalization is folded into the preceding convolution where possible, activations stay in float
+ * The forward pass runs in plain Java on the quantized weights, without ND4J
+ *
+ * The network is immutable and keeps no buffers between calls, so it is thread-safe
+ */
+public class QuantizedNetwork {
+    private final int inputChannels;
+    private final int inputHeight;
+    private final int inputWidth;
+    private final List<QuantizedLayer> layers;
+
+    QuantizedNetwork(int inputChannels, int inputHeight, int inputWidth, List<QuantizedLayer> layers) {
+        this.inputChannels = inputChannels;
+        this.inputHeight = inputHeight;
+        this.inputWidth = inputWidth;
+        this.layers = Collections.unmodifiableList(new ArrayList<>(layers));
+    }
+
+    /**
+     * @param features batch of images laid out as [batch, channels, height, width], pixels scaled the same way as in training
+     * @param batchSize number of images
+     * @return network outputs laid out as [batch, classes]
+     */
+    public float[] output(float[] features, int batchSize) {
+        if (features.length < batchSize * getInputLength())
+            throw new IllegalArgumentException("Expected " + batchSize * getInputLength() + " feature values, got " + features.length);
+
+        float[] activations = features;
+        for (QuantizedLayer layer : layers) {
+            float[] output = new float[batchSize * layer.getOutputLength()];
+            layer.forward(activations, output, batchSize);
+            activations = output;
+        }
+        return activations;
+    }
+
+    /**
+     * Same as {@link #output(float[], int)}, for callers that already work with ND4J arrays
+     * @param features batch of images shaped as [batch, channels, height, width]
+     * @return network outputs shaped as [batch, classes]
+     */
+    public INDArray output(INDArray features) {
+        int batchSize = features.size(0);
+        float[] output = output(features.dup('c').data().asFloat(), batchSize);
+        return Nd4j.create(output, new int[] {batchSize, getNumberOfClasses()}, 'c');
+    }
+
+    /**
+     * @return bytes taken by all weights, scales and biases
+     */
+    public long getParameterBytes() {
+        long bytes = 0;
+        for (QuantizedLayer layer : layers)
+            bytes += layer.getParameterBytes();
+        return bytes;
+    }
+
+    public int getNumberOfClasses() {
+        return layers.get(layers.size() - 1).getOutputLength();
+    }
+
+    public int getInputChannels() {
+        return inputChannels;
+    }
+
+    public int getInputHeight() {
+        return inputHeight;
+    }
+
+    public int getInputWidth() {
+        return inputWidth;
+    }
+
+    int getInputLength() {
+        return inputChannels * inputHeight * inputWidth;
+    }
+
+    List<QuantizedLayer> getLayers() {
+        return layers;
+    }
+}
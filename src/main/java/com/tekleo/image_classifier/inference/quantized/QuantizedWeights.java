@@ -0,0 +1,89 @@
+package com.tekleo.image_classifier.inference.quantized;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Weight matrix stored as int8 with a float scale per row (per output channel or unit)
+ *
+ * Quantization is symmetric, a row is scaled so that its largest absolute weight maps to 127,
+ * so weight = value * scale, and zero weights stay exactly zero
+ *
+ * Immutable object
+ */
+class QuantizedWeights {
+    private static final int MAX_QUANTIZED_VALUE = 127;
+
+    private final int rows;
+    private final int columns;
+    private final byte[] values;
+    private final float[] scales;
+
+    QuantizedWeights(int rows, int columns, byte[] values, float[] scales) {
+        this.rows = rows;
+        this.columns = columns;
+        this.values = values;
+        this.scales = scales;
+    }
+
+    /**
+     * @param weights row-major float weights
+     * @param rows number of rows, each one gets its own scale
+     * @param columns number of columns
+     * @return quantized weights
+     */
+    static QuantizedWeights quantize(float[] weights, int rows, int columns) {
+        byte[] values = new byte[rows * columns];
+        float[] scales = new float[rows];
+        for (int row = 0; row < rows; row++) {
+            float maxAbs = 0;
+            for (int i = row * columns; i < (row + 1) * columns; i++)
+                maxAbs = Math.max(maxAbs, Math.abs(weights[i]));
+
+            float scale = maxAbs > 0 ? maxAbs / MAX_QUANTIZED_VALUE : 1;
+            scales[row] = scale;
+            for (int i = row * columns; i < (row + 1) * columns; i++)
+                values[i] = (byte) Math.max(-MAX_QUANTIZED_VALUE, Math.min(MAX_QUANTIZED_VALUE, Math.round(weights[i] / scale)));
+        }
+        return new QuantizedWeights(rows, columns, values, scales);
+    }
+
+    int getRows() {
+        return rows;
+    }
+
+    int getColumns() {
+        return columns;
+    }
+
+    byte[] getValues() {
+        return values;
+    }
+
+    float[] getScales() {
+        return scales;
+    }
+
+    long getBytes() {
+        return values.length + 4L * scales.length;
+    }
+
+    void write(DataOutputStream outputStream) throws IOException {
+        outputStream.writeInt(rows);
+        outputStream.writeInt(columns);
+        outputStream.write(values);
+        QuantizedLayer.writeFloats(outputStream, scales);
+    }
+
+    static QuantizedWeights read(DataInputStream inputStream) throws IOException {
+        int rows = inputStream.readInt();
+        int columns = inputStream.readInt();
+        byte[] values = new byte[rows * columns];
+        inputStream.readFully(values);
+        float[] scales = QuantizedLayer.readFloats(inputStream);
+        if (scales.length != rows)
+            throw new IOException("Expected " + rows + " scales, found " + scales.length);
+        return new QuantizedWeights(rows, columns, values, scales);
+    }
+}
@@ -1,49 +1,69 @@
 package com.tekleo.image_classifier.neural_network;
 
+import com.tekleo.image_classifier.dataset.pipeline.PrefetchingDataSetIterator;
+import com.tekleo.image_classifier.inference.ImageFeatures;
+import com.tekleo.image_classifier.inference.NetworkReplicaPool;
+import com.tekleo.image_classifier.inference.engine.EngineException;
+import com.tekleo.image_classifier.inference.engine.EngineExporter;
+import com.tekleo.image_classifier.inference.engine.EngineModel;
+import com.tekleo.image_classifier.inference.engine.WeightPrecision;
+import com.tekleo.image_classifier.inference.quantized.NetworkQuantizer;
+import com.tekleo.image_classifier.inference.quantized.QuantizationException;
+import com.tekleo.image_classifier.inference.quantized.QuantizedNetwork;
+import com.tekleo.image_classifier.neural_network.checkpoint.CheckpointFormat;
+import com.tekleo.image_classifier.neural_network.checkpoint.CheckpointWriter;
+import com.tekleo.image_classifier.neural_network.checkpoint.ParameterFile;
+import com.tekleo.image_classifier.neural_network.config.LearningRateSchedule;
+import com.tekleo.image_classifier.neural_network.config.NetworkConfig;
+import com.tekleo.image_classifier.neural_network.config.TrainingConfig;
+import com.tekleo.image_classifier.neural_network.config.loader.ConfigLoader;
+import com.tekleo.image_classifier.neural_network.evaluation.BackgroundEvaluator;
+import com.tekleo.image_classifier.neural_network.evaluation.EarlyStopping;
+import com.tekleo.image_classifier.neural_network.evaluation.Evaluations;
+import com.tekleo.image_classifier.neural_network.evaluation.TrainingEvaluationListener;
+import com.tekleo.image_classifier.neural_network.helpers.BackendSettings;
+import com.tekleo.image_classifier.neural_network.helpers.NetworkFactory;
+import com.tekleo.image_classifier.neural_network.metrics.CsvMetricsLogger;
+import com.tekleo.image_classifier.neural_network.metrics.EpochMetrics;
+import com.tekleo.image_classifier.neural_network.metrics.MetricsServer;
+import com.tekleo.image_classifier.neural_network.metrics.TimedDataSetIterator;
+import com.tekleo.image_classifier.neural_network.metrics.TrainingInstrumentation;
+import com.tekleo.image_classifier.neural_network.metrics.TrainingMetricsListener;
 import org.deeplearning4j.eval.Evaluation;
-import org.deeplearning4j.nn.api.OptimizationAlgorithm;
-import org.deeplearning4j.nn.conf.*;
-import org.deeplearning4j.nn.conf.inputs.InputType;
-import org.deeplearning4j.nn.conf.layers.*;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
 import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
-import org.deeplearning4j.nn.weights.WeightInit;
+import org.deeplearning4j.parallelism.ParallelWrapper;
 import org.deeplearning4j.util.ModelSerializer;
-import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
-import org.nd4j.linalg.learning.config.Nesterovs;
-import org.nd4j.linalg.lossfunctions.LossFunctions;
 
+import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Core CNN model
  *
- * We utilize doubled convolution-downsample architecture with regular MLP attached to the end of it
+ * Architecture is given by a {@link NetworkConfig}, by default it is loaded from {@link #DEFAULT_NETWORK_CONFIG}
+ * Training options are given by a {@link TrainingConfig}
+ *
+ * In the baseline we utilize doubled convolution-downsample architecture with regular MLP attached to the end of it
  * CONV (INPUT) - DOWNSAMPLE - CONV - DOWNSAMPLE - DENSE - DENSE (OUTPUT)
  *
  * Convolutional filter is 3 x 3 with shift (stride) of 1
  * Downsampling is a 2 x 2 kernel with shift (stride) of 2
  *
- * TODO possibly add more layers
- * TODO implement some cross-validation training
- * TODO print out some sort of training set score for each epoch
- * TODO move neural net config into a separate file
- *
  * With current setting we achieve the following scores:
  *  Accuracy:        0.7005
  *  Precision:       0.7076
  *  Recall:          0.7005
  *  F1 Score:        0.7021
  *
- * Due to CUDA support in DL4J we can utilize GPU training:
- * GPU load in training varies from 65% to 95%
- * While CPU load alternates between 30% and 50%
- * Current model consumes about 1.4 GB of GPU memory
- *
- * This is achieved on i7, gtx1050 (4 GB) and 16 GB ram
- *
- * 99.48/69.15
+ * See also {@link com.tekleo.image_classifier.neural_network.crossvalidation.CrossValidation} and
+ * {@link com.tekleo.image_classifier.neural_network.distributed.DistributedTraining}
  *
  * @author Leo Ertuna
  * @since 01.04.2018 02:29
@@ -54,131 +74,408 @@ public class CifarModel {
     private static final int IMAGE_CHANNELS = 3;
     private static final int IMAGE_CLASSES = 10;
 
-    private static final int NETWORK_SEED = 666;
-    private static final String NETWORK_FILEPATH = "CIFAR-10 Network.zip";
-
-    private static final int CONVOLUTION_FILTER_SIZE = 3;
-    private static final int CONVOLUTION_FILTER_SHIFT = 1;
-    private static final int CONVOLUTION_POOL_SIZE = 2;
-    private static final int CONVOLUTION_POOL_SHIFT = 2;
+    public static final String DEFAULT_NETWORK_CONFIG = "network/baseline.json";
+    private static final String NETWORK_CONFIG_RESOURCE_DIRECTORY = "network/";
+    private static final String NETWORK_CONFIG_EXTENSION = ".json";
+    public static final String NETWORK_FILEPATH = "CIFAR-10 Network.zip";
+    public static final String PARAMETERS_FILEPATH = "CIFAR-10 Network.params";
+    public static final String QUANTIZED_FILEPATH = "CIFAR-10 Network.q8";
+    public static final String ENGINE_FILEPATH = "CIFAR-10 Network.engine";
 
-    private static final int LEARNING_NUMBER_OF_ITERATIONS = 1;
-    private static final int LEARNING_NUMBER_OF_EPOCHS = 20;
+    private static final int PARALLEL_PREFETCH_BUFFER_PER_WORKER = 2;
 
     private DataSetIterator trainSet;
     private DataSetIterator testSet;
+    private DataSetIterator validationSet;
+    private DataSetIterator backgroundEvaluationSet;
+    private TrainingConfig trainingConfig;
+    private NetworkConfig networkConfig;
     private MultiLayerConfiguration configuration;
     private MultiLayerNetwork network;
+    private NetworkReplicaPool predictionPool;
+    private TrainingEvaluationListener trainingEvaluationListener;
+    private CheckpointWriter checkpointWriter;
+    private BackgroundEvaluator backgroundEvaluator;
+    private EarlyStopping earlyStopping;
+    private List<String> labels;
+    private long trainingMillis;
+    private final List<TrainingMetricsListener> metricsListeners = new ArrayList<>();
+    private TrainingInstrumentation trainingInstrumentation;
 
     public CifarModel(DataSetIterator trainSet, DataSetIterator testSet) {
+        this(trainSet, testSet, new TrainingConfig());
+    }
+
+    public CifarModel(DataSetIterator trainSet, DataSetIterator testSet, TrainingConfig trainingConfig) {
+        this(trainSet, testSet, trainingConfig, ConfigLoader.load(DEFAULT_NETWORK_CONFIG, NetworkConfig.class));
+    }
+
+    /**
+     * @param trainSet train set iterator, its batch size should match {@link NetworkConfig#getBatchSize()}
+     * @param testSet test set iterator
+     * @param trainingConfig training options
+     * @param networkConfig architecture of the network
+     */
+    public CifarModel(DataSetIterator trainSet, DataSetIterator testSet, TrainingConfig trainingConfig, NetworkConfig networkConfig) {
         this.trainSet = trainSet;
         this.testSet = testSet;
+        this.trainingConfig = trainingConfig;
+        this.networkConfig = networkConfig;
+        BackendSettings.setThreads(trainingConfig.getOmpThreads(), trainingConfig.getBlasThreads());
+        BackendSettings.setDataType(trainingConfig.getDataType());
         this.initConfig();
         this.initNetwork();
     }
 
-    private static Layer convLayer(int nIn, int nOut) {
-        return new ConvolutionLayer.Builder()
-                .kernelSize(CONVOLUTION_FILTER_SIZE, CONVOLUTION_FILTER_SIZE)
-                .stride(CONVOLUTION_FILTER_SHIFT, CONVOLUTION_FILTER_SHIFT)
-                .nIn(nIn)
-                .nOut(nOut)
-                .activation(Activation.IDENTITY)
-                .build();
+    private void initConfig() {
+        configuration = NetworkFactory.build(networkConfig, IMAGE_HEIGHT, IMAGE_WIDTH, IMAGE_CHANNELS, IMAGE_CLASSES, initLearningRateSchedule());
+        if (trainingConfig.getTrainingWorkspaceMode() != null)
+            configuration.setTrainingWorkspaceMode(trainingConfig.getTrainingWorkspaceMode());
+        if (trainingConfig.getInferenceWorkspaceMode() != null)
+            configuration.setInferenceWorkspaceMode(trainingConfig.getInferenceWorkspaceMode());
     }
 
-    private static Layer convLayer(int nOut) {
-        return new ConvolutionLayer.Builder()
-                .kernelSize(CONVOLUTION_FILTER_SIZE, CONVOLUTION_FILTER_SIZE)
-                .stride(CONVOLUTION_FILTER_SHIFT, CONVOLUTION_FILTER_SHIFT)
-                .nOut(nOut)
-                .activation(Activation.IDENTITY)
-                .build();
+    /**
+     * Schedule is given per iteration, the number of iterations of an epoch is taken from the size of the train set
+     * With parallel training every worker replica counts only the iterations of the batches it was given, about 1/workers of an epoch,
+     * and the wrapper never syncs the counts, so an epoch is that many iterations of a replica
+     */
+    private Map<Integer, Double> initLearningRateSchedule() {
+        LearningRateSchedule schedule = trainingConfig.getLearningRateSchedule();
+        if (schedule == null)
+            return null;
+        int batchSize = trainSet.batch() > 0 ? trainSet.batch() : networkConfig.getBatchSize();
+        int iterationsPerEpoch = Math.max(1, (trainSet.totalExamples() + batchSize - 1) / batchSize);
+        if (trainingConfig.isParallelTrainingEnabled())
+            iterationsPerEpoch = Math.max(1, (iterationsPerEpoch + trainingConfig.getParallelWorkers() - 1) / trainingConfig.getParallelWorkers());
+        return schedule.toIterationSchedule(networkConfig.getUpdater().getLearningRate(), iterationsPerEpoch, trainingConfig.getNumberOfEpochs());
     }
 
-    private static Layer downsamplingLayer() {
-        return new SubsamplingLayer.Builder()
-                .poolingType(SubsamplingLayer.PoolingType.MAX)
-                .kernelSize(CONVOLUTION_POOL_SIZE, CONVOLUTION_POOL_SIZE)
-                .stride(CONVOLUTION_POOL_SHIFT, CONVOLUTION_POOL_SHIFT)
-                .build();
+    private void initNetwork() {
+        network = new MultiLayerNetwork(configuration);
+        network.init();
     }
 
-    private void initConfig() {
-        configuration = new NeuralNetConfiguration.Builder()
-                .seed(NETWORK_SEED)
-                .iterations(LEARNING_NUMBER_OF_ITERATIONS)
-
-                .regularization(true).l2(1e-4)
-
-                .learningRate(1e-2).learningRateDecayPolicy(LearningRatePolicy.Score).lrPolicyDecayRate(1e-3)
-
-                .weightInit(WeightInit.XAVIER)
-                .optimizationAlgo(OptimizationAlgorithm.STOCHASTIC_GRADIENT_DESCENT)
-                .updater(new Nesterovs(0.9))
-
-                .list()
-
-
-                // After layer 0 we have: 32 x 32 x 10
-                .layer(0, convLayer(IMAGE_CHANNELS, 64))
-
-                // After layer 1 we have: 16 x 16 x 10
-                .layer(1, downsamplingLayer())
-
-                // After layer 2 we have: 16 x 16 x 20
-                .layer(2, convLayer(128))
-
-                // After layer 3 we have 8 x 8 x 20
-                .layer(3, downsamplingLayer())
-
-                // MLP
-                .layer(4, new DenseLayer.Builder()
-                        .activation(Activation.RELU)
-                        .nOut(4800)
-                        .build())
-                .layer(5, new DenseLayer.Builder()
-                        .activation(Activation.RELU)
-                        .nOut(1200)
-                        .build())
-                .layer(6, new OutputLayer.Builder()
-                        .lossFunction(LossFunctions.LossFunction.NEGATIVELOGLIKELIHOOD)
-                        .nOut(IMAGE_CLASSES)
-                        .activation(Activation.SOFTMAX)
-                        .build())
-                .setInputType(InputType.convolutional(IMAGE_HEIGHT, IMAGE_WIDTH, IMAGE_CHANNELS))
-                .backprop(true)
-                .pretrain(false)
-                .build();
+    /**
+     * Train for the configured number of epochs, the active backend and its settings are printed first
+     * Training set accuracy is collected from the forward passes of training itself and printed after each epoch,
+     * every batch is split into data wait, forward, backward and update time (see {@link #addMetricsListener(TrainingMetricsListener)})
+     * @throws IllegalArgumentException if early stopping is enabled without a validation set, it never watches the test set,
+     *                                  or background evaluation is enabled without an iterator of its own
+     */
+    public void train() throws IOException {
+        if (trainingConfig.isEarlyStoppingEnabled() && validationSet == null)
+            throw new IllegalArgumentException("Early stopping needs a validation set, see setValidationSet(DataSetIterator)");
+        if (trainingConfig.isBackgroundEvaluationEnabled() && (backgroundEvaluationSet == null || backgroundEvaluationSet == testSet || backgroundEvaluationSet == trainSet))
+            throw new IllegalArgumentException("Background evaluation needs an iterator that isn't used by training or testing, see setBackgroundEvaluationSet(DataSetIterator)");
+        System.out.println(BackendSettings.report());
+        labels = Evaluations.labels(trainSet, IMAGE_CLASSES);
+        trainingEvaluationListener = new TrainingEvaluationListener(labels, trainingConfig.getEvaluationTopN(), trainingConfig.getEvaluationSampleFrequency());
+        trainingInstrumentation = new TrainingInstrumentation();
+        metricsListeners.forEach(trainingInstrumentation::addListener);
+        CsvMetricsLogger csvMetricsLogger = trainingConfig.isMetricsLogEnabled() ? new CsvMetricsLogger(new File(trainingConfig.getMetricsDirectory())) : null;
+        MetricsServer metricsServer = trainingConfig.isMetricsServerEnabled() ? new MetricsServer(trainingConfig.getMetricsPort()) : null;
+        if (csvMetricsLogger != null)
+            trainingInstrumentation.addListener(csvMetricsLogger);
+        if (metricsServer != null)
+            trainingInstrumentation.addListener(metricsServer);
+        checkpointWriter = trainingConfig.isCheckpointEnabled() ? new CheckpointWriter(new File(trainingConfig.getCheckpointDirectory()), trainingConfig.getCheckpointFormat()) : null;
+        backgroundEvaluator = trainingConfig.isBackgroundEvaluationEnabled() ? new BackgroundEvaluator(backgroundEvaluationSet, labels, trainingConfig.getEvaluationTopN()) : null;
+        earlyStopping = trainingConfig.isEarlyStoppingEnabled() ? new EarlyStopping(trainingConfig.getEarlyStoppingPatience(), trainingConfig.getEarlyStoppingMinDelta()) : null;
+        trainingMillis = 0;
+
+        TimedDataSetIterator timedTrainSet = trainingInstrumentation.wrap(trainSet);
+        try {
+            if (trainingConfig.isParallelTrainingEnabled())
+                trainParallel(timedTrainSet);
+            else
+                trainSingle(timedTrainSet);
+            if (earlyStopping != null)
+                finishEarlyStopping();
+        } finally {
+            timedTrainSet.shutdown();
+            if (checkpointWriter != null)
+                checkpointWriter.close();
+            if (backgroundEvaluator != null)
+                backgroundEvaluator.close();
+            if (csvMetricsLogger != null)
+                csvMetricsLogger.close();
+            if (metricsServer != null)
+                metricsServer.close();
+            checkpointWriter = null;
+            backgroundEvaluator = null;
+            earlyStopping = null;
+        }
     }
 
-    private void initNetwork() {
-        network = new MultiLayerNetwork(configuration);
-        network.init();
+    private void trainSingle(DataSetIterator timedTrainSet) {
+        network.addListeners(trainingInstrumentation, trainingEvaluationListener);
+        try {
+            for (int i = 0; i < trainingConfig.getNumberOfEpochs(); i++) {
+                beforeEpoch(i);
+                network.fit(timedTrainSet);
+                if (!afterEpoch(i, ""))
+                    break;
+            }
+        } finally {
+            network.getListeners().remove(trainingInstrumentation);
+            network.getListeners().remove(trainingEvaluationListener);
+        }
     }
 
-    public void train() {
-        for (int i = 0; i < LEARNING_NUMBER_OF_EPOCHS; i++) {
-            network.fit(trainSet);
-            System.out.println("Completed epoch " + i);
+    /**
+     * Data-parallel training, the wrapper keeps a replica of the network per worker, feeds each one its own batches,
+     * and averages parameters (and updater state) of all replicas back into {@link #network}
+     * @throws IllegalArgumentException if the train set reuses the buffers of batches the wrapper still holds
+     */
+    private void trainParallel(DataSetIterator timedTrainSet) {
+        int requiredRetainedBatches = parallelRetainedBatches(trainingConfig.getParallelWorkers());
+        if (trainSet instanceof PrefetchingDataSetIterator && ((PrefetchingDataSetIterator) trainSet).getRetainedBatches() < requiredRetainedBatches)
+            throw new IllegalArgumentException("Parallel training on " + trainingConfig.getParallelWorkers() + " workers needs a train set that retains at least " + requiredRetainedBatches
+                    + " batches, it retains " + ((PrefetchingDataSetIterator) trainSet).getRetainedBatches() + ", see CifarDatasetConfig.withRetainedBatches(int)");
+
+        ParallelWrapper.Builder<MultiLayerNetwork> builder = new ParallelWrapper.Builder<>(network);
+        if (trainingConfig.getTrainingWorkspaceMode() != null)
+            builder.workspaceMode(trainingConfig.getTrainingWorkspaceMode());
+        ParallelWrapper parallelWrapper = builder
+                .workers(trainingConfig.getParallelWorkers())
+                .averagingFrequency(trainingConfig.getAveragingFrequency())
+                .prefetchBuffer(trainingConfig.getParallelWorkers() * PARALLEL_PREFETCH_BUFFER_PER_WORKER)
+                .averageUpdaters(true)
+                .reportScoreAfterAveraging(false)
+                .build();
+        parallelWrapper.setListeners(trainingInstrumentation, trainingEvaluationListener);
+
+        try {
+            for (int i = 0; i < trainingConfig.getNumberOfEpochs(); i++) {
+                beforeEpoch(i);
+                parallelWrapper.fit(timedTrainSet);
+                if (!afterEpoch(i, " on " + trainingConfig.getParallelWorkers() + " workers"))
+                    break;
+            }
+        } finally {
+            parallelWrapper.shutdown();
         }
     }
 
+    private void beforeEpoch(int epoch) {
+        trainingEvaluationListener.reset();
+        trainingInstrumentation.startEpoch(epoch);
+    }
+
+    /**
+     * Everything done between epochs, snapshots for checkpoints and evaluation are taken here, the work itself runs in background,
+     * only the validation pass of early stopping runs on the training thread, because it decides whether there is a next epoch
+     * @return true if training should go on
+     */
+    private boolean afterEpoch(int epoch, String details) {
+        EpochMetrics epochMetrics = trainingInstrumentation.finishEpoch();
+        trainingMillis += (long) epochMetrics.getDurationMillis();
+        Evaluation evaluation = trainingEvaluationListener.getEvaluation();
+        System.out.println(String.format("Completed epoch %d in %.0f ms%s, train accuracy %.4f, top-%d %.4f (%d examples)",
+                epoch, epochMetrics.getDurationMillis(), details, evaluation.accuracy(), evaluation.getTopN(), evaluation.topNAccuracy(), evaluation.getNumRowCounter()));
+        System.out.println("  " + epochMetrics);
+
+        if (checkpointWriter != null && (epoch + 1) % trainingConfig.getCheckpointFrequency() == 0)
+            checkpointWriter.submit(network, epoch);
+        if (backgroundEvaluator != null)
+            backgroundEvaluator.submit(network, epoch);
+
+        if (earlyStopping == null)
+            return true;
+        long start = System.currentTimeMillis();
+        double accuracy = Evaluations.evaluate(network, validationSet, labels, trainingConfig.getEvaluationTopN(), Integer.MAX_VALUE).accuracy();
+        boolean stop = earlyStopping.update(network, epoch, accuracy);
+        System.out.println(String.format("  validation accuracy %.4f in %d ms, best %.4f after epoch %d, %d epoch(s) without improvement",
+                accuracy, System.currentTimeMillis() - start, earlyStopping.getBestAccuracy(), earlyStopping.getBestEpoch(), earlyStopping.getEpochsWithoutImprovement()));
+        return !stop;
+    }
+
+    /**
+     * Put the best epoch back into the network, save it as the "best" checkpoint and report how much of the planned training was skipped
+     */
+    private void finishEarlyStopping() {
+        earlyStopping.restoreBest(network);
+        if (checkpointWriter != null)
+            checkpointWriter.submit(network, "best");
+
+        int completedEpochs = earlyStopping.getCompletedEpochs();
+        int skippedEpochs = trainingConfig.getNumberOfEpochs() - completedEpochs;
+        double epochSeconds = completedEpochs > 0 ? trainingMillis / 1e3 / completedEpochs : 0;
+        System.out.println(String.format("Kept epoch %d (validation accuracy %.4f), trained %d of %d epochs in %.0f s, saved %d epoch(s), about %.0f s",
+                earlyStopping.getBestEpoch(), earlyStopping.getBestAccuracy(), completedEpochs, trainingConfig.getNumberOfEpochs(), trainingMillis / 1e3, skippedEpochs, skippedEpochs * epochSeconds));
+    }
+
+    /**
+     * Single pass over the test set, training set results are taken from the last training epoch if the model was trained in this run,
+     * otherwise only a subsample of the training set is evaluated (see {@link TrainingConfig#withEvaluation(int, int, int)})
+     */
     public void test() {
-        Evaluation evaluationOnTrain = network.evaluate(trainSet);
-        System.out.println(evaluationOnTrain.stats());
+        List<String> labels = Evaluations.labels(testSet, IMAGE_CLASSES);
+        int topN = trainingConfig.getEvaluationTopN();
 
-        Evaluation evaluationOnTest = network.evaluate(testSet);
-        System.out.println(evaluationOnTest.stats());
+        if (trainingEvaluationListener != null && trainingEvaluationListener.getEvaluation().getNumRowCounter() > 0) {
+            System.out.println(Evaluations.summary("Train set, sampled during the last epoch", trainingEvaluationListener.getEvaluation(), 0));
+        } else {
+            long start = System.currentTimeMillis();
+            Evaluation evaluationOnTrain = Evaluations.evaluate(network, trainSet, labels, topN, trainingConfig.getTrainEvaluationBatches());
+            System.out.println(Evaluations.summary("Train set, first " + trainingConfig.getTrainEvaluationBatches() + " batches", evaluationOnTrain, System.currentTimeMillis() - start));
+        }
+
+        long start = System.currentTimeMillis();
+        Evaluation evaluationOnTest = Evaluations.evaluate(network, testSet, labels, topN, Integer.MAX_VALUE);
+        System.out.println(Evaluations.summary("Test set", evaluationOnTest, System.currentTimeMillis() - start));
     }
 
     public void save() throws IOException {
-        File locationToSave = new File(NETWORK_FILEPATH);
-        ModelSerializer.writeModel(network, locationToSave, true);
+        save(CheckpointFormat.ZIP);
+    }
+
+    /**
+     * @param format {@link CheckpointFormat#ZIP} is saved with updater state to {@link #NETWORK_FILEPATH},
+     *               {@link CheckpointFormat#RAW} is saved without it to {@link #PARAMETERS_FILEPATH}
+     * @throws IOException if writing fails
+     */
+    public void save(CheckpointFormat format) throws IOException {
+        if (format == CheckpointFormat.RAW) {
+            ParameterFile.write(new File(PARAMETERS_FILEPATH), network);
+        } else {
+            File locationToSave = new File(NETWORK_FILEPATH);
+            ModelSerializer.writeModel(network, locationToSave, true);
+        }
     }
 
     public void load() throws IOException {
-        File locationToSave = new File(NETWORK_FILEPATH);
-        network = ModelSerializer.restoreMultiLayerNetwork(locationToSave);
+        load(CheckpointFormat.ZIP);
+    }
+
+    public void load(CheckpointFormat format) throws IOException {
+        network = restore(new File(format == CheckpointFormat.RAW ? PARAMETERS_FILEPATH : NETWORK_FILEPATH));
+    }
+
+    /**
+     * Restore a network saved in any {@link CheckpointFormat}, the format is detected from file contents
+     * @param file saved network or checkpoint
+     * @return restored network
+     * @throws IOException if the file can't be read
+     */
+    public static MultiLayerNetwork restore(File file) throws IOException {
+        if (ParameterFile.isParameterFile(file))
+            return ParameterFile.read(file);
+        return ModelSerializer.restoreMultiLayerNetwork(file);
+    }
+
+    /**
+     * Int8 copy of the current network for CPU serving, see {@link QuantizedNetwork}, it can be saved to {@link #QUANTIZED_FILEPATH}
+     * @return quantized network
+     * @throws QuantizationException if the architecture has layers the quantized network doesn't support
+     */
+    public QuantizedNetwork quantize() throws QuantizationException {
+        return NetworkQuantizer.quantize(network, IMAGE_CHANNELS, IMAGE_HEIGHT, IMAGE_WIDTH);
+    }
+
+    /**
+     * Float copy of the current network for the pure-Java engine, see {@link EngineModel}, it can be saved to {@link #ENGINE_FILEPATH}
+     * @return exported model, labeled with the test set labels
+     * @throws EngineException if the architecture has layers the engine doesn't support
+     */
+    public EngineModel export() throws EngineException {
+        return EngineExporter.export(network, IMAGE_CHANNELS, IMAGE_HEIGHT, IMAGE_WIDTH, Evaluations.labels(testSet, IMAGE_CLASSES));
+    }
+
+    /**
+     * Same as {@link #export()} with convolution and dense weights stored in the given precision
+     * @param weightPrecision {@link WeightPrecision#HALF} halves the weight memory, the engine still accumulates in float
+     * @return exported model
+     * @throws EngineException if the architecture has layers the engine doesn't support
+     */
+    public EngineModel export(WeightPrecision weightPrecision) throws EngineException {
+        return export().withWeightPrecision(weightPrecision);
+    }
+
+    /**
+     * Load an architecture by JSON file path, or by name of one of the configs shipped in resources (like baseline or gap-small)
+     * Compact configs (gap-small, gap-wide) use batch normalized convolution blocks with global average pooling instead of the MLP,
+     * they have 1-4% of the parameters of the baseline, see {@link com.tekleo.image_classifier.benchmark.ArchitectureComparison}
+     * @param fileOrName path to a JSON file, or name of a bundled config
+     * @return network config
+     */
+    public static NetworkConfig loadNetworkConfig(String fileOrName) {
+        File file = new File(fileOrName);
+        if (file.isFile())
+            return ConfigLoader.load(file, NetworkConfig.class);
+        return ConfigLoader.load(NETWORK_CONFIG_RESOURCE_DIRECTORY + fileOrName + NETWORK_CONFIG_EXTENSION, NetworkConfig.class);
+    }
+
+    /**
+     * Thread-safe prediction, can be called from many threads at once
+     * It runs on a pool of network replicas that share parameters of the trained network, so predicting while training is not supported
+     * @param features batch of images shaped as [batch, channels, height, width] with pixels scaled into 0..1 range
+     * @return class probabilities for each image of the batch
+     */
+    public INDArray predict(INDArray features) {
+        return getPredictionPool().output(features);
+    }
+
+    /**
+     * Thread-safe prediction of a single image, it is resized to network input size if needed
+     * @param image image to classify
+     * @return class probabilities shaped as a batch of 1
+     */
+    public INDArray predict(BufferedImage image) {
+        return predict(ImageFeatures.fromBufferedImage(image, IMAGE_HEIGHT, IMAGE_WIDTH, IMAGE_CHANNELS));
+    }
+
+    // Replicas are bound to parameters of the current network, so a new pool is built after load() swaps it
+    private synchronized NetworkReplicaPool getPredictionPool() {
+        if (predictionPool == null || predictionPool.getNetwork() != network)
+            predictionPool = new NetworkReplicaPool(network, Runtime.getRuntime().availableProcessors());
+        return predictionPool;
+    }
+
+    /**
+     * Register a receiver of per batch and per epoch training metrics, takes effect from the next {@link #train()} call
+     * @param listener metrics listener
+     */
+    public void addMetricsListener(TrainingMetricsListener listener) {
+        metricsListeners.add(listener);
+    }
+
+    /**
+     * Held-out set watched by early stopping, it is required when early stopping is enabled, so the test set stays an unbiased estimate
+     * @param validationSet validation set iterator, for example {@link com.tekleo.image_classifier.dataset.CifarDataset#getValidationDataSetIterator()}
+     */
+    public void setValidationSet(DataSetIterator validationSet) {
+        this.validationSet = validationSet;
+    }
+
+    /**
+     * Test set iterator read by the background evaluator thread, required when background evaluation is enabled
+     * It must be a separate iterator over the test split, the evaluator resets and reads it while training goes on and while {@link #test()} reads the test set
+     * @param backgroundEvaluationSet iterator that no one else uses, for example {@link com.tekleo.image_classifier.dataset.CifarDataset#createTestDataSetIterator(int)}
+     */
+    public void setBackgroundEvaluationSet(DataSetIterator backgroundEvaluationSet) {
+        this.backgroundEvaluationSet = backgroundEvaluationSet;
+    }
+
+    /**
+     * Batches in flight during parallel training, the prefetch buffer of the wrapper, one batch in every worker and one taken by the prefetch thread
+     * @param parallelWorkers number of workers
+     * @return smallest number of batches a {@link PrefetchingDataSetIterator} train set has to retain
+     */
+    public static int parallelRetainedBatches(int parallelWorkers) {
+        return parallelWorkers * (PARALLEL_PREFETCH_BUFFER_PER_WORKER + 1) + 1;
+    }
+
+    public MultiLayerNetwork getNetwork() {
+        return network;
+    }
+
+    public TrainingConfig getTrainingConfig() {
+        return trainingConfig;
+    }
+
+    public NetworkConfig getNetworkConfig() {
+        return networkConfig;
     }
 }
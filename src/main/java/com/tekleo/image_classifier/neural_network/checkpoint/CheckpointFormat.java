@@ -0,0 +1,26 @@
+package com.tekleo.image_classifier.neural_network.checkpoint;
+
+/**
+ * Formats of saved networks
+ */
+public enum CheckpointFormat {
+    /**
+     * Regular DL4J zip written by ModelSerializer, portable and compressed, but slow to write and to read back
+     */
+    ZIP(".zip"),
+
+    /**
+     * Uncompressed {@link ParameterFile}, configuration and raw float parameters, which are memory-mapped on load
+     */
+    RAW(".params");
+
+    private final String extension;
+
+    CheckpointFormat(String extension) {
+        this.extension = extension;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+}
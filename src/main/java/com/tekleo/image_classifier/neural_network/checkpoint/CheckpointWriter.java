@@ -0,0 +1,111 @@
+package com.tekleo.image_classifier.neural_network.checkpoint;
+
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.util.ModelSerializer;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes checkpoints of a training network on a background thread
+ *
+ * The training thread only copies the parameter array (one device-side copy, no serialization), everything else,
+ * including compression for ZIP checkpoints, happens on the writer thread while training goes on
+ * At most one snapshot waits for the writer, if training outruns the disk the older waiting snapshot is dropped in favor of the newer one
+ *
+ * Checkpoints are named "epoch-NNN" plus format extension, so the newest one is also the last one in name order
+ */
+public class CheckpointWriter implements AutoCloseable {
+    private static final String THREAD_NAME = "cifar-checkpoint";
+
+    private final File directory;
+    private final CheckpointFormat format;
+    private final ThreadPoolExecutor executor;
+    private volatile File lastCheckpoint;
+
+    public CheckpointWriter(File directory, CheckpointFormat format) {
+        this.directory = directory;
+        this.format = format;
+        this.executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(1), runnable -> {
+            Thread thread = new Thread(runnable, THREAD_NAME);
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.DiscardOldestPolicy());
+    }
+
+    /**
+     * Snapshot parameters of the network and queue the snapshot for writing, returns right after the snapshot is taken
+     * Must be called from the thread that trains the network, between iterations
+     * @param network network to save
+     * @param epoch index of the completed epoch
+     */
+    public void submit(MultiLayerNetwork network, int epoch) {
+        submit(network, String.format("epoch-%03d", epoch));
+    }
+
+    /**
+     * Same as {@link #submit(MultiLayerNetwork, int)} with a free name, like "best"
+     * @param network network to save
+     * @param name file name without format extension
+     */
+    public void submit(MultiLayerNetwork network, String name) {
+        MultiLayerConfiguration configuration = network.getLayerWiseConfigurations().clone();
+        INDArray parameters = network.params().dup();
+        File file = new File(directory, name + format.getExtension());
+        executor.execute(() -> write(file, configuration, parameters));
+    }
+
+    /**
+     * @return last successfully written checkpoint, or null if there is none yet
+     */
+    public File getLastCheckpoint() {
+        return lastCheckpoint;
+    }
+
+    /**
+     * Wait for the queued checkpoint to be written and stop the writer thread
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+
+    // Writer thread
+    //------------------------------------------------------------------------------------------------------------------
+    private void write(File file, MultiLayerConfiguration configuration, INDArray parameters) {
+        long start = System.currentTimeMillis();
+        try {
+            Files.createDirectories(directory.toPath());
+            if (format == CheckpointFormat.RAW) {
+                ParameterFile.write(file, configuration, parameters);
+            } else {
+                // A throwaway network over the snapshot, updater state is not needed for a checkpoint
+                MultiLayerNetwork snapshot = new MultiLayerNetwork(configuration);
+                snapshot.init(parameters, false);
+                File temporaryFile = new File(file.getPath() + ".tmp");
+                ModelSerializer.writeModel(snapshot, temporaryFile, false);
+                Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+
+            lastCheckpoint = file;
+            System.out.println("Saved checkpoint " + file.getPath() + " in " + (System.currentTimeMillis() - start) + " ms");
+        } catch (IOException e) {
+            System.err.println("Failed to save checkpoint " + file.getPath() + ": " + e);
+        }
+    }
+    //------------------------------------------------------------------------------------------------------------------
+}
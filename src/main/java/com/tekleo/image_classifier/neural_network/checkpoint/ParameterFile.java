@@ -0,0 +1,171 @@
+package com.tekleo.image_classifier.neural_network.checkpoint;
+
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Uncompressed network file, a fast alternative to ModelSerializer zips for checkpoints and inference startup
+ *
+ * File layout:
+ *  HEADER: magic, version (big-endian ints), number of parameters (big-endian long), configuration length (big-endian int)
+ *  CONFIGURATION: MultiLayerConfiguration as UTF-8 JSON
+ *  PARAMETERS: flattened network parameters as little-endian floats, starting at a 64 byte aligned offset
+ *
+ * On load the parameter section is memory-mapped copy-on-write and handed to ND4J as is (the CPU backend wraps the mapping without a copy),
+ * so there is no decompression or parsing, pages come straight from the OS page cache, and training the loaded network never writes back to the file
+ * Updater state is not stored, a network loaded from this file starts with a fresh updater
+ */
+public class ParameterFile {
+    static final int MAGIC = 0x43465031;
+    static final int VERSION = 1;
+    static final int HEADER_LENGTH = 20;
+    static final int PARAMETERS_ALIGNMENT = 64;
+
+    private static final int WRITE_CHUNK_FLOATS = 1 << 18;
+
+    /**
+     * Write network parameters, the file is written under a temporary name and moved into place, so readers never see half of it
+     * @param file target file
+     * @param configuration network configuration
+     * @param parameters flattened parameters, as given by {@link MultiLayerNetwork#params()}
+     * @throws IOException if writing fails
+     */
+    public static void write(File file, MultiLayerConfiguration configuration, INDArray parameters) throws IOException {
+        byte[] configurationBytes = configuration.toJson().getBytes(StandardCharsets.UTF_8);
+        long parametersOffset = parametersOffset(configurationBytes.length);
+        float[] values = parameters.data().asFloat();
+
+        File temporaryFile = new File(file.getPath() + ".tmp");
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(temporaryFile, "rw")) {
+            randomAccessFile.setLength(0);
+            FileChannel fileChannel = randomAccessFile.getChannel();
+
+            ByteBuffer header = ByteBuffer.allocate((int) parametersOffset);
+            header.putInt(MAGIC);
+            header.putInt(VERSION);
+            header.putLong(values.length);
+            header.putInt(configurationBytes.length);
+            header.put(configurationBytes);
+            header.rewind();
+            writeFully(fileChannel, header);
+
+            ByteBuffer chunk = ByteBuffer.allocateDirect(WRITE_CHUNK_FLOATS * 4).order(ByteOrder.LITTLE_ENDIAN);
+            FloatBuffer chunkFloats = chunk.asFloatBuffer();
+            for (int offset = 0; offset < values.length; offset += WRITE_CHUNK_FLOATS) {
+                int length = Math.min(WRITE_CHUNK_FLOATS, values.length - offset);
+                chunkFloats.clear();
+                chunkFloats.put(values, offset, length);
+                chunk.clear();
+                chunk.limit(length * 4);
+                writeFully(fileChannel, chunk);
+            }
+
+            fileChannel.force(false);
+        }
+
+        Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static void write(File file, MultiLayerNetwork network) throws IOException {
+        write(file, network.getLayerWiseConfigurations(), network.params());
+    }
+
+    /**
+     * Restore a network, parameters are mapped rather than read
+     * @param file parameter file
+     * @return initialized network
+     * @throws IOException if the file is missing, truncated or is not a parameter file
+     */
+    public static MultiLayerNetwork read(File file) throws IOException {
+        // Copy-on-write mapping needs a writable channel, although nothing is ever written to the file through it
+        boolean copyOnWrite = file.canWrite();
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, copyOnWrite ? "rw" : "r")) {
+            FileChannel fileChannel = randomAccessFile.getChannel();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+            readFully(fileChannel, header, 0, file);
+            if (header.getInt() != MAGIC)
+                throw new IOException(file.getPath() + " is not a parameter file");
+            if (header.getInt() != VERSION)
+                throw new IOException(file.getPath() + " has unsupported version");
+            long numberOfParameters = header.getLong();
+            int configurationLength = header.getInt();
+
+            long parametersOffset = parametersOffset(configurationLength);
+            long parametersLength = numberOfParameters * 4;
+            if (fileChannel.size() != parametersOffset + parametersLength)
+                throw new IOException(file.getPath() + " has wrong size");
+            if (parametersLength > Integer.MAX_VALUE)
+                throw new IOException(file.getPath() + " has too many parameters to be mapped");
+
+            ByteBuffer configurationBytes = ByteBuffer.allocate(configurationLength);
+            readFully(fileChannel, configurationBytes, HEADER_LENGTH, file);
+            MultiLayerConfiguration configuration = MultiLayerConfiguration.fromJson(new String(configurationBytes.array(), StandardCharsets.UTF_8));
+
+            // Private mapping is copy-on-write, the network may train on these parameters without touching the file
+            // A read-only file can only be mapped read-only, so its parameters are copied out of the mapping once
+            MappedByteBuffer mappedParameters = fileChannel.map(copyOnWrite ? FileChannel.MapMode.PRIVATE : FileChannel.MapMode.READ_ONLY, parametersOffset, parametersLength);
+            mappedParameters.order(ByteOrder.LITTLE_ENDIAN);
+            DataBuffer dataBuffer = Nd4j.createBuffer(mappedParameters, DataBuffer.Type.FLOAT, (int) numberOfParameters);
+            INDArray parameters = Nd4j.create(dataBuffer, new int[] {1, (int) numberOfParameters});
+            if (!copyOnWrite)
+                parameters = parameters.dup();
+
+            MultiLayerNetwork network = new MultiLayerNetwork(configuration);
+            network.init(parameters, false);
+            return network;
+        }
+    }
+
+    /**
+     * @param file any file
+     * @return true if the file starts with the parameter file magic
+     */
+    public static boolean isParameterFile(File file) {
+        if (!file.isFile() || file.length() < HEADER_LENGTH)
+            return false;
+
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+            return randomAccessFile.readInt() == MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+
+
+    // Static helpers
+    //------------------------------------------------------------------------------------------------------------------
+    private static long parametersOffset(int configurationLength) {
+        long end = HEADER_LENGTH + configurationLength;
+        return (end + PARAMETERS_ALIGNMENT - 1) / PARAMETERS_ALIGNMENT * PARAMETERS_ALIGNMENT;
+    }
+
+    private static void writeFully(FileChannel fileChannel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining())
+            fileChannel.write(buffer);
+    }
+
+    private static void readFully(FileChannel fileChannel, ByteBuffer buffer, long position, File file) throws IOException {
+        while (buffer.hasRemaining())
+            if (fileChannel.read(buffer, position + buffer.position()) < 0)
+                throw new IOException(file.getPath() + " is truncated");
+        buffer.flip();
+    }
+    //------------------------------------------------------------------------------------------------------------------
+}
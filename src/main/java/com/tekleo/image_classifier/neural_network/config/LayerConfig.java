@@ -0,0 +1,106 @@
+package com.tekleo.image_classifier.neural_network.config;
+
+import org.deeplearning4j.nn.conf.layers.SubsamplingLayer;
+import org.nd4j.linalg.activations.Activation;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * Configuration of a single hidden layer in {@link NetworkConfig}
+ * Fields that don't apply to the layer type are left empty, kernel sizes come from the shared {@link ConvolutionConfig}
+ *
+ * Immutable object
+ */
+public class LayerConfig implements Serializable, Cloneable {
+    private LayerType type;
+    private int nOut;
+    private Activation activation;
+    private SubsamplingLayer.PoolingType poolingType;
+
+    // Constructors
+    //------------------------------------------------------------------------------------------------------------------
+    /**
+     * Constructor with all fields, see static factory methods for the usual cases
+     * @param type layer type
+     * @param nOut number of filters or units, 0 for layers that keep the size of their input
+     * @param activation activation, null for pooling layers
+     * @param poolingType pooling type, null for layers other than pooling
+     */
+    public LayerConfig(LayerType type, int nOut, Activation activation, SubsamplingLayer.PoolingType poolingType) {
+        this.type = type;
+        this.nOut = nOut;
+        this.activation = activation;
+        this.poolingType = poolingType;
+    }
+
+    public static LayerConfig convolution(int nOut, Activation activation) {
+        return new LayerConfig(LayerType.CONVOLUTION, nOut, activation, null);
+    }
+
+    public static LayerConfig subsampling(SubsamplingLayer.PoolingType poolingType) {
+        return new LayerConfig(LayerType.SUBSAMPLING, 0, null, poolingType);
+    }
+
+    public static LayerConfig dense(int nOut, Activation activation) {
+        return new LayerConfig(LayerType.DENSE, nOut, activation, null);
+    }
+
+    public static LayerConfig batchNormalization(Activation activation) {
+        return new LayerConfig(LayerType.BATCH_NORMALIZATION, 0, activation, null);
+    }
+
+    public static LayerConfig globalPooling(SubsamplingLayer.PoolingType poolingType) {
+        return new LayerConfig(LayerType.GLOBAL_POOLING, 0, null, poolingType);
+    }
+    //------------------------------------------------------------------------------------------------------------------
+
+
+
+    // Getters
+    //------------------------------------------------------------------------------------------------------------------
+    public LayerType getType() {
+        return type;
+    }
+
+    public int getNOut() {
+        return nOut;
+    }
+
+    public Activation getActivation() {
+        return activation;
+    }
+
+    public SubsamplingLayer.PoolingType getPoolingType() {
+        return poolingType;
+    }
+    //------------------------------------------------------------------------------------------------------------------
+
+
+
+    // Others
+    //------------------------------------------------------------------------------------------------------------------
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        LayerConfig that = (LayerConfig) o;
+        return nOut == that.nOut && type == that.type && activation == that.activation && poolingType == that.poolingType;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(type, nOut, activation, poolingType);
+    }
+
+    @Override
+    public String toString() {
+        return "LayerConfig{" + "type=" + type + ", nOut=" + nOut + ", activation=" + activation + ", poolingType=" + poolingType + '}';
+    }
+
+    @Override
+    public LayerConfig clone() {
+        return new LayerConfig(type, nOut, activation, poolingType);
+    }
+    //------------------------------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,31 @@
+package com.tekleo.image_classifier.neural_network.config;
+
+/**
+ * Kinds of hidden layers that can be listed in a {@link NetworkConfig}
+ */
+public enum LayerType {
+    /**
+     * Convolution with the kernel of {@link ConvolutionConfig}, needs nOut and activation
+     */
+    CONVOLUTION,
+
+    /**
+     * Subsampling with the kernel of {@link ConvolutionConfig}, needs poolingType
+     */
+    SUBSAMPLING,
+
+    /**
+     * Fully connected layer, needs nOut and activation
+     */
+    DENSE,
+
+    /**
+     * Batch normalization of the previous layer, activation is optional and applied after normalization (identity by default)
+     */
+    BATCH_NORMALIZATION,
+
+    /**
+     * Pooling over the whole spatial extent of every channel, needs poolingType, usually the last layer before the output
+     */
+    GLOBAL_POOLING
+}
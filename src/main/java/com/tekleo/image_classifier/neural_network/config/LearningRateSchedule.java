@@ -0,0 +1,167 @@
+package com.tekleo.image_classifier.neural_network.config;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Learning rate schedule over the whole training run, an optional linear warmup followed by a constant, step or cosine shape
+ * The schedule gives a factor of the base learning rate of {@link UpdaterConfig}, it replaces the score based decay of the updater config
+ *
+ * DL4J applies the schedule per iteration from a map of iteration to learning rate (see {@link #toIterationSchedule(double, int, int)}),
+ * only iterations where the rate changes are put into the map
+ *
+ * Immutable object
+ */
+public class LearningRateSchedule implements Serializable, Cloneable {
+    private LearningRateScheduleType type;
+    private int warmupEpochs;
+    private int stepEpochs;
+    private double stepDecay;
+    private double minimumFactor;
+
+    private LearningRateSchedule(LearningRateScheduleType type, int warmupEpochs, int stepEpochs, double stepDecay, double minimumFactor) {
+        this.type = type;
+        this.warmupEpochs = warmupEpochs;
+        this.stepEpochs = stepEpochs;
+        this.stepDecay = stepDecay;
+        this.minimumFactor = minimumFactor;
+    }
+
+    // Factories
+    //------------------------------------------------------------------------------------------------------------------
+    public static LearningRateSchedule constant() {
+        return new LearningRateSchedule(LearningRateScheduleType.CONSTANT, 0, 0, 1, 1);
+    }
+
+    /**
+     * @param stepEpochs number of epochs between steps, counted from the start of training
+     * @param stepDecay factor applied at every step, like 0.1
+     * @return step schedule
+     */
+    public static LearningRateSchedule step(int stepEpochs, double stepDecay) {
+        if (stepEpochs <= 0)
+            throw new IllegalArgumentException("Step must be at least one epoch, got " + stepEpochs);
+        return new LearningRateSchedule(LearningRateScheduleType.STEP, 0, stepEpochs, stepDecay, 1);
+    }
+
+    /**
+     * @param minimumFactor factor of the base learning rate reached at the end of training, 0 anneals to zero
+     * @return cosine annealing schedule
+     */
+    public static LearningRateSchedule cosine(double minimumFactor) {
+        return new LearningRateSchedule(LearningRateScheduleType.COSINE, 0, 0, 1, minimumFactor);
+    }
+
+    /**
+     * Linear warmup, the rate grows from almost zero to the full rate over the first epochs, the shape starts after it
+     * @param warmupEpochs number of warmup epochs, 0 disables warmup
+     * @return modified copy
+     */
+    public LearningRateSchedule withWarmup(int warmupEpochs) {
+        LearningRateSchedule copy = clone();
+        copy.warmupEpochs = warmupEpochs;
+        return copy;
+    }
+    //------------------------------------------------------------------------------------------------------------------
+
+
+
+    // Getters
+    //------------------------------------------------------------------------------------------------------------------
+    public LearningRateScheduleType getType() {
+        return type;
+    }
+
+    public int getWarmupEpochs() {
+        return warmupEpochs;
+    }
+
+    public int getStepEpochs() {
+        return stepEpochs;
+    }
+
+    public double getStepDecay() {
+        return stepDecay;
+    }
+
+    public double getMinimumFactor() {
+        return minimumFactor;
+    }
+    //------------------------------------------------------------------------------------------------------------------
+
+
+
+    // Schedule
+    //------------------------------------------------------------------------------------------------------------------
+    /**
+     * @param iteration iteration from the start of training
+     * @param iterationsPerEpoch number of iterations in one epoch
+     * @param numberOfEpochs number of epochs the run is planned for, early stopping may end it sooner
+     * @return factor of the base learning rate at this iteration
+     */
+    public double factor(int iteration, int iterationsPerEpoch, int numberOfEpochs) {
+        int warmupIterations = warmupEpochs * iterationsPerEpoch;
+        if (iteration < warmupIterations)
+            return (iteration + 1) / (double) warmupIterations;
+
+        switch (type) {
+            case STEP:
+                return Math.pow(stepDecay, iteration / (stepEpochs * iterationsPerEpoch));
+            case COSINE:
+                int cosineIterations = Math.max(1, numberOfEpochs * iterationsPerEpoch - warmupIterations);
+                double progress = Math.min(1, (iteration - warmupIterations) / (double) cosineIterations);
+                return minimumFactor + (1 - minimumFactor) * 0.5 * (1 + Math.cos(Math.PI * progress));
+            default:
+                return 1;
+        }
+    }
+
+    /**
+     * @param learningRate base learning rate
+     * @param iterationsPerEpoch number of iterations in one epoch
+     * @param numberOfEpochs number of epochs the run is planned for
+     * @return learning rate of every iteration where it changes, the rate of the last entry holds for all later iterations
+     */
+    public Map<Integer, Double> toIterationSchedule(double learningRate, int iterationsPerEpoch, int numberOfEpochs) {
+        Map<Integer, Double> schedule = new HashMap<>();
+        double previous = Double.NaN;
+        for (int iteration = 0; iteration < iterationsPerEpoch * numberOfEpochs; iteration++) {
+            double rate = learningRate * factor(iteration, iterationsPerEpoch, numberOfEpochs);
+            if (rate != previous)
+                schedule.put(iteration, rate);
+            previous = rate;
+        }
+        return schedule;
+    }
+    //------------------------------------------------------------------------------------------------------------------
+
+
+
+    // Others
+    //------------------------------------------------------------------------------------------------------------------
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        LearningRateSchedule that = (LearningRateSchedule) o;
+        return warmupEpochs == that.warmupEpochs && stepEpochs == that.stepEpochs && Double.compare(that.stepDecay, stepDecay) == 0 && Double.compare(that.minimumFactor, minimumFactor) == 0 && type == that.type;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(type, warmupEpochs, stepEpochs, stepDecay, minimumFactor);
+    }
+
+    @Override
+    public String toString() {
+        return "LearningRateSchedule{" + "type=" + type + ", warmupEpochs=" + warmupEpochs + ", stepEpochs=" + stepEpochs + ", stepDecay=" + stepDecay + ", minimumFactor=" + minimumFactor + '}';
+    }
+
+    @Override
+    public LearningRateSchedule clone() {
+        return new LearningRateSchedule(type, warmupEpochs, stepEpochs, stepDecay, minimumFactor);
+    }
+    //------------------------------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,10 @@
+package com.tekleo.image_classifier.neural_network.config;
+
+/**
+ * Shapes of a {@link LearningRateSchedule} after its warmup
+ */
+public enum LearningRateScheduleType {
+    CONSTANT,
+    STEP,
+    COSINE
+}
@@ -0,0 +1,149 @@
+package com.tekleo.image_classifier.neural_network.config;
+
+import org.deeplearning4j.nn.conf.ConvolutionMode;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Full architecture of the network: hidden layers in order, kernels, updater, output layer and batch size
+ * Normally loaded from a JSON file with {@link com.tekleo.image_classifier.neural_network.config.loader.ConfigLoader}
+ * and turned into a network with {@link com.tekleo.image_classifier.neural_network.helpers.NetworkFactory}
+ *
+ * The output layer is not listed in layers, its size is the number of classes and only its activation and loss are configured
+ * Convolution mode is optional, {@link ConvolutionMode#Same} keeps spatial size through convolutions, which deep stacks of them need
+ *
+ * Immutable object
+ */
+public class NetworkConfig implements Serializable, Cloneable {
+    private String name;
+    private int seed;
+    private int batchSize;
+    private ConvolutionConfig convolution;
+    private ConvolutionMode convolutionMode;
+    private UpdaterConfig updater;
+    private List<LayerConfig> layers;
+    private Activation outputActivation;
+    private LossFunctions.LossFunction lossFunction;
+
+    // Constructors
+    //------------------------------------------------------------------------------------------------------------------
+    /**
+     * The only public constructor, this object is immutable
+     * @param name name used in reports
+     * @param seed seed of weight initialization
+     * @param batchSize training batch size
+     * @param convolution kernels of all convolution and subsampling layers
+     * @param convolutionMode convolution mode of all convolution and subsampling layers, null for the DL4J default
+     * @param updater updater and regularization
+     * @param layers hidden layers in order
+     * @param outputActivation activation of the output layer
+     * @param lossFunction loss function of the output layer
+     */
+    public NetworkConfig(String name, int seed, int batchSize, ConvolutionConfig convolution, ConvolutionMode convolutionMode, UpdaterConfig updater, List<LayerConfig> layers,
+                         Activation outputActivation, LossFunctions.LossFunction lossFunction) {
+        this.name = name;
+        this.seed = seed;
+        this.batchSize = batchSize;
+        this.convolution = convolution;
+        this.convolutionMode = convolutionMode;
+        this.updater = updater;
+        this.layers = new ArrayList<>(layers);
+        this.outputActivation = outputActivation;
+        this.lossFunction = lossFunction;
+    }
+    //------------------------------------------------------------------------------------------------------------------
+
+
+
+    // Getters
+    //------------------------------------------------------------------------------------------------------------------
+    public String getName() {
+        return name;
+    }
+
+    public int getSeed() {
+        return seed;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public ConvolutionConfig getConvolution() {
+        return convolution;
+    }
+
+    public ConvolutionMode getConvolutionMode() {
+        return convolutionMode;
+    }
+
+    public UpdaterConfig getUpdater() {
+        return updater;
+    }
+
+    public List<LayerConfig> getLayers() {
+        return Collections.unmodifiableList(layers);
+    }
+
+    public Activation getOutputActivation() {
+        return outputActivation;
+    }
+
+    public LossFunctions.LossFunction getLossFunction() {
+        return lossFunction;
+    }
+    //------------------------------------------------------------------------------------------------------------------
+
+
+
+    // Copy modifiers
+    //------------------------------------------------------------------------------------------------------------------
+    /**
+     * Same architecture with another batch size, the learning rate is kept as it is
+     * @param batchSize training batch size
+     * @return modified copy
+     */
+    public NetworkConfig withBatchSize(int batchSize) {
+        NetworkConfig copy = clone();
+        copy.batchSize = batchSize;
+        return copy;
+    }
+    //------------------------------------------------------------------------------------------------------------------
+
+
+
+    // Others
+    //------------------------------------------------------------------------------------------------------------------
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        NetworkConfig that = (NetworkConfig) o;
+        return seed == that.seed && batchSize == that.batchSize && Objects.equals(name, that.name) && Objects.equals(convolution, that.convolution) && convolutionMode == that.convolutionMode && Objects.equals(updater, that.updater) && Objects.equals(layers, that.layers) && outputActivation == that.outputActivation && lossFunction == that.lossFunction;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(name, seed, batchSize, convolution, convolutionMode, updater, layers, outputActivation, lossFunction);
+    }
+
+    @Override
+    public String toString() {
+        return "NetworkConfig{" + "name='" + name + '\'' + ", seed=" + seed + ", batchSize=" + batchSize + ", convolution=" + convolution + ", convolutionMode=" + convolutionMode + ", updater=" + updater + ", layers=" + layers + ", outputActivation=" + outputActivation + ", lossFunction=" + lossFunction + '}';
+    }
+
+    @Override
+    public NetworkConfig clone() {
+        List<LayerConfig> layersCopy = new ArrayList<>();
+        for (LayerConfig layer : layers)
+            layersCopy.add(layer.clone());
+        return new NetworkConfig(name, seed, batchSize, convolution == null ? null : convolution.clone(), convolutionMode, updater.clone(), layersCopy, outputActivation, lossFunction);
+    }
+    //------------------------------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,494 @@
+package com.tekleo.image_classifier.neural_network.config;
+
+import com.tekleo.image_classifier.neural_network.checkpoint.CheckpointFormat;
+import org.deeplearning4j.nn.conf.WorkspaceMode;
+import org.nd4j.linalg.api.buffer.DataBuffer;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * Runtime options of training in {@link com.tekleo.image_classifier.neural_network.CifarModel}
+ * Default constructor gives plain single-replica training, every other option is switched on with a "with" method that returns a modified copy
+ *
+ * Immutable object
+ */
+public class TrainingConfig implements Serializable, Cloneable {
+    private static final int DEFAULT_NUMBER_OF_EPOCHS = 20;
+    private static final int DEFAULT_AVERAGING_FREQUENCY = 3;
+    private static final String DEFAULT_CHECKPOINT_DIRECTORY = "checkpoints";
+    private static final int DEFAULT_EVALUATION_TOP_N = 3;
+    private static final int DEFAULT_TRAIN_EVALUATION_BATCHES = 20;
+    private static final WorkspaceMode DEFAULT_TRAINING_WORKSPACE_MODE = WorkspaceMode.SEPARATE;
+    private static final WorkspaceMode DEFAULT_INFERENCE_WORKSPACE_MODE = WorkspaceMode.SINGLE;
+    private static final double DEFAULT_UPDATE_THRESHOLD = 1e-3;
+
+    private int numberOfEpochs;
+    private int parallelWorkers;
+    private int averagingFrequency;
+    private String checkpointDirectory;
+    private int checkpointFrequency;
+    private CheckpointFormat checkpointFormat;
+    private int evaluationTopN;
+    private int evaluationSampleFrequency;
+    private int trainEvaluationBatches;
+    private boolean backgroundEvaluationEnabled;
+    private String metricsDirectory;
+    private int metricsPort;
+    private int ompThreads;
+    private int blasThreads;
+    private WorkspaceMode trainingWorkspaceMode;
+    private WorkspaceMode inferenceWorkspaceMode;
+    private DataBuffer.Type dataType;
+    private int crossValidationFolds;
+    private int concurrentFolds;
+    private LearningRateSchedule learningRateSchedule;
+    private int earlyStoppingPatience;
+    private double earlyStoppingMinDelta;
+    private int distributedWorkers;
+    private double updateThreshold;
+
+    // Constructors
+    //------------------------------------------------------------------------------------------------------------------
+    /**
+     * Default config, single network trained on the calling thread
+     */
+    public TrainingConfig() {
+        this.numberOfEpochs = DEFAULT_NUMBER_OF_EPOCHS;
+        this.parallelWorkers = 1;
+        this.averagingFrequency = DEFAULT_AVERAGING_FREQUENCY;
+        this.checkpointDirectory = DEFAULT_CHECKPOINT_DIRECTORY;
+        this.checkpointFrequency = 0;
+        this.checkpointFormat = CheckpointFormat.RAW;
+        this.evaluationTopN = DEFAULT_EVALUATION_TOP_N;
+        this.evaluationSampleFrequency = 1;
+        this.trainEvaluationBatches = DEFAULT_TRAIN_EVALUATION_BATCHES;
+        this.backgroundEvaluationEnabled = false;
+        this.metricsDirectory = null;
+        this.metricsPort = 0;
+        this.ompThreads = 0;
+        this.blasThreads = 0;
+        this.trainingWorkspaceMode = DEFAULT_TRAINING_WORKSPACE_MODE;
+        this.inferenceWorkspaceMode = DEFAULT_INFERENCE_WORKSPACE_MODE;
+        this.dataType = null;
+        this.crossValidationFolds = 0;
+        this.concurrentFolds = 1;
+        this.learningRateSchedule = null;
+        this.earlyStoppingPatience = 0;
+        this.earlyStoppingMinDelta = 0;
+        this.distributedWorkers = 0;
+        this.updateThreshold = DEFAULT_UPDATE_THRESHOLD;
+    }
+
+    /**
+     * Copy constructor, used by clone and all copy modifiers
+     * @param other config to copy
+     */
+    private TrainingConfig(TrainingConfig other) {
+        this.numberOfEpochs = other.numberOfEpochs;
+        this.parallelWorkers = other.parallelWorkers;
+        this.averagingFrequency = other.averagingFrequency;
+        this.checkpointDirectory = other.checkpointDirectory;
+        this.checkpointFrequency = other.checkpointFrequency;
+        this.checkpointFormat = other.checkpointFormat;
+        this.evaluationTopN = other.evaluationTopN;
+        this.evaluationSampleFrequency = other.evaluationSampleFrequency;
+        this.trainEvaluationBatches = other.trainEvaluationBatches;
+        this.backgroundEvaluationEnabled = other.backgroundEvaluationEnabled;
+        this.metricsDirectory = other.metricsDirectory;
+        this.metricsPort = other.metricsPort;
+        this.ompThreads = other.ompThreads;
+        this.blasThreads = other.blasThreads;
+        this.trainingWorkspaceMode = other.trainingWorkspaceMode;
+        this.inferenceWorkspaceMode = other.inferenceWorkspaceMode;
+        this.dataType = other.dataType;
+        this.crossValidationFolds = other.crossValidationFolds;
+        this.concurrentFolds = other.concurrentFolds;
+        this.learningRateSchedule = other.learningRateSchedule;
+        this.earlyStoppingPatience = other.earlyStoppingPatience;
+        this.earlyStoppingMinDelta = other.earlyStoppingMinDelta;
+        this.distributedWorkers = other.distributedWorkers;
+        this.updateThreshold = other.updateThreshold;
+    }
+    //------------------------------------------------------------------------------------------------------------------
+
+
+
+    // Getters
+    //------------------------------------------------------------------------------------------------------------------
+    public int getNumberOfEpochs() {
+        return numberOfEpochs;
+    }
+
+    public boolean isParallelTrainingEnabled() {
+        return parallelWorkers > 1;
+    }
+
+    public int getParallelWorkers() {
+        return parallelWorkers;
+    }
+
+    public int getAveragingFrequency() {
+        return averagingFrequency;
+    }
+
+    public boolean isCheckpointEnabled() {
+        return checkpointFrequency > 0;
+    }
+
+    public String getCheckpointDirectory() {
+        return checkpointDirectory;
+    }
+
+    public int getCheckpointFrequency() {
+        return checkpointFrequency;
+    }
+
+    public CheckpointFormat getCheckpointFormat() {
+        return checkpointFormat;
+    }
+
+    public int getEvaluationTopN() {
+        return evaluationTopN;
+    }
+
+    public int getEvaluationSampleFrequency() {
+        return evaluationSampleFrequency;
+    }
+
+    public int getTrainEvaluationBatches() {
+        return trainEvaluationBatches;
+    }
+
+    public boolean isBackgroundEvaluationEnabled() {
+        return backgroundEvaluationEnabled;
+    }
+
+    public boolean isMetricsLogEnabled() {
+        return metricsDirectory != null;
+    }
+
+    public String getMetricsDirectory() {
+        return metricsDirectory;
+    }
+
+    public boolean isMetricsServerEnabled() {
+        return metricsPort > 0;
+    }
+
+    public int getMetricsPort() {
+        return metricsPort;
+    }
+
+    public int getOmpThreads() {
+        return ompThreads;
+    }
+
+    public int getBlasThreads() {
+        return blasThreads;
+    }
+
+    public WorkspaceMode getTrainingWorkspaceMode() {
+        return trainingWorkspaceMode;
+    }
+
+    public WorkspaceMode getInferenceWorkspaceMode() {
+        return inferenceWorkspaceMode;
+    }
+
+    /**
+     * @return data type of the backend, null keeps the backend default (FLOAT)
+     */
+    public DataBuffer.Type getDataType() {
+        return dataType;
+    }
+
+    public boolean isCrossValidationEnabled() {
+        return crossValidationFolds > 1;
+    }
+
+    public int getCrossValidationFolds() {
+        return crossValidationFolds;
+    }
+
+    public int getConcurrentFolds() {
+        return concurrentFolds;
+    }
+
+    /**
+     * @return learning rate schedule, null keeps the score based decay of the network's updater config
+     */
+    public LearningRateSchedule getLearningRateSchedule() {
+        return learningRateSchedule;
+    }
+
+    public boolean isEarlyStoppingEnabled() {
+        return earlyStoppingPatience > 0;
+    }
+
+    public int getEarlyStoppingPatience() {
+        return earlyStoppingPatience;
+    }
+
+    public double getEarlyStoppingMinDelta() {
+        return earlyStoppingMinDelta;
+    }
+
+    public boolean isDistributedTrainingEnabled() {
+        return distributedWorkers > 0;
+    }
+
+    public int getDistributedWorkers() {
+        return distributedWorkers;
+    }
+
+    public double getUpdateThreshold() {
+        return updateThreshold;
+    }
+    //------------------------------------------------------------------------------------------------------------------
+
+
+
+    // Copy modifiers
+    //------------------------------------------------------------------------------------------------------------------
+    public TrainingConfig withNumberOfEpochs(int numberOfEpochs) {
+        TrainingConfig copy = clone();
+        copy.numberOfEpochs = numberOfEpochs;
+        return copy;
+    }
+
+    /**
+     * Data-parallel training, each worker trains its own replica of the network on different batches,
+     * and parameters of all replicas are averaged every few iterations
+     * @param parallelWorkers number of replicas (and threads), 1 disables parallel training
+     * @param averagingFrequency number of iterations each replica does between parameter averaging
+     * @return modified copy
+     */
+    public TrainingConfig withParallelTraining(int parallelWorkers, int averagingFrequency) {
+        TrainingConfig copy = clone();
+        copy.parallelWorkers = parallelWorkers;
+        copy.averagingFrequency = averagingFrequency;
+        return copy;
+    }
+
+    public TrainingConfig withParallelTraining(int parallelWorkers) {
+        return withParallelTraining(parallelWorkers, averagingFrequency);
+    }
+
+    /**
+     * Periodic checkpoints, written on a background thread from a snapshot of parameters
+     * @param checkpointDirectory directory for checkpoint files
+     * @param checkpointFrequency number of epochs between checkpoints, 0 disables checkpoints
+     * @param checkpointFormat file format, {@link CheckpointFormat#RAW} is the fastest to write and to load
+     * @return modified copy
+     */
+    public TrainingConfig withCheckpoints(String checkpointDirectory, int checkpointFrequency, CheckpointFormat checkpointFormat) {
+        TrainingConfig copy = clone();
+        copy.checkpointDirectory = checkpointDirectory;
+        copy.checkpointFrequency = checkpointFrequency;
+        copy.checkpointFormat = checkpointFormat;
+        return copy;
+    }
+
+    public TrainingConfig withCheckpoints(int checkpointFrequency) {
+        return withCheckpoints(checkpointDirectory, checkpointFrequency, checkpointFormat);
+    }
+
+    /**
+     * Evaluation settings, training set is evaluated on the forward passes of training itself,
+     * or on a subsample of batches when the model was not trained in this run
+     * @param evaluationTopN N for top-N accuracy
+     * @param evaluationSampleFrequency evaluate every n-th training batch, 1 evaluates all of them
+     * @param trainEvaluationBatches number of training batches to evaluate on when there is no evaluation from training
+     * @return modified copy
+     */
+    public TrainingConfig withEvaluation(int evaluationTopN, int evaluationSampleFrequency, int trainEvaluationBatches) {
+        TrainingConfig copy = clone();
+        copy.evaluationTopN = evaluationTopN;
+        copy.evaluationSampleFrequency = evaluationSampleFrequency;
+        copy.trainEvaluationBatches = trainEvaluationBatches;
+        return copy;
+    }
+
+    /**
+     * Evaluate a snapshot of the network on the test set after every epoch, on a background thread while the next epoch trains
+     * The evaluator needs a test set iterator of its own (see {@link com.tekleo.image_classifier.neural_network.CifarModel#setBackgroundEvaluationSet})
+     * @param backgroundEvaluationEnabled true to enable
+     * @return modified copy
+     */
+    public TrainingConfig withBackgroundEvaluation(boolean backgroundEvaluationEnabled) {
+        TrainingConfig copy = clone();
+        copy.backgroundEvaluationEnabled = backgroundEvaluationEnabled;
+        return copy;
+    }
+
+    /**
+     * Per batch and per epoch training metrics written as CSV (see {@link com.tekleo.image_classifier.neural_network.metrics.CsvMetricsLogger})
+     * @param metricsDirectory directory for CSV files, null disables the log
+     * @return modified copy
+     */
+    public TrainingConfig withMetricsLog(String metricsDirectory) {
+        TrainingConfig copy = clone();
+        copy.metricsDirectory = metricsDirectory;
+        return copy;
+    }
+
+    /**
+     * Training metrics served as JSON on localhost (see {@link com.tekleo.image_classifier.neural_network.metrics.MetricsServer})
+     * @param metricsPort port, 0 disables the server
+     * @return modified copy
+     */
+    public TrainingConfig withMetricsServer(int metricsPort) {
+        TrainingConfig copy = clone();
+        copy.metricsPort = metricsPort;
+        return copy;
+    }
+
+    /**
+     * Thread counts of the native CPU backend, applied when the model is created (see {@link com.tekleo.image_classifier.neural_network.helpers.BackendSettings})
+     * Usually both should be the number of physical cores, and less than that when several replicas or processes share a machine
+     * @param ompThreads OpenMP threads used by element-wise ops, convolution helpers and reductions, 0 keeps the backend default
+     * @param blasThreads threads of the BLAS library used by matrix multiplication, 0 keeps the backend default
+     * @return modified copy
+     */
+    public TrainingConfig withBackendThreads(int ompThreads, int blasThreads) {
+        TrainingConfig copy = clone();
+        copy.ompThreads = ompThreads;
+        copy.blasThreads = blasThreads;
+        return copy;
+    }
+
+    /**
+     * ND4J workspace modes of the network, workspaces reuse off-heap memory between iterations instead of allocating new arrays
+     * Defaults are SEPARATE for training (forward and backward pass get their own workspaces, which is the fastest for fit)
+     * and SINGLE for inference (one workspace per thread, the smallest footprint for output)
+     * @param trainingWorkspaceMode mode used by fit, null keeps the DL4J default (NONE)
+     * @param inferenceWorkspaceMode mode used by output and evaluation, null keeps the DL4J default (SEPARATE)
+     * @return modified copy
+     */
+    public TrainingConfig withWorkspaceModes(WorkspaceMode trainingWorkspaceMode, WorkspaceMode inferenceWorkspaceMode) {
+        TrainingConfig copy = clone();
+        copy.trainingWorkspaceMode = trainingWorkspaceMode;
+        copy.inferenceWorkspaceMode = inferenceWorkspaceMode;
+        return copy;
+    }
+
+    /**
+     * Data type of network parameters and activations, applied when the model is created (see {@link com.tekleo.image_classifier.neural_network.helpers.BackendSettings#setDataType(DataBuffer.Type)})
+     * The type is global to ND4J, batches made by the iterators after that point get it too, in half precision all math runs in half as well
+     * HALF needs the cuda profile, the CPU backend of ND4J 0.9.1 can't allocate it, for half precision weights on CPU
+     * export the trained network to the engine instead (see {@link com.tekleo.image_classifier.inference.engine.EngineModel#withWeightPrecision})
+     * @param dataType FLOAT, DOUBLE or HALF, null keeps the backend default
+     * @return modified copy
+     */
+    public TrainingConfig withDataType(DataBuffer.Type dataType) {
+        TrainingConfig copy = clone();
+        copy.dataType = dataType;
+        return copy;
+    }
+
+    /**
+     * K-fold cross-validation (see {@link com.tekleo.image_classifier.neural_network.crossvalidation.CrossValidation}),
+     * fold models train at the same time on their own threads, all of them reading one shared copy of the decoded images
+     * Each fold runs its own native ops, so with several concurrent folds backend threads should be lowered with {@link #withBackendThreads(int, int)}
+     * @param crossValidationFolds number of folds, 0 or 1 disables cross-validation
+     * @param concurrentFolds number of folds trained at the same time, 1 trains them one after another
+     * @return modified copy
+     */
+    public TrainingConfig withCrossValidation(int crossValidationFolds, int concurrentFolds) {
+        TrainingConfig copy = clone();
+        copy.crossValidationFolds = crossValidationFolds;
+        copy.concurrentFolds = concurrentFolds;
+        return copy;
+    }
+
+    /**
+     * Learning rate schedule over {@link #getNumberOfEpochs()} epochs, replaces the score based decay of the network's updater config
+     * @param learningRateSchedule schedule, null keeps the score based decay
+     * @return modified copy
+     */
+    public TrainingConfig withLearningRateSchedule(LearningRateSchedule learningRateSchedule) {
+        TrainingConfig copy = clone();
+        copy.learningRateSchedule = learningRateSchedule;
+        return copy;
+    }
+
+    /**
+     * Evaluate on the validation set after every epoch, stop when accuracy stops improving and keep the parameters of the best epoch
+     * Training fails without a validation set (see {@link com.tekleo.image_classifier.neural_network.CifarModel#setValidationSet}), the test set is never watched
+     * @param earlyStoppingPatience number of epochs without improvement before training stops, 0 disables early stopping
+     * @param earlyStoppingMinDelta smallest increase of validation accuracy that counts as an improvement
+     * @return modified copy
+     */
+    public TrainingConfig withEarlyStopping(int earlyStoppingPatience, double earlyStoppingMinDelta) {
+        TrainingConfig copy = clone();
+        copy.earlyStoppingPatience = earlyStoppingPatience;
+        copy.earlyStoppingMinDelta = earlyStoppingMinDelta;
+        return copy;
+    }
+
+    /**
+     * Multi-process training (see {@link com.tekleo.image_classifier.neural_network.distributed.DistributedTraining}), every worker is a separate JVM
+     * that trains on its own shard of the train split and exchanges threshold encoded updates with the others through a parameter server over local TCP
+     * Workers share the machine, so backend threads of each of them should be lowered with {@link #withBackendThreads(int, int)}
+     * @param distributedWorkers number of worker processes, 0 disables distributed training, 1 runs a single worker through the parameter server
+     * @param updateThreshold initial threshold of update encoding, only parameter changes of at least this size are sent, smaller ones are accumulated
+     * @return modified copy
+     */
+    public TrainingConfig withDistributedTraining(int distributedWorkers, double updateThreshold) {
+        TrainingConfig copy = clone();
+        copy.distributedWorkers = distributedWorkers;
+        copy.updateThreshold = updateThreshold;
+        return copy;
+    }
+
+    public TrainingConfig withDistributedTraining(int distributedWorkers) {
+        return withDistributedTraining(distributedWorkers, updateThreshold);
+    }
+    //------------------------------------------------------------------------------------------------------------------
+
+
+
+    // Others
+    //------------------------------------------------------------------------------------------------------------------
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        TrainingConfig that = (TrainingConfig) o;
+        return numberOfEpochs == that.numberOfEpochs && parallelWorkers == that.parallelWorkers && averagingFrequency == that.averagingFrequency &&
+                checkpointFrequency == that.checkpointFrequency && Objects.equals(checkpointDirectory, that.checkpointDirectory) && checkpointFormat == that.checkpointFormat &&
+                evaluationTopN == that.evaluationTopN && evaluationSampleFrequency == that.evaluationSampleFrequency && trainEvaluationBatches == that.trainEvaluationBatches &&
+                backgroundEvaluationEnabled == that.backgroundEvaluationEnabled && Objects.equals(metricsDirectory, that.metricsDirectory) && metricsPort == that.metricsPort &&
+                ompThreads == that.ompThreads && blasThreads == that.blasThreads && trainingWorkspaceMode == that.trainingWorkspaceMode && inferenceWorkspaceMode == that.inferenceWorkspaceMode &&
+                dataType == that.dataType && crossValidationFolds == that.crossValidationFolds && concurrentFolds == that.concurrentFolds && Objects.equals(learningRateSchedule, that.learningRateSchedule) &&
+                earlyStoppingPatience == that.earlyStoppingPatience && Double.compare(that.earlyStoppingMinDelta, earlyStoppingMinDelta) == 0 &&
+                distributedWorkers == that.distributedWorkers && Double.compare(that.updateThreshold, updateThreshold) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(numberOfEpochs, parallelWorkers, averagingFrequency, checkpointDirectory, checkpointFrequency, checkpointFormat,
+                evaluationTopN, evaluationSampleFrequency, trainEvaluationBatches, backgroundEvaluationEnabled, metricsDirectory, metricsPort,
+                ompThreads, blasThreads, trainingWorkspaceMode, inferenceWorkspaceMode, dataType, crossValidationFolds, concurrentFolds,
+                learningRateSchedule, earlyStoppingPatience, earlyStoppingMinDelta, distributedWorkers, updateThreshold);
+    }
+
+    @Override
+    public String toString() {
+        return "TrainingConfig{" + "numberOfEpochs=" + numberOfEpochs + ", parallelWorkers=" + parallelWorkers + ", averagingFrequency=" + averagingFrequency +
+                ", checkpointDirectory='" + checkpointDirectory + '\'' + ", checkpointFrequency=" + checkpointFrequency + ", checkpointFormat=" + checkpointFormat +
+                ", evaluationTopN=" + evaluationTopN + ", evaluationSampleFrequency=" + evaluationSampleFrequency + ", trainEvaluationBatches=" + trainEvaluationBatches +
+                ", backgroundEvaluationEnabled=" + backgroundEvaluationEnabled + ", metricsDirectory='" + metricsDirectory + '\'' + ", metricsPort=" + metricsPort +
+                ", ompThreads=" + ompThreads + ", blasThreads=" + blasThreads + ", trainingWorkspaceMode=" + trainingWorkspaceMode + ", inferenceWorkspaceMode=" + inferenceWorkspaceMode +
+                ", dataType=" + dataType + ", crossValidationFolds=" + crossValidationFolds + ", concurrentFolds=" + concurrentFolds +
+                ", learningRateSchedule=" + learningRateSchedule + ", earlyStoppingPatience=" + earlyStoppingPatience + ", earlyStoppingMinDelta=" + earlyStoppingMinDelta +
+                ", distributedWorkers=" + distributedWorkers + ", updateThreshold=" + updateThreshold + '}';
+    }
+
+    @Override
+    public TrainingConfig clone() {
+        return new TrainingConfig(this);
+    }
+    //------------------------------------------------------------------------------------------------------------------
+}
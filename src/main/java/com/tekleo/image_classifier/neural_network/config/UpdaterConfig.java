@@ -0,0 +1,89 @@
+package com.tekleo.image_classifier.neural_network.config;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * Configuration of the gradient updater and regularization in {@link NetworkConfig}
+ *
+ * Immutable object
+ */
+public class UpdaterConfig implements Serializable, Cloneable {
+    private UpdaterType type;
+    private double learningRate;
+    private double momentum;
+    private double l2;
+    private double scoreDecayRate;
+
+    // Constructors
+    //------------------------------------------------------------------------------------------------------------------
+    /**
+     * The only public constructor, this object is immutable
+     * @param type updater type
+     * @param learningRate learning rate
+     * @param momentum momentum, only used by {@link UpdaterType#NESTEROVS}
+     * @param l2 L2 regularization coefficient, 0 disables regularization
+     * @param scoreDecayRate learning rate decay applied when the score stops improving, 0 keeps the learning rate fixed
+     */
+    public UpdaterConfig(UpdaterType type, double learningRate, double momentum, double l2, double scoreDecayRate) {
+        this.type = type;
+        this.learningRate = learningRate;
+        this.momentum = momentum;
+        this.l2 = l2;
+        this.scoreDecayRate = scoreDecayRate;
+    }
+    //------------------------------------------------------------------------------------------------------------------
+
+
+
+    // Getters
+    //------------------------------------------------------------------------------------------------------------------
+    public UpdaterType getType() {
+        return type;
+    }
+
+    public double getLearningRate() {
+        return learningRate;
+    }
+
+    public double getMomentum() {
+        return momentum;
+    }
+
+    public double getL2() {
+        return l2;
+    }
+
+    public double getScoreDecayRate() {
+        return scoreDecayRate;
+    }
+    //------------------------------------------------------------------------------------------------------------------
+
+
+
+    // Others
+    //------------------------------------------------------------------------------------------------------------------
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        UpdaterConfig that = (UpdaterConfig) o;
+        return Double.compare(that.learningRate, learningRate) == 0 && Double.compare(that.momentum, momentum) == 0 && Double.compare(that.l2, l2) == 0 && Double.compare(that.scoreDecayRate, scoreDecayRate) == 0 && type == that.type;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(type, learningRate, momentum, l2, scoreDecayRate);
+    }
+
+    @Override
+    public String toString() {
+        return "UpdaterConfig{" + "type=" + type + ", learningRate=" + learningRate + ", momentum=" + momentum + ", l2=" + l2 + ", scoreDecayRate=" + scoreDecayRate + '}';
+    }
+
+    @Override
+    public UpdaterConfig clone() {
+        return new UpdaterConfig(type, learningRate, momentum, l2, scoreDecayRate);
+    }
+    //------------------------------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,10 @@
+package com.tekleo.image_classifier.neural_network.config;
+
+/**
+ * Gradient updaters that can be used in a {@link NetworkConfig}
+ */
+public enum UpdaterType {
+    SGD,
+    NESTEROVS,
+    ADAM
+}
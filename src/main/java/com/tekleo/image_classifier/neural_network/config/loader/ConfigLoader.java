@@ -2,39 +2,90 @@ package com.tekleo.image_classifier.neural_network.config.loader;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.InstanceCreator;
+import com.tekleo.image_classifier.neural_network.config.ConvolutionConfig;
+import com.tekleo.image_classifier.neural_network.config.KernelConfig;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 
 import java.io.File;
+import java.io.InputStream;
 import java.nio.charset.Charset;
 
 /**
  * Helper class with static method to load config objects based on their JSON files
  *
+ * Kernel configs hide their default constructors, so Gson is given placeholder instances to fill in
+ *
  * @author Leo Ertuna
  * @since 01.04.2018 18:21
  */
 public class ConfigLoader {
-    private static final GsonBuilder GSON_BUILDER = new GsonBuilder();
+    private static final GsonBuilder GSON_BUILDER = new GsonBuilder()
+            .registerTypeAdapter(KernelConfig.class, (InstanceCreator<KernelConfig>) type -> new KernelConfig(0, 0))
+            .registerTypeAdapter(ConvolutionConfig.class, (InstanceCreator<ConvolutionConfig>) type -> new ConvolutionConfig(0, 0, 0, 0));
     private static final Gson GSON = GSON_BUILDER.create();
+    private static final Gson PRETTY_GSON = GSON_BUILDER.setPrettyPrinting().create();
 
     public static <E> E load(String pathToJsonFileInResourcesDirectory, Class<E> classOfE) {
         try {
-            return getObjectFromJson(getStringFromFile(getFile(pathToJsonFileInResourcesDirectory)), classOfE);
+            return getObjectFromJson(getStringFromResource(pathToJsonFileInResourcesDirectory), classOfE);
         } catch (ConfigLoaderException e) {
             throw new ConfigLoaderRuntimeException("Failed to load: ", e);
         }
     }
 
+    public static <E> E load(File jsonFile, Class<E> classOfE) {
+        try {
+            return getObjectFromJson(getStringFromFile(jsonFile), classOfE);
+        } catch (ConfigLoaderException e) {
+            throw new ConfigLoaderRuntimeException("Failed to load " + jsonFile + ": ", e);
+        }
+    }
+
+    /**
+     * Write an object as a JSON file that {@link #load(File, Class)} reads back
+     * @param object object to write
+     * @param jsonFile target file, overwritten
+     */
+    public static void save(Object object, File jsonFile) {
+        try {
+            FileUtils.writeStringToFile(jsonFile, PRETTY_GSON.toJson(object), Charset.forName("UTF-8"));
+        } catch (Exception e) {
+            throw new ConfigLoaderRuntimeException("Failed to save " + jsonFile + ": ", e);
+        }
+    }
+
+    /**
+     * @param object object to write
+     * @return single line JSON of the object
+     */
+    public static String toJson(Object object) {
+        return GSON.toJson(object);
+    }
+
+    public static <E> E fromJson(String jsonString, Class<E> classOfE) {
+        try {
+            return getObjectFromJson(jsonString, classOfE);
+        } catch (ConfigLoaderException e) {
+            throw new ConfigLoaderRuntimeException("Failed to parse: ", e);
+        }
+    }
+
     // Static helpers
     //------------------------------------------------------------------------------------------------------------------
     /**
-     * Load a file from resource folder
+     * Read a file from resource folder into a string, as a stream, so it works from a jar as well
      * @param pathInResourcesDirectory
      * @return
      */
-    private static File getFile(String pathInResourcesDirectory) throws ConfigLoaderException {
-        try {
-            return new File(ConfigLoader.class.getClassLoader().getResource(pathInResourcesDirectory).toURI());
+    private static String getStringFromResource(String pathInResourcesDirectory) throws ConfigLoaderException {
+        try (InputStream inputStream = ConfigLoader.class.getClassLoader().getResourceAsStream(pathInResourcesDirectory)) {
+            if (inputStream == null)
+                throw new ConfigLoaderException("Resource not found: " + pathInResourcesDirectory);
+            return IOUtils.toString(inputStream, Charset.forName("UTF-8"));
+        } catch (ConfigLoaderException e) {
+            throw e;
         } catch (Exception e) {
             throw new ConfigLoaderException("Exception: ", e);
         }
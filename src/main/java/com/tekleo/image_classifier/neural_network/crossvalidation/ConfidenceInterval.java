@@ -0,0 +1,92 @@
+package com.tekleo.image_classifier.neural_network.crossvalidation;
+
+/**
+ * Mean of a metric over folds with its 95% confidence interval
+ * Fold scores are few, so the interval uses Student's t distribution with n - 1 degrees of freedom instead of the normal one
+ *
+ * Immutable object
+ */
+public class ConfidenceInterval {
+    // Two-sided 95% critical values of Student's t for 1..30 degrees of freedom, the normal value is used above that
+    private static final double[] T_CRITICAL_VALUES = {
+            12.706, 4.303, 3.182, 2.776, 2.571, 2.447, 2.365, 2.306, 2.262, 2.228,
+            2.201, 2.179, 2.160, 2.145, 2.131, 2.120, 2.110, 2.101, 2.093, 2.086,
+            2.080, 2.074, 2.069, 2.064, 2.060, 2.056, 2.052, 2.048, 2.045, 2.042
+    };
+    private static final double Z_CRITICAL_VALUE = 1.960;
+
+    private final int count;
+    private final double mean;
+    private final double standardDeviation;
+    private final double halfWidth;
+
+    private ConfidenceInterval(int count, double mean, double standardDeviation, double halfWidth) {
+        this.count = count;
+        this.mean = mean;
+        this.standardDeviation = standardDeviation;
+        this.halfWidth = halfWidth;
+    }
+
+    /**
+     * @param values metric of every fold
+     * @return mean with its 95% interval, a single value gives an interval of zero width
+     */
+    public static ConfidenceInterval of(double[] values) {
+        if (values.length == 0)
+            throw new IllegalArgumentException("Need at least one value");
+
+        double sum = 0;
+        for (double value : values)
+            sum += value;
+        double mean = sum / values.length;
+        if (values.length == 1)
+            return new ConfidenceInterval(1, mean, 0, 0);
+
+        double squares = 0;
+        for (double value : values)
+            squares += (value - mean) * (value - mean);
+        double standardDeviation = Math.sqrt(squares / (values.length - 1));
+        int degreesOfFreedom = values.length - 1;
+        double critical = degreesOfFreedom <= T_CRITICAL_VALUES.length ? T_CRITICAL_VALUES[degreesOfFreedom - 1] : Z_CRITICAL_VALUE;
+        return new ConfidenceInterval(values.length, mean, standardDeviation, critical * standardDeviation / Math.sqrt(values.length));
+    }
+
+
+
+    // Getters
+    //------------------------------------------------------------------------------------------------------------------
+    public int getCount() {
+        return count;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    /**
+     * @return sample standard deviation of fold values
+     */
+    public double getStandardDeviation() {
+        return standardDeviation;
+    }
+
+    public double getHalfWidth() {
+        return halfWidth;
+    }
+
+    public double getLower() {
+        return mean - halfWidth;
+    }
+
+    public double getUpper() {
+        return mean + halfWidth;
+    }
+    //------------------------------------------------------------------------------------------------------------------
+
+
+
+    @Override
+    public String toString() {
+        return String.format("%.4f +/- %.4f (95%% CI %.4f..%.4f, sd %.4f)", mean, halfWidth, getLower(), getUpper(), standardDeviation);
+    }
+}
@@ -0,0 +1,120 @@
+package com.tekleo.image_classifier.neural_network.crossvalidation;
+
+import com.tekleo.image_classifier.dataset.CifarDataset;
+import com.tekleo.image_classifier.dataset.index.IndexSplit;
+import com.tekleo.image_classifier.neural_network.CifarModel;
+import com.tekleo.image_classifier.neural_network.config.NetworkConfig;
+import com.tekleo.image_classifier.neural_network.config.TrainingConfig;
+import com.tekleo.image_classifier.neural_network.evaluation.Evaluations;
+import org.deeplearning4j.datasets.iterator.EarlyTerminationDataSetIterator;
+import org.deeplearning4j.eval.Evaluation;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * K-fold cross-validation of a network architecture on all images of a {@link CifarDataset}
+ *
+ * Folds are stratified splits of the dataset index (see {@link com.tekleo.image_classifier.dataset.index.DatasetIndex#folds(int, long)}),
+ * every fold trains a fresh {@link CifarModel} and evaluates it on its held out part
+ * Folds run on a pool of {@link TrainingConfig#getConcurrentFolds()} threads, their iterators read one memory-mapped tensor cache
+ * of the whole index, so images are decoded once and kept in memory once for all folds
+ *
+ * Number of folds and concurrency come from {@link TrainingConfig#withCrossValidation(int, int)}
+ */
+public class CrossValidation {
+    private static final int IMAGE_CLASSES = 10;
+    private static final long SEED = 666;
+    private static final String THREAD_NAME = "cross-validation-fold";
+
+    private final CifarDataset cifarDataset;
+    private final TrainingConfig trainingConfig;
+    private final NetworkConfig networkConfig;
+
+    /**
+     * @param cifarDataset dataset to split into folds
+     * @param trainingConfig training options of every fold, with cross-validation enabled
+     * @param networkConfig architecture of every fold model
+     */
+    public CrossValidation(CifarDataset cifarDataset, TrainingConfig trainingConfig, NetworkConfig networkConfig) {
+        if (!trainingConfig.isCrossValidationEnabled())
+            throw new IllegalArgumentException("Cross-validation needs at least 2 folds, see TrainingConfig.withCrossValidation()");
+        this.cifarDataset = cifarDataset;
+        this.trainingConfig = trainingConfig;
+        this.networkConfig = networkConfig;
+    }
+
+    public CrossValidationResult run() throws CrossValidationException {
+        return run(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Train and evaluate all folds, blocks until the last fold is done
+     * @param trainBatchLimit upper bound of training batches per epoch of every fold, used to benchmark on a part of the data
+     * @return results of all folds
+     * @throws CrossValidationException if any fold fails, the other folds are still finished first
+     */
+    public CrossValidationResult run(int trainBatchLimit) throws CrossValidationException {
+        List<IndexSplit> splits = cifarDataset.getIndex().folds(trainingConfig.getCrossValidationFolds(), SEED);
+        int concurrentFolds = Math.max(1, Math.min(trainingConfig.getConcurrentFolds(), splits.size()));
+        System.out.println(String.format("Cross-validating %s on %d images, %d folds, %d concurrent", networkConfig.getName(), cifarDataset.getIndex().size(), splits.size(), concurrentFolds));
+
+        // Build the shared cache before the folds start, so they don't all wait on the first one that needs it
+        cifarDataset.createDataSetIterator(splits.get(0).getTest(), networkConfig.getBatchSize());
+
+        long start = System.nanoTime();
+        AtomicInteger threadCounter = new AtomicInteger();
+        ExecutorService executorService = Executors.newFixedThreadPool(concurrentFolds, runnable -> new Thread(runnable, THREAD_NAME + "-" + threadCounter.getAndIncrement()));
+        List<Future<FoldResult>> futures = new ArrayList<>();
+        for (int fold = 0; fold < splits.size(); fold++) {
+            int foldNumber = fold;
+            futures.add(executorService.submit(() -> runFold(foldNumber, splits.get(foldNumber), trainBatchLimit)));
+        }
+        executorService.shutdown();
+
+        List<FoldResult> results = new ArrayList<>();
+        CrossValidationException failure = null;
+        for (int fold = 0; fold < futures.size(); fold++) {
+            try {
+                results.add(futures.get(fold).get());
+            } catch (ExecutionException e) {
+                if (failure == null)
+                    failure = new CrossValidationException("Fold " + fold + " failed", e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                executorService.shutdownNow();
+                throw new CrossValidationException("Interrupted while waiting for fold " + fold, e);
+            }
+        }
+        if (failure != null)
+            throw failure;
+
+        return new CrossValidationResult(results, concurrentFolds, (System.nanoTime() - start) / 1000000);
+    }
+
+    private FoldResult runFold(int fold, IndexSplit split, int trainBatchLimit) throws Exception {
+        DataSetIterator trainSet = cifarDataset.createDataSetIterator(split.getTrain(), networkConfig.getBatchSize());
+        DataSetIterator testSet = cifarDataset.createDataSetIterator(split.getTest(), networkConfig.getBatchSize());
+        if (trainBatchLimit < Integer.MAX_VALUE)
+            trainSet = new EarlyTerminationDataSetIterator(trainSet, trainBatchLimit);
+
+        CifarModel cifarModel = new CifarModel(trainSet, testSet, trainingConfig, networkConfig);
+        long trainStart = System.nanoTime();
+        cifarModel.train();
+        long trainMillis = (System.nanoTime() - trainStart) / 1000000;
+
+        long evaluationStart = System.nanoTime();
+        Evaluation evaluation = Evaluations.evaluate(cifarModel.getNetwork(), testSet, Evaluations.labels(testSet, IMAGE_CLASSES), trainingConfig.getEvaluationTopN(), Integer.MAX_VALUE);
+        long evaluationMillis = (System.nanoTime() - evaluationStart) / 1000000;
+
+        FoldResult result = new FoldResult(fold, split.getTrain().size(), split.getTest().size(), evaluation.accuracy(), evaluation.precision(), evaluation.recall(), evaluation.f1(), evaluation.topNAccuracy(), trainMillis, evaluationMillis);
+        System.out.println("Finished " + result);
+        return result;
+    }
+}
@@ -0,0 +1,26 @@
+package com.tekleo.image_classifier.neural_network.crossvalidation;
+
+/**
+ * Exception to be used when a fold of {@link CrossValidation} fails to train or evaluate
+ */
+public class CrossValidationException extends Exception {
+    public CrossValidationException() {
+
+    }
+
+    public CrossValidationException(String message) {
+        super(message);
+    }
+
+    public CrossValidationException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public CrossValidationException(Throwable cause) {
+        super(cause);
+    }
+
+    public CrossValidationException(String message, Throwable cause, boolean enableSuppression, boolean writableStackTrace) {
+        super(message, cause, enableSuppression, writableStackTrace);
+    }
+}
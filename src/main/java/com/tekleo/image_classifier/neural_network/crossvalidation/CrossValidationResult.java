@@ -0,0 +1,112 @@
+package com.tekleo.image_classifier.neural_network.crossvalidation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Results of all folds of a {@link CrossValidation} run, every metric is aggregated into a mean with a 95% confidence interval
+ *
+ * Wall-clock time of the run is compared with the sum of fold times, which is what training the folds one after another would take
+ * When folds run concurrently each of them is slowed down by the others, so the sum overestimates a real sequential run,
+ * compare with a run with one concurrent fold for an exact figure
+ *
+ * Immutable object
+ */
+public class CrossValidationResult {
+    private final List<FoldResult> folds;
+    private final int concurrentFolds;
+    private final long wallClockMillis;
+
+    public CrossValidationResult(List<FoldResult> folds, int concurrentFolds, long wallClockMillis) {
+        List<FoldResult> sortedFolds = new ArrayList<>(folds);
+        sortedFolds.sort(Comparator.comparingInt(FoldResult::getFold));
+        this.folds = Collections.unmodifiableList(sortedFolds);
+        this.concurrentFolds = concurrentFolds;
+        this.wallClockMillis = wallClockMillis;
+    }
+
+
+
+    // Getters
+    //------------------------------------------------------------------------------------------------------------------
+    public List<FoldResult> getFolds() {
+        return folds;
+    }
+
+    public int getConcurrentFolds() {
+        return concurrentFolds;
+    }
+
+    public long getWallClockMillis() {
+        return wallClockMillis;
+    }
+
+    /**
+     * @return sum of fold times, the wall-clock time of training the folds one after another at the speed they had in this run
+     */
+    public long getSequentialMillis() {
+        long millis = 0;
+        for (FoldResult fold : folds)
+            millis += fold.getMillis();
+        return millis;
+    }
+
+    public double getSpeedup() {
+        return wallClockMillis > 0 ? (double) getSequentialMillis() / wallClockMillis : 0;
+    }
+
+    public ConfidenceInterval getAccuracy() {
+        return aggregate(FoldResult::getAccuracy);
+    }
+
+    public ConfidenceInterval getPrecision() {
+        return aggregate(FoldResult::getPrecision);
+    }
+
+    public ConfidenceInterval getRecall() {
+        return aggregate(FoldResult::getRecall);
+    }
+
+    public ConfidenceInterval getF1() {
+        return aggregate(FoldResult::getF1);
+    }
+
+    public ConfidenceInterval getTopNAccuracy() {
+        return aggregate(FoldResult::getTopNAccuracy);
+    }
+    //------------------------------------------------------------------------------------------------------------------
+
+
+
+    private ConfidenceInterval aggregate(ToDoubleFunction<FoldResult> metric) {
+        double[] values = new double[folds.size()];
+        for (int i = 0; i < values.length; i++)
+            values[i] = metric.applyAsDouble(folds.get(i));
+        return ConfidenceInterval.of(values);
+    }
+
+    /**
+     * @return printable report, one line per fold, then aggregated metrics and timing
+     */
+    public String summary() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(folds.size()).append("-fold cross-validation, ").append(concurrentFolds).append(" concurrent").append(System.lineSeparator());
+        for (FoldResult fold : folds)
+            builder.append(" ").append(fold).append(System.lineSeparator());
+        builder.append(String.format(" %-10s %s", "Accuracy", getAccuracy())).append(System.lineSeparator());
+        builder.append(String.format(" %-10s %s", "Precision", getPrecision())).append(System.lineSeparator());
+        builder.append(String.format(" %-10s %s", "Recall", getRecall())).append(System.lineSeparator());
+        builder.append(String.format(" %-10s %s", "F1", getF1())).append(System.lineSeparator());
+        builder.append(String.format(" %-10s %s", "Top-N", getTopNAccuracy())).append(System.lineSeparator());
+        builder.append(String.format(" Wall-clock %.1f s, sum of folds %.1f s, speedup %.2fx", wallClockMillis / 1e3, getSequentialMillis() / 1e3, getSpeedup()));
+        return builder.toString();
+    }
+
+    @Override
+    public String toString() {
+        return "CrossValidationResult{" + "folds=" + folds.size() + ", concurrentFolds=" + concurrentFolds + ", wallClockMillis=" + wallClockMillis + ", accuracy=" + getAccuracy() + '}';
+    }
+}
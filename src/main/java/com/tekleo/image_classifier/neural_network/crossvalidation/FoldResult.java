@@ -0,0 +1,85 @@
+package com.tekleo.image_classifier.neural_network.crossvalidation;
+
+/**
+ * Test scores and timing of one cross-validation fold
+ *
+ * Immutable object
+ */
+public class FoldResult {
+    private final int fold;
+    private final int trainExamples;
+    private final int testExamples;
+    private final double accuracy;
+    private final double precision;
+    private final double recall;
+    private final double f1;
+    private final double topNAccuracy;
+    private final long trainMillis;
+    private final long evaluationMillis;
+
+    public FoldResult(int fold, int trainExamples, int testExamples, double accuracy, double precision, double recall, double f1, double topNAccuracy, long trainMillis, long evaluationMillis) {
+        this.fold = fold;
+        this.trainExamples = trainExamples;
+        this.testExamples = testExamples;
+        this.accuracy = accuracy;
+        this.precision = precision;
+        this.recall = recall;
+        this.f1 = f1;
+        this.topNAccuracy = topNAccuracy;
+        this.trainMillis = trainMillis;
+        this.evaluationMillis = evaluationMillis;
+    }
+
+    public int getFold() {
+        return fold;
+    }
+
+    public int getTrainExamples() {
+        return trainExamples;
+    }
+
+    public int getTestExamples() {
+        return testExamples;
+    }
+
+    public double getAccuracy() {
+        return accuracy;
+    }
+
+    public double getPrecision() {
+        return precision;
+    }
+
+    public double getRecall() {
+        return recall;
+    }
+
+    public double getF1() {
+        return f1;
+    }
+
+    public double getTopNAccuracy() {
+        return topNAccuracy;
+    }
+
+    public long getTrainMillis() {
+        return trainMillis;
+    }
+
+    public long getEvaluationMillis() {
+        return evaluationMillis;
+    }
+
+    /**
+     * @return time of the whole fold, training and evaluation
+     */
+    public long getMillis() {
+        return trainMillis + evaluationMillis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Fold %d: accuracy %.4f, precision %.4f, recall %.4f, F1 %.4f, top-N %.4f (train %d / test %d examples, %d ms train, %d ms evaluation)",
+                fold, accuracy, precision, recall, f1, topNAccuracy, trainExamples, testExamples, trainMillis, evaluationMillis);
+    }
+}
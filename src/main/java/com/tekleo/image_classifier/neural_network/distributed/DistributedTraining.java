@@ -0,0 +1,147 @@
+package com.tekleo.image_classifier.neural_network.distributed;
+
+import com.tekleo.image_classifier.dataset.CifarDataset;
+import com.tekleo.image_classifier.dataset.index.IndexEntry;
+import com.tekleo.image_classifier.neural_network.CifarModel;
+import com.tekleo.image_classifier.neural_network.config.NetworkConfig;
+import com.tekleo.image_classifier.neural_network.config.TrainingConfig;
+import com.tekleo.image_classifier.neural_network.evaluation.Evaluations;
+import com.tekleo.image_classifier.neural_network.helpers.JavaProcesses;
+import org.deeplearning4j.eval.Evaluation;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Multi-process data-parallel training on one machine, every worker is a separate JVM running {@link DistributedWorker}
+ *
+ * This process starts a {@link ParameterServer} on a free loopback port, writes the dataset, training and network configs into a job file
+ * and launches {@link TrainingConfig#getDistributedWorkers()} worker processes with the same java binary and class path
+ * Each worker trains on its own shard of the train split and exchanges threshold encoded updates through the server,
+ * when all of them are done the master copy of the parameters is evaluated on the test set
+ *
+ * Workers read the tensor cache of the whole index, which is built here before they start, and the page cache keeps one copy of it for all of them
+ * Output of the workers is printed with a [worker N] prefix
+ *
+ * Number of workers and the update threshold come from {@link TrainingConfig#withDistributedTraining(int, double)}
+ */
+public class DistributedTraining {
+    private static final int IMAGE_CLASSES = 10;
+    private static final String HOST = "127.0.0.1";
+    private static final String WORKER_HEAP = "-Xmx384m";
+    // Memory limits of a worker unless this process has its own, JavaCPP runs GC when a worker reaches them, 0 is no limit
+    // Physical memory of a worker also counts workspaces and pages of the memory-mapped tensor cache, so it isn't limited by default
+    private static final String[] WORKER_MEMORY_PROPERTIES = {"org.bytedeco.javacpp.maxbytes", "org.bytedeco.javacpp.maxphysicalbytes"};
+    private static final String[] WORKER_MEMORY_DEFAULTS = {"512m", "0"};
+    private static final String JOB_FILE_PREFIX = "distributed-job";
+    private static final String THREAD_NAME = "distributed-worker-output";
+
+    private final CifarDataset cifarDataset;
+    private final TrainingConfig trainingConfig;
+    private final NetworkConfig networkConfig;
+
+    /**
+     * @param cifarDataset dataset with tensor cache of loose image files, workers take shards of its train split
+     * @param trainingConfig training options of every worker, with distributed training enabled
+     * @param networkConfig architecture of the network
+     */
+    public DistributedTraining(CifarDataset cifarDataset, TrainingConfig trainingConfig, NetworkConfig networkConfig) {
+        if (!trainingConfig.isDistributedTrainingEnabled())
+            throw new IllegalArgumentException("Distributed training needs at least 1 worker, see TrainingConfig.withDistributedTraining()");
+        if (!cifarDataset.getConfig().isTensorCacheEnabled() || cifarDataset.getConfig().isArchiveEnabled())
+            throw new IllegalArgumentException("Distributed training needs the tensor cache of loose image files, see CifarDatasetConfig.withTensorCache()");
+        this.cifarDataset = cifarDataset;
+        this.trainingConfig = trainingConfig;
+        this.networkConfig = networkConfig;
+    }
+
+    public DistributedTrainingResult run() throws DistributedTrainingException {
+        return run(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Train with all workers and evaluate the result, blocks until the last worker is done
+     * @param trainBatchLimit upper bound of training batches per epoch of all workers together, split evenly between them,
+     *                        used to benchmark on a part of the data
+     * @return result
+     * @throws DistributedTrainingException if a worker process fails or the parameter server can't be started
+     */
+    public DistributedTrainingResult run(int trainBatchLimit) throws DistributedTrainingException {
+        int workers = trainingConfig.getDistributedWorkers();
+        int batchesPerWorker = trainBatchLimit < Integer.MAX_VALUE ? (trainBatchLimit + workers - 1) / workers : Integer.MAX_VALUE;
+        List<IndexEntry> trainEntries = cifarDataset.getIndexSplit().getTrain();
+        System.out.println(String.format("Distributed training of %s on %d images, %d worker processes, update threshold %.1e",
+                networkConfig.getName(), trainEntries.size(), workers, trainingConfig.getUpdateThreshold()));
+
+        // Build the shared cache before the workers start, so they don't all try to build it at once
+        cifarDataset.createDataSetIterator(trainEntries.subList(0, 1), networkConfig.getBatchSize());
+
+        File jobFile = null;
+        List<Process> processes = new ArrayList<>();
+        try (ParameterServer parameterServer = new ParameterServer(0)) {
+            // Configs are passed to the workers as one serialized file, so they train with exactly the objects given here
+            jobFile = JavaProcesses.writeJobFile(JOB_FILE_PREFIX, cifarDataset.getConfig(), trainingConfig, networkConfig);
+            long start = System.nanoTime();
+            List<Thread> outputThreads = new ArrayList<>();
+            for (int worker = 0; worker < workers; worker++) {
+                Process process = JavaProcesses.start(workerCommand(parameterServer.getPort(), worker, workers, jobFile, batchesPerWorker));
+                processes.add(process);
+                String prefix = "[worker " + worker + "] ";
+                outputThreads.add(JavaProcesses.pipeOutput(process, THREAD_NAME + "-" + worker, line -> System.out.println(prefix + line)));
+            }
+
+            for (int worker = 0; worker < workers; worker++) {
+                int exitCode = processes.get(worker).waitFor();
+                if (exitCode != 0)
+                    throw new DistributedTrainingException("Worker " + worker + " exited with code " + exitCode);
+            }
+            for (Thread outputThread : outputThreads)
+                outputThread.join();
+            long wallClockMillis = (System.nanoTime() - start) / 1000000;
+            if (parameterServer.getFinishedWorkers() != workers)
+                throw new DistributedTrainingException(parameterServer.getFinishedWorkers() + " of " + workers + " workers finished, errors: " + parameterServer.getErrors());
+
+            long evaluationStart = System.nanoTime();
+            Evaluation evaluation = evaluate(parameterServer.getParameters());
+            long evaluationMillis = (System.nanoTime() - evaluationStart) / 1000000;
+
+            DistributedTrainingResult result = new DistributedTrainingResult(workers, parameterServer.getExamples(), parameterServer.getPushes(), parameterServer.getRelayedUpdates(),
+                    parameterServer.getMeanDensity(), parameterServer.getUpdateBytes(), parameterServer.getDenseBytes(), parameterServer.getTrainingMillis(), wallClockMillis,
+                    evaluation.accuracy(), evaluation.topNAccuracy(), evaluationMillis);
+            System.out.println("Finished " + result);
+            return result;
+        } catch (IOException e) {
+            throw new DistributedTrainingException("Failed to start distributed training: ", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DistributedTrainingException("Interrupted while waiting for workers", e);
+        } finally {
+            for (Process process : processes)
+                if (process.isAlive())
+                    process.destroyForcibly();
+            if (jobFile != null)
+                jobFile.delete();
+        }
+    }
+
+    private Evaluation evaluate(float[] parameters) {
+        DataSetIterator testSet = cifarDataset.createTestDataSetIterator(networkConfig.getBatchSize());
+        CifarModel cifarModel = new CifarModel(testSet, testSet, trainingConfig, networkConfig);
+        cifarModel.getNetwork().setParams(Nd4j.create(parameters));
+        return Evaluations.evaluate(cifarModel.getNetwork(), testSet, Evaluations.labels(testSet, IMAGE_CLASSES), trainingConfig.getEvaluationTopN(), Integer.MAX_VALUE);
+    }
+
+    private List<String> workerCommand(int port, int worker, int workers, File jobFile, int batchesPerWorker) {
+        List<String> jvmOptions = new ArrayList<>();
+        jvmOptions.add(WORKER_HEAP);
+        for (int i = 0; i < WORKER_MEMORY_PROPERTIES.length; i++)
+            jvmOptions.add("-D" + WORKER_MEMORY_PROPERTIES[i] + "=" + System.getProperty(WORKER_MEMORY_PROPERTIES[i], WORKER_MEMORY_DEFAULTS[i]));
+        List<String> arguments = Arrays.asList(HOST, String.valueOf(port), String.valueOf(worker), String.valueOf(workers), jobFile.getPath(), String.valueOf(batchesPerWorker));
+        return JavaProcesses.command(jvmOptions, DistributedWorker.class, arguments);
+    }
+}
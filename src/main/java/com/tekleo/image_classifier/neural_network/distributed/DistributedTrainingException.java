@@ -0,0 +1,26 @@
+package com.tekleo.image_classifier.neural_network.distributed;
+
+/**
+ * Exception to be used when a worker process or the parameter server of {@link DistributedTraining} fails
+ */
+public class DistributedTrainingException extends Exception {
+    public DistributedTrainingException() {
+
+    }
+
+    public DistributedTrainingException(String message) {
+        super(message);
+    }
+
+    public DistributedTrainingException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public DistributedTrainingException(Throwable cause) {
+        super(cause);
+    }
+
+    public DistributedTrainingException(String message, Throwable cause, boolean enableSuppression, boolean writableStackTrace) {
+        super(message, cause, enableSuppression, writableStackTrace);
+    }
+}
@@ -0,0 +1,114 @@
+package com.tekleo.image_classifier.neural_network.distributed;
+
+/**
+ * Throughput, traffic and test scores of one {@link DistributedTraining} run
+ *
+ * Training time is measured by the parameter server, from the first worker joining to the last one leaving,
+ * wall-clock time also includes JVM startup and data loading of the workers
+ *
+ * Immutable object
+ */
+public class DistributedTrainingResult {
+    private final int workers;
+    private final long examples;
+    private final long pushes;
+    private final long relayedUpdates;
+    private final double meanDensity;
+    private final long updateBytes;
+    private final long denseBytes;
+    private final long trainingMillis;
+    private final long wallClockMillis;
+    private final double accuracy;
+    private final double topNAccuracy;
+    private final long evaluationMillis;
+
+    public DistributedTrainingResult(int workers, long examples, long pushes, long relayedUpdates, double meanDensity, long updateBytes, long denseBytes,
+                                     long trainingMillis, long wallClockMillis, double accuracy, double topNAccuracy, long evaluationMillis) {
+        this.workers = workers;
+        this.examples = examples;
+        this.pushes = pushes;
+        this.relayedUpdates = relayedUpdates;
+        this.meanDensity = meanDensity;
+        this.updateBytes = updateBytes;
+        this.denseBytes = denseBytes;
+        this.trainingMillis = trainingMillis;
+        this.wallClockMillis = wallClockMillis;
+        this.accuracy = accuracy;
+        this.topNAccuracy = topNAccuracy;
+        this.evaluationMillis = evaluationMillis;
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    /**
+     * @return number of training examples of all workers
+     */
+    public long getExamples() {
+        return examples;
+    }
+
+    public long getPushes() {
+        return pushes;
+    }
+
+    public long getRelayedUpdates() {
+        return relayedUpdates;
+    }
+
+    /**
+     * @return mean share of parameters changed by an update
+     */
+    public double getMeanDensity() {
+        return meanDensity;
+    }
+
+    public long getUpdateBytes() {
+        return updateBytes;
+    }
+
+    public long getDenseBytes() {
+        return denseBytes;
+    }
+
+    /**
+     * @return how many times less was sent than with plain float updates
+     */
+    public double getCompressionRatio() {
+        return updateBytes > 0 ? (double) denseBytes / updateBytes : 0;
+    }
+
+    public long getTrainingMillis() {
+        return trainingMillis;
+    }
+
+    public long getWallClockMillis() {
+        return wallClockMillis;
+    }
+
+    /**
+     * @return training examples of all workers per second of training time
+     */
+    public double getImagesPerSecond() {
+        return trainingMillis > 0 ? examples * 1000.0 / trainingMillis : 0;
+    }
+
+    public double getAccuracy() {
+        return accuracy;
+    }
+
+    public double getTopNAccuracy() {
+        return topNAccuracy;
+    }
+
+    public long getEvaluationMillis() {
+        return evaluationMillis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d worker(s): %d images in %.1f s (%.1f s wall-clock), %.1f images/s, accuracy %.4f, top-N %.4f, %d updates pushed, %d relayed, density %.3f%%, %.1f MB sent (%.0fx less than dense)",
+                workers, examples, trainingMillis / 1e3, wallClockMillis / 1e3, getImagesPerSecond(), accuracy, topNAccuracy, pushes, relayedUpdates, 100 * meanDensity, updateBytes / 1e6, getCompressionRatio());
+    }
+}
@@ -0,0 +1,152 @@
+package com.tekleo.image_classifier.neural_network.distributed;
+
+import com.tekleo.image_classifier.dataset.CifarDataset;
+import com.tekleo.image_classifier.dataset.CifarDatasetConfig;
+import com.tekleo.image_classifier.dataset.index.IndexEntry;
+import com.tekleo.image_classifier.dataset.pipeline.AugmentationConfig;
+import com.tekleo.image_classifier.neural_network.CifarModel;
+import com.tekleo.image_classifier.neural_network.config.NetworkConfig;
+import com.tekleo.image_classifier.neural_network.config.TrainingConfig;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Worker process of {@link DistributedTraining}, trains a replica of the network on its own shard of the train split
+ *
+ * Shard of worker k out of n is every n-th image of the train split starting from the k-th one, read from the shared tensor cache of the index
+ * After every batch the change of parameters made by the local updater is threshold encoded (see {@link ThresholdEncoder}),
+ * the local replica keeps only the encoded part, the rest stays in the residual of the encoder,
+ * the encoded part is pushed to the {@link ParameterServer} and the updates of the other workers it returns are applied on top,
+ * so every replica follows the master copy of the server, missing at most the updates pushed during its own last batch
+ * Updater state (momentum) stays local to every worker
+ *
+ * Dataset, training and network configs are read from the job file written by {@link DistributedTraining},
+ * epochs, backend threads and the initial threshold come from the training config, the shard is never augmented
+ *
+ * Arguments: host port worker workers job-file batches-per-epoch
+ */
+public class DistributedWorker {
+    private static final int REPORT_FREQUENCY = 20;
+
+    private final ParameterServerClient client;
+    private final int worker;
+    private final MultiLayerNetwork network;
+    private final DataSetIterator trainSet;
+    private final int numberOfEpochs;
+    private final int batchesPerEpoch;
+    private final ThresholdEncoder encoder;
+
+    /**
+     * @param client connection to the parameter server
+     * @param network replica, its initial parameters are replaced by the master copy
+     * @param trainSet shard of this worker
+     * @param numberOfEpochs number of passes over the shard
+     * @param batchesPerEpoch upper bound of batches per epoch
+     * @param threshold initial threshold of update encoding
+     */
+    public DistributedWorker(ParameterServerClient client, MultiLayerNetwork network, DataSetIterator trainSet, int numberOfEpochs, int batchesPerEpoch, float threshold) {
+        this.client = client;
+        this.worker = client.getWorker();
+        this.network = network;
+        this.trainSet = trainSet;
+        this.numberOfEpochs = numberOfEpochs;
+        this.batchesPerEpoch = batchesPerEpoch;
+        this.encoder = new ThresholdEncoder(network.numParams(), threshold);
+    }
+
+    /**
+     * Join the server, train all epochs and leave
+     * @throws IOException if an exchange with the server fails
+     */
+    public void train() throws IOException {
+        // Parameters go in and out through one staging array, a new off-heap array per batch would only be freed by GC
+        INDArray staging = network.params().dup();
+        float[] parameters = client.hello(staging.data().asFloat());
+        staging.data().setData(parameters);
+        network.setParams(staging);
+        float[] update = new float[parameters.length];
+
+        for (int epoch = 0; epoch < numberOfEpochs; epoch++) {
+            trainSet.reset();
+            long start = System.nanoTime();
+            long examples = 0;
+            long changed = 0;
+            long received = 0;
+            for (int batch = 0; batch < batchesPerEpoch && trainSet.hasNext(); batch++) {
+                DataSet dataSet = trainSet.next();
+                network.fit(dataSet);
+
+                // Local replica keeps only what is sent, the rest of the change goes to the residual
+                staging.assign(network.params());
+                float[] trained = staging.data().asFloat();
+                for (int i = 0; i < parameters.length; i++)
+                    update[i] = trained[i] - parameters[i];
+                EncodedUpdate encodedUpdate = encoder.encode(update);
+                encodedUpdate.applyTo(parameters);
+                List<EncodedUpdate> otherUpdates = client.push(dataSet.numExamples(), encodedUpdate);
+                for (EncodedUpdate otherUpdate : otherUpdates)
+                    otherUpdate.applyTo(parameters);
+                staging.data().setData(parameters);
+                network.setParams(staging);
+
+                examples += dataSet.numExamples();
+                changed += encodedUpdate.getSize();
+                received += otherUpdates.size();
+                if ((batch + 1) % REPORT_FREQUENCY == 0)
+                    System.out.println(String.format("Worker %d: epoch %d, batch %d, score %.4f, threshold %.2e, %.3f%% of parameters sent, %d updates received, %.1f images/s",
+                            worker, epoch, batch + 1, network.score(), encoder.getThreshold(), 100.0 * changed / (batch + 1) / parameters.length, received, examples / ((System.nanoTime() - start) / 1e9)));
+            }
+            System.out.println(String.format("Worker %d: completed epoch %d, %d images in %.1f s", worker, epoch, examples, (System.nanoTime() - start) / 1e9));
+        }
+        client.done();
+    }
+
+
+
+    // Worker process
+    //------------------------------------------------------------------------------------------------------------------
+    public static void main(String[] args) {
+        try {
+            String host = args[0];
+            int port = Integer.parseInt(args[1]);
+            int worker = Integer.parseInt(args[2]);
+            int workers = Integer.parseInt(args[3]);
+            int batchesPerEpoch = Integer.parseInt(args[5]);
+            CifarDatasetConfig cifarDatasetConfig;
+            TrainingConfig trainingConfig;
+            NetworkConfig networkConfig;
+            try (ObjectInputStream inputStream = new ObjectInputStream(new FileInputStream(args[4]))) {
+                cifarDatasetConfig = (CifarDatasetConfig) inputStream.readObject();
+                trainingConfig = (TrainingConfig) inputStream.readObject();
+                networkConfig = (NetworkConfig) inputStream.readObject();
+            }
+
+            // Shard iterator reads the tensor cache directly, the prefetching iterators of the dataset would only take threads
+            CifarDataset cifarDataset = new CifarDataset(cifarDatasetConfig.withPrefetch(0).withAugmentation(new AugmentationConfig()));
+            List<IndexEntry> trainEntries = cifarDataset.getIndexSplit().getTrain();
+            List<IndexEntry> shard = new ArrayList<>();
+            for (int i = worker; i < trainEntries.size(); i += workers)
+                shard.add(trainEntries.get(i));
+            DataSetIterator trainSet = cifarDataset.createDataSetIterator(shard, networkConfig.getBatchSize());
+            System.out.println("Worker " + worker + ": " + shard.size() + " of " + trainEntries.size() + " train images");
+
+            CifarModel cifarModel = new CifarModel(trainSet, trainSet, trainingConfig, networkConfig);
+            try (ParameterServerClient client = new ParameterServerClient(host, port, worker)) {
+                new DistributedWorker(client, cifarModel.getNetwork(), trainSet, trainingConfig.getNumberOfEpochs(), batchesPerEpoch, (float) trainingConfig.getUpdateThreshold()).train();
+            }
+            System.exit(0);
+        } catch (Throwable e) {
+            e.printStackTrace(System.out);
+            System.exit(1);
+        }
+    }
+    //------------------------------------------------------------------------------------------------------------------
+}
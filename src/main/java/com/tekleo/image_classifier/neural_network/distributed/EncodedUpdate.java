@@ -0,0 +1,203 @@
+package com.tekleo.image_classifier.neural_network.distributed;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Threshold encoded change of the flattened network parameters, made by {@link ThresholdEncoder}
+ *
+ * Every encoded parameter changes by a whole number of thresholds, level 1..{@link #MAX_LEVEL} with a sign, all others don't change,
+ * so an update is the threshold, a list of signed positions (position + 1, negative for a decrease) and a level for each of them
+ *
+ * On the wire an update is sent in the smallest of three layouts:
+ *  - SPARSE: number of positions, the signed positions and their levels, 5 bytes per changed parameter
+ *  - BITMAP: 2 bits per parameter (00 no change, 01 plus, 10 minus), only when every level is 1
+ *  - LEVELS: one signed byte per parameter, for dense updates with bigger levels
+ *
+ * Immutable object
+ */
+public class EncodedUpdate {
+    public static final int MAX_LEVEL = Byte.MAX_VALUE;
+    private static final byte SPARSE = 0;
+    private static final byte BITMAP = 1;
+    private static final byte LEVELS = 2;
+    private static final int HEADER_BYTES = 1 + 4 + 4;
+    private static final int PLUS = 1;
+    private static final int MINUS = 2;
+
+    private final int length;
+    private final float threshold;
+    private final int[] positions;
+    private final byte[] levels;
+    private final boolean unitLevels;
+
+    /**
+     * @param length number of parameters of the network
+     * @param threshold size of one level
+     * @param positions signed positions, position + 1 for an increase, -(position + 1) for a decrease, sorted by position
+     * @param levels number of thresholds each parameter changes by, 1..{@link #MAX_LEVEL}, same order as positions
+     */
+    public EncodedUpdate(int length, float threshold, int[] positions, byte[] levels) {
+        if (positions.length != levels.length)
+            throw new IllegalArgumentException("Got " + positions.length + " positions and " + levels.length + " levels");
+        this.length = length;
+        this.threshold = threshold;
+        this.positions = positions;
+        this.levels = levels;
+        boolean unitLevels = true;
+        for (byte level : levels)
+            unitLevels &= level == 1;
+        this.unitLevels = unitLevels;
+    }
+
+
+
+    // Getters
+    //------------------------------------------------------------------------------------------------------------------
+    public int getLength() {
+        return length;
+    }
+
+    public float getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * @return number of changed parameters
+     */
+    public int getSize() {
+        return positions.length;
+    }
+
+    /**
+     * @return share of changed parameters, 0..1
+     */
+    public double getDensity() {
+        return length > 0 ? (double) positions.length / length : 0;
+    }
+
+    /**
+     * @return size of the update on the wire, in bytes
+     */
+    public int getEncodedBytes() {
+        return HEADER_BYTES + layoutBytes(layout());
+    }
+
+    /**
+     * @return size of the same update sent as plain floats, in bytes
+     */
+    public long getDenseBytes() {
+        return 4L * length;
+    }
+    //------------------------------------------------------------------------------------------------------------------
+
+
+
+    // Applying
+    //------------------------------------------------------------------------------------------------------------------
+    /**
+     * Add the update to parameters
+     * @param parameters flattened network parameters, at least {@link #getLength()} long
+     */
+    public void applyTo(float[] parameters) {
+        for (int i = 0; i < positions.length; i++) {
+            int signedPosition = positions[i];
+            float change = levels[i] * threshold;
+            if (signedPosition > 0)
+                parameters[signedPosition - 1] += change;
+            else
+                parameters[-signedPosition - 1] -= change;
+        }
+    }
+    //------------------------------------------------------------------------------------------------------------------
+
+
+
+    // Wire format
+    //------------------------------------------------------------------------------------------------------------------
+    public void write(DataOutputStream outputStream) throws IOException {
+        byte layout = layout();
+        outputStream.writeByte(layout);
+        outputStream.writeInt(length);
+        outputStream.writeFloat(threshold);
+        if (layout == SPARSE) {
+            outputStream.writeInt(positions.length);
+            for (int signedPosition : positions)
+                outputStream.writeInt(signedPosition);
+            outputStream.write(levels);
+        } else if (layout == BITMAP) {
+            byte[] bitmap = new byte[bitmapBytes(length)];
+            for (int signedPosition : positions) {
+                int position = Math.abs(signedPosition) - 1;
+                bitmap[position >> 2] |= (signedPosition > 0 ? PLUS : MINUS) << ((position & 3) << 1);
+            }
+            outputStream.write(bitmap);
+        } else {
+            byte[] signedLevels = new byte[length];
+            for (int i = 0; i < positions.length; i++)
+                signedLevels[Math.abs(positions[i]) - 1] = (byte) (positions[i] > 0 ? levels[i] : -levels[i]);
+            outputStream.write(signedLevels);
+        }
+    }
+
+    public static EncodedUpdate read(DataInputStream inputStream) throws IOException {
+        byte layout = inputStream.readByte();
+        int length = inputStream.readInt();
+        float threshold = inputStream.readFloat();
+        if (layout == SPARSE) {
+            int[] positions = new int[inputStream.readInt()];
+            for (int i = 0; i < positions.length; i++)
+                positions[i] = inputStream.readInt();
+            byte[] levels = new byte[positions.length];
+            inputStream.readFully(levels);
+            return new EncodedUpdate(length, threshold, positions, levels);
+        }
+
+        int[] positions = new int[length];
+        byte[] levels = new byte[length];
+        int size = 0;
+        if (layout == BITMAP) {
+            byte[] bitmap = new byte[bitmapBytes(length)];
+            inputStream.readFully(bitmap);
+            for (int position = 0; position < length; position++) {
+                int code = (bitmap[position >> 2] >> ((position & 3) << 1)) & 3;
+                if (code == PLUS || code == MINUS) {
+                    positions[size] = code == PLUS ? position + 1 : -(position + 1);
+                    levels[size++] = 1;
+                }
+            }
+        } else if (layout == LEVELS) {
+            byte[] signedLevels = new byte[length];
+            inputStream.readFully(signedLevels);
+            for (int position = 0; position < length; position++) {
+                if (signedLevels[position] != 0) {
+                    positions[size] = signedLevels[position] > 0 ? position + 1 : -(position + 1);
+                    levels[size++] = (byte) Math.abs(signedLevels[position]);
+                }
+            }
+        } else {
+            throw new IOException("Unknown update layout " + layout);
+        }
+        return new EncodedUpdate(length, threshold, Arrays.copyOf(positions, size), Arrays.copyOf(levels, size));
+    }
+
+    private byte layout() {
+        byte layout = unitLevels && layoutBytes(BITMAP) < layoutBytes(SPARSE) ? BITMAP : SPARSE;
+        return layoutBytes(LEVELS) < layoutBytes(layout) ? LEVELS : layout;
+    }
+
+    private int layoutBytes(byte layout) {
+        if (layout == SPARSE)
+            return 4 + 5 * positions.length;
+        if (layout == BITMAP)
+            return bitmapBytes(length);
+        return length;
+    }
+
+    private static int bitmapBytes(int length) {
+        return (length + 3) / 4;
+    }
+    //------------------------------------------------------------------------------------------------------------------
+}
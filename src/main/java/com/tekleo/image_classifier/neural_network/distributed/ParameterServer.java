@@ -0,0 +1,330 @@
+package com.tekleo.image_classifier.neural_network.distributed;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parameter server of {@link DistributedTraining}, keeps the master copy of the network parameters and relays updates between workers,
+ * listens on the loopback interface only, one thread per connected worker
+ *
+ * Protocol, every message starts with a one byte type, floats and ints are big endian:
+ *  - HELLO worker id, parameters: the first worker's parameters become the master copy, every worker gets the master copy back
+ *  - PUSH examples, {@link EncodedUpdate}: the update is added to the master copy and to the log,
+ *    the worker gets back all updates of other workers pushed since its last exchange
+ *  - DONE: the worker leaves, its position in the log is dropped
+ * A connection starts with {@link #MAGIC} and {@link #VERSION}, updates of the log are dropped once every connected worker has received them
+ *
+ * Workers don't wait for each other, so an update is applied on top of parameters that may miss the most recent updates of other workers,
+ * with threshold encoded updates this staleness is bounded by one exchange per worker
+ */
+public class ParameterServer implements AutoCloseable {
+    static final int MAGIC = 0x43494641;
+    static final int VERSION = 1;
+    static final byte HELLO = 1;
+    static final byte PUSH = 2;
+    static final byte DONE = 3;
+    private static final String THREAD_NAME = "parameter-server";
+
+    private final ServerSocket serverSocket;
+    private final List<Socket> sockets;
+    private final List<String> errors;
+
+    // Master copy and the log of updates not yet received by every worker, guarded by this
+    private float[] parameters;
+    private final List<EncodedUpdate> log;
+    private final List<Integer> logWorkers;
+    private long logStart;
+    private final Map<Integer, Long> cursors;
+
+    // Statistics, guarded by this
+    private int connectedWorkers;
+    private int finishedWorkers;
+    private long pushes;
+    private long examples;
+    private long changedParameters;
+    private long relayedUpdates;
+    private long pushedBytes;
+    private long relayedBytes;
+    private long denseBytes;
+    private long firstHelloNanos;
+    private long lastDoneNanos;
+
+    /**
+     * Start listening
+     * @param port port, 0 picks a free one (see {@link #getPort()})
+     * @throws IOException if the port can't be bound
+     */
+    public ParameterServer(int port) throws IOException {
+        this.serverSocket = new ServerSocket(port, 0, InetAddress.getLoopbackAddress());
+        this.sockets = new ArrayList<>();
+        this.errors = new ArrayList<>();
+        this.log = new ArrayList<>();
+        this.logWorkers = new ArrayList<>();
+        this.cursors = new HashMap<>();
+        Thread acceptThread = new Thread(this::accept, THREAD_NAME);
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                synchronized (sockets) {
+                    sockets.add(socket);
+                }
+                Thread connectionThread = new Thread(() -> serve(socket), THREAD_NAME + "-" + socket.getPort());
+                connectionThread.setDaemon(true);
+                connectionThread.start();
+            } catch (IOException e) {
+                if (!serverSocket.isClosed())
+                    error("Accept failed: " + e);
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        int worker = -1;
+        try (DataInputStream inputStream = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+            if (inputStream.readInt() != MAGIC || inputStream.readInt() != VERSION)
+                throw new IOException("Not a worker of this version");
+
+            while (true) {
+                byte type = inputStream.readByte();
+                if (type == HELLO) {
+                    worker = inputStream.readInt();
+                    float[] master = hello(worker, readFloats(inputStream));
+                    writeFloats(outputStream, master);
+                } else if (type == PUSH) {
+                    int batchExamples = inputStream.readInt();
+                    List<EncodedUpdate> updates = push(worker, batchExamples, EncodedUpdate.read(inputStream));
+                    outputStream.writeInt(updates.size());
+                    for (EncodedUpdate update : updates)
+                        update.write(outputStream);
+                } else if (type == DONE) {
+                    done(worker);
+                    outputStream.writeByte(DONE);
+                    outputStream.flush();
+                    return;
+                } else {
+                    throw new IOException("Unknown message type " + type);
+                }
+                outputStream.flush();
+            }
+        } catch (EOFException | SocketException e) {
+            error("Worker " + worker + " disconnected without DONE");
+        } catch (IOException | RuntimeException e) {
+            error("Worker " + worker + " failed: " + e);
+        } finally {
+            synchronized (this) {
+                cursors.remove(worker);
+                trimLog();
+            }
+            synchronized (sockets) {
+                sockets.remove(socket);
+            }
+        }
+    }
+
+
+
+    // Message handlers
+    //------------------------------------------------------------------------------------------------------------------
+    private synchronized float[] hello(int worker, float[] initialParameters) throws IOException {
+        if (parameters == null) {
+            parameters = initialParameters;
+            firstHelloNanos = System.nanoTime();
+        } else if (parameters.length != initialParameters.length) {
+            throw new IOException("Worker " + worker + " has " + initialParameters.length + " parameters, the master copy has " + parameters.length);
+        }
+        if (cursors.containsKey(worker))
+            throw new IOException("Worker " + worker + " is already connected");
+        // Everything in the log is already in the master copy
+        cursors.put(worker, logStart + log.size());
+        connectedWorkers++;
+        return parameters.clone();
+    }
+
+    private synchronized List<EncodedUpdate> push(int worker, int batchExamples, EncodedUpdate update) throws IOException {
+        Long cursor = cursors.get(worker);
+        if (cursor == null)
+            throw new IOException("PUSH before HELLO");
+        if (update.getLength() != parameters.length)
+            throw new IOException("Update of " + update.getLength() + " parameters, the master copy has " + parameters.length);
+
+        List<EncodedUpdate> updates = new ArrayList<>();
+        for (int i = (int) (cursor - logStart); i < log.size(); i++) {
+            if (logWorkers.get(i) != worker) {
+                updates.add(log.get(i));
+                relayedBytes += log.get(i).getEncodedBytes();
+                denseBytes += log.get(i).getDenseBytes();
+            }
+        }
+        relayedUpdates += updates.size();
+
+        update.applyTo(parameters);
+        log.add(update);
+        logWorkers.add(worker);
+        cursors.put(worker, logStart + log.size());
+        trimLog();
+
+        pushes++;
+        examples += batchExamples;
+        changedParameters += update.getSize();
+        pushedBytes += update.getEncodedBytes();
+        denseBytes += update.getDenseBytes();
+        return updates;
+    }
+
+    private synchronized void done(int worker) {
+        cursors.remove(worker);
+        finishedWorkers++;
+        lastDoneNanos = System.nanoTime();
+        trimLog();
+    }
+
+    // Drop updates every connected worker already has
+    private void trimLog() {
+        long oldest = logStart + log.size();
+        for (long cursor : cursors.values())
+            oldest = Math.min(oldest, cursor);
+        int dropped = (int) (oldest - logStart);
+        if (dropped > 0) {
+            log.subList(0, dropped).clear();
+            logWorkers.subList(0, dropped).clear();
+            logStart = oldest;
+        }
+    }
+
+    private void error(String message) {
+        System.out.println("Parameter server: " + message);
+        synchronized (errors) {
+            errors.add(message);
+        }
+    }
+    //------------------------------------------------------------------------------------------------------------------
+
+
+
+    // Getters
+    //------------------------------------------------------------------------------------------------------------------
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * @return copy of the master parameters, null before the first worker connected
+     */
+    public synchronized float[] getParameters() {
+        return parameters != null ? parameters.clone() : null;
+    }
+
+    public synchronized int getConnectedWorkers() {
+        return connectedWorkers;
+    }
+
+    public synchronized int getFinishedWorkers() {
+        return finishedWorkers;
+    }
+
+    public synchronized long getPushes() {
+        return pushes;
+    }
+
+    /**
+     * @return number of training examples of all pushed updates
+     */
+    public synchronized long getExamples() {
+        return examples;
+    }
+
+    /**
+     * @return mean share of parameters changed by a pushed update
+     */
+    public synchronized double getMeanDensity() {
+        return pushes > 0 ? (double) changedParameters / pushes / parameters.length : 0;
+    }
+
+    public synchronized long getRelayedUpdates() {
+        return relayedUpdates;
+    }
+
+    /**
+     * @return bytes of updates sent to the server and back to workers, without message headers and HELLO parameters
+     */
+    public synchronized long getUpdateBytes() {
+        return pushedBytes + relayedBytes;
+    }
+
+    /**
+     * @return bytes the same updates would take as plain floats
+     */
+    public synchronized long getDenseBytes() {
+        return denseBytes;
+    }
+
+    /**
+     * @return time from the first HELLO to the last DONE, that is training time without JVM startup and data loading of the workers
+     */
+    public synchronized long getTrainingMillis() {
+        return lastDoneNanos > firstHelloNanos ? (lastDoneNanos - firstHelloNanos) / 1000000 : 0;
+    }
+
+    /**
+     * @return connection errors, empty if every worker connected, trained and left with DONE
+     */
+    public List<String> getErrors() {
+        synchronized (errors) {
+            return Collections.unmodifiableList(new ArrayList<>(errors));
+        }
+    }
+    //------------------------------------------------------------------------------------------------------------------
+
+
+
+    // Others
+    //------------------------------------------------------------------------------------------------------------------
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        synchronized (sockets) {
+            for (Socket socket : sockets)
+                socket.close();
+            sockets.clear();
+        }
+    }
+    //------------------------------------------------------------------------------------------------------------------
+
+
+
+    // Static helpers
+    //------------------------------------------------------------------------------------------------------------------
+    static float[] readFloats(DataInputStream inputStream) throws IOException {
+        float[] values = new float[inputStream.readInt()];
+        for (int i = 0; i < values.length; i++)
+            values[i] = inputStream.readFloat();
+        return values;
+    }
+
+    static void writeFloats(DataOutputStream outputStream, float[] values) throws IOException {
+        outputStream.writeInt(values.length);
+        for (float value : values)
+            outputStream.writeFloat(value);
+    }
+    //------------------------------------------------------------------------------------------------------------------
+}
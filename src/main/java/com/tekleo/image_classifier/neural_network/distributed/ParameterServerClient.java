@@ -0,0 +1,89 @@
+package com.tekleo.image_classifier.neural_network.distributed;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Worker side of the {@link ParameterServer} protocol, one connection per worker, not thread-safe
+ */
+public class ParameterServerClient implements AutoCloseable {
+    private final int worker;
+    private final Socket socket;
+    private final DataInputStream inputStream;
+    private final DataOutputStream outputStream;
+
+    /**
+     * @param host host of the parameter server
+     * @param port port of the parameter server
+     * @param worker id of this worker, unique among connected workers
+     * @throws IOException if the server can't be reached
+     */
+    public ParameterServerClient(String host, int port, int worker) throws IOException {
+        this.worker = worker;
+        this.socket = new Socket(host, port);
+        this.socket.setTcpNoDelay(true);
+        this.inputStream = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        this.outputStream = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        outputStream.writeInt(ParameterServer.MAGIC);
+        outputStream.writeInt(ParameterServer.VERSION);
+    }
+
+    /**
+     * Join training
+     * @param parameters initial parameters of this worker, they become the master copy if this worker is the first one
+     * @return master copy of the parameters, training should continue from them
+     * @throws IOException if the exchange fails
+     */
+    public float[] hello(float[] parameters) throws IOException {
+        outputStream.writeByte(ParameterServer.HELLO);
+        outputStream.writeInt(worker);
+        ParameterServer.writeFloats(outputStream, parameters);
+        outputStream.flush();
+        return ParameterServer.readFloats(inputStream);
+    }
+
+    /**
+     * Send an update, the caller applies it to its own parameters
+     * @param examples number of training examples the update was computed on
+     * @param update encoded update
+     * @return updates of other workers since the previous exchange, in the order the server applied them
+     * @throws IOException if the exchange fails
+     */
+    public List<EncodedUpdate> push(int examples, EncodedUpdate update) throws IOException {
+        outputStream.writeByte(ParameterServer.PUSH);
+        outputStream.writeInt(examples);
+        update.write(outputStream);
+        outputStream.flush();
+        int count = inputStream.readInt();
+        List<EncodedUpdate> updates = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+            updates.add(EncodedUpdate.read(inputStream));
+        return updates;
+    }
+
+    /**
+     * Leave training, waits until the server has acknowledged it
+     * @throws IOException if the exchange fails
+     */
+    public void done() throws IOException {
+        outputStream.writeByte(ParameterServer.DONE);
+        outputStream.flush();
+        if (inputStream.readByte() != ParameterServer.DONE)
+            throw new IOException("DONE was not acknowledged");
+    }
+
+    public int getWorker() {
+        return worker;
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}
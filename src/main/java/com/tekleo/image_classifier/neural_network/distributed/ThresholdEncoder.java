@@ -0,0 +1,114 @@
+package com.tekleo.image_classifier.neural_network.distributed;
+
+import java.util.Arrays;
+
+/**
+ * Threshold encoding of parameter updates with a residual, as in Strom's "Scalable distributed DNN training using commodity GPU cloud computing"
+ *
+ * Every update is added to the residual, then each parameter whose residual reached the threshold is sent as a whole number of thresholds
+ * and the sent part is taken out of the residual, everything else stays there until it grows big enough, so no part of an update is lost, it is only delayed
+ * Strom sends a single threshold per parameter, here up to {@link EncodedUpdate#MAX_LEVEL} of them, so parameters that move fast
+ * (like running statistics of batch normalization) don't fall behind by many iterations, updates where all levels are 1 still take 2 bits per parameter
+ *
+ * Threshold adapts to keep the share of sent parameters between the min and max density,
+ * it grows when too many parameters are sent and shrinks when too few are
+ *
+ * One encoder per worker, not thread-safe
+ */
+public class ThresholdEncoder {
+    public static final double DEFAULT_MIN_DENSITY = 1e-3;
+    public static final double DEFAULT_MAX_DENSITY = 5e-2;
+    private static final float ADAPTATION_RATE = 1.2f;
+
+    private final float[] residual;
+    private final double minDensity;
+    private final double maxDensity;
+    private float threshold;
+    private int[] positions;
+    private byte[] levels;
+
+    public ThresholdEncoder(int length, float threshold) {
+        this(length, threshold, DEFAULT_MIN_DENSITY, DEFAULT_MAX_DENSITY);
+    }
+
+    /**
+     * @param length number of parameters of the network
+     * @param threshold initial threshold
+     * @param minDensity threshold shrinks when a smaller share of parameters is sent, 0 never shrinks it
+     * @param maxDensity threshold grows when a bigger share of parameters is sent, 1 never grows it
+     */
+    public ThresholdEncoder(int length, float threshold, double minDensity, double maxDensity) {
+        if (threshold <= 0)
+            throw new IllegalArgumentException("Threshold must be positive, got " + threshold);
+        this.residual = new float[length];
+        this.minDensity = minDensity;
+        this.maxDensity = maxDensity;
+        this.threshold = threshold;
+        this.positions = new int[Math.max(16, length / 64)];
+        this.levels = new byte[positions.length];
+    }
+
+    /**
+     * Add an update to the residual and take out its encoded part
+     * @param update change of every parameter, not modified
+     * @return encoded part, the rest stays in the residual
+     */
+    public EncodedUpdate encode(float[] update) {
+        float currentThreshold = threshold;
+        int size = 0;
+        for (int i = 0; i < residual.length; i++) {
+            float value = residual[i] + update[i];
+            if (value >= currentThreshold || value <= -currentThreshold) {
+                int level = (int) Math.min(EncodedUpdate.MAX_LEVEL, Math.abs(value) / currentThreshold);
+                if (value > 0) {
+                    value -= level * currentThreshold;
+                    size = add(size, i + 1, level);
+                } else {
+                    value += level * currentThreshold;
+                    size = add(size, -(i + 1), level);
+                }
+            }
+            residual[i] = value;
+        }
+
+        EncodedUpdate encodedUpdate = new EncodedUpdate(residual.length, currentThreshold, Arrays.copyOf(positions, size), Arrays.copyOf(levels, size));
+        double density = encodedUpdate.getDensity();
+        if (density > maxDensity)
+            threshold *= ADAPTATION_RATE;
+        else if (density < minDensity)
+            threshold /= ADAPTATION_RATE;
+        return encodedUpdate;
+    }
+
+    private int add(int size, int signedPosition, int level) {
+        if (size == positions.length) {
+            positions = Arrays.copyOf(positions, positions.length * 2);
+            levels = Arrays.copyOf(levels, levels.length * 2);
+        }
+        positions[size] = signedPosition;
+        levels[size] = (byte) level;
+        return size + 1;
+    }
+
+
+
+    // Getters
+    //------------------------------------------------------------------------------------------------------------------
+    /**
+     * @return threshold of the next update
+     */
+    public float getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * @return sum of absolute values of everything not sent yet
+     */
+    public double getResidualNorm() {
+        double norm = 0;
+        for (float value : residual)
+            norm += Math.abs(value);
+        return norm;
+    }
+    //------------------------------------------------------------------------------------------------------------------
+}
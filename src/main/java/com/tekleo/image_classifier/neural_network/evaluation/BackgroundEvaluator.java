@@ -0,0 +1,97 @@
+package com.tekleo.image_classifier.neural_network.evaluation;
+
+import org.deeplearning4j.eval.Evaluation;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Evaluates snapshots of a training network on a test set, on a background thread, while training moves on to the next epoch
+ *
+ * The training thread only copies the parameter array, the snapshot gets its own network over that copy
+ * At most one snapshot waits for evaluation, if evaluation can't keep up the older waiting snapshot is dropped
+ * The evaluator owns its test set iterator, it is reset and read on the evaluator thread at any time from the first submit until close,
+ * so it must be an iterator no other thread reads, not the test set iterator of the model
+ */
+public class BackgroundEvaluator implements AutoCloseable {
+    private static final String THREAD_NAME = "cifar-evaluation";
+
+    private final DataSetIterator testSet;
+    private final List<String> labels;
+    private final int topN;
+    private final ThreadPoolExecutor executor;
+    private volatile Evaluation lastEvaluation;
+
+    /**
+     * @param testSet iterator over the test set, used by nothing else, see {@link com.tekleo.image_classifier.dataset.CifarDataset#createTestDataSetIterator(int)}
+     * @param labels class labels
+     * @param topN N of the top-N accuracy
+     */
+    public BackgroundEvaluator(DataSetIterator testSet, List<String> labels, int topN) {
+        this.testSet = testSet;
+        this.labels = labels;
+        this.topN = topN;
+        this.executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(1), runnable -> {
+            Thread thread = new Thread(runnable, THREAD_NAME);
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.DiscardOldestPolicy());
+    }
+
+    /**
+     * Snapshot parameters of the network and queue the snapshot for evaluation, returns right after the snapshot is taken
+     * Must be called from the thread that trains the network, between iterations
+     * @param network network to evaluate
+     * @param epoch index of the completed epoch
+     */
+    public void submit(MultiLayerNetwork network, int epoch) {
+        MultiLayerConfiguration configuration = network.getLayerWiseConfigurations().clone();
+        INDArray parameters = network.params().dup();
+        executor.execute(() -> evaluate(configuration, parameters, epoch));
+    }
+
+    /**
+     * @return evaluation of the latest evaluated snapshot, or null if there is none yet
+     */
+    public Evaluation getLastEvaluation() {
+        return lastEvaluation;
+    }
+
+    /**
+     * Wait for the queued evaluation to finish and stop the evaluator thread
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+
+    // Evaluator thread
+    //------------------------------------------------------------------------------------------------------------------
+    private void evaluate(MultiLayerConfiguration configuration, INDArray parameters, int epoch) {
+        try {
+            long start = System.currentTimeMillis();
+            MultiLayerNetwork snapshot = new MultiLayerNetwork(configuration);
+            snapshot.init(parameters, false);
+
+            Evaluation evaluation = Evaluations.evaluate(snapshot, testSet, labels, topN, Integer.MAX_VALUE);
+            lastEvaluation = evaluation;
+            System.out.println(Evaluations.summary("Test set after epoch " + epoch, evaluation, System.currentTimeMillis() - start));
+        } catch (Exception e) {
+            System.err.println("Failed to evaluate epoch " + epoch + ": " + e);
+        }
+    }
+    //------------------------------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,79 @@
+package com.tekleo.image_classifier.neural_network.evaluation;
+
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+/**
+ * Watches validation accuracy after every epoch, keeps a copy of the parameters of the best epoch and tells when to stop
+ * Training stops after a number of epochs in a row (patience) without an improvement of at least the minimum delta
+ *
+ * Not thread-safe, used by the thread that trains the network, between epochs
+ */
+public class EarlyStopping {
+    private final int patience;
+    private final double minDelta;
+    private double bestAccuracy;
+    private int bestEpoch;
+    private INDArray bestParameters;
+    private int epochsWithoutImprovement;
+    private int completedEpochs;
+
+    /**
+     * @param patience number of epochs without improvement before training stops
+     * @param minDelta smallest increase of validation accuracy that counts as an improvement
+     */
+    public EarlyStopping(int patience, double minDelta) {
+        this.patience = patience;
+        this.minDelta = minDelta;
+        this.bestAccuracy = Double.NEGATIVE_INFINITY;
+        this.bestEpoch = -1;
+    }
+
+    /**
+     * Record the validation accuracy of a completed epoch, parameters are copied if it is the best epoch so far
+     * @param network trained network
+     * @param epoch index of the completed epoch
+     * @param accuracy validation accuracy after the epoch
+     * @return true if training should stop
+     */
+    public boolean update(MultiLayerNetwork network, int epoch, double accuracy) {
+        completedEpochs++;
+        if (accuracy > bestAccuracy + minDelta || bestParameters == null) {
+            bestAccuracy = accuracy;
+            bestEpoch = epoch;
+            if (bestParameters == null)
+                bestParameters = network.params().dup();
+            else
+                bestParameters.assign(network.params());
+            epochsWithoutImprovement = 0;
+            return false;
+        }
+        epochsWithoutImprovement++;
+        return epochsWithoutImprovement >= patience;
+    }
+
+    /**
+     * Put parameters of the best epoch back into the network
+     * @param network network that was trained
+     */
+    public void restoreBest(MultiLayerNetwork network) {
+        if (bestParameters != null)
+            network.setParams(bestParameters);
+    }
+
+    public double getBestAccuracy() {
+        return bestAccuracy;
+    }
+
+    public int getBestEpoch() {
+        return bestEpoch;
+    }
+
+    public int getCompletedEpochs() {
+        return completedEpochs;
+    }
+
+    public int getEpochsWithoutImprovement() {
+        return epochsWithoutImprovement;
+    }
+}
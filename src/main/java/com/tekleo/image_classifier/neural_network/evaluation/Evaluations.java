@@ -0,0 +1,65 @@
+package com.tekleo.image_classifier.neural_network.evaluation;
+
+import org.deeplearning4j.eval.Evaluation;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Evaluation helpers shared by {@link com.tekleo.image_classifier.neural_network.CifarModel} and {@link BackgroundEvaluator}
+ */
+public class Evaluations {
+    /**
+     * Single pass over an iterator, the iterator is reset before the pass, so it doesn't matter where a previous user left it
+     * @param network network to evaluate
+     * @param iterator data to evaluate on
+     * @param labels class names
+     * @param topN N for top-N accuracy
+     * @param maxBatches upper bound of batches to evaluate, used to evaluate on a subsample
+     * @return evaluation
+     */
+    public static Evaluation evaluate(MultiLayerNetwork network, DataSetIterator iterator, List<String> labels, int topN, int maxBatches) {
+        Evaluation evaluation = new Evaluation(labels, topN);
+        iterator.reset();
+        for (int i = 0; i < maxBatches && iterator.hasNext(); i++) {
+            DataSet dataSet = iterator.next();
+            evaluation.eval(dataSet.getLabels(), network.output(dataSet.getFeatureMatrix(), false));
+        }
+        return evaluation;
+    }
+
+    /**
+     * @param iterator any iterator
+     * @param numberOfClasses number of network outputs
+     * @return labels of the iterator, or class indices as labels if the iterator has none
+     */
+    public static List<String> labels(DataSetIterator iterator, int numberOfClasses) {
+        if (iterator != null && iterator.getLabels() != null && iterator.getLabels().size() == numberOfClasses)
+            return iterator.getLabels();
+
+        List<String> labels = new ArrayList<>(numberOfClasses);
+        for (int i = 0; i < numberOfClasses; i++)
+            labels.add(String.valueOf(i));
+        return labels;
+    }
+
+    /**
+     * Full report, DL4J stats (with top-N accuracy and confusion) followed by per-class precision / recall / F1
+     * @param title report title
+     * @param evaluation evaluation to report
+     * @param millis time the evaluation took
+     * @return printable report
+     */
+    public static String summary(String title, Evaluation evaluation, long millis) {
+        StringBuilder builder = new StringBuilder();
+        builder.append(title).append(" (").append(evaluation.getNumRowCounter()).append(" examples, ").append(millis).append(" ms)").append(System.lineSeparator());
+        builder.append(evaluation.stats(true)).append(System.lineSeparator());
+        builder.append(String.format(" %-12s %10s %10s %10s", "Class", "Precision", "Recall", "F1")).append(System.lineSeparator());
+        for (int i = 0; i < evaluation.getLabelsList().size(); i++)
+            builder.append(String.format(" %-12s %10.4f %10.4f %10.4f", evaluation.getClassLabel(i), evaluation.precision(i), evaluation.recall(i), evaluation.f1(i))).append(System.lineSeparator());
+        return builder.toString();
+    }
+}
@@ -0,0 +1,110 @@
+package com.tekleo.image_classifier.neural_network.evaluation;
+
+import org.deeplearning4j.eval.Evaluation;
+import org.deeplearning4j.nn.api.Model;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.optimize.api.TrainingListener;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Evaluates the network on training data almost for free, reusing the forward passes that training does anyway
+ *
+ * Forward pass callbacks stop short of the output layer, so once backpropagation is done the output layer alone is activated again
+ * on the input it already holds, which costs one small matrix product per batch instead of a full forward pass
+ * Outputs are taken right before the parameter update of each batch, which is the usual meaning of training accuracy
+ * Only every n-th batch is evaluated, so the cost can be cut further on big epochs
+ * Data-parallel training shares one listener between all workers, so evaluation is synchronized
+ */
+public class TrainingEvaluationListener implements TrainingListener {
+    private final List<String> labels;
+    private final int topN;
+    private final int sampleFrequency;
+    private Evaluation evaluation;
+    private long batches;
+
+    /**
+     * @param labels class names, in the same order as network outputs
+     * @param topN N for top-N accuracy
+     * @param sampleFrequency evaluate every n-th batch, 1 evaluates all of them
+     */
+    public TrainingEvaluationListener(List<String> labels, int topN, int sampleFrequency) {
+        this.labels = labels;
+        this.topN = topN;
+        this.sampleFrequency = sampleFrequency;
+        this.evaluation = new Evaluation(labels, topN);
+    }
+
+    /**
+     * Drop everything collected so far, called at the start of each epoch
+     */
+    public synchronized void reset() {
+        evaluation = new Evaluation(labels, topN);
+        batches = 0;
+    }
+
+    /**
+     * @return evaluation of batches sampled since the last reset
+     */
+    public synchronized Evaluation getEvaluation() {
+        return evaluation;
+    }
+
+    @Override
+    public synchronized void onBackwardPass(Model model) {
+        if (batches++ % sampleFrequency != 0)
+            return;
+
+        MultiLayerNetwork network = (MultiLayerNetwork) model;
+        INDArray labels = network.getLabels();
+        if (labels != null)
+            evaluation.eval(labels, network.getOutputLayer().activate(false));
+    }
+
+
+
+    // Not used
+    //------------------------------------------------------------------------------------------------------------------
+    @Override
+    public void onForwardPass(Model model, List<INDArray> activations) {
+
+    }
+
+    @Override
+    public void onForwardPass(Model model, Map<String, INDArray> activations) {
+
+    }
+
+    @Override
+    public void onEpochStart(Model model) {
+
+    }
+
+    @Override
+    public void onEpochEnd(Model model) {
+
+    }
+
+    @Override
+    public void onGradientCalculation(Model model) {
+
+    }
+
+    @Override
+    public boolean invoked() {
+        return false;
+    }
+
+    @Override
+    public void invoke() {
+
+    }
+
+    @Override
+    public void iterationDone(Model model, int iteration) {
+
+    }
+    //------------------------------------------------------------------------------------------------------------------
+}
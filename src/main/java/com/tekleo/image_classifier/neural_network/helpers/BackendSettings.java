@@ -0,0 +1,134 @@
+package com.tekleo.image_classifier.neural_network.helpers;
+
+import com.tekleo.image_classifier.neural_network.config.ConfigRuntimeException;
+import org.bytedeco.javacpp.Loader;
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.nativeblas.NativeOpsHolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+/**
+ * Thread settings and runtime report of the ND4J backend
+ *
+ * The backend is picked by the Maven profile (cuda, cpu, cpu-avx2 or cpu-avx512), this class shows what was actually loaded,
+ * so a deployment that silently fell back to a generic or wrong build is visible in the log
+ */
+public class BackendSettings {
+    private static final String NATIVE_RESOURCE_DIRECTORY = "org/nd4j/nativeblas/";
+    private static final String[] NATIVE_VARIANTS = {"-avx512", "-avx2", ""};
+    private static final Path CPU_INFO = Paths.get("/proc/cpuinfo");
+
+    /**
+     * Set native thread counts, has to be called before the first heavy op, values below 1 keep the current setting
+     * @param ompThreads OpenMP threads of the native ops
+     * @param blasThreads threads of the BLAS library
+     */
+    public static void setThreads(int ompThreads, int blasThreads) {
+        // Native ops holder fails to load until ND4J has loaded its backend, which a fresh process may not have done yet
+        Nd4j.getBackend();
+        if (ompThreads > 0)
+            NativeOpsHolder.getInstance().getDeviceNativeOps().setOmpNumThreads(ompThreads);
+        if (blasThreads > 0)
+            Nd4j.factory().blas().setMaxThreads(blasThreads);
+    }
+
+    /**
+     * Set the data type of all arrays created from now on, network parameters, activations, gradients and updater state alike
+     * ND4J keeps one global data type, so it should be set before any data or network is created, arrays made earlier keep their type
+     * The type is tried out on a small array first, a type the backend can't allocate (HALF on the CPU backend of ND4J 0.9.1) is rejected
+     * and the previous type is kept
+     * @param dataType FLOAT, DOUBLE or HALF, null keeps the current type
+     * @throws ConfigRuntimeException if the backend doesn't support the type
+     */
+    public static void setDataType(DataBuffer.Type dataType) {
+        DataBuffer.Type previousDataType = Nd4j.dataType();
+        if (dataType == null || dataType == previousDataType)
+            return;
+        if (dataType != DataBuffer.Type.FLOAT && dataType != DataBuffer.Type.DOUBLE && dataType != DataBuffer.Type.HALF)
+            throw new ConfigRuntimeException("Data type " + dataType + " can't be used for networks");
+
+        Nd4j.setDataType(dataType);
+        try {
+            Nd4j.create(1);
+        } catch (UnsupportedOperationException e) {
+            Nd4j.setDataType(previousDataType);
+            throw new ConfigRuntimeException("Data type " + dataType + " is not supported by " + getBackend() + ": " + e.getMessage(), e);
+        }
+    }
+
+    public static String getBackend() {
+        return Nd4j.getBackend().getClass().getSimpleName();
+    }
+
+    public static String getBlasVendor() {
+        return String.valueOf(Nd4j.factory().blas().getBlasVendor());
+    }
+
+    public static int getOmpThreads() {
+        return NativeOpsHolder.getInstance().getDeviceNativeOps().ompGetMaxThreads();
+    }
+
+    public static int getBlasThreads() {
+        return Nd4j.factory().blas().getMaxThreads();
+    }
+
+    /**
+     * @return platform of the native libraries found on the classpath, like linux-x86_64-avx2, or "none" when there are no CPU native libraries (CUDA builds)
+     */
+    public static String getNativeVariant() {
+        String platform = Loader.getPlatform();
+        for (String variant : NATIVE_VARIANTS)
+            if (BackendSettings.class.getClassLoader().getResource(NATIVE_RESOURCE_DIRECTORY + platform + variant + "/") != null)
+                return platform + variant;
+        return "none";
+    }
+
+    /**
+     * @return best native variant this CPU can run, judged by /proc/cpuinfo flags, plain platform when flags can't be read
+     */
+    public static String getSupportedVariant() {
+        String platform = Loader.getPlatform();
+        String flags = cpuFlags();
+        if (flags.contains(" avx512f "))
+            return platform + "-avx512";
+        if (flags.contains(" avx2 "))
+            return platform + "-avx2";
+        return platform;
+    }
+
+    /**
+     * @return multi-line report with backend, BLAS vendor, native build, thread counts and environment of the backend
+     */
+    public static String report() {
+        Properties environment = Nd4j.getExecutioner().getEnvironmentInformation();
+        StringBuilder report = new StringBuilder();
+        report.append("Backend:          ").append(getBackend()).append(", data type ").append(Nd4j.dataType()).append('\n');
+        report.append("BLAS:             ").append(getBlasVendor()).append(", ").append(getBlasThreads()).append(" thread(s)").append('\n');
+        report.append("OpenMP threads:   ").append(getOmpThreads()).append('\n');
+        report.append("Native build:     ").append(getNativeVariant()).append(", best for this CPU ").append(getSupportedVariant()).append('\n');
+        report.append("Cores:            ").append(Runtime.getRuntime().availableProcessors()).append('\n');
+        report.append("Environment:      ").append(environment);
+        return report.toString();
+    }
+
+    // Static helpers
+    //------------------------------------------------------------------------------------------------------------------
+    // Flags line of the first processor padded with spaces, so a flag can be matched as a whole word
+    private static String cpuFlags() {
+        try {
+            for (String line : Files.readAllLines(CPU_INFO, StandardCharsets.UTF_8))
+                if (line.startsWith("flags"))
+                    return " " + line.substring(line.indexOf(':') + 1).trim() + " ";
+        } catch (IOException e) {
+            // Not Linux, or no access, report the generic build
+        }
+        return " ";
+    }
+    //------------------------------------------------------------------------------------------------------------------
+}
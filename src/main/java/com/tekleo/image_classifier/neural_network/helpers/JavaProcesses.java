@@ -0,0 +1,88 @@
+package com.tekleo.image_classifier.neural_network.helpers;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Helper class with static methods to run a main class in a child JVM, used by training modes that need a whole process per worker or probe
+ *
+ * Children run with the java binary and class path of this process, configs are handed over in a job file of serialized objects,
+ * which the child reads back in the same order
+ */
+public class JavaProcesses {
+    private static final String JOB_FILE_EXTENSION = ".ser";
+
+    /**
+     * @param jvmOptions options of the child JVM, like heap size and system properties
+     * @param mainClass class with the main method to run
+     * @param arguments arguments of the main method
+     * @return command line of the child process
+     */
+    public static List<String> command(List<String> jvmOptions, Class<?> mainClass, List<String> arguments) {
+        List<String> command = new ArrayList<>();
+        command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+        command.addAll(jvmOptions);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(mainClass.getName());
+        command.addAll(arguments);
+        return command;
+    }
+
+    /**
+     * Start a child process, its error stream is merged into the output
+     * @param command command line from {@link #command(List, Class, List)}
+     * @return started process
+     * @throws IOException if the process can't be started
+     */
+    public static Process start(List<String> command) throws IOException {
+        return new ProcessBuilder(command).redirectErrorStream(true).start();
+    }
+
+    /**
+     * Read output of a child on a daemon thread until the child closes it
+     * @param process child process
+     * @param threadName name of the reading thread
+     * @param lineConsumer gets every line of the output
+     * @return started thread, joining it waits for the last line
+     */
+    public static Thread pipeOutput(Process process, String threadName, Consumer<String> lineConsumer) {
+        Thread thread = new Thread(() -> {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null)
+                    lineConsumer.accept(line);
+            } catch (IOException ignored) {
+
+            }
+        }, threadName);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Serialize objects into a new temporary file, the caller deletes it when the children are done
+     * @param prefix prefix of the file name
+     * @param objects objects in the order the child reads them
+     * @return job file
+     * @throws IOException if the file can't be written
+     */
+    public static File writeJobFile(String prefix, Serializable... objects) throws IOException {
+        File jobFile = File.createTempFile(prefix, JOB_FILE_EXTENSION);
+        try (ObjectOutputStream outputStream = new ObjectOutputStream(new FileOutputStream(jobFile))) {
+            for (Serializable object : objects)
+                outputStream.writeObject(object);
+        }
+        return jobFile;
+    }
+}
@@ -1,8 +1,12 @@
 package com.tekleo.image_classifier.neural_network.helpers;
 
+import org.deeplearning4j.nn.conf.layers.ActivationLayer;
+import org.deeplearning4j.nn.conf.layers.BatchNormalization;
 import org.deeplearning4j.nn.conf.layers.ConvolutionLayer;
 import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.GlobalPoolingLayer;
 import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.conf.layers.PoolingType;
 import org.deeplearning4j.nn.conf.layers.SubsamplingLayer;
 import org.nd4j.linalg.activations.Activation;
 import org.nd4j.linalg.lossfunctions.LossFunctions;
@@ -48,6 +52,24 @@ public class LayerFactory {
                 .build();
     }
 
+    public static BatchNormalization batchNormalizationLayer(Activation activation) {
+        return new BatchNormalization.Builder()
+                .activation(activation)
+                .build();
+    }
+
+    public static ActivationLayer activationLayer(Activation activation) {
+        return new ActivationLayer.Builder()
+                .activation(activation)
+                .build();
+    }
+
+    public static GlobalPoolingLayer globalPoolingLayer(PoolingType poolingType) {
+        return new GlobalPoolingLayer.Builder()
+                .poolingType(poolingType)
+                .build();
+    }
+
     public static OutputLayer outputLayer(int nOut, Activation activation, LossFunctions.LossFunction lossFunction) {
         return new OutputLayer.Builder()
                 .lossFunction(lossFunction)
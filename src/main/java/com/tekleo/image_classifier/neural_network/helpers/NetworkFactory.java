@@ -0,0 +1,149 @@
+package com.tekleo.image_classifier.neural_network.helpers;
+
+import com.tekleo.image_classifier.neural_network.config.ConfigRuntimeException;
+import com.tekleo.image_classifier.neural_network.config.ConvolutionConfig;
+import com.tekleo.image_classifier.neural_network.config.LayerConfig;
+import com.tekleo.image_classifier.neural_network.config.LayerType;
+import com.tekleo.image_classifier.neural_network.config.NetworkConfig;
+import com.tekleo.image_classifier.neural_network.config.UpdaterConfig;
+import org.deeplearning4j.nn.api.OptimizationAlgorithm;
+import org.deeplearning4j.nn.conf.LearningRatePolicy;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.inputs.InputType;
+import org.deeplearning4j.nn.conf.layers.Layer;
+import org.deeplearning4j.nn.weights.WeightInit;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.learning.config.Adam;
+import org.nd4j.linalg.learning.config.IUpdater;
+import org.nd4j.linalg.learning.config.Nesterovs;
+import org.nd4j.linalg.learning.config.Sgd;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds DL4J network configurations from {@link NetworkConfig}, layers are created with {@link LayerFactory}
+ */
+public class NetworkFactory {
+    private static final int NUMBER_OF_ITERATIONS = 1;
+
+    /**
+     * @param networkConfig architecture
+     * @param height input image height
+     * @param width input image width
+     * @param channels input image channels
+     * @param classes number of classes, size of the output layer
+     * @return network configuration ready to be initialized
+     * @throws ConfigRuntimeException if the architecture is incomplete
+     */
+    public static MultiLayerConfiguration build(NetworkConfig networkConfig, int height, int width, int channels, int classes) {
+        return build(networkConfig, height, width, channels, classes, null);
+    }
+
+    /**
+     * Same as {@link #build(NetworkConfig, int, int, int, int)} with a learning rate schedule instead of the score based decay of the updater config
+     * @param networkConfig architecture
+     * @param height input image height
+     * @param width input image width
+     * @param channels input image channels
+     * @param classes number of classes, size of the output layer
+     * @param learningRateSchedule learning rate by iteration, see {@link com.tekleo.image_classifier.neural_network.config.LearningRateSchedule}, null keeps the updater config decay
+     * @return network configuration ready to be initialized
+     * @throws ConfigRuntimeException if the architecture is incomplete
+     */
+    public static MultiLayerConfiguration build(NetworkConfig networkConfig, int height, int width, int channels, int classes, Map<Integer, Double> learningRateSchedule) {
+        validate(networkConfig);
+        UpdaterConfig updaterConfig = networkConfig.getUpdater();
+
+        NeuralNetConfiguration.Builder builder = new NeuralNetConfiguration.Builder()
+                .seed(networkConfig.getSeed())
+                .iterations(NUMBER_OF_ITERATIONS)
+                .weightInit(WeightInit.XAVIER)
+                .optimizationAlgo(OptimizationAlgorithm.STOCHASTIC_GRADIENT_DESCENT)
+                .learningRate(updaterConfig.getLearningRate())
+                .updater(updater(updaterConfig));
+
+        if (updaterConfig.getL2() > 0)
+            builder.regularization(true).l2(updaterConfig.getL2());
+        if (learningRateSchedule != null)
+            builder.learningRateDecayPolicy(LearningRatePolicy.Schedule).learningRateSchedule(learningRateSchedule);
+        else if (updaterConfig.getScoreDecayRate() > 0)
+            builder.learningRateDecayPolicy(LearningRatePolicy.Score).lrPolicyDecayRate(updaterConfig.getScoreDecayRate());
+        if (networkConfig.getConvolutionMode() != null)
+            builder.convolutionMode(networkConfig.getConvolutionMode());
+
+        NeuralNetConfiguration.ListBuilder listBuilder = builder.list();
+        int index = 0;
+        for (LayerConfig layerConfig : networkConfig.getLayers()) {
+            listBuilder.layer(index++, layer(layerConfig, networkConfig.getConvolution()));
+            // DL4J batch normalization doesn't apply its own activation, so it goes into a separate activation layer
+            if (layerConfig.getType() == LayerType.BATCH_NORMALIZATION && layerConfig.getActivation() != null && layerConfig.getActivation() != Activation.IDENTITY)
+                listBuilder.layer(index++, LayerFactory.activationLayer(layerConfig.getActivation()));
+        }
+        listBuilder.layer(index, LayerFactory.outputLayer(classes, networkConfig.getOutputActivation(), networkConfig.getLossFunction()));
+
+        return listBuilder
+                .setInputType(InputType.convolutional(height, width, channels))
+                .backprop(true)
+                .pretrain(false)
+                .build();
+    }
+
+    // Static helpers
+    //------------------------------------------------------------------------------------------------------------------
+    private static Layer layer(LayerConfig layerConfig, ConvolutionConfig convolutionConfig) {
+        switch (layerConfig.getType()) {
+            case CONVOLUTION:
+                return LayerFactory.convolutionLayer(convolutionConfig.getConvolutionLayerKernelSize(), convolutionConfig.getConvolutionLayerKernelStride(), layerConfig.getNOut(), layerConfig.getActivation());
+            case SUBSAMPLING:
+                return LayerFactory.subsamplingLayer(convolutionConfig.getSubsamplingLayerKernelSize(), convolutionConfig.getSubsamplingLayerKernelStride(), layerConfig.getPoolingType());
+            case DENSE:
+                return LayerFactory.denseLayer(layerConfig.getNOut(), layerConfig.getActivation());
+            case BATCH_NORMALIZATION:
+                // Activation must be explicit, otherwise the layer inherits the global default (sigmoid)
+                return LayerFactory.batchNormalizationLayer(Activation.IDENTITY);
+            case GLOBAL_POOLING:
+                return LayerFactory.globalPoolingLayer(layerConfig.getPoolingType().toPoolingType());
+            default:
+                throw new ConfigRuntimeException("Unsupported layer type " + layerConfig.getType());
+        }
+    }
+
+    private static IUpdater updater(UpdaterConfig updaterConfig) {
+        switch (updaterConfig.getType()) {
+            case SGD:
+                return new Sgd();
+            case NESTEROVS:
+                return new Nesterovs(updaterConfig.getMomentum());
+            case ADAM:
+                return new Adam();
+            default:
+                throw new ConfigRuntimeException("Unsupported updater type " + updaterConfig.getType());
+        }
+    }
+
+    private static void validate(NetworkConfig networkConfig) {
+        if (networkConfig.getBatchSize() <= 0)
+            throw new ConfigRuntimeException(networkConfig.getName() + ": batch size must be positive");
+        if (networkConfig.getUpdater() == null || networkConfig.getUpdater().getType() == null)
+            throw new ConfigRuntimeException(networkConfig.getName() + ": updater is missing");
+        if (networkConfig.getOutputActivation() == null || networkConfig.getLossFunction() == null)
+            throw new ConfigRuntimeException(networkConfig.getName() + ": output activation or loss function is missing");
+        if (networkConfig.getLayers().isEmpty())
+            throw new ConfigRuntimeException(networkConfig.getName() + ": no layers");
+
+        for (LayerConfig layerConfig : networkConfig.getLayers()) {
+            LayerType type = layerConfig.getType();
+            if (type == null)
+                throw new ConfigRuntimeException(networkConfig.getName() + ": layer type is missing in " + layerConfig);
+            if ((type == LayerType.CONVOLUTION || type == LayerType.SUBSAMPLING) && networkConfig.getConvolution() == null)
+                throw new ConfigRuntimeException(networkConfig.getName() + ": convolution kernels are missing");
+            if ((type == LayerType.SUBSAMPLING || type == LayerType.GLOBAL_POOLING) && layerConfig.getPoolingType() == null)
+                throw new ConfigRuntimeException(networkConfig.getName() + ": pooling type is missing in " + layerConfig);
+            if ((type == LayerType.CONVOLUTION || type == LayerType.DENSE) && (layerConfig.getNOut() <= 0 || layerConfig.getActivation() == null))
+                throw new ConfigRuntimeException(networkConfig.getName() + ": nOut or activation is missing in " + layerConfig);
+        }
+    }
+    //------------------------------------------------------------------------------------------------------------------
+}
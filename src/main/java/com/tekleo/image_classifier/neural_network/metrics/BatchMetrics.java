@@ -0,0 +1,123 @@
+package com.tekleo.image_classifier.neural_network.metrics;
+
+/**
+ * Timings and resource usage of one training batch
+ *
+ * Phases: data wait (blocked on the training iterator), forward pass, backward pass,
+ * and update (updater, parameter step and other listeners), together they add up to the total
+ *
+ * Immutable object
+ */
+public class BatchMetrics {
+    private final int epoch;
+    private final long batch;
+    private final String thread;
+    private final int examples;
+    private final double dataWaitMillis;
+    private final double forwardMillis;
+    private final double backwardMillis;
+    private final double updateMillis;
+    private final double totalMillis;
+    private final double samplesPerSecond;
+    private final long heapUsedBytes;
+    private final long offHeapBytes;
+    private final long physicalBytes;
+    private final long workspaceBytes;
+    private final long gcCount;
+    private final long gcMillis;
+
+    public BatchMetrics(int epoch, long batch, String thread, int examples, double dataWaitMillis, double forwardMillis, double backwardMillis, double updateMillis,
+                        long heapUsedBytes, long offHeapBytes, long physicalBytes, long workspaceBytes, long gcCount, long gcMillis) {
+        this.epoch = epoch;
+        this.batch = batch;
+        this.thread = thread;
+        this.examples = examples;
+        this.dataWaitMillis = dataWaitMillis;
+        this.forwardMillis = forwardMillis;
+        this.backwardMillis = backwardMillis;
+        this.updateMillis = updateMillis;
+        this.totalMillis = dataWaitMillis + forwardMillis + backwardMillis + updateMillis;
+        this.samplesPerSecond = totalMillis > 0 ? examples * 1000.0 / totalMillis : 0;
+        this.heapUsedBytes = heapUsedBytes;
+        this.offHeapBytes = offHeapBytes;
+        this.physicalBytes = physicalBytes;
+        this.workspaceBytes = workspaceBytes;
+        this.gcCount = gcCount;
+        this.gcMillis = gcMillis;
+    }
+
+    public int getEpoch() {
+        return epoch;
+    }
+
+    public long getBatch() {
+        return batch;
+    }
+
+    public String getThread() {
+        return thread;
+    }
+
+    public int getExamples() {
+        return examples;
+    }
+
+    public double getDataWaitMillis() {
+        return dataWaitMillis;
+    }
+
+    public double getForwardMillis() {
+        return forwardMillis;
+    }
+
+    public double getBackwardMillis() {
+        return backwardMillis;
+    }
+
+    public double getUpdateMillis() {
+        return updateMillis;
+    }
+
+    public double getTotalMillis() {
+        return totalMillis;
+    }
+
+    public double getSamplesPerSecond() {
+        return samplesPerSecond;
+    }
+
+    public long getHeapUsedBytes() {
+        return heapUsedBytes;
+    }
+
+    public long getOffHeapBytes() {
+        return offHeapBytes;
+    }
+
+    public long getPhysicalBytes() {
+        return physicalBytes;
+    }
+
+    /**
+     * @return size of the ND4J workspaces of the training thread, workspaces grow to the peak need of a batch and are reused after that
+     */
+    public long getWorkspaceBytes() {
+        return workspaceBytes;
+    }
+
+    public long getGcCount() {
+        return gcCount;
+    }
+
+    public long getGcMillis() {
+        return gcMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchMetrics{" + "epoch=" + epoch + ", batch=" + batch + ", thread='" + thread + '\'' + ", examples=" + examples +
+                ", dataWaitMillis=" + dataWaitMillis + ", forwardMillis=" + forwardMillis + ", backwardMillis=" + backwardMillis + ", updateMillis=" + updateMillis +
+                ", samplesPerSecond=" + samplesPerSecond + ", heapUsedBytes=" + heapUsedBytes + ", offHeapBytes=" + offHeapBytes + ", physicalBytes=" + physicalBytes +
+                ", workspaceBytes=" + workspaceBytes + ", gcCount=" + gcCount + ", gcMillis=" + gcMillis + '}';
+    }
+}
@@ -0,0 +1,60 @@
+package com.tekleo.image_classifier.neural_network.metrics;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Locale;
+
+/**
+ * Writes training metrics into two CSV files, batches.csv and epochs.csv, files are flushed after every epoch
+ */
+public class CsvMetricsLogger implements TrainingMetricsListener, AutoCloseable {
+    private static final String BATCHES_FILENAME = "batches.csv";
+    private static final String EPOCHS_FILENAME = "epochs.csv";
+
+    private final PrintWriter batchesWriter;
+    private final PrintWriter epochsWriter;
+
+    /**
+     * @param directory directory for CSV files, existing files are overwritten
+     * @throws IOException if files can't be created
+     */
+    public CsvMetricsLogger(File directory) throws IOException {
+        Files.createDirectories(directory.toPath());
+        this.batchesWriter = writer(new File(directory, BATCHES_FILENAME));
+        this.epochsWriter = writer(new File(directory, EPOCHS_FILENAME));
+        this.batchesWriter.println("epoch,batch,thread,examples,data_wait_ms,forward_ms,backward_ms,update_ms,total_ms,samples_per_second,heap_used_bytes,off_heap_bytes,physical_bytes,workspace_bytes,gc_count,gc_ms");
+        this.epochsWriter.println("epoch,batches,examples,duration_ms,samples_per_second,data_wait_ms,forward_ms,backward_ms,update_ms,peak_heap_used_bytes,peak_off_heap_bytes,peak_physical_bytes,peak_workspace_bytes,gc_count,gc_ms");
+    }
+
+    @Override
+    public synchronized void onBatch(BatchMetrics m) {
+        batchesWriter.println(String.format(Locale.ROOT, "%d,%d,%s,%d,%.3f,%.3f,%.3f,%.3f,%.3f,%.1f,%d,%d,%d,%d,%d,%d",
+                m.getEpoch(), m.getBatch(), m.getThread(), m.getExamples(), m.getDataWaitMillis(), m.getForwardMillis(), m.getBackwardMillis(), m.getUpdateMillis(),
+                m.getTotalMillis(), m.getSamplesPerSecond(), m.getHeapUsedBytes(), m.getOffHeapBytes(), m.getPhysicalBytes(), m.getWorkspaceBytes(), m.getGcCount(), m.getGcMillis()));
+    }
+
+    @Override
+    public synchronized void onEpoch(EpochMetrics m) {
+        epochsWriter.println(String.format(Locale.ROOT, "%d,%d,%d,%.1f,%.1f,%.1f,%.1f,%.1f,%.1f,%d,%d,%d,%d,%d,%d",
+                m.getEpoch(), m.getBatches(), m.getExamples(), m.getDurationMillis(), m.getSamplesPerSecond(), m.getDataWaitMillis(), m.getForwardMillis(),
+                m.getBackwardMillis(), m.getUpdateMillis(), m.getPeakHeapUsedBytes(), m.getPeakOffHeapBytes(), m.getPeakPhysicalBytes(), m.getPeakWorkspaceBytes(), m.getGcCount(), m.getGcMillis()));
+        batchesWriter.flush();
+        epochsWriter.flush();
+    }
+
+    @Override
+    public synchronized void close() {
+        batchesWriter.close();
+        epochsWriter.close();
+    }
+
+    private static PrintWriter writer(File file) throws IOException {
+        return new PrintWriter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)));
+    }
+}
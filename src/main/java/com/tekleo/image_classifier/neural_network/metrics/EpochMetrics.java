@@ -0,0 +1,110 @@
+package com.tekleo.image_classifier.neural_network.metrics;
+
+/**
+ * Totals of one training epoch, phase times are summed over all batches (and over all workers in data-parallel training),
+ * memory values are peaks seen at batch boundaries
+ *
+ * Immutable object
+ */
+public class EpochMetrics {
+    private final int epoch;
+    private final long batches;
+    private final long examples;
+    private final double durationMillis;
+    private final double samplesPerSecond;
+    private final double dataWaitMillis;
+    private final double forwardMillis;
+    private final double backwardMillis;
+    private final double updateMillis;
+    private final long peakHeapUsedBytes;
+    private final long peakOffHeapBytes;
+    private final long peakPhysicalBytes;
+    private final long peakWorkspaceBytes;
+    private final long gcCount;
+    private final long gcMillis;
+
+    public EpochMetrics(int epoch, long batches, long examples, double durationMillis, double dataWaitMillis, double forwardMillis, double backwardMillis, double updateMillis,
+                        long peakHeapUsedBytes, long peakOffHeapBytes, long peakPhysicalBytes, long peakWorkspaceBytes, long gcCount, long gcMillis) {
+        this.epoch = epoch;
+        this.batches = batches;
+        this.examples = examples;
+        this.durationMillis = durationMillis;
+        this.samplesPerSecond = durationMillis > 0 ? examples * 1000.0 / durationMillis : 0;
+        this.dataWaitMillis = dataWaitMillis;
+        this.forwardMillis = forwardMillis;
+        this.backwardMillis = backwardMillis;
+        this.updateMillis = updateMillis;
+        this.peakHeapUsedBytes = peakHeapUsedBytes;
+        this.peakOffHeapBytes = peakOffHeapBytes;
+        this.peakPhysicalBytes = peakPhysicalBytes;
+        this.peakWorkspaceBytes = peakWorkspaceBytes;
+        this.gcCount = gcCount;
+        this.gcMillis = gcMillis;
+    }
+
+    public int getEpoch() {
+        return epoch;
+    }
+
+    public long getBatches() {
+        return batches;
+    }
+
+    public long getExamples() {
+        return examples;
+    }
+
+    public double getDurationMillis() {
+        return durationMillis;
+    }
+
+    public double getSamplesPerSecond() {
+        return samplesPerSecond;
+    }
+
+    public double getDataWaitMillis() {
+        return dataWaitMillis;
+    }
+
+    public double getForwardMillis() {
+        return forwardMillis;
+    }
+
+    public double getBackwardMillis() {
+        return backwardMillis;
+    }
+
+    public double getUpdateMillis() {
+        return updateMillis;
+    }
+
+    public long getPeakHeapUsedBytes() {
+        return peakHeapUsedBytes;
+    }
+
+    public long getPeakOffHeapBytes() {
+        return peakOffHeapBytes;
+    }
+
+    public long getPeakPhysicalBytes() {
+        return peakPhysicalBytes;
+    }
+
+    public long getPeakWorkspaceBytes() {
+        return peakWorkspaceBytes;
+    }
+
+    public long getGcCount() {
+        return gcCount;
+    }
+
+    public long getGcMillis() {
+        return gcMillis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d batches, %.0f samples/s, data wait %.0f ms, forward %.0f ms, backward %.0f ms, update %.0f ms, GC %d ms (%d), peak heap %d MB, peak off-heap %d MB, peak workspaces %d MB",
+                batches, samplesPerSecond, dataWaitMillis, forwardMillis, backwardMillis, updateMillis, gcMillis, gcCount, peakHeapUsedBytes >> 20, peakOffHeapBytes >> 20, peakWorkspaceBytes >> 20);
+    }
+}
@@ -0,0 +1,73 @@
+package com.tekleo.image_classifier.neural_network.metrics;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Local HTTP endpoint with training metrics, listens on the loopback interface only
+ *
+ * Endpoints:
+ *  GET /metrics - JSON with all finished epochs and the most recent batches
+ */
+public class MetricsServer implements TrainingMetricsListener, AutoCloseable {
+    private static final int RECENT_BATCHES = 200;
+    private static final Gson GSON = new GsonBuilder().create();
+
+    private final HttpServer httpServer;
+    private final List<EpochMetrics> epochs;
+    private final Deque<BatchMetrics> recentBatches;
+
+    public MetricsServer(int port) throws IOException {
+        this.epochs = new ArrayList<>();
+        this.recentBatches = new ArrayDeque<>(RECENT_BATCHES);
+        this.httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.httpServer.createContext("/metrics", this::handleMetrics);
+        this.httpServer.start();
+    }
+
+    @Override
+    public synchronized void onBatch(BatchMetrics batchMetrics) {
+        if (recentBatches.size() == RECENT_BATCHES)
+            recentBatches.removeFirst();
+        recentBatches.addLast(batchMetrics);
+    }
+
+    @Override
+    public synchronized void onEpoch(EpochMetrics epochMetrics) {
+        epochs.add(epochMetrics);
+    }
+
+    @Override
+    public void close() {
+        httpServer.stop(0);
+    }
+
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        synchronized (this) {
+            metrics.put("epochs", new ArrayList<>(epochs));
+            metrics.put("batches", new ArrayList<>(recentBatches));
+        }
+
+        byte[] body = GSON.toJson(metrics).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(body);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.tekleo.image_classifier.neural_network.metrics;
+
+import org.deeplearning4j.datasets.iterator.AsyncDataSetIterator;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.DataSetPreProcessor;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+
+import java.util.List;
+
+/**
+ * Training iterator wrapper that measures how long training is blocked waiting for data
+ *
+ * Networks wrap async-capable iterators into a background prefetcher by themselves, and that would hide the wait,
+ * so this wrapper does the same prefetching internally and reports itself as not async, waiting on the prefetch queue is then what gets measured
+ */
+public class TimedDataSetIterator implements DataSetIterator {
+    private static final int ASYNC_QUEUE_SIZE = 2;
+
+    private final DataSetIterator source;
+    private final DataSetIterator iterator;
+    private final TrainingInstrumentation instrumentation;
+
+    TimedDataSetIterator(DataSetIterator source, TrainingInstrumentation instrumentation) {
+        this.source = source;
+        this.iterator = source.asyncSupported() ? new AsyncDataSetIterator(source, ASYNC_QUEUE_SIZE) : source;
+        this.instrumentation = instrumentation;
+    }
+
+    /**
+     * Stop the internal prefetch thread, if there is one, the source iterator is left open
+     */
+    public void shutdown() {
+        if (iterator instanceof AsyncDataSetIterator)
+            ((AsyncDataSetIterator) iterator).shutdown();
+    }
+
+    @Override
+    public boolean hasNext() {
+        long start = System.nanoTime();
+        boolean hasNext = iterator.hasNext();
+        instrumentation.onDataWait(System.nanoTime() - start, false);
+        return hasNext;
+    }
+
+    @Override
+    public DataSet next() {
+        long start = System.nanoTime();
+        DataSet dataSet = iterator.next();
+        instrumentation.onDataWait(System.nanoTime() - start, true);
+        return dataSet;
+    }
+
+    @Override
+    public DataSet next(int num) {
+        long start = System.nanoTime();
+        DataSet dataSet = iterator.next(num);
+        instrumentation.onDataWait(System.nanoTime() - start, true);
+        return dataSet;
+    }
+
+    @Override
+    public int totalExamples() {
+        return source.totalExamples();
+    }
+
+    @Override
+    public int inputColumns() {
+        return source.inputColumns();
+    }
+
+    @Override
+    public int totalOutcomes() {
+        return source.totalOutcomes();
+    }
+
+    @Override
+    public boolean resetSupported() {
+        return iterator.resetSupported();
+    }
+
+    @Override
+    public boolean asyncSupported() {
+        return false;
+    }
+
+    @Override
+    public void reset() {
+        iterator.reset();
+    }
+
+    @Override
+    public int batch() {
+        return source.batch();
+    }
+
+    @Override
+    public int cursor() {
+        return source.cursor();
+    }
+
+    @Override
+    public int numExamples() {
+        return source.numExamples();
+    }
+
+    @Override
+    public void setPreProcessor(DataSetPreProcessor preProcessor) {
+        source.setPreProcessor(preProcessor);
+    }
+
+    @Override
+    public DataSetPreProcessor getPreProcessor() {
+        return source.getPreProcessor();
+    }
+
+    @Override
+    public List<String> getLabels() {
+        return source.getLabels();
+    }
+}
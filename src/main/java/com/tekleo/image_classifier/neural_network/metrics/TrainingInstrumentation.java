@@ -0,0 +1,255 @@
+package com.tekleo.image_classifier.neural_network.metrics;
+
+import org.bytedeco.javacpp.Pointer;
+import org.deeplearning4j.nn.api.Model;
+import org.deeplearning4j.optimize.api.TrainingListener;
+import org.nd4j.linalg.api.memory.MemoryWorkspaceManager;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * DL4J training listener that splits every batch into phases and reports {@link BatchMetrics} and {@link EpochMetrics}
+ * to registered {@link TrainingMetricsListener}s
+ *
+ * Within one fit call DL4J runs: forward pass, onForwardPass, backprop, onBackwardPass, updater and parameter step, iterationDone,
+ * so phase boundaries are taken from these callbacks, and data wait comes from the training iterator wrapped by {@link #wrap(DataSetIterator)}
+ *
+ * Timers are per thread, so data-parallel workers sharing this listener don't mix their batches
+ * In data-parallel training the iterator is read by the wrapper's feeder thread, so data wait is still counted in epoch totals,
+ * but a worker's forward phase also includes the time it waited for the feeder
+ *
+ * Off-heap memory is everything allocated through JavaCPP, which includes all ND4J buffers and workspaces
+ * Workspace memory is the size of the network's own workspaces on the training thread, 0 when workspaces are off
+ *
+ * This listener should be registered before others, so their time is counted in the update phase instead of backward
+ */
+public class TrainingInstrumentation implements TrainingListener {
+    // Workspaces DL4J 0.9.1 opens around fit, the forward pass and backprop of a MultiLayerNetwork
+    private static final String[] NETWORK_WORKSPACES = {"LOOP_EXTERNAL", "LOOP_FF", "LOOP_BP"};
+
+    private final List<TrainingMetricsListener> listeners;
+    private final ThreadLocal<BatchTimer> batchTimers;
+    private final AtomicLong pendingDataWaitNanos;
+    private final AtomicLong lastGcCount;
+    private final AtomicLong lastGcMillis;
+    private final AtomicLong batchCounter;
+
+    private volatile int epoch;
+    private long epochStartNanos;
+    private long epochBatches;
+    private long epochExamples;
+    private double epochDataWaitMillis;
+    private double epochForwardMillis;
+    private double epochBackwardMillis;
+    private double epochUpdateMillis;
+    private long epochPeakHeapUsedBytes;
+    private long epochPeakOffHeapBytes;
+    private long epochPeakPhysicalBytes;
+    private long epochPeakWorkspaceBytes;
+    private long epochGcCount;
+    private long epochGcMillis;
+
+    public TrainingInstrumentation() {
+        this.listeners = new CopyOnWriteArrayList<>();
+        this.batchTimers = ThreadLocal.withInitial(BatchTimer::new);
+        this.pendingDataWaitNanos = new AtomicLong();
+        this.lastGcCount = new AtomicLong(gcCount());
+        this.lastGcMillis = new AtomicLong(gcMillis());
+        this.batchCounter = new AtomicLong();
+    }
+
+    public void addListener(TrainingMetricsListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @param iterator training iterator
+     * @return iterator that reports time spent waiting for data to this instrumentation
+     */
+    public TimedDataSetIterator wrap(DataSetIterator iterator) {
+        return new TimedDataSetIterator(iterator, this);
+    }
+
+    /**
+     * Start collecting totals of a new epoch
+     * @param epoch index of the epoch
+     */
+    public synchronized void startEpoch(int epoch) {
+        this.epoch = epoch;
+        this.epochStartNanos = System.nanoTime();
+        this.epochBatches = 0;
+        this.epochExamples = 0;
+        this.epochDataWaitMillis = 0;
+        this.epochForwardMillis = 0;
+        this.epochBackwardMillis = 0;
+        this.epochUpdateMillis = 0;
+        this.epochPeakHeapUsedBytes = 0;
+        this.epochPeakOffHeapBytes = 0;
+        this.epochPeakPhysicalBytes = 0;
+        this.epochPeakWorkspaceBytes = 0;
+        this.epochGcCount = 0;
+        this.epochGcMillis = 0;
+    }
+
+    /**
+     * Finish the current epoch and report its totals to all listeners
+     * @return totals of the epoch
+     */
+    public EpochMetrics finishEpoch() {
+        EpochMetrics epochMetrics;
+        synchronized (this) {
+            epochMetrics = new EpochMetrics(epoch, epochBatches, epochExamples, (System.nanoTime() - epochStartNanos) / 1e6,
+                    epochDataWaitMillis, epochForwardMillis, epochBackwardMillis, epochUpdateMillis,
+                    epochPeakHeapUsedBytes, epochPeakOffHeapBytes, epochPeakPhysicalBytes, epochPeakWorkspaceBytes, epochGcCount, epochGcMillis);
+        }
+
+        for (TrainingMetricsListener listener : listeners)
+            listener.onEpoch(epochMetrics);
+        return epochMetrics;
+    }
+
+
+
+    // Phase boundaries
+    //------------------------------------------------------------------------------------------------------------------
+    void onDataWait(long waitNanos, boolean batchReceived) {
+        pendingDataWaitNanos.addAndGet(waitNanos);
+        if (batchReceived)
+            batchTimers.get().batchStartNanos = System.nanoTime();
+    }
+
+    @Override
+    public void onForwardPass(Model model, List<INDArray> activations) {
+        batchTimers.get().forwardEndNanos = System.nanoTime();
+    }
+
+    @Override
+    public void onBackwardPass(Model model) {
+        batchTimers.get().backwardEndNanos = System.nanoTime();
+    }
+
+    @Override
+    public void iterationDone(Model model, int iteration) {
+        long now = System.nanoTime();
+        BatchTimer batchTimer = batchTimers.get();
+        long batchStartNanos = batchTimer.batchStartNanos != 0 ? batchTimer.batchStartNanos : batchTimer.lastBatchEndNanos != 0 ? batchTimer.lastBatchEndNanos : batchTimer.forwardEndNanos;
+
+        double dataWaitMillis = pendingDataWaitNanos.getAndSet(0) / 1e6;
+        double forwardMillis = (batchTimer.forwardEndNanos - batchStartNanos) / 1e6;
+        double backwardMillis = (batchTimer.backwardEndNanos - batchTimer.forwardEndNanos) / 1e6;
+        double updateMillis = (now - batchTimer.backwardEndNanos) / 1e6;
+        batchTimer.batchStartNanos = 0;
+        batchTimer.lastBatchEndNanos = now;
+
+        long gcCount = gcCount();
+        long gcMillis = gcMillis();
+        long batchGcCount = gcCount - lastGcCount.getAndSet(gcCount);
+        long batchGcMillis = gcMillis - lastGcMillis.getAndSet(gcMillis);
+        long heapUsedBytes = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+        long offHeapBytes = Pointer.totalBytes();
+        long physicalBytes = Pointer.physicalBytes();
+        long workspaceBytes = workspaceBytes();
+
+        BatchMetrics batchMetrics = new BatchMetrics(epoch, batchCounter.getAndIncrement(), Thread.currentThread().getName(), model.batchSize(),
+                dataWaitMillis, forwardMillis, backwardMillis, updateMillis, heapUsedBytes, offHeapBytes, physicalBytes, workspaceBytes, batchGcCount, batchGcMillis);
+
+        synchronized (this) {
+            epochBatches++;
+            epochExamples += batchMetrics.getExamples();
+            epochDataWaitMillis += dataWaitMillis;
+            epochForwardMillis += forwardMillis;
+            epochBackwardMillis += backwardMillis;
+            epochUpdateMillis += updateMillis;
+            epochPeakHeapUsedBytes = Math.max(epochPeakHeapUsedBytes, heapUsedBytes);
+            epochPeakOffHeapBytes = Math.max(epochPeakOffHeapBytes, offHeapBytes);
+            epochPeakPhysicalBytes = Math.max(epochPeakPhysicalBytes, physicalBytes);
+            epochPeakWorkspaceBytes = Math.max(epochPeakWorkspaceBytes, workspaceBytes);
+            epochGcCount += batchGcCount;
+            epochGcMillis += batchGcMillis;
+        }
+
+        for (TrainingMetricsListener listener : listeners)
+            listener.onBatch(batchMetrics);
+    }
+    //------------------------------------------------------------------------------------------------------------------
+
+
+
+    // Not used
+    //------------------------------------------------------------------------------------------------------------------
+    @Override
+    public void onForwardPass(Model model, Map<String, INDArray> activations) {
+
+    }
+
+    @Override
+    public void onEpochStart(Model model) {
+
+    }
+
+    @Override
+    public void onEpochEnd(Model model) {
+
+    }
+
+    @Override
+    public void onGradientCalculation(Model model) {
+
+    }
+
+    @Override
+    public boolean invoked() {
+        return false;
+    }
+
+    @Override
+    public void invoke() {
+
+    }
+    //------------------------------------------------------------------------------------------------------------------
+
+
+
+    // Static helpers
+    //------------------------------------------------------------------------------------------------------------------
+    private static long workspaceBytes() {
+        MemoryWorkspaceManager workspaceManager = Nd4j.getWorkspaceManager();
+        long bytes = 0;
+        for (String workspace : NETWORK_WORKSPACES)
+            if (workspaceManager.checkIfWorkspaceExists(workspace))
+                bytes += workspaceManager.getWorkspaceForCurrentThread(workspace).getCurrentSize();
+        return bytes;
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean garbageCollector : ManagementFactory.getGarbageCollectorMXBeans())
+            count += Math.max(0, garbageCollector.getCollectionCount());
+        return count;
+    }
+
+    private static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean garbageCollector : ManagementFactory.getGarbageCollectorMXBeans())
+            millis += Math.max(0, garbageCollector.getCollectionTime());
+        return millis;
+    }
+    //------------------------------------------------------------------------------------------------------------------
+
+
+
+    private static class BatchTimer {
+        private long batchStartNanos;
+        private long forwardEndNanos;
+        private long backwardEndNanos;
+        private long lastBatchEndNanos;
+    }
+}
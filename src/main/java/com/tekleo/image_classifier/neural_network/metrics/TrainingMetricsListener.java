@@ -0,0 +1,12 @@
+package com.tekleo.image_classifier.neural_network.metrics;
+
+/**
+ * Receiver of training metrics, see {@link com.tekleo.image_classifier.neural_network.CifarModel#addMetricsListener(TrainingMetricsListener)}
+ *
+ * Batch callbacks come from training threads (several of them in data-parallel training), so implementations must be thread-safe and fast
+ */
+public interface TrainingMetricsListener {
+    void onBatch(BatchMetrics batchMetrics);
+
+    void onEpoch(EpochMetrics epochMetrics);
+}
@@ -0,0 +1,201 @@
+package com.tekleo.image_classifier.neural_network.tuning;
+
+import com.tekleo.image_classifier.neural_network.config.NetworkConfig;
+import com.tekleo.image_classifier.neural_network.config.TrainingConfig;
+import com.tekleo.image_classifier.neural_network.config.loader.ConfigLoader;
+import com.tekleo.image_classifier.neural_network.helpers.BackendSettings;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Training settings tuned for one network on one machine by {@link TrainingTuner}, with all probes they were chosen from
+ *
+ * Profiles are JSON files in {@link #DIRECTORY}, one per network config name, {@link com.tekleo.image_classifier.Main} loads the profile of its network unless --no-machine-profile is given
+ * and trains with its batch size and thread counts
+ * A profile is only used on the machine it was tuned on, judged by the number of cores, physical memory and native build,
+ * after a hardware or backend change the network falls back to its own batch size until it is tuned again
+ *
+ * Immutable object
+ */
+public class MachineProfile {
+    public static final String DIRECTORY = "machine-profiles";
+    private static final String EXTENSION = ".json";
+    // Physical memory reported by the kernel moves a little between boots
+    private static final double PHYSICAL_MEMORY_TOLERANCE = 0.05;
+    private static final String SUN_OPERATING_SYSTEM_BEAN = "com.sun.management.OperatingSystemMXBean";
+    private static final String[] PHYSICAL_MEMORY_GETTERS = {"getTotalMemorySize", "getTotalPhysicalMemorySize"};
+
+    private final String network;
+    private final int batchSize;
+    private final int ompThreads;
+    private final int blasThreads;
+    private final double samplesPerSecond;
+    private final long peakPhysicalBytes;
+    private final long memoryCapBytes;
+    private final int cores;
+    private final long physicalMemoryBytes;
+    private final String nativeVariant;
+    private final List<TuningProbe> probes;
+
+    /**
+     * Profile of the current machine
+     * @param network name of the network config
+     * @param best chosen probe
+     * @param memoryCapBytes upper bound of physical memory the probes were held to
+     * @param probes all probes, in the order they were run
+     */
+    public MachineProfile(String network, TuningProbe best, long memoryCapBytes, List<TuningProbe> probes) {
+        this.network = network;
+        this.batchSize = best.getBatchSize();
+        this.ompThreads = best.getOmpThreads();
+        this.blasThreads = best.getBlasThreads();
+        this.samplesPerSecond = best.getSamplesPerSecond();
+        this.peakPhysicalBytes = best.getPeakPhysicalBytes();
+        this.memoryCapBytes = memoryCapBytes;
+        this.cores = Runtime.getRuntime().availableProcessors();
+        this.physicalMemoryBytes = physicalMemory();
+        this.nativeVariant = BackendSettings.getNativeVariant();
+        this.probes = new ArrayList<>(probes);
+    }
+
+
+
+    // Getters
+    //------------------------------------------------------------------------------------------------------------------
+    public String getNetwork() {
+        return network;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public int getOmpThreads() {
+        return ompThreads;
+    }
+
+    public int getBlasThreads() {
+        return blasThreads;
+    }
+
+    public double getSamplesPerSecond() {
+        return samplesPerSecond;
+    }
+
+    public long getPeakPhysicalBytes() {
+        return peakPhysicalBytes;
+    }
+
+    public long getMemoryCapBytes() {
+        return memoryCapBytes;
+    }
+
+    public int getCores() {
+        return cores;
+    }
+
+    public long getPhysicalMemoryBytes() {
+        return physicalMemoryBytes;
+    }
+
+    public String getNativeVariant() {
+        return nativeVariant;
+    }
+
+    public List<TuningProbe> getProbes() {
+        return Collections.unmodifiableList(probes);
+    }
+
+    /**
+     * @return true if this profile was tuned on a machine like the current one
+     */
+    public boolean matchesMachine() {
+        long currentPhysicalMemoryBytes = physicalMemory();
+        return cores == Runtime.getRuntime().availableProcessors() && nativeVariant.equals(BackendSettings.getNativeVariant()) &&
+                Math.abs(currentPhysicalMemoryBytes - physicalMemoryBytes) <= PHYSICAL_MEMORY_TOLERANCE * physicalMemoryBytes;
+    }
+    //------------------------------------------------------------------------------------------------------------------
+
+
+
+    // Applying
+    //------------------------------------------------------------------------------------------------------------------
+    /**
+     * @param networkConfig config of the tuned network
+     * @return same network with the tuned batch size
+     */
+    public NetworkConfig applyTo(NetworkConfig networkConfig) {
+        return networkConfig.withBatchSize(batchSize);
+    }
+
+    /**
+     * @param trainingConfig training options
+     * @return same options with the tuned thread counts
+     */
+    public TrainingConfig applyTo(TrainingConfig trainingConfig) {
+        return trainingConfig.withBackendThreads(ompThreads, blasThreads);
+    }
+    //------------------------------------------------------------------------------------------------------------------
+
+
+
+    // Files
+    //------------------------------------------------------------------------------------------------------------------
+    public void save() {
+        File file = file(network);
+        file.getParentFile().mkdirs();
+        ConfigLoader.save(this, file);
+    }
+
+    /**
+     * @param network name of the network config
+     * @return profile of the network, null if it was never tuned
+     */
+    public static MachineProfile load(String network) {
+        File file = file(network);
+        return file.isFile() ? ConfigLoader.load(file, MachineProfile.class) : null;
+    }
+
+    public static File file(String network) {
+        return new File(DIRECTORY, network + EXTENSION);
+    }
+    //------------------------------------------------------------------------------------------------------------------
+
+
+
+    // Static helpers
+    //------------------------------------------------------------------------------------------------------------------
+    /**
+     * Taken from the JVM, so it works before the native libraries of JavaCPP are loaded
+     * The getter is looked up by name, getTotalMemorySize since Java 14, the deprecated getTotalPhysicalMemorySize before that
+     * @return physical memory of the machine, in bytes
+     * @throws IllegalStateException if the JVM has neither getter
+     */
+    public static long physicalMemory() {
+        Object operatingSystem = ManagementFactory.getOperatingSystemMXBean();
+        for (String getter : PHYSICAL_MEMORY_GETTERS) {
+            try {
+                return (Long) Class.forName(SUN_OPERATING_SYSTEM_BEAN).getMethod(getter).invoke(operatingSystem);
+            } catch (ReflectiveOperationException | ClassCastException e) {
+                // Not available in this JVM, try the next one
+            }
+        }
+        throw new IllegalStateException("Can't read physical memory size from " + operatingSystem.getClass().getName());
+    }
+    //------------------------------------------------------------------------------------------------------------------
+
+
+
+    // Others
+    //------------------------------------------------------------------------------------------------------------------
+    @Override
+    public String toString() {
+        return String.format("%s: batch %d, threads %d/%d, %.1f samples/s, peak physical %d MB of %d MB cap, tuned on %d cores, %d MB, %s",
+                network, batchSize, ompThreads, blasThreads, samplesPerSecond, peakPhysicalBytes >> 20, memoryCapBytes >> 20, cores, physicalMemoryBytes >> 20, nativeVariant);
+    }
+    //------------------------------------------------------------------------------------------------------------------
+}
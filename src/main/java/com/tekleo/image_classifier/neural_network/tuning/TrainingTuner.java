@@ -0,0 +1,165 @@
+package com.tekleo.image_classifier.neural_network.tuning;
+
+import com.tekleo.image_classifier.dataset.CifarDatasetConfig;
+import com.tekleo.image_classifier.neural_network.config.NetworkConfig;
+import com.tekleo.image_classifier.neural_network.config.TrainingConfig;
+import com.tekleo.image_classifier.neural_network.config.loader.ConfigLoader;
+import com.tekleo.image_classifier.neural_network.helpers.JavaProcesses;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Finds the fastest batch size and native thread counts of a network on the current machine
+ *
+ * Every candidate is trained for a few batches in its own process (see {@link TuningProbeRunner}), measuring samples per second and peak physical memory
+ * First the batch sizes are probed in growing order with all cores, until one of them fails or goes over the memory cap,
+ * then OpenMP and BLAS thread counts are probed with the fastest batch size that fit
+ * The fastest probe that fits the cap becomes the {@link MachineProfile}
+ *
+ * Probes only measure throughput, a bigger batch takes fewer steps per epoch with the learning rate of the network config,
+ * so batch sizes far from the one the network was designed for should be left out of the candidates
+ * Probes run with the heap of this process and the memory cap as the physical memory limit of JavaCPP,
+ * so a probe over the cap fails with an out of memory error instead of taking the machine down
+ */
+public class TrainingTuner {
+    public static final double DEFAULT_MEMORY_SHARE = 0.75;
+    public static final int[] DEFAULT_BATCH_SIZES = {16, 32, 64, 128, 256, 512};
+    private static final int WARMUP_BATCHES = 2;
+    // Small batches are measured over more of them, so every probe sees about the same number of images
+    private static final int MEASURED_EXAMPLES = 512;
+    private static final int MIN_MEASURED_BATCHES = 3;
+    private static final String JOB_FILE_PREFIX = "tuning-job";
+    private static final String THREAD_NAME = "tuning-probe-output";
+
+    private final CifarDatasetConfig cifarDatasetConfig;
+    private final TrainingConfig trainingConfig;
+    private final NetworkConfig networkConfig;
+    private final long memoryCapBytes;
+    private final int[] batchSizes;
+
+    public TrainingTuner(CifarDatasetConfig cifarDatasetConfig, TrainingConfig trainingConfig, NetworkConfig networkConfig) {
+        this(cifarDatasetConfig, trainingConfig, networkConfig, (long) (DEFAULT_MEMORY_SHARE * MachineProfile.physicalMemory()), DEFAULT_BATCH_SIZES);
+    }
+
+    /**
+     * @param cifarDatasetConfig dataset options of the real training, its batch size is replaced by every probe
+     * @param trainingConfig training options of the real training, its thread counts are replaced by every probe
+     * @param networkConfig architecture of the network, its batch size is replaced by every probe
+     * @param memoryCapBytes upper bound of physical memory of the training process
+     * @param batchSizes candidate batch sizes
+     */
+    public TrainingTuner(CifarDatasetConfig cifarDatasetConfig, TrainingConfig trainingConfig, NetworkConfig networkConfig, long memoryCapBytes, int[] batchSizes) {
+        this.cifarDatasetConfig = cifarDatasetConfig;
+        this.trainingConfig = trainingConfig;
+        this.networkConfig = networkConfig;
+        this.memoryCapBytes = memoryCapBytes;
+        this.batchSizes = batchSizes.clone();
+        Arrays.sort(this.batchSizes);
+    }
+
+    /**
+     * Run all probes, blocks until the last one is done
+     * @return profile of the fastest probe that fit, not saved yet
+     * @throws TuningException if probes can't be started or none of them fits the memory cap
+     */
+    public MachineProfile tune() throws TuningException {
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.println(String.format("Tuning %s on %d cores, memory cap %d MB, batch sizes %s", networkConfig.getName(), cores, memoryCapBytes >> 20, Arrays.toString(batchSizes)));
+
+        File jobFile = null;
+        List<TuningProbe> probes = new ArrayList<>();
+        try {
+            jobFile = JavaProcesses.writeJobFile(JOB_FILE_PREFIX, cifarDatasetConfig, trainingConfig, networkConfig);
+
+            // Bigger batches only take more memory, so the first one over the cap ends the sweep
+            for (int batchSize : batchSizes) {
+                TuningProbe probe = probe(jobFile, batchSize, cores, cores);
+                probes.add(probe);
+                if (!probe.fits(memoryCapBytes))
+                    break;
+            }
+            TuningProbe bestBatch = fastest(probes);
+            if (bestBatch == null)
+                throw new TuningException("No batch size fits " + (memoryCapBytes >> 20) + " MB: " + probes);
+
+            for (int[] threads : threadCandidates(cores))
+                if (threads[0] != bestBatch.getOmpThreads() || threads[1] != bestBatch.getBlasThreads())
+                    probes.add(probe(jobFile, bestBatch.getBatchSize(), threads[0], threads[1]));
+        } catch (IOException e) {
+            throw new TuningException("Failed to run probes: ", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TuningException("Interrupted while waiting for a probe", e);
+        } finally {
+            if (jobFile != null)
+                jobFile.delete();
+        }
+
+        MachineProfile machineProfile = new MachineProfile(networkConfig.getName(), fastest(probes), memoryCapBytes, probes);
+        System.out.println("Tuned " + machineProfile);
+        return machineProfile;
+    }
+
+    private TuningProbe probe(File jobFile, int batchSize, int ompThreads, int blasThreads) throws IOException, InterruptedException {
+        List<String> jvmOptions = Arrays.asList("-Xmx" + (Runtime.getRuntime().maxMemory() >> 20) + "m", "-Dorg.bytedeco.javacpp.maxphysicalbytes=" + memoryCapBytes);
+        List<String> arguments = Arrays.asList(jobFile.getPath(), String.valueOf(batchSize), String.valueOf(ompThreads), String.valueOf(blasThreads),
+                String.valueOf(WARMUP_BATCHES), String.valueOf(Math.max(MIN_MEASURED_BATCHES, MEASURED_EXAMPLES / batchSize)));
+        Process process = JavaProcesses.start(JavaProcesses.command(jvmOptions, TuningProbeRunner.class, arguments));
+
+        AtomicReference<String> result = new AtomicReference<>();
+        AtomicReference<String> error = new AtomicReference<>();
+        Thread outputThread = JavaProcesses.pipeOutput(process, THREAD_NAME, line -> {
+            if (line.startsWith(TuningProbeRunner.RESULT_PREFIX))
+                result.set(line.substring(TuningProbeRunner.RESULT_PREFIX.length()));
+            else if (error.get() == null && (line.contains("Exception") || line.contains("Error")))
+                error.set(line.trim());
+        });
+        int exitCode;
+        try {
+            exitCode = process.waitFor();
+            outputThread.join();
+        } finally {
+            if (process.isAlive())
+                process.destroyForcibly();
+        }
+
+        TuningProbe probe = exitCode == 0 && result.get() != null
+                ? ConfigLoader.fromJson(result.get(), TuningProbe.class)
+                : new TuningProbe(batchSize, ompThreads, blasThreads, "exit code " + exitCode + (error.get() != null ? ", " + error.get() : ""));
+        System.out.println("  " + probe + (probe.isSucceeded() && !probe.fits(memoryCapBytes) ? ", over the cap" : ""));
+        return probe;
+    }
+
+    private TuningProbe fastest(List<TuningProbe> probes) {
+        TuningProbe fastest = null;
+        for (TuningProbe probe : probes)
+            if (probe.fits(memoryCapBytes) && (fastest == null || probe.getSamplesPerSecond() > fastest.getSamplesPerSecond()))
+                fastest = probe;
+        return fastest;
+    }
+
+
+
+    // Static helpers
+    //------------------------------------------------------------------------------------------------------------------
+    /**
+     * OpenMP threads from all cores halving down to 1, each with BLAS on as many threads or on a single one
+     * @param cores available cores
+     * @return pairs of OpenMP and BLAS threads
+     */
+    private static List<int[]> threadCandidates(int cores) {
+        List<int[]> candidates = new ArrayList<>();
+        for (int ompThreads = cores; ompThreads >= 1; ompThreads /= 2) {
+            candidates.add(new int[] {ompThreads, ompThreads});
+            if (ompThreads > 1)
+                candidates.add(new int[] {ompThreads, 1});
+        }
+        return candidates;
+    }
+    //------------------------------------------------------------------------------------------------------------------
+}
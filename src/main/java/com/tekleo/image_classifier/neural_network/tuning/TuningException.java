@@ -0,0 +1,26 @@
+package com.tekleo.image_classifier.neural_network.tuning;
+
+/**
+ * Exception to be used when {@link TrainingTuner} can't run its probes or none of them fits the memory cap
+ */
+public class TuningException extends Exception {
+    public TuningException() {
+
+    }
+
+    public TuningException(String message) {
+        super(message);
+    }
+
+    public TuningException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public TuningException(Throwable cause) {
+        super(cause);
+    }
+
+    public TuningException(String message, Throwable cause, boolean enableSuppression, boolean writableStackTrace) {
+        super(message, cause, enableSuppression, writableStackTrace);
+    }
+}
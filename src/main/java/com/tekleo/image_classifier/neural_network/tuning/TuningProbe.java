@@ -0,0 +1,107 @@
+package com.tekleo.image_classifier.neural_network.tuning;
+
+import com.tekleo.image_classifier.neural_network.metrics.EpochMetrics;
+
+/**
+ * Result of one short training run of {@link TrainingTuner} with one batch size and one pair of thread counts
+ *
+ * Throughput and memory are measured by {@link com.tekleo.image_classifier.neural_network.metrics.TrainingInstrumentation} over the measured batches only,
+ * peak physical memory is the resident memory of the probe process, so it includes the heap, workspaces and the tensor cache pages it touched
+ * A probe that failed (out of memory, crashed process) has an error message and no measurements
+ *
+ * Immutable object
+ */
+public class TuningProbe {
+    private final int batchSize;
+    private final int ompThreads;
+    private final int blasThreads;
+    private final long batches;
+    private final double samplesPerSecond;
+    private final long peakPhysicalBytes;
+    private final long peakOffHeapBytes;
+    private final String error;
+
+    public TuningProbe(int batchSize, int ompThreads, int blasThreads, EpochMetrics epochMetrics) {
+        this(batchSize, ompThreads, blasThreads, epochMetrics.getBatches(), epochMetrics.getSamplesPerSecond(), epochMetrics.getPeakPhysicalBytes(), epochMetrics.getPeakOffHeapBytes(), null);
+    }
+
+    public TuningProbe(int batchSize, int ompThreads, int blasThreads, String error) {
+        this(batchSize, ompThreads, blasThreads, 0, 0, 0, 0, error);
+    }
+
+    private TuningProbe(int batchSize, int ompThreads, int blasThreads, long batches, double samplesPerSecond, long peakPhysicalBytes, long peakOffHeapBytes, String error) {
+        this.batchSize = batchSize;
+        this.ompThreads = ompThreads;
+        this.blasThreads = blasThreads;
+        this.batches = batches;
+        this.samplesPerSecond = samplesPerSecond;
+        this.peakPhysicalBytes = peakPhysicalBytes;
+        this.peakOffHeapBytes = peakOffHeapBytes;
+        this.error = error;
+    }
+
+
+
+    // Getters
+    //------------------------------------------------------------------------------------------------------------------
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public int getOmpThreads() {
+        return ompThreads;
+    }
+
+    public int getBlasThreads() {
+        return blasThreads;
+    }
+
+    public long getBatches() {
+        return batches;
+    }
+
+    public double getSamplesPerSecond() {
+        return samplesPerSecond;
+    }
+
+    public long getPeakPhysicalBytes() {
+        return peakPhysicalBytes;
+    }
+
+    public long getPeakOffHeapBytes() {
+        return peakOffHeapBytes;
+    }
+
+    /**
+     * @return why the probe failed, null if it succeeded
+     */
+    public String getError() {
+        return error;
+    }
+
+    public boolean isSucceeded() {
+        return error == null;
+    }
+
+    /**
+     * @param memoryCapBytes upper bound of physical memory of a training process
+     * @return true if the probe succeeded and stayed under the cap
+     */
+    public boolean fits(long memoryCapBytes) {
+        return isSucceeded() && peakPhysicalBytes <= memoryCapBytes;
+    }
+    //------------------------------------------------------------------------------------------------------------------
+
+
+
+    // Others
+    //------------------------------------------------------------------------------------------------------------------
+    @Override
+    public String toString() {
+        if (!isSucceeded())
+            return String.format("batch %4d, threads %2d/%-2d failed: %s", batchSize, ompThreads, blasThreads, error);
+        return String.format("batch %4d, threads %2d/%-2d %8.1f samples/s, peak physical %5d MB, peak off-heap %5d MB (%d batches)",
+                batchSize, ompThreads, blasThreads, samplesPerSecond, peakPhysicalBytes >> 20, peakOffHeapBytes >> 20, batches);
+    }
+    //------------------------------------------------------------------------------------------------------------------
+}
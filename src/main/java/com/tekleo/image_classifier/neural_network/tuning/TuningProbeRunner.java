@@ -0,0 +1,89 @@
+package com.tekleo.image_classifier.neural_network.tuning;
+
+import com.tekleo.image_classifier.dataset.CifarDataset;
+import com.tekleo.image_classifier.dataset.CifarDatasetConfig;
+import com.tekleo.image_classifier.neural_network.CifarModel;
+import com.tekleo.image_classifier.neural_network.config.NetworkConfig;
+import com.tekleo.image_classifier.neural_network.config.TrainingConfig;
+import com.tekleo.image_classifier.neural_network.config.loader.ConfigLoader;
+import com.tekleo.image_classifier.neural_network.metrics.BatchMetrics;
+import com.tekleo.image_classifier.neural_network.metrics.EpochMetrics;
+import com.tekleo.image_classifier.neural_network.metrics.TimedDataSetIterator;
+import com.tekleo.image_classifier.neural_network.metrics.TrainingInstrumentation;
+import com.tekleo.image_classifier.neural_network.metrics.TrainingMetricsListener;
+import org.deeplearning4j.datasets.iterator.EarlyTerminationDataSetIterator;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+
+import java.io.FileInputStream;
+import java.io.ObjectInputStream;
+
+/**
+ * Probe process of {@link TrainingTuner}, trains a fresh network for a few batches with one batch size and one pair of thread counts
+ * and prints the measured {@link TuningProbe} as a JSON line starting with {@link #RESULT_PREFIX}
+ *
+ * Every probe is a new process, so native thread pools are created with the probed counts and peak memory isn't left over from a bigger batch
+ * Data comes from the regular train iterator of the dataset, with the prefetching and augmentation of the dataset config, like in real training
+ * The first batches warm up the network and the data pipeline and are not measured
+ *
+ * Arguments: job-file batch-size omp-threads blas-threads warmup-batches measured-batches
+ */
+public class TuningProbeRunner {
+    public static final String RESULT_PREFIX = "Probe result: ";
+
+    public static void main(String[] args) {
+        try {
+            int batchSize = Integer.parseInt(args[1]);
+            int ompThreads = Integer.parseInt(args[2]);
+            int blasThreads = Integer.parseInt(args[3]);
+            int warmupBatches = Integer.parseInt(args[4]);
+            int measuredBatches = Integer.parseInt(args[5]);
+            CifarDatasetConfig cifarDatasetConfig;
+            TrainingConfig trainingConfig;
+            NetworkConfig networkConfig;
+            try (ObjectInputStream inputStream = new ObjectInputStream(new FileInputStream(args[0]))) {
+                cifarDatasetConfig = (CifarDatasetConfig) inputStream.readObject();
+                trainingConfig = (TrainingConfig) inputStream.readObject();
+                networkConfig = (NetworkConfig) inputStream.readObject();
+            }
+
+            CifarDataset cifarDataset = new CifarDataset(cifarDatasetConfig.withBatchSize(batchSize));
+            CifarModel cifarModel = new CifarModel(cifarDataset.getTrainDataSetIterator(), cifarDataset.getTestDataSetIterator(),
+                    trainingConfig.withBackendThreads(ompThreads, blasThreads), networkConfig.withBatchSize(batchSize));
+            EpochMetrics epochMetrics = measure(cifarModel.getNetwork(), cifarDataset, warmupBatches, measuredBatches);
+            System.out.println(RESULT_PREFIX + ConfigLoader.toJson(new TuningProbe(batchSize, ompThreads, blasThreads, epochMetrics)));
+            System.exit(0);
+        } catch (Throwable e) {
+            e.printStackTrace(System.out);
+            System.exit(1);
+        }
+    }
+
+    // Totals start over once the warm up batches are done, so only the measured batches are in the result
+    private static EpochMetrics measure(MultiLayerNetwork network, CifarDataset cifarDataset, int warmupBatches, int measuredBatches) {
+        TrainingInstrumentation trainingInstrumentation = new TrainingInstrumentation();
+        trainingInstrumentation.addListener(new TrainingMetricsListener() {
+            private int batches;
+
+            @Override
+            public void onBatch(BatchMetrics batchMetrics) {
+                if (++batches == warmupBatches)
+                    trainingInstrumentation.startEpoch(0);
+            }
+
+            @Override
+            public void onEpoch(EpochMetrics epochMetrics) {
+
+            }
+        });
+
+        TimedDataSetIterator timedTrainSet = trainingInstrumentation.wrap(new EarlyTerminationDataSetIterator(cifarDataset.getTrainDataSetIterator(), warmupBatches + measuredBatches));
+        network.addListeners(trainingInstrumentation);
+        try {
+            trainingInstrumentation.startEpoch(0);
+            network.fit(timedTrainSet);
+            return trainingInstrumentation.finishEpoch();
+        } finally {
+            timedTrainSet.shutdown();
+        }
+    }
+}
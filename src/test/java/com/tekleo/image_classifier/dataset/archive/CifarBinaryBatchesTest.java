@@ -0,0 +1,127 @@
+package com.tekleo.image_classifier.dataset.archive;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class CifarBinaryBatchesTest {
+    private static final int PLANE_LENGTH = CifarBinaryBatches.HEIGHT * CifarBinaryBatches.WIDTH;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void recordsAreReadWithLabelsAndPixelsInBgrOrder() throws Exception {
+        File directory = temporaryFolder.newFolder();
+        writeRecords(new File(directory, "data_batch_1.bin"), record(3, 10, 20, 30), record(9, 40, 50, 60));
+        writeRecords(new File(directory, "data_batch_2.bin"), record(0, 70, 80, 90));
+
+        try (CifarBinaryBatches batches = CifarBinaryBatches.openTrain(directory)) {
+            assertEquals(3, batches.getNumberOfExamples());
+            assertEquals(CifarBinaryBatches.DEFAULT_LABELS, batches.getLabels());
+            assertEquals(3, batches.getLabel(0));
+            assertEquals(9, batches.getLabel(1));
+            assertEquals(0, batches.getLabel(2));
+
+            // Second record of the first file and the only record of the second file, each at an offset in the destination
+            byte[] pixels = new byte[1 + 2 * CifarBinaryBatches.IMAGE_LENGTH];
+            batches.readPixels(1, pixels, 1);
+            batches.readPixels(2, pixels, 1 + CifarBinaryBatches.IMAGE_LENGTH);
+            assertEquals(0, pixels[0]);
+            assertArrayEquals(bgr(40, 50, 60), Arrays.copyOfRange(pixels, 1, 1 + CifarBinaryBatches.IMAGE_LENGTH));
+            assertArrayEquals(bgr(70, 80, 90), Arrays.copyOfRange(pixels, 1 + CifarBinaryBatches.IMAGE_LENGTH, pixels.length));
+        }
+    }
+
+    @Test
+    public void labelNamesComeFromMetaFile() throws Exception {
+        File directory = temporaryFolder.newFolder();
+        writeRecords(new File(directory, "test_batch.bin"), record(1, 0, 0, 0));
+        Files.write(new File(directory, "batches.meta.txt").toPath(), "cat\ndog\n".getBytes("UTF-8"));
+
+        try (CifarBinaryBatches batches = CifarBinaryBatches.openTest(directory)) {
+            assertEquals(Arrays.asList("cat", "dog"), batches.getLabels());
+            assertEquals(1, batches.getLabel(0));
+        }
+    }
+
+    @Test
+    public void writtenBatchIsTheSameAsTheOriginal() throws Exception {
+        File original = temporaryFolder.newFile();
+        File copy = temporaryFolder.newFile();
+        writeRecords(original, record(5, 1, 2, 3), record(7, 4, 5, 6));
+
+        try (CifarBinaryBatches batches = CifarBinaryBatches.open(Collections.singletonList(original), CifarBinaryBatches.DEFAULT_LABELS)) {
+            CifarBinaryBatches.write(batches, copy);
+        }
+        assertArrayEquals(Files.readAllBytes(original.toPath()), Files.readAllBytes(copy.toPath()));
+    }
+
+    @Test
+    public void partialRecordIsRejected() throws Exception {
+        File file = temporaryFolder.newFile();
+        byte[] record = record(1, 0, 0, 0);
+        writeRecords(file, Arrays.copyOf(record, record.length - 1));
+        assertRejected(file);
+    }
+
+    @Test
+    public void unknownLabelIsRejected() throws Exception {
+        File file = temporaryFolder.newFile();
+        writeRecords(file, record(10, 0, 0, 0));
+        assertRejected(file);
+    }
+
+
+
+    // Static helpers
+    //------------------------------------------------------------------------------------------------------------------
+    private static byte[] record(int label, int red, int green, int blue) {
+        byte[] record = new byte[CifarBinaryBatches.RECORD_LENGTH];
+        record[0] = (byte) label;
+        fillPlanes(record, 1, red, green, blue);
+        return record;
+    }
+
+    private static byte[] bgr(int red, int green, int blue) {
+        byte[] pixels = new byte[CifarBinaryBatches.IMAGE_LENGTH];
+        fillPlanes(pixels, 0, blue, green, red);
+        return pixels;
+    }
+
+    // Every pixel of a plane differs, so a shifted plane or a transposed image can't pass for the right one
+    private static void fillPlanes(byte[] destination, int offset, int... planeSeeds) {
+        for (int plane = 0; plane < planeSeeds.length; plane++)
+            for (int i = 0; i < PLANE_LENGTH; i++)
+                destination[offset + plane * PLANE_LENGTH + i] = (byte) (planeSeeds[plane] + i * 7);
+    }
+
+    private static void writeRecords(File file, byte[]... records) throws IOException {
+        try (OutputStream outputStream = new FileOutputStream(file)) {
+            for (byte[] record : records)
+                outputStream.write(record);
+        }
+    }
+
+    private static void assertRejected(File file) {
+        try (CifarBinaryBatches batches = CifarBinaryBatches.open(Collections.singletonList(file), CifarBinaryBatches.DEFAULT_LABELS)) {
+            fail(file.getName() + " was opened with " + batches.getNumberOfExamples() + " examples");
+        } catch (ArchiveException expected) {
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+    //------------------------------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,181 @@
+package com.tekleo.image_classifier.dataset.archive;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ShardFileTest {
+    private static final int TAR_BLOCK_LENGTH = 512;
+    private static final String LONG_NAME = "airplane/" + repeat('a', 120) + ".png";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void tarEntriesAreSlicesOfTheFile() throws Exception {
+        byte[] first = content(1, 700);
+        byte[] second = content(2, 512);
+        byte[] third = content(3, 0);
+        byte[] fourth = content(4, 33);
+
+        ByteArrayOutputStream tar = new ByteArrayOutputStream();
+        writeTarEntry(tar, "cat/", '5', new byte[0]);
+        writeTarEntry(tar, "cat/1.png", '0', first);
+        writeTarEntry(tar, "dog/2.png", '0', second);
+        writeTarEntry(tar, "dog/empty.png", '0', third);
+        // GNU long name: a pseudo entry holding the name of the next entry
+        writeTarEntry(tar, "././@LongLink", 'L', (LONG_NAME + "\0").getBytes(StandardCharsets.UTF_8));
+        writeTarEntry(tar, LONG_NAME.substring(0, 99), '0', fourth);
+        tar.write(new byte[2 * TAR_BLOCK_LENGTH]);
+        File file = temporaryFolder.newFile("shard.tar");
+        Files.write(file.toPath(), tar.toByteArray());
+
+        try (ShardFile shardFile = ShardFile.open(file)) {
+            assertEquals(Arrays.asList("cat/1.png", "dog/2.png", "dog/empty.png", LONG_NAME), shardFile.getNames());
+            assertArrayEquals(first, bytes(shardFile.slice(0)));
+            assertArrayEquals(second, readFully(shardFile.openStream(1)));
+            assertArrayEquals(third, readFully(shardFile.openStream(2)));
+            assertArrayEquals(fourth, readFully(shardFile.openStream(3)));
+        }
+    }
+
+    @Test
+    public void zipEntriesAreReadStoredAndDeflated() throws Exception {
+        byte[] stored = content(5, 1000);
+        byte[] deflated = new byte[5000];
+        Arrays.fill(deflated, (byte) 9);
+
+        File file = temporaryFolder.newFile("shard.zip");
+        try (ZipOutputStream zipOutputStream = new ZipOutputStream(new FileOutputStream(file))) {
+            zipOutputStream.putNextEntry(new ZipEntry("bird/"));
+            zipOutputStream.closeEntry();
+
+            ZipEntry storedEntry = new ZipEntry("bird/stored.png");
+            storedEntry.setMethod(ZipEntry.STORED);
+            storedEntry.setSize(stored.length);
+            CRC32 crc = new CRC32();
+            crc.update(stored);
+            storedEntry.setCrc(crc.getValue());
+            zipOutputStream.putNextEntry(storedEntry);
+            zipOutputStream.write(stored);
+            zipOutputStream.closeEntry();
+
+            zipOutputStream.putNextEntry(new ZipEntry("bird/deflated.png"));
+            zipOutputStream.write(deflated);
+            zipOutputStream.closeEntry();
+            zipOutputStream.setComment("shard comment");
+        }
+
+        try (ShardFile shardFile = ShardFile.open(file)) {
+            assertEquals(Arrays.asList("bird/stored.png", "bird/deflated.png"), shardFile.getNames());
+            assertArrayEquals(stored, bytes(shardFile.slice(0)));
+            assertArrayEquals(stored, readFully(shardFile.openStream(0)));
+            // Slice of a deflated entry is the compressed data, the stream inflates it
+            assertTrue(shardFile.slice(1).remaining() < deflated.length);
+            assertArrayEquals(deflated, readFully(shardFile.openStream(1)));
+        }
+    }
+
+    @Test
+    public void emptyTarHasNoEntries() throws Exception {
+        File file = temporaryFolder.newFile("empty.tar");
+        Files.write(file.toPath(), new byte[2 * TAR_BLOCK_LENGTH]);
+        try (ShardFile shardFile = ShardFile.open(file)) {
+            assertEquals(0, shardFile.size());
+        }
+    }
+
+    @Test
+    public void otherFormatsAreRejected() throws Exception {
+        File file = temporaryFolder.newFile("shard.bin");
+        Files.write(file.toPath(), content(6, 2048));
+        try (ShardFile shardFile = ShardFile.open(file)) {
+            fail(file.getName() + " was opened with " + shardFile.size() + " entries");
+        } catch (ArchiveException expected) {
+        }
+    }
+
+
+
+    // Static helpers
+    //------------------------------------------------------------------------------------------------------------------
+    private static void writeTarEntry(OutputStream outputStream, String name, char type, byte[] data) throws IOException {
+        byte[] header = new byte[TAR_BLOCK_LENGTH];
+        put(header, 0, name);
+        put(header, 100, "0000644");
+        put(header, 108, "0000000");
+        put(header, 116, "0000000");
+        put(header, 124, String.format("%011o", data.length));
+        put(header, 136, "00000000000");
+        header[156] = (byte) type;
+        put(header, 257, "ustar");
+        put(header, 263, "00");
+
+        // Checksum is the sum of all header bytes with the checksum field counted as spaces
+        Arrays.fill(header, 148, 156, (byte) ' ');
+        int checksum = 0;
+        for (byte b : header)
+            checksum += b & 0xFF;
+        put(header, 148, String.format("%06o", checksum));
+        header[154] = 0;
+
+        outputStream.write(header);
+        outputStream.write(data);
+        outputStream.write(new byte[(TAR_BLOCK_LENGTH - data.length % TAR_BLOCK_LENGTH) % TAR_BLOCK_LENGTH]);
+    }
+
+    private static void put(byte[] header, int offset, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(bytes, 0, header, offset, bytes.length);
+    }
+
+    private static byte[] content(long seed, int length) {
+        byte[] content = new byte[length];
+        new Random(seed).nextBytes(content);
+        return content;
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
+    private static byte[] readFully(InputStream inputStream) throws IOException {
+        try (InputStream in = inputStream) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[256];
+            int read;
+            while ((read = in.read(buffer)) >= 0)
+                bytes.write(buffer, 0, read);
+            return bytes.toByteArray();
+        }
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+    //------------------------------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,160 @@
+package com.tekleo.image_classifier.dataset.cache;
+
+import org.datavec.api.io.labels.ParentPathLabelGenerator;
+import org.datavec.api.split.CollectionInputSplit;
+import org.datavec.image.recordreader.ImageRecordReader;
+import org.deeplearning4j.datasets.datavec.RecordReaderDataSetIterator;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.dataset.api.preprocessor.ImagePreProcessingScaler;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TensorCacheDataSetIteratorTest {
+    private static final int HEIGHT = 32;
+    private static final int WIDTH = 32;
+    private static final int CHANNELS = 3;
+    private static final String[] LABELS = {"cat", "dog"};
+    // Uneven class sizes and a batch size that doesn't divide them, so the tail batch is covered
+    private static final int[] COUNTS = {4, 3};
+    private static final int BATCH_SIZE = 3;
+    private static final int LABEL_INDEX = 1;
+    private static final double NORM_MIN = 0;
+    private static final double NORM_MAX = 1;
+    private static final float DELTA = 1e-6f;
+    private static final String CACHE_NAME = "test";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void scaledBatchesMatchRecordReader() throws Exception {
+        List<URI> images = writeImages(new Random(1));
+        File cacheDirectory = temporaryFolder.newFolder("cache");
+
+        DataSetIterator expected = recordReaderIterator(images);
+        expected.setPreProcessor(new ImagePreProcessingScaler(NORM_MIN, NORM_MAX));
+        try (TensorCacheFile cache = openCache(cacheDirectory, images)) {
+            assertEquals(expected.getLabels(), cache.getLabels());
+            assertSameBatches(expected, new TensorCacheDataSetIterator(cache, BATCH_SIZE, NORM_MIN, NORM_MAX));
+        }
+    }
+
+    @Test
+    public void rawBatchesMatchRecordReader() throws Exception {
+        List<URI> images = writeImages(new Random(2));
+        File cacheDirectory = temporaryFolder.newFolder("cache");
+
+        try (TensorCacheFile cache = openCache(cacheDirectory, images)) {
+            assertSameBatches(recordReaderIterator(images), new TensorCacheDataSetIterator(cache, BATCH_SIZE));
+        }
+    }
+
+    @Test
+    public void subsetReturnsImagesInGivenOrder() throws Exception {
+        List<URI> images = writeImages(new Random(3));
+        File cacheDirectory = temporaryFolder.newFolder("cache");
+        int[] examples = {6, 0, 3, 5};
+
+        try (TensorCacheFile cache = openCache(cacheDirectory, images)) {
+            DataSet all = new TensorCacheDataSetIterator(cache, images.size(), NORM_MIN, NORM_MAX).next();
+            DataSet subset = new TensorCacheDataSetIterator(cache, examples, examples.length, NORM_MIN, NORM_MAX).next();
+            for (int i = 0; i < examples.length; i++) {
+                assertArrayEquals(values(all.get(examples[i]).getFeatures()), values(subset.get(i).getFeatures()), DELTA);
+                assertArrayEquals(values(all.get(examples[i]).getLabels()), values(subset.get(i).getLabels()), DELTA);
+            }
+        }
+    }
+
+    @Test
+    public void changedImageRebuildsCache() throws Exception {
+        List<URI> images = writeImages(new Random(4));
+        File cacheDirectory = temporaryFolder.newFolder("cache");
+        openCache(cacheDirectory, images).close();
+
+        // Same size on disk is not enough to tell the images apart, the modification time is
+        File changed = new File(images.get(2));
+        long lastModified = changed.lastModified();
+        ImageIO.write(randomImage(new Random(5)), "png", changed);
+        assertTrue(changed.setLastModified(lastModified + 10_000));
+
+        DataSetIterator expected = recordReaderIterator(images);
+        expected.setPreProcessor(new ImagePreProcessingScaler(NORM_MIN, NORM_MAX));
+        try (TensorCacheFile cache = openCache(cacheDirectory, images)) {
+            assertSameBatches(expected, new TensorCacheDataSetIterator(cache, BATCH_SIZE, NORM_MIN, NORM_MAX));
+        }
+    }
+
+
+
+    // Static helpers
+    //------------------------------------------------------------------------------------------------------------------
+    private List<URI> writeImages(Random random) throws Exception {
+        List<URI> images = new ArrayList<>();
+        for (int i = 0; i < LABELS.length; i++) {
+            File labelDirectory = temporaryFolder.newFolder(LABELS[i]);
+            for (int image = 0; image < COUNTS[i]; image++) {
+                File file = new File(labelDirectory, image + ".png");
+                ImageIO.write(randomImage(random), "png", file);
+                images.add(file.toURI());
+            }
+        }
+        return images;
+    }
+
+    private static BufferedImage randomImage(Random random) {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < HEIGHT; y++)
+            for (int x = 0; x < WIDTH; x++)
+                image.setRGB(x, y, random.nextInt(1 << 24));
+        return image;
+    }
+
+    private static DataSetIterator recordReaderIterator(List<URI> images) throws Exception {
+        ImageRecordReader imageRecordReader = new ImageRecordReader(HEIGHT, WIDTH, CHANNELS, new ParentPathLabelGenerator());
+        imageRecordReader.initialize(new CollectionInputSplit(images));
+        return new RecordReaderDataSetIterator(imageRecordReader, BATCH_SIZE, LABEL_INDEX, LABELS.length);
+    }
+
+    private static TensorCacheFile openCache(File cacheDirectory, List<URI> images) throws TensorCacheException {
+        return TensorCache.open(cacheDirectory, CACHE_NAME, new CollectionInputSplit(images), HEIGHT, WIDTH, CHANNELS, new ParentPathLabelGenerator());
+    }
+
+    private static void assertSameBatches(DataSetIterator expected, DataSetIterator actual) {
+        int batch = 0;
+        while (expected.hasNext()) {
+            assertTrue("Batch " + batch + " is missing", actual.hasNext());
+            DataSet expectedBatch = expected.next();
+            DataSet actualBatch = actual.next();
+            assertArrayEquals(expectedBatch.getFeatures().shape(), actualBatch.getFeatures().shape());
+            assertArrayEquals(expectedBatch.getLabels().shape(), actualBatch.getLabels().shape());
+            assertArrayEquals("Features of batch " + batch, values(expectedBatch.getFeatures()), values(actualBatch.getFeatures()), DELTA);
+            assertArrayEquals("Labels of batch " + batch, values(expectedBatch.getLabels()), values(actualBatch.getLabels()), DELTA);
+            batch++;
+        }
+        assertFalse(actual.hasNext());
+    }
+
+    /**
+     * Values of an array in c order, views of a bigger buffer included
+     */
+    private static float[] values(INDArray array) {
+        return array.dup('c').data().asFloat();
+    }
+    //------------------------------------------------------------------------------------------------------------------
+}
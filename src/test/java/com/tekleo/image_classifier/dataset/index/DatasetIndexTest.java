@@ -0,0 +1,162 @@
+package com.tekleo.image_classifier.dataset.index;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DatasetIndexTest {
+    // Uneven class sizes, so rounding per label shows up in the counts
+    private static final String[] LABELS = {"airplane", "cat", "dog"};
+    private static final int[] COUNTS = {100, 60, 37};
+    private static final long SEED = 42;
+
+    private final DatasetIndex index = syntheticIndex();
+
+    @Test
+    public void splitKeepsLabelProportions() {
+        IndexSplit split = index.split(80, SEED);
+        assertEquals(index.size(), split.getTrain().size() + split.getTest().size());
+        assertTrue(split.getValidation().isEmpty());
+        assertDisjoint(split.getTrain(), split.getTest());
+
+        Map<String, Integer> train = countByLabel(split.getTrain());
+        Map<String, Integer> test = countByLabel(split.getTest());
+        for (int i = 0; i < LABELS.length; i++) {
+            assertEquals(Math.round(COUNTS[i] * 0.8), (long) train.get(LABELS[i]));
+            assertEquals(COUNTS[i] - Math.round(COUNTS[i] * 0.8), (long) test.get(LABELS[i]));
+        }
+    }
+
+    @Test
+    public void splitIsDeterministicForSeed() {
+        assertEquals(paths(index.split(80, 10, SEED).getTrain()), paths(index.split(80, 10, SEED).getTrain()));
+        assertEquals(paths(index.split(80, 10, SEED).getValidation()), paths(index.split(80, 10, SEED).getValidation()));
+        assertEquals(paths(index.split(80, 10, SEED).getTest()), paths(index.split(80, 10, SEED).getTest()));
+        assertNotEquals(paths(index.split(80, SEED).getTest()), paths(index.split(80, SEED + 1).getTest()));
+    }
+
+    @Test
+    public void splitIsIndependentOfListingOrder() {
+        List<IndexedDirectory> reversed = new ArrayList<>(index.getDirectories());
+        Collections.reverse(reversed);
+        DatasetIndex reversedIndex = new DatasetIndex(index.getRoot(), index.getExtensions(), reversed);
+        assertEquals(paths(index.split(80, SEED).getTest()), paths(reversedIndex.split(80, SEED).getTest()));
+    }
+
+    @Test
+    public void validationIsHeldOutOfTrainAndLeavesTestUnchanged() {
+        IndexSplit plain = index.split(80, SEED);
+        IndexSplit withValidation = index.split(80, 10, SEED);
+
+        assertEquals(new HashSet<>(paths(plain.getTest())), new HashSet<>(paths(withValidation.getTest())));
+        assertDisjoint(withValidation.getTrain(), withValidation.getValidation());
+        Set<String> trainAndValidation = new HashSet<>(paths(withValidation.getTrain()));
+        trainAndValidation.addAll(paths(withValidation.getValidation()));
+        assertEquals(new HashSet<>(paths(plain.getTrain())), trainAndValidation);
+
+        // Validation share is taken of all images of a label, not of its train share
+        Map<String, Integer> validation = countByLabel(withValidation.getValidation());
+        for (int i = 0; i < LABELS.length; i++)
+            assertEquals(Math.round(COUNTS[i] * 0.1), (long) validation.get(LABELS[i]));
+    }
+
+    @Test
+    public void foldsAreDisjointAndCoverEveryEntry() {
+        int k = 5;
+        List<IndexSplit> folds = index.folds(k, SEED);
+        assertEquals(k, folds.size());
+
+        Set<String> tested = new HashSet<>();
+        for (IndexSplit fold : folds) {
+            assertEquals(index.size(), fold.getTrain().size() + fold.getTest().size());
+            assertDisjoint(fold.getTrain(), fold.getTest());
+            for (String path : paths(fold.getTest()))
+                assertTrue(path + " is tested by two folds", tested.add(path));
+        }
+        assertEquals(new HashSet<>(paths(index.getEntries())), tested);
+    }
+
+    @Test
+    public void foldsKeepLabelProportions() {
+        int k = 5;
+        for (IndexSplit fold : index.folds(k, SEED)) {
+            Map<String, Integer> test = countByLabel(fold.getTest());
+            for (int i = 0; i < LABELS.length; i++) {
+                int count = test.getOrDefault(LABELS[i], 0);
+                assertTrue(LABELS[i] + " has " + count + " test images in a fold", count >= COUNTS[i] / k && count <= COUNTS[i] / k + 1);
+            }
+        }
+    }
+
+    @Test
+    public void foldsAreDeterministicForSeed() {
+        List<IndexSplit> first = index.folds(3, SEED);
+        List<IndexSplit> second = index.folds(3, SEED);
+        for (int fold = 0; fold < first.size(); fold++) {
+            assertEquals(paths(first.get(fold).getTrain()), paths(second.get(fold).getTrain()));
+            assertEquals(paths(first.get(fold).getTest()), paths(second.get(fold).getTest()));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void validationLargerThanTrainIsRejected() {
+        index.split(50, 60, SEED);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void singleFoldIsRejected() {
+        index.folds(1, SEED);
+    }
+
+
+
+    // Static helpers
+    //------------------------------------------------------------------------------------------------------------------
+    private static DatasetIndex syntheticIndex() {
+        List<IndexedDirectory> directories = new ArrayList<>();
+        List<String> subdirectories = new ArrayList<>();
+        for (int i = 0; i < LABELS.length; i++) {
+            List<IndexEntry> files = new ArrayList<>();
+            for (int image = 0; image < COUNTS[i]; image++)
+                files.add(new IndexEntry(LABELS[i] + "/" + image + ".png", LABELS[i], 100 + image, 0));
+            directories.add(new IndexedDirectory(LABELS[i], 0, Collections.emptyList(), files));
+            subdirectories.add(LABELS[i]);
+        }
+        directories.add(new IndexedDirectory("", 0, subdirectories, Collections.emptyList()));
+        return new DatasetIndex(new File("synthetic"), Arrays.asList("png"), directories);
+    }
+
+    private static List<String> paths(List<IndexEntry> entries) {
+        List<String> paths = new ArrayList<>();
+        for (IndexEntry entry : entries)
+            paths.add(entry.getRelativePath());
+        return paths;
+    }
+
+    private static Map<String, Integer> countByLabel(List<IndexEntry> entries) {
+        Map<String, Integer> counts = new TreeMap<>();
+        for (IndexEntry entry : entries)
+            counts.merge(entry.getLabel(), 1, Integer::sum);
+        return counts;
+    }
+
+    private static void assertDisjoint(List<IndexEntry> first, List<IndexEntry> second) {
+        Set<String> firstPaths = new HashSet<>(paths(first));
+        for (String path : paths(second))
+            assertTrue(path + " is in both parts", !firstPaths.contains(path));
+        assertEquals(first.size(), firstPaths.size());
+    }
+    //------------------------------------------------------------------------------------------------------------------
+}
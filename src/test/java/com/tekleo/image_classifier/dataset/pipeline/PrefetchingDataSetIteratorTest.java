@@ -0,0 +1,200 @@
+package com.tekleo.image_classifier.dataset.pipeline;
+
+import org.junit.Test;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class PrefetchingDataSetIteratorTest {
+    private static final int CHANNELS = 3;
+    private static final int HEIGHT = 4;
+    private static final int WIDTH = 4;
+    private static final List<String> LABELS = Arrays.asList("cat", "dog", "frog");
+    // Not a multiple of the batch size, so the last batch is a smaller tail batch
+    private static final int NUMBER_OF_EXAMPLES = 103;
+    private static final int BATCH_SIZE = 8;
+    private static final int WORKERS = 4;
+    private static final double NORM_MIN = -1;
+    private static final double NORM_MAX = 1;
+    private static final float DELTA = 1e-6f;
+
+    private final InMemorySource source = new InMemorySource(new Random(7));
+
+    @Test
+    public void batchesComeInSourceOrderWithSeveralWorkers() {
+        PrefetchingDataSetIterator iterator = new PrefetchingDataSetIterator(source, BATCH_SIZE, WORKERS, 3, 1, NORM_MIN, NORM_MAX);
+        try {
+            assertEpoch(iterator);
+        } finally {
+            iterator.shutdown();
+        }
+    }
+
+    @Test
+    public void resetReturnsSameBatchesAgain() {
+        PrefetchingDataSetIterator iterator = new PrefetchingDataSetIterator(source, BATCH_SIZE, WORKERS, 2, 2, NORM_MIN, NORM_MAX);
+        try {
+            // Reset in the middle of an epoch as well as after a full one
+            iterator.next();
+            iterator.next();
+            iterator.reset();
+            assertEpoch(iterator);
+            iterator.reset();
+            assertEpoch(iterator);
+        } finally {
+            iterator.shutdown();
+        }
+    }
+
+    @Test
+    public void retainedBatchesStayIntactWhileReadingOn() {
+        int retained = 3;
+        PrefetchingDataSetIterator iterator = new PrefetchingDataSetIterator(source, BATCH_SIZE, WORKERS, 2, retained, NORM_MIN, NORM_MAX);
+        try {
+            List<DataSet> inFlight = new ArrayList<>();
+            int batch = 0;
+            while (iterator.hasNext()) {
+                inFlight.add(iterator.next());
+                if (inFlight.size() > retained)
+                    inFlight.remove(0);
+
+                // Workers keep filling the free slots meanwhile, none of them may be one that is still held
+                for (int i = 0; i < inFlight.size(); i++)
+                    assertBatch(batch - inFlight.size() + 1 + i, inFlight.get(i));
+                batch++;
+            }
+        } finally {
+            iterator.shutdown();
+        }
+    }
+
+    @Test
+    public void slotBuffersAreReusedAroundTheRing() {
+        int prefetch = 2;
+        int retained = 1;
+        int ringSize = prefetch + retained;
+        PrefetchingDataSetIterator iterator = new PrefetchingDataSetIterator(source, BATCH_SIZE, WORKERS, prefetch, retained, NORM_MIN, NORM_MAX);
+        try {
+            List<INDArray> features = new ArrayList<>();
+            while (iterator.hasNext())
+                features.add(iterator.next().getFeatures());
+
+            int fullBatches = NUMBER_OF_EXAMPLES / BATCH_SIZE;
+            for (int batch = ringSize; batch < fullBatches; batch++)
+                assertSame(features.get(batch - ringSize), features.get(batch));
+            for (int batch = 1; batch < ringSize; batch++)
+                assertNotSame(features.get(0), features.get(batch));
+            assertNotSame(features.get(fullBatches - ringSize), features.get(fullBatches));
+        } finally {
+            iterator.shutdown();
+        }
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void otherBatchSizeIsRejected() {
+        PrefetchingDataSetIterator iterator = new PrefetchingDataSetIterator(source, BATCH_SIZE, WORKERS, 2, 1, NORM_MIN, NORM_MAX);
+        try {
+            iterator.next(BATCH_SIZE + 1);
+        } finally {
+            iterator.shutdown();
+        }
+    }
+
+
+
+    // Static helpers
+    //------------------------------------------------------------------------------------------------------------------
+    private void assertEpoch(PrefetchingDataSetIterator iterator) {
+        int batch = 0;
+        while (iterator.hasNext())
+            assertBatch(batch++, iterator.next());
+        assertEquals((NUMBER_OF_EXAMPLES + BATCH_SIZE - 1) / BATCH_SIZE, batch);
+        assertFalse(iterator.hasNext());
+    }
+
+    private void assertBatch(int batch, DataSet dataSet) {
+        int firstExample = batch * BATCH_SIZE;
+        int count = Math.min(BATCH_SIZE, NUMBER_OF_EXAMPLES - firstExample);
+        int exampleLength = source.getExampleLength();
+
+        float[] features = new float[count * exampleLength];
+        float[] labels = new float[count * LABELS.size()];
+        for (int i = 0; i < count; i++) {
+            for (int j = 0; j < exampleLength; j++)
+                features[i * exampleLength + j] = (float) (NORM_MIN + (NORM_MAX - NORM_MIN) * (source.pixels[firstExample + i][j] & 0xFF) / 255);
+            labels[i * LABELS.size() + source.getLabel(firstExample + i)] = 1;
+        }
+
+        assertArrayEquals(new int[] {count, CHANNELS, HEIGHT, WIDTH}, dataSet.getFeatures().shape());
+        assertArrayEquals("Features of batch " + batch, features, dataSet.getFeatures().dup('c').data().asFloat(), DELTA);
+        assertArrayEquals("Labels of batch " + batch, labels, dataSet.getLabels().dup('c').data().asFloat(), DELTA);
+    }
+
+    /**
+     * Random images kept in memory, stands in for a tensor cache
+     */
+    private static class InMemorySource implements ExampleSource {
+        private final byte[][] pixels;
+        private final int[] labels;
+
+        private InMemorySource(Random random) {
+            this.pixels = new byte[NUMBER_OF_EXAMPLES][CHANNELS * HEIGHT * WIDTH];
+            this.labels = new int[NUMBER_OF_EXAMPLES];
+            for (int i = 0; i < NUMBER_OF_EXAMPLES; i++) {
+                random.nextBytes(pixels[i]);
+                labels[i] = random.nextInt(LABELS.size());
+            }
+        }
+
+        @Override
+        public int getNumberOfExamples() {
+            return NUMBER_OF_EXAMPLES;
+        }
+
+        @Override
+        public int getChannels() {
+            return CHANNELS;
+        }
+
+        @Override
+        public int getHeight() {
+            return HEIGHT;
+        }
+
+        @Override
+        public int getWidth() {
+            return WIDTH;
+        }
+
+        @Override
+        public int getExampleLength() {
+            return CHANNELS * HEIGHT * WIDTH;
+        }
+
+        @Override
+        public List<String> getLabels() {
+            return LABELS;
+        }
+
+        @Override
+        public int getLabel(int index) {
+            return labels[index];
+        }
+
+        @Override
+        public void readPixels(int index, byte[] destination, int destinationOffset) {
+            System.arraycopy(pixels[index], 0, destination, destinationOffset, pixels[index].length);
+        }
+    }
+    //------------------------------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,99 @@
+package com.tekleo.image_classifier.inference;
+
+import org.junit.Test;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MicroBatcherTest {
+    // Long enough that no batch is ever run, requests stay in collection until the batcher is closed
+    private static final long LATENCY_BUDGET_MICROS = TimeUnit.SECONDS.toMicros(60);
+    private static final int MAX_BATCH_SIZE = 1000;
+    // Fewer than a full batch from all submitters together, so a batch is never run early
+    private static final int SUBMITTERS = 4;
+    private static final int SUBMITS_PER_THREAD = 200;
+    private static final long COMPLETION_TIMEOUT_SECONDS = 5;
+
+    // The network is never touched, a forward pass would only start once the latency budget runs out
+    private final INDArray features = null;
+
+    @Test
+    public void requestsBeingCollectedFailWhenClosed() throws Exception {
+        MicroBatcher microBatcher = new MicroBatcher(null, MAX_BATCH_SIZE, LATENCY_BUDGET_MICROS, new LatencyRecorder());
+        List<CompletableFuture<INDArray>> futures = new ArrayList<>();
+        for (int i = 0; i < 5; i++)
+            futures.add(microBatcher.submit(features));
+
+        // Let the dispatcher move the requests from its queue into the batch it collects
+        Thread.sleep(300);
+        microBatcher.close();
+
+        for (CompletableFuture<INDArray> future : futures)
+            assertFailedAsClosed(future);
+    }
+
+    @Test
+    public void everyRequestCompletesWhenClosedDuringSubmits() throws Exception {
+        MicroBatcher microBatcher = new MicroBatcher(null, MAX_BATCH_SIZE, LATENCY_BUDGET_MICROS, new LatencyRecorder());
+        List<CompletableFuture<INDArray>> futures = new ArrayList<>();
+        List<Thread> submitters = new ArrayList<>();
+        CountDownLatch started = new CountDownLatch(SUBMITTERS);
+        for (int t = 0; t < SUBMITTERS; t++) {
+            Thread submitter = new Thread(() -> {
+                started.countDown();
+                try {
+                    for (int i = 0; i < SUBMITS_PER_THREAD; i++) {
+                        CompletableFuture<INDArray> future = microBatcher.submit(features);
+                        synchronized (futures) {
+                            futures.add(future);
+                        }
+                    }
+                } catch (IllegalStateException closed) {
+                    // Submits after close are rejected right away
+                }
+            });
+            submitter.start();
+            submitters.add(submitter);
+        }
+
+        started.await();
+        microBatcher.close();
+        for (Thread submitter : submitters)
+            submitter.join();
+
+        for (CompletableFuture<INDArray> future : futures)
+            assertFailedAsClosed(future);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void submitAfterCloseIsRejected() {
+        MicroBatcher microBatcher = new MicroBatcher(null, MAX_BATCH_SIZE, LATENCY_BUDGET_MICROS, new LatencyRecorder());
+        microBatcher.close();
+        microBatcher.submit(features);
+    }
+
+
+
+    // Static helpers
+    //------------------------------------------------------------------------------------------------------------------
+    private static void assertFailedAsClosed(CompletableFuture<INDArray> future) throws InterruptedException {
+        try {
+            future.get(COMPLETION_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            fail("Request was served by a closed batcher");
+        } catch (TimeoutException e) {
+            fail("Request never completed after close");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+    //------------------------------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,144 @@
+package com.tekleo.image_classifier.inference.embedding;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HnswIndexTest {
+    private static final int SIZE = 20000;
+    private static final int DIMENSION = 64;
+    private static final int CLUSTERS = 200;
+    private static final double SPREAD = 0.5;
+    private static final double QUERY_NOISE = 0.1;
+    private static final int QUERIES = 200;
+    private static final int K = 10;
+    private static final int EF = 64;
+    // Measured recall@10 of this store is 1.0 at ef 64 and 0.98 at ef 10, the floors leave some room but catch a broken graph or search
+    private static final double MIN_RECALL = 0.95;
+    private static final double MIN_RECALL_AT_EF_K = 0.9;
+    private static final long SEED = 42;
+
+    @ClassRule
+    public static TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static EmbeddingStore store;
+    private static HnswIndex index;
+    private static float[][] queries;
+
+    @BeforeClass
+    public static void buildIndex() throws Exception {
+        File storeFile = temporaryFolder.newFile("store.bin");
+        writeClusteredStore(storeFile);
+        store = EmbeddingStore.open(storeFile);
+        index = HnswIndex.build(store, HnswIndex.DEFAULT_M, HnswIndex.DEFAULT_EF_CONSTRUCTION, SEED);
+        queries = queries();
+    }
+
+    @AfterClass
+    public static void closeStore() throws Exception {
+        store.close();
+    }
+
+    @Test
+    public void recallAgainstExactSearchIsAboveFloor() {
+        assertRecall(EF, MIN_RECALL);
+    }
+
+    @Test
+    public void recallWithSmallestBeamIsAboveFloor() {
+        assertRecall(K, MIN_RECALL_AT_EF_K);
+    }
+
+    @Test
+    public void resultsAreSortedByDistance() {
+        List<Neighbor> neighbors = index.search(queries[0], K, EF);
+        assertEquals(K, neighbors.size());
+        for (int i = 1; i < neighbors.size(); i++)
+            assertTrue(neighbors.get(i - 1).getDistance() <= neighbors.get(i).getDistance());
+    }
+
+    @Test
+    public void indexReadBackGivesSameResults() throws Exception {
+        File indexFile = temporaryFolder.newFile("index.bin");
+        index.write(indexFile);
+        HnswIndex readIndex = HnswIndex.read(indexFile, store);
+        assertEquals(index.size(), readIndex.size());
+        for (int i = 0; i < 20; i++)
+            assertEquals(index.search(queries[i], K, EF), readIndex.search(queries[i], K, EF));
+    }
+
+
+
+    // Static helpers
+    //------------------------------------------------------------------------------------------------------------------
+    private static void assertRecall(int ef, double minRecall) {
+        int found = 0;
+        for (float[] query : queries) {
+            Set<Integer> exact = indices(store.search(query, K));
+            for (Neighbor neighbor : index.search(query, K, ef))
+                if (exact.contains(neighbor.getIndex()))
+                    found++;
+        }
+        double recall = (double) found / (QUERIES * K);
+        assertTrue("Recall@" + K + " at ef " + ef + " is " + recall + ", expected at least " + minRecall, recall >= minRecall);
+    }
+
+    // Unit vectors scattered around random cluster centers, like the synthetic store of SimilarityBenchmark
+    private static void writeClusteredStore(File file) throws Exception {
+        Random random = new Random(SEED);
+        float[][] centers = new float[CLUSTERS][];
+        for (int c = 0; c < centers.length; c++)
+            centers[c] = EmbeddingStore.normalize(gaussian(random, 1));
+
+        double noise = SPREAD / Math.sqrt(DIMENSION);
+        float[] vector = new float[DIMENSION];
+        try (EmbeddingStoreWriter writer = new EmbeddingStoreWriter(file, DIMENSION)) {
+            for (int i = 0; i < SIZE; i++) {
+                float[] center = centers[random.nextInt(centers.length)];
+                for (int d = 0; d < vector.length; d++)
+                    vector[d] = (float) (center[d] + random.nextGaussian() * noise);
+                writer.add(vector, 0, "synthetic/" + i);
+            }
+        }
+    }
+
+    // Stored vectors moved by a little noise, so a query is close to, but not exactly at, a stored vector
+    private static float[][] queries() {
+        Random random = new Random(SEED + 1);
+        double noise = QUERY_NOISE / Math.sqrt(DIMENSION);
+        float[][] queryVectors = new float[QUERIES][DIMENSION];
+        for (int i = 0; i < QUERIES; i++) {
+            store.get(random.nextInt(store.size()), queryVectors[i]);
+            for (int d = 0; d < DIMENSION; d++)
+                queryVectors[i][d] += random.nextGaussian() * noise;
+            queryVectors[i] = EmbeddingStore.normalize(queryVectors[i]);
+        }
+        return queryVectors;
+    }
+
+    private static float[] gaussian(Random random, double deviation) {
+        float[] vector = new float[DIMENSION];
+        for (int d = 0; d < DIMENSION; d++)
+            vector[d] = (float) (random.nextGaussian() * deviation);
+        return vector;
+    }
+
+    private static Set<Integer> indices(List<Neighbor> neighbors) {
+        Set<Integer> indices = new HashSet<>();
+        for (Neighbor neighbor : neighbors)
+            indices.add(neighbor.getIndex());
+        return indices;
+    }
+    //------------------------------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,175 @@
+package com.tekleo.image_classifier.inference.engine;
+
+import org.deeplearning4j.nn.conf.ConvolutionMode;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.inputs.InputType;
+import org.deeplearning4j.nn.conf.layers.ActivationLayer;
+import org.deeplearning4j.nn.conf.layers.BatchNormalization;
+import org.deeplearning4j.nn.conf.layers.ConvolutionLayer;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.GlobalPoolingLayer;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.conf.layers.PoolingType;
+import org.deeplearning4j.nn.conf.layers.SubsamplingLayer;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.weights.WeightInit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+
+import java.io.File;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EngineExporterTest {
+    private static final int CHANNELS = 3;
+    private static final int HEIGHT = 8;
+    private static final int WIDTH = 8;
+    private static final int CLASSES = 3;
+    private static final int MAX_BATCH_SIZE = 8;
+    // Smaller than the session maximum, so only part of the session buffers is used
+    private static final int BATCH_SIZE = 5;
+    private static final int TRAINING_STEPS = 5;
+    private static final float DELTA = 1e-5f;
+    // Half weights keep about 3 significant digits, probabilities drift by much less than this
+    private static final float HALF_DELTA = 1e-2f;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void convolutionBatchNormalizationAndDenseMatchNetwork() throws Exception {
+        MultiLayerNetwork network = trainedNetwork(new NeuralNetConfiguration.Builder()
+                .seed(42)
+                .weightInit(WeightInit.XAVIER)
+                .list()
+                // Batch normalization after an identity convolution is folded into it, the activation layer is merged into both
+                .layer(0, new ConvolutionLayer.Builder(3, 3).nOut(4).activation(Activation.IDENTITY).build())
+                .layer(1, new BatchNormalization.Builder().build())
+                .layer(2, new ActivationLayer.Builder().activation(Activation.RELU).build())
+                .layer(3, new SubsamplingLayer.Builder(PoolingType.MAX).kernelSize(2, 2).stride(2, 2).build())
+                .layer(4, new BatchNormalization.Builder().build())
+                .layer(5, new DenseLayer.Builder().nOut(6).activation(Activation.TANH).build())
+                .layer(6, new OutputLayer.Builder(LossFunctions.LossFunction.MCXENT).nOut(CLASSES).activation(Activation.SOFTMAX).build())
+                .setInputType(InputType.convolutional(HEIGHT, WIDTH, CHANNELS))
+                .build());
+
+        assertSameOutput(network, EngineExporter.export(network, CHANNELS, HEIGHT, WIDTH), 1);
+        assertSameOutput(network, EngineExporter.export(network, CHANNELS, HEIGHT, WIDTH), 2);
+    }
+
+    @Test
+    public void sameModeConvolutionAndGlobalPoolingMatchNetwork() throws Exception {
+        MultiLayerNetwork network = trainedNetwork(new NeuralNetConfiguration.Builder()
+                .seed(7)
+                .weightInit(WeightInit.XAVIER)
+                .convolutionMode(ConvolutionMode.Same)
+                .list()
+                .layer(0, new ConvolutionLayer.Builder(3, 3).stride(2, 2).nOut(5).activation(Activation.RELU).build())
+                .layer(1, new SubsamplingLayer.Builder(PoolingType.AVG).kernelSize(2, 2).stride(2, 2).build())
+                .layer(2, new GlobalPoolingLayer.Builder(PoolingType.AVG).build())
+                .layer(3, new OutputLayer.Builder(LossFunctions.LossFunction.MCXENT).nOut(CLASSES).activation(Activation.SOFTMAX).build())
+                .setInputType(InputType.convolutional(HEIGHT, WIDTH, CHANNELS))
+                .build());
+
+        assertSameOutput(network, EngineExporter.export(network, CHANNELS, HEIGHT, WIDTH), 2);
+    }
+
+    @Test
+    public void savedModelGivesSameOutput() throws Exception {
+        MultiLayerNetwork network = trainedNetwork(new NeuralNetConfiguration.Builder()
+                .seed(3)
+                .weightInit(WeightInit.XAVIER)
+                .list()
+                .layer(0, new ConvolutionLayer.Builder(3, 3).nOut(4).activation(Activation.RELU).build())
+                .layer(1, new OutputLayer.Builder(LossFunctions.LossFunction.MCXENT).nOut(CLASSES).activation(Activation.SOFTMAX).build())
+                .setInputType(InputType.convolutional(HEIGHT, WIDTH, CHANNELS))
+                .build());
+
+        File file = new File(temporaryFolder.getRoot(), "model.engine");
+        EngineModelFile.write(file, EngineExporter.export(network, CHANNELS, HEIGHT, WIDTH));
+        EngineModel model = EngineModelFile.read(file);
+        assertEquals(CLASSES, model.getNumberOfClasses());
+        assertSameOutput(network, model, 1);
+    }
+
+    @Test
+    public void halfPrecisionWeightsStayCloseToNetwork() throws Exception {
+        MultiLayerNetwork network = trainedNetwork(new NeuralNetConfiguration.Builder()
+                .seed(5)
+                .weightInit(WeightInit.XAVIER)
+                .list()
+                .layer(0, new ConvolutionLayer.Builder(3, 3).nOut(4).activation(Activation.RELU).build())
+                .layer(1, new DenseLayer.Builder().nOut(6).activation(Activation.RELU).build())
+                .layer(2, new OutputLayer.Builder(LossFunctions.LossFunction.MCXENT).nOut(CLASSES).activation(Activation.SOFTMAX).build())
+                .setInputType(InputType.convolutional(HEIGHT, WIDTH, CHANNELS))
+                .build());
+
+        EngineModel floatModel = EngineExporter.export(network, CHANNELS, HEIGHT, WIDTH);
+        EngineModel halfModel = floatModel.withWeightPrecision(WeightPrecision.HALF);
+        assertTrue(halfModel.getParameterBytes() < floatModel.getParameterBytes());
+
+        float[] features = randomFeatures(new Random(2), BATCH_SIZE);
+        float[] halfOutput = engineOutput(halfModel, features, BATCH_SIZE, 2);
+        assertArrayEquals(networkOutput(network, features, BATCH_SIZE), halfOutput, HALF_DELTA);
+
+        // Half weights are stored as they are, so a saved model gives exactly the same output
+        File file = new File(temporaryFolder.getRoot(), "half.engine");
+        EngineModelFile.write(file, halfModel);
+        assertArrayEquals(halfOutput, engineOutput(EngineModelFile.read(file), features, BATCH_SIZE, 1), 0);
+    }
+
+
+
+    // Static helpers
+    //------------------------------------------------------------------------------------------------------------------
+    /**
+     * A few training steps move batch normalization statistics away from their initial values, so folding them is actually checked
+     */
+    private static MultiLayerNetwork trainedNetwork(MultiLayerConfiguration configuration) {
+        MultiLayerNetwork network = new MultiLayerNetwork(configuration);
+        network.init();
+        Random random = new Random(1);
+        for (int step = 0; step < TRAINING_STEPS; step++) {
+            INDArray labels = Nd4j.zeros(MAX_BATCH_SIZE, CLASSES);
+            for (int i = 0; i < MAX_BATCH_SIZE; i++)
+                labels.putScalar(i, random.nextInt(CLASSES), 1);
+            network.fit(new DataSet(Nd4j.create(randomFeatures(random, MAX_BATCH_SIZE), new int[] {MAX_BATCH_SIZE, CHANNELS, HEIGHT, WIDTH}), labels));
+        }
+        return network;
+    }
+
+    private static float[] randomFeatures(Random random, int batchSize) {
+        float[] features = new float[batchSize * CHANNELS * HEIGHT * WIDTH];
+        for (int i = 0; i < features.length; i++)
+            features[i] = random.nextFloat() * 2 - 1;
+        return features;
+    }
+
+    private static float[] networkOutput(MultiLayerNetwork network, float[] features, int batchSize) {
+        return network.output(Nd4j.create(features, new int[] {batchSize, CHANNELS, HEIGHT, WIDTH}), false).dup('c').data().asFloat();
+    }
+
+    private static float[] engineOutput(EngineModel model, float[] features, int batchSize, int threads) {
+        float[] output = new float[batchSize * CLASSES];
+        try (EngineSession session = model.newSession(MAX_BATCH_SIZE, threads)) {
+            session.output(features, batchSize, output);
+        }
+        return output;
+    }
+
+    private static void assertSameOutput(MultiLayerNetwork network, EngineModel model, int threads) {
+        float[] features = randomFeatures(new Random(2), BATCH_SIZE);
+        assertArrayEquals(networkOutput(network, features, BATCH_SIZE), engineOutput(model, features, BATCH_SIZE, threads), DELTA);
+    }
+    //------------------------------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,94 @@
+package com.tekleo.image_classifier.inference.engine;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HalfFloatsTest {
+    private static final float MAX_HALF = 65504;
+    private static final float MIN_SUBNORMAL = (float) Math.pow(2, -24);
+    private static final float ONE_ULP_AT_ONE = (float) Math.pow(2, -10);
+
+    @Test
+    public void everyHalfSurvivesRoundTrip() {
+        for (int bits = 0; bits < 1 << 16; bits++) {
+            short half = (short) bits;
+            float value = HalfFloats.toFloat(half);
+            if (Float.isNaN(value))
+                assertTrue(Float.isNaN(HalfFloats.toFloat(HalfFloats.fromFloat(value))));
+            else
+                assertEquals("Half 0x" + Integer.toHexString(bits), half, HalfFloats.fromFloat(value));
+        }
+    }
+
+    @Test
+    public void knownValuesAreExact() {
+        assertEquals(0x0000, HalfFloats.fromFloat(0f));
+        assertEquals((short) 0x8000, HalfFloats.fromFloat(-0f));
+        assertEquals(0x3C00, HalfFloats.fromFloat(1f));
+        assertEquals((short) 0xC000, HalfFloats.fromFloat(-2f));
+        assertEquals(0x3800, HalfFloats.fromFloat(0.5f));
+        assertEquals(0x7BFF, HalfFloats.fromFloat(MAX_HALF));
+        assertEquals(0x0001, HalfFloats.fromFloat(MIN_SUBNORMAL));
+        assertEquals(MAX_HALF, HalfFloats.toFloat((short) 0x7BFF), 0);
+        assertEquals(MIN_SUBNORMAL, HalfFloats.toFloat((short) 0x0001), 0);
+        assertEquals(1 + ONE_ULP_AT_ONE, HalfFloats.toFloat((short) 0x3C01), 0);
+    }
+
+    @Test
+    public void halfwayValuesRoundToEven() {
+        float halfUlp = ONE_ULP_AT_ONE / 2;
+        // 1 has an even mantissa, the next half up has an odd one
+        assertEquals(1f, roundTrip(1 + halfUlp), 0);
+        assertEquals(1 + 2 * ONE_ULP_AT_ONE, roundTrip(1 + 3 * halfUlp), 0);
+        assertEquals(1 + ONE_ULP_AT_ONE, roundTrip(Math.nextUp(1 + halfUlp)), 0);
+        assertEquals(1f, roundTrip(Math.nextDown(1 + halfUlp)), 0);
+
+        // Halfway to the smallest subnormal goes to zero, just above it doesn't
+        assertEquals(0f, roundTrip(MIN_SUBNORMAL / 2), 0);
+        assertEquals(MIN_SUBNORMAL, roundTrip(Math.nextUp(MIN_SUBNORMAL / 2)), 0);
+        assertEquals(2 * MIN_SUBNORMAL, roundTrip(1.5f * MIN_SUBNORMAL), 0);
+    }
+
+    @Test
+    public void specialValuesAndOverflow() {
+        assertEquals(Float.POSITIVE_INFINITY, roundTrip(Float.POSITIVE_INFINITY), 0);
+        assertEquals(Float.NEGATIVE_INFINITY, roundTrip(Float.NEGATIVE_INFINITY), 0);
+        assertTrue(Float.isNaN(roundTrip(Float.NaN)));
+        assertEquals(Float.POSITIVE_INFINITY, roundTrip(70000f), 0);
+        assertEquals(Float.NEGATIVE_INFINITY, roundTrip(-1e10f), 0);
+        // Halfway between the largest half and the next power of two rounds up, past the range
+        assertEquals(Float.POSITIVE_INFINITY, roundTrip(65520f), 0);
+        assertEquals(MAX_HALF, roundTrip(65519f), 0);
+        assertEquals(0f, roundTrip(1e-10f), 0);
+        assertEquals(0x8000, HalfFloats.fromFloat(-1e-10f) & 0xFFFF);
+    }
+
+    @Test
+    public void normalValuesStayWithinHalfAnUlp() {
+        Random random = new Random(42);
+        float[] values = new float[10_000];
+        for (int i = 0; i < values.length; i++)
+            values[i] = (float) (random.nextGaussian() * Math.pow(10, random.nextInt(8) - 4));
+
+        float[] restored = HalfFloats.toFloats(HalfFloats.fromFloats(values));
+        for (int i = 0; i < values.length; i++) {
+            if (Math.abs(values[i]) < Math.pow(2, -14))
+                assertEquals(values[i], restored[i], MIN_SUBNORMAL / 2);
+            else
+                assertEquals(values[i], restored[i], Math.abs(values[i]) * Math.pow(2, -11));
+        }
+    }
+
+
+
+    // Static helpers
+    //------------------------------------------------------------------------------------------------------------------
+    private static float roundTrip(float value) {
+        return HalfFloats.toFloat(HalfFloats.fromFloat(value));
+    }
+    //------------------------------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,94 @@
+package com.tekleo.image_classifier.neural_network.config;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LearningRateScheduleTest {
+    private static final int ITERATIONS_PER_EPOCH = 10;
+    private static final double DELTA = 1e-9;
+
+    @Test
+    public void constantNeverChanges() {
+        LearningRateSchedule schedule = LearningRateSchedule.constant();
+        for (int iteration = 0; iteration < 50; iteration++)
+            assertEquals(1, schedule.factor(iteration, ITERATIONS_PER_EPOCH, 5), DELTA);
+
+        Map<Integer, Double> expected = new HashMap<>();
+        expected.put(0, 0.01);
+        assertEquals(expected, schedule.toIterationSchedule(0.01, ITERATIONS_PER_EPOCH, 5));
+    }
+
+    @Test
+    public void warmupGrowsLinearlyUpToFullRate() {
+        LearningRateSchedule schedule = LearningRateSchedule.constant().withWarmup(2);
+        assertEquals(1 / 20.0, schedule.factor(0, ITERATIONS_PER_EPOCH, 5), DELTA);
+        assertEquals(10 / 20.0, schedule.factor(9, ITERATIONS_PER_EPOCH, 5), DELTA);
+        // Last warmup iteration already reaches the full rate, the first one after it keeps it
+        assertEquals(1, schedule.factor(19, ITERATIONS_PER_EPOCH, 5), DELTA);
+        assertEquals(1, schedule.factor(20, ITERATIONS_PER_EPOCH, 5), DELTA);
+    }
+
+    @Test
+    public void stepsAreCountedFromStartOfTrainingAcrossWarmup() {
+        LearningRateSchedule schedule = LearningRateSchedule.step(3, 0.1).withWarmup(1);
+        assertEquals(0.5, schedule.factor(4, ITERATIONS_PER_EPOCH, 9), DELTA);
+        assertEquals(1, schedule.factor(10, ITERATIONS_PER_EPOCH, 9), DELTA);
+        assertEquals(1, schedule.factor(29, ITERATIONS_PER_EPOCH, 9), DELTA);
+        assertEquals(0.1, schedule.factor(30, ITERATIONS_PER_EPOCH, 9), DELTA);
+        assertEquals(0.01, schedule.factor(60, ITERATIONS_PER_EPOCH, 9), DELTA);
+    }
+
+    @Test
+    public void stepScheduleOnlyHoldsChanges() {
+        Map<Integer, Double> expected = new HashMap<>();
+        expected.put(0, 0.1);
+        expected.put(30, 0.1 * 0.5);
+        expected.put(60, 0.1 * 0.25);
+        Map<Integer, Double> actual = LearningRateSchedule.step(3, 0.5).toIterationSchedule(0.1, ITERATIONS_PER_EPOCH, 9);
+        assertEquals(expected.keySet(), actual.keySet());
+        for (Map.Entry<Integer, Double> entry : expected.entrySet())
+            assertEquals(entry.getValue(), actual.get(entry.getKey()), DELTA);
+    }
+
+    @Test
+    public void cosineStartsAfterWarmupAndEndsAtMinimum() {
+        LearningRateSchedule schedule = LearningRateSchedule.cosine(0.1).withWarmup(1);
+        int epochs = 5;
+        assertEquals(1, schedule.factor(10, ITERATIONS_PER_EPOCH, epochs), DELTA);
+        // Halfway through the 40 cosine iterations
+        assertEquals(0.1 + 0.9 * 0.5, schedule.factor(30, ITERATIONS_PER_EPOCH, epochs), DELTA);
+        double last = schedule.factor(epochs * ITERATIONS_PER_EPOCH - 1, ITERATIONS_PER_EPOCH, epochs);
+        assertEquals(0.1, last, 0.01);
+        // Early stopping may end training sooner, a longer run stays at the minimum
+        assertEquals(0.1, schedule.factor(epochs * ITERATIONS_PER_EPOCH, ITERATIONS_PER_EPOCH, epochs), DELTA);
+        assertEquals(0.1, schedule.factor(10 * epochs * ITERATIONS_PER_EPOCH, ITERATIONS_PER_EPOCH, epochs), DELTA);
+    }
+
+    @Test
+    public void cosineDecreasesMonotonically() {
+        LearningRateSchedule schedule = LearningRateSchedule.cosine(0);
+        double previous = Double.POSITIVE_INFINITY;
+        for (int iteration = 0; iteration < 5 * ITERATIONS_PER_EPOCH; iteration++) {
+            double factor = schedule.factor(iteration, ITERATIONS_PER_EPOCH, 5);
+            assertTrue(factor <= previous);
+            previous = factor;
+        }
+        assertEquals(1, schedule.factor(0, ITERATIONS_PER_EPOCH, 5), DELTA);
+    }
+
+    @Test
+    public void warmupLongerThanTrainingNeverReachesShape() {
+        LearningRateSchedule schedule = LearningRateSchedule.cosine(0).withWarmup(10);
+        assertEquals(50 / 100.0, schedule.factor(49, ITERATIONS_PER_EPOCH, 5), DELTA);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void emptyStepIsRejected() {
+        LearningRateSchedule.step(0, 0.1);
+    }
+}
@@ -0,0 +1,139 @@
+package com.tekleo.image_classifier.neural_network.distributed;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class ThresholdEncoderTest {
+    private static final int LENGTH = 1000;
+    private static final float THRESHOLD = 0.01f;
+    private static final float DELTA = 1e-5f;
+
+    @Test
+    public void sparseUpdateSurvivesWireRoundTrip() throws IOException {
+        EncodedUpdate update = new EncodedUpdate(LENGTH, THRESHOLD, new int[] {3, -10, 998}, new byte[] {1, 5, 127});
+        // 4 byte count, then 4 byte position and 1 byte level per change
+        assertEquals(9 + 4 + 5 * 3, update.getEncodedBytes());
+        assertRoundTrip(update);
+    }
+
+    @Test
+    public void denseUnitUpdateSurvivesWireRoundTrip() throws IOException {
+        int[] positions = new int[200];
+        byte[] levels = new byte[positions.length];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = i % 2 == 0 ? i * 5 + 1 : -(i * 5 + 1);
+            levels[i] = 1;
+        }
+        EncodedUpdate update = new EncodedUpdate(LENGTH, THRESHOLD, positions, levels);
+        // 2 bits per parameter
+        assertEquals(9 + LENGTH / 4, update.getEncodedBytes());
+        assertRoundTrip(update);
+    }
+
+    @Test
+    public void denseUpdateWithLevelsSurvivesWireRoundTrip() throws IOException {
+        int[] positions = new int[300];
+        byte[] levels = new byte[positions.length];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = i % 3 == 0 ? -(i * 3 + 1) : i * 3 + 1;
+            levels[i] = (byte) (1 + i % EncodedUpdate.MAX_LEVEL);
+        }
+        EncodedUpdate update = new EncodedUpdate(LENGTH, THRESHOLD, positions, levels);
+        // 1 signed level byte per parameter
+        assertEquals(9 + LENGTH, update.getEncodedBytes());
+        assertRoundTrip(update);
+    }
+
+    @Test
+    public void unknownLayoutIsRejected() {
+        try {
+            EncodedUpdate.read(new DataInputStream(new ByteArrayInputStream(new byte[] {7, 0, 0, 0, 1, 0, 0, 0, 0})));
+            fail("Unknown layout was read");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void smallUpdatesStayInResidualUntilTheyReachThreshold() {
+        ThresholdEncoder encoder = new ThresholdEncoder(4, THRESHOLD, 0, 1);
+        float[] parameters = new float[4];
+
+        encoder.encode(new float[] {0.006f, -0.006f, 0, 0}).applyTo(parameters);
+        assertArrayEquals(new float[4], parameters, DELTA);
+        assertEquals(0.012, encoder.getResidualNorm(), DELTA);
+
+        EncodedUpdate update = encoder.encode(new float[] {0.006f, -0.006f, 0, 0.035f});
+        assertEquals(3, update.getSize());
+        update.applyTo(parameters);
+        assertArrayEquals(new float[] {0.01f, -0.01f, 0, 0.03f}, parameters, DELTA);
+        assertEquals(0.002 + 0.002 + 0.005, encoder.getResidualNorm(), DELTA);
+    }
+
+    @Test
+    public void nothingIsLostBetweenSentUpdatesAndResidual() {
+        Random random = new Random(42);
+        ThresholdEncoder encoder = new ThresholdEncoder(LENGTH, THRESHOLD);
+        float[] total = new float[LENGTH];
+        float[] applied = new float[LENGTH];
+        for (int step = 0; step < 50; step++) {
+            float[] update = new float[LENGTH];
+            for (int i = 0; i < LENGTH; i++) {
+                update[i] = (float) (random.nextGaussian() * 0.003);
+                total[i] += update[i];
+            }
+            encoder.encode(update).applyTo(applied);
+        }
+
+        double missing = 0;
+        for (int i = 0; i < LENGTH; i++)
+            missing += Math.abs(total[i] - applied[i]);
+        assertEquals(encoder.getResidualNorm(), missing, 1e-3);
+    }
+
+    @Test
+    public void thresholdAdaptsToDensity() {
+        ThresholdEncoder encoder = new ThresholdEncoder(LENGTH, THRESHOLD);
+        float[] everything = new float[LENGTH];
+        Arrays.fill(everything, 1);
+        encoder.encode(everything);
+        assertEquals(THRESHOLD * 1.2f, encoder.getThreshold(), DELTA);
+
+        encoder.encode(new float[LENGTH]);
+        assertEquals(THRESHOLD, encoder.getThreshold(), DELTA);
+    }
+
+
+
+    // Static helpers
+    //------------------------------------------------------------------------------------------------------------------
+    private static void assertRoundTrip(EncodedUpdate update) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream outputStream = new DataOutputStream(bytes)) {
+            update.write(outputStream);
+        }
+        assertEquals(update.getEncodedBytes(), bytes.size());
+
+        EncodedUpdate read = EncodedUpdate.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(update.getLength(), read.getLength());
+        assertEquals(update.getThreshold(), read.getThreshold(), 0);
+        assertEquals(update.getSize(), read.getSize());
+
+        float[] expected = new float[update.getLength()];
+        float[] actual = new float[read.getLength()];
+        update.applyTo(expected);
+        read.applyTo(actual);
+        assertArrayEquals(expected, actual, 0);
+    }
+    //------------------------------------------------------------------------------------------------------------------
+}
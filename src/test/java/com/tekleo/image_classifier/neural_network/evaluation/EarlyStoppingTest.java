@@ -0,0 +1,84 @@
+package com.tekleo.image_classifier.neural_network.evaluation;
+
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.junit.Before;
+import org.junit.Test;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EarlyStoppingTest {
+    // Accuracies and delta are exact binary fractions, so "improved by exactly the delta" is not blurred by rounding
+    private static final double MIN_DELTA = 0.125;
+
+    private MultiLayerNetwork network;
+
+    @Before
+    public void initNetwork() {
+        MultiLayerConfiguration configuration = new NeuralNetConfiguration.Builder()
+                .seed(42)
+                .list()
+                .layer(0, new OutputLayer.Builder(LossFunctions.LossFunction.MCXENT).nIn(2).nOut(2).activation(Activation.SOFTMAX).build())
+                .build();
+        network = new MultiLayerNetwork(configuration);
+        network.init();
+    }
+
+    @Test
+    public void stopsAfterPatienceEpochsWithoutImprovement() {
+        EarlyStopping earlyStopping = new EarlyStopping(2, MIN_DELTA);
+        assertFalse(earlyStopping.update(network, 0, 0.25));
+        assertFalse(earlyStopping.update(network, 1, 0.5));
+        assertFalse(earlyStopping.update(network, 2, 0.5));
+        assertEquals(1, earlyStopping.getEpochsWithoutImprovement());
+        assertTrue(earlyStopping.update(network, 3, 0.25));
+        assertEquals(0.5, earlyStopping.getBestAccuracy(), 0);
+        assertEquals(1, earlyStopping.getBestEpoch());
+        assertEquals(4, earlyStopping.getCompletedEpochs());
+    }
+
+    @Test
+    public void improvementMustExceedMinDelta() {
+        EarlyStopping earlyStopping = new EarlyStopping(3, MIN_DELTA);
+        earlyStopping.update(network, 0, 0.5);
+        // Exactly the delta is not enough
+        earlyStopping.update(network, 1, 0.625);
+        assertEquals(0, earlyStopping.getBestEpoch());
+        assertEquals(1, earlyStopping.getEpochsWithoutImprovement());
+
+        earlyStopping.update(network, 2, 0.75);
+        assertEquals(2, earlyStopping.getBestEpoch());
+        assertEquals(0.75, earlyStopping.getBestAccuracy(), 0);
+        assertEquals(0, earlyStopping.getEpochsWithoutImprovement());
+    }
+
+    @Test
+    public void firstEpochIsAlwaysBest() {
+        EarlyStopping earlyStopping = new EarlyStopping(1, MIN_DELTA);
+        assertFalse(earlyStopping.update(network, 0, 0));
+        assertEquals(0, earlyStopping.getBestEpoch());
+        assertTrue(earlyStopping.update(network, 1, 0));
+    }
+
+    @Test
+    public void restoresParametersOfBestEpoch() {
+        EarlyStopping earlyStopping = new EarlyStopping(5, MIN_DELTA);
+        network.setParams(network.params().dup().assign(1));
+        earlyStopping.update(network, 0, 0.25);
+        network.setParams(network.params().dup().assign(2));
+        earlyStopping.update(network, 1, 0.75);
+        INDArray best = network.params().dup();
+        network.setParams(network.params().dup().assign(3));
+        earlyStopping.update(network, 2, 0.5);
+
+        earlyStopping.restoreBest(network);
+        assertEquals(best, network.params());
+    }
+}